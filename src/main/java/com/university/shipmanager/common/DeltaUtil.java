@@ -0,0 +1,237 @@
+package com.university.shipmanager.common;
+
+import cn.hutool.core.lang.hash.MurmurHash;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 二进制差分 (rsync 思路)
+ * 1. 旧版本按 4KB 切块，每块算一个弱哈希 (可滚动) + 强哈希，建索引
+ * 2. 新版本用滑动窗口逐字节滚动弱哈希，命中索引且强哈希一致 -> 再和旧版本逐字节比对，真的相同才记 COPY(旧版本偏移, 长度)，
+ *    否则攒成 INSERT(新字节)。哈希只用来找候选，碰撞了也不会把错的块拷进新版本
+ * 3. 还原时按指令从旧版本拷贝 / 写入新字节，最后核对长度
+ * 在大文件中间插入、删除几个字节也能对齐，适合 CAD 导出和手册这种“大文件小改动”。
+ *
+ * 差分格式：MAGIC, 新版本长度, 若干指令 (COPY: 1, offset, length / INSERT: 2, length, bytes), 结束符 0
+ */
+public final class DeltaUtil {
+
+    public static final int BLOCK_SIZE = 4096;
+
+    private static final int MAGIC = 0x53444C54; // "SDLT"
+    private static final byte OP_END = 0;
+    private static final byte OP_COPY = 1;
+    private static final byte OP_INSERT = 2;
+    private static final int MAX_INSERT = 64 * 1024; // 新字节攒到 64KB 就先写出去
+
+    private DeltaUtil() {
+    }
+
+    /**
+     * 旧版本的块索引：弱哈希 -> 候选块，外加旧版本内容本身 (发 COPY 前逐字节核对用)
+     */
+    public static class Signature {
+        private final Map<Integer, List<long[]>> blocks = new HashMap<>(); // long[]{块号, 强哈希}
+        private final ByteBuffer base;
+
+        Signature(ByteBuffer base) {
+            this.base = base;
+        }
+
+        List<long[]> candidates(int weak) {
+            return blocks.get(weak);
+        }
+
+        boolean sameBlock(long blockNo, byte[] window) {
+            return base.slice((int) (blockNo * BLOCK_SIZE), BLOCK_SIZE).equals(ByteBuffer.wrap(window));
+        }
+    }
+
+    /**
+     * 扫一遍旧版本，建块索引
+     * @param base 旧版本内容 (随机访问，通常是映射进来的临时文件)，encode 结束前不能改动
+     */
+    public static Signature signature(ByteBuffer base) {
+        Signature sig = new Signature(base);
+        byte[] block = new byte[BLOCK_SIZE];
+        int blocks = base.limit() / BLOCK_SIZE; // 最后不满一块的尾巴不参与匹配
+        for (int index = 0; index < blocks; index++) {
+            base.get(index * BLOCK_SIZE, block, 0, BLOCK_SIZE);
+            int weak = weakHash(block, 0, BLOCK_SIZE);
+            sig.blocks.computeIfAbsent(weak, k -> new ArrayList<>(1)).add(new long[]{index, MurmurHash.hash64(block)});
+        }
+        return sig;
+    }
+
+    /**
+     * 生成差分
+     * @param target 新版本内容 (随机访问，通常是映射进来的临时文件)
+     */
+    public static void encode(Signature sig, ByteBuffer target, OutputStream deltaOut) throws IOException {
+        DataOutputStream out = new DataOutputStream(deltaOut);
+        int n = target.limit();
+        out.writeInt(MAGIC);
+        out.writeLong(n);
+
+        byte[] window = new byte[BLOCK_SIZE];
+        long pendingCopyOffset = -1;
+        int pendingCopyLength = 0;
+        int literalStart = 0;
+        int i = 0;
+        int weak = n >= BLOCK_SIZE ? weakHash(target, 0) : 0;
+
+        while (i + BLOCK_SIZE <= n) {
+            long matchedBlock = -1;
+            List<long[]> candidates = sig.candidates(weak);
+            if (candidates != null) {
+                target.get(i, window, 0, BLOCK_SIZE);
+                long strong = MurmurHash.hash64(window);
+                for (long[] c : candidates) {
+                    if (c[1] == strong && sig.sameBlock(c[0], window)) {
+                        matchedBlock = c[0];
+                        break;
+                    }
+                }
+            }
+
+            if (matchedBlock >= 0) {
+                // 命中：先把攒着的新字节写掉，再记 COPY (和上一个 COPY 首尾相接就合并)
+                if (literalStart < i) {
+                    writeCopy(out, pendingCopyOffset, pendingCopyLength);
+                    pendingCopyOffset = -1;
+                    pendingCopyLength = 0;
+                    writeInsert(out, target, literalStart, i);
+                }
+                long offset = matchedBlock * BLOCK_SIZE;
+                if (pendingCopyOffset >= 0 && pendingCopyOffset + pendingCopyLength == offset) {
+                    pendingCopyLength += BLOCK_SIZE;
+                } else {
+                    writeCopy(out, pendingCopyOffset, pendingCopyLength);
+                    pendingCopyOffset = offset;
+                    pendingCopyLength = BLOCK_SIZE;
+                }
+                i += BLOCK_SIZE;
+                literalStart = i;
+                if (i + BLOCK_SIZE <= n) weak = weakHash(target, i);
+            } else {
+                // 没命中：窗口右移一个字节
+                if (i + BLOCK_SIZE < n) weak = roll(weak, target.get(i), target.get(i + BLOCK_SIZE));
+                i++;
+                if (i - literalStart >= MAX_INSERT) {
+                    writeCopy(out, pendingCopyOffset, pendingCopyLength);
+                    pendingCopyOffset = -1;
+                    pendingCopyLength = 0;
+                    writeInsert(out, target, literalStart, i);
+                    literalStart = i;
+                }
+            }
+        }
+
+        writeCopy(out, pendingCopyOffset, pendingCopyLength);
+        if (literalStart < n) writeInsert(out, target, literalStart, n);
+        out.writeByte(OP_END);
+        out.flush();
+    }
+
+    /**
+     * 还原：旧版本 + 差分 -> 新版本
+     */
+    public static void apply(FileChannel base, InputStream delta, OutputStream out) throws IOException {
+        DataInputStream in = new DataInputStream(delta);
+        if (in.readInt() != MAGIC) throw new IOException("不是有效的差分数据");
+        long expectedLength = in.readLong();
+        long written = 0;
+
+        byte[] buf = new byte[MAX_INSERT];
+        while (true) {
+            byte op = in.readByte();
+            if (op == OP_END) break;
+            if (op == OP_COPY) {
+                long offset = in.readLong();
+                int length = in.readInt();
+                while (length > 0) {
+                    ByteBuffer bb = ByteBuffer.wrap(buf, 0, Math.min(length, buf.length));
+                    int read = base.read(bb, offset);
+                    if (read <= 0) throw new EOFException("差分引用超出了旧版本范围");
+                    out.write(buf, 0, read);
+                    offset += read;
+                    length -= read;
+                    written += read;
+                }
+            } else if (op == OP_INSERT) {
+                int length = in.readInt();
+                while (length > 0) {
+                    int read = in.read(buf, 0, Math.min(length, buf.length));
+                    if (read < 0) throw new EOFException("差分数据不完整");
+                    out.write(buf, 0, read);
+                    length -= read;
+                    written += read;
+                }
+            } else {
+                throw new IOException("未知的差分指令: " + op);
+            }
+        }
+        if (written != expectedLength) {
+            throw new IOException("差分还原长度不对：期望 " + expectedLength + "，实际 " + written);
+        }
+        out.flush();
+    }
+
+    private static void writeCopy(DataOutputStream out, long offset, int length) throws IOException {
+        if (offset < 0 || length == 0) return;
+        out.writeByte(OP_COPY);
+        out.writeLong(offset);
+        out.writeInt(length);
+    }
+
+    private static void writeInsert(DataOutputStream out, ByteBuffer target, int from, int to) throws IOException {
+        out.writeByte(OP_INSERT);
+        out.writeInt(to - from);
+        byte[] bytes = new byte[to - from];
+        target.get(from, bytes);
+        out.write(bytes);
+    }
+
+    // --- 弱哈希 (rsync 滚动校验和：a = Σx, b = Σ(L - i)·x，各取低 16 位) ---
+
+    private static int weakHash(byte[] data, int off, int len) {
+        int a = 0;
+        int b = 0;
+        for (int i = 0; i < len; i++) {
+            int x = data[off + i] & 0xFF;
+            a += x;
+            b += (len - i) * x;
+        }
+        return (a & 0xFFFF) | ((b & 0xFFFF) << 16);
+    }
+
+    private static int weakHash(ByteBuffer data, int off) {
+        int a = 0;
+        int b = 0;
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            int x = data.get(off + i) & 0xFF;
+            a += x;
+            b += (BLOCK_SIZE - i) * x;
+        }
+        return (a & 0xFFFF) | ((b & 0xFFFF) << 16);
+    }
+
+    private static int roll(int weak, byte out, byte in) {
+        int o = out & 0xFF;
+        int x = in & 0xFF;
+        int a = ((weak & 0xFFFF) - o + x) & 0xFFFF;
+        int b = ((weak >>> 16) - BLOCK_SIZE * o + a) & 0xFFFF;
+        return a | (b << 16);
+    }
+}
@@ -18,7 +18,7 @@ public class GlobalExceptionHandler {
                 "timestamp", System.currentTimeMillis(),
                 "status", 500,
                 "error", "File Too Large",
-                "message", "文件大小超过限制！请上传小于 100MB 的文件。" // 👈 给前端的提示
+                "message", "文件大小超过限制！请上传小于 100MB 的文件，更大的文件请使用断点续传接口。" // 👈 给前端的提示
         );
     }
 
@@ -0,0 +1,271 @@
+package com.university.shipmanager.common;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.util.HexUtil;
+import cn.hutool.crypto.digest.DigestUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * 本地磁盘实现 (storage.type=local)
+ * 适用场景：船上单机部署 (没有 MinIO)、集成测试 / 性能测试
+ * 1. 写：先写临时文件再原子改名，写一半崩溃也不会留下半个文件
+ * 2. 读：按区间内存映射 (mmap)，下载接口还能通过 localPath 走 sendfile 零拷贝
+ * 3. 分片：每片一个临时文件，合并时用 FileChannel.transferTo 在内核里拼接
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "storage.type", havingValue = "local")
+public class LocalObjectStore implements ObjectStore {
+
+    private static final String TMP_DIR = ".tmp";
+    private static final String MULTIPART_DIR = ".multipart";
+    private static final int MAP_WINDOW = 64 * 1024 * 1024; // 每次映射 64MB，超大文件分段映射
+
+    private final Path root;
+
+    public LocalObjectStore(@Value("${storage.local.root:./data/objects}") String root) {
+        this.root = Paths.get(root).toAbsolutePath().normalize();
+        try {
+            Files.createDirectories(this.root.resolve(TMP_DIR));
+            Files.createDirectories(this.root.resolve(MULTIPART_DIR));
+        } catch (IOException e) {
+            throw new IllegalStateException("无法创建本地存储目录: " + this.root, e);
+        }
+        log.info("使用本地文件存储: {}", this.root);
+    }
+
+    @Override
+    public UploadResult uploadStream(InputStream inputStream, String originalFilename, String contentType) {
+        String objectName = ObjectStore.newObjectName(originalFilename);
+        Path target = resolve(objectName);
+        Path tmp = root.resolve(TMP_DIR).resolve(UUID.randomUUID().toString());
+        MessageDigest digest = DigestUtil.digester("SHA-256").getDigest();
+        try (DigestInputStream in = new DigestInputStream(inputStream, digest)) {
+            long size = Files.copy(in, tmp);
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+            log.info("文件上传成功: {} ({} bytes)", objectName, size);
+            return new UploadResult(objectName, size, HexUtil.encodeHexStr(digest.digest()),
+                    contentType != null ? contentType : "application/octet-stream");
+        } catch (IOException e) {
+            log.error("文件上传失败", e);
+            FileUtil.del(tmp);
+            throw new RuntimeException("文件上传失败");
+        }
+    }
+
+    @Override
+    public String createMultipartUpload(String objectName, String contentType) {
+        String uploadId = UUID.randomUUID().toString();
+        try {
+            Files.createDirectories(root.resolve(MULTIPART_DIR).resolve(uploadId));
+        } catch (IOException e) {
+            log.error("初始化分片上传失败: {}", objectName, e);
+            throw new RuntimeException("初始化分片上传失败");
+        }
+        return uploadId;
+    }
+
+    @Override
+    public String uploadPart(String objectName, String uploadId, int partNumber, byte[] data) {
+        Path partFile = partDir(uploadId).resolve(String.valueOf(partNumber));
+        try {
+            Files.write(partFile, data);
+            return DigestUtil.md5Hex(data);
+        } catch (IOException e) {
+            log.error("分片上传失败: {} #{}", objectName, partNumber, e);
+            throw new RuntimeException("分片 " + partNumber + " 上传失败");
+        }
+    }
+
+    @Override
+    public void completeMultipartUpload(String objectName, String uploadId, Map<Integer, String> etags) {
+        Path dir = partDir(uploadId);
+        Path tmp = root.resolve(TMP_DIR).resolve(uploadId);
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (Integer partNumber : new TreeMap<>(etags).keySet()) {
+                try (FileChannel in = FileChannel.open(dir.resolve(String.valueOf(partNumber)), StandardOpenOption.READ)) {
+                    long size = in.size();
+                    long written = 0;
+                    while (written < size) {
+                        written += in.transferTo(written, size - written, out);
+                    }
+                }
+            }
+            out.force(true);
+        } catch (IOException e) {
+            log.error("合并分片失败: {}", objectName, e);
+            FileUtil.del(tmp);
+            throw new RuntimeException("合并分片失败");
+        }
+        try {
+            Files.move(tmp, resolve(objectName), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("合并分片失败: {}", objectName, e);
+            throw new RuntimeException("合并分片失败");
+        }
+        FileUtil.del(dir);
+    }
+
+    @Override
+    public void abortMultipartUpload(String objectName, String uploadId) {
+        FileUtil.del(partDir(uploadId));
+    }
+
+    @Override
+    public InputStream getObject(String objectName) {
+        try {
+            return Files.newInputStream(resolve(objectName));
+        } catch (IOException e) {
+            log.error("文件读取失败: {}", objectName, e);
+            throw new RuntimeException("文件读取失败");
+        }
+    }
+
+    /**
+     * 按区间读取：内存映射，读的时候直接从页缓存拷出去，不经过 read() 系统调用
+     */
+    @Override
+    public InputStream getObject(String objectName, long offset, long length) {
+        try {
+            return new MappedRangeInputStream(FileChannel.open(resolve(objectName), StandardOpenOption.READ), offset, length);
+        } catch (IOException e) {
+            log.error("文件读取失败: {} [{}+{}]", objectName, offset, length, e);
+            throw new RuntimeException("文件读取失败");
+        }
+    }
+
+    @Override
+    public ObjectInfo statObject(String objectName) {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(resolve(objectName), BasicFileAttributes.class);
+            // 本地文件没有现成的内容 ETag，用 大小 + 修改时间 凑一个 (下载接口优先用内容 SHA-256)
+            String etag = Long.toHexString(attrs.size()) + "-" + Long.toHexString(attrs.lastModifiedTime().toMillis());
+            String contentType = MediaTypeFactory.getMediaType(objectName).map(Object::toString).orElse(null);
+            return new ObjectInfo(attrs.size(), etag, attrs.lastModifiedTime().toInstant(), contentType);
+        } catch (IOException e) {
+            log.error("文件不存在或读取失败: {}", objectName, e);
+            throw new RuntimeException("文件不存在");
+        }
+    }
+
+    @Override
+    public Optional<String> getPresignedUrl(String objectName, int expirySeconds) {
+        return Optional.empty(); // 文件在应用本机上，没有可以直连的地址
+    }
+
+    @Override
+    public Path localPath(String objectName) {
+        return resolve(objectName);
+    }
+
+    @Override
+    public void removeFile(String objectName) {
+        try {
+            Files.deleteIfExists(resolve(objectName));
+            log.info("文件删除成功: {}", objectName);
+        } catch (Exception e) {
+            log.error("文件删除失败", e);
+        }
+    }
+
+    @Override
+    public int removeFiles(Collection<String> objectNames) {
+        if (objectNames == null || objectNames.isEmpty()) return 0;
+        int failed = 0;
+        for (String objectName : objectNames) {
+            try {
+                Files.deleteIfExists(resolve(objectName));
+            } catch (Exception e) {
+                log.error("文件删除失败: {}", objectName, e);
+                failed++;
+            }
+        }
+        log.info("批量删除文件: 共 {} 个，失败 {} 个", objectNames.size(), failed);
+        return failed;
+    }
+
+    /**
+     * 对象名落到根目录下，防止 "../" 之类的文件名跑出存储目录
+     */
+    private Path resolve(String objectName) {
+        Path path = root.resolve(objectName).normalize();
+        if (!path.getParent().equals(root) || objectName.startsWith(".")) {
+            throw new IllegalArgumentException("非法的文件名: " + objectName);
+        }
+        return path;
+    }
+
+    private Path partDir(String uploadId) {
+        Path dir = root.resolve(MULTIPART_DIR).resolve(uploadId).normalize();
+        if (!dir.getParent().equals(root.resolve(MULTIPART_DIR))) {
+            throw new IllegalArgumentException("非法的上传 ID: " + uploadId);
+        }
+        return dir;
+    }
+
+    /**
+     * 把文件的 [offset, offset + length) 区间按 64MB 一段映射进来读，读完一段再映射下一段
+     */
+    private static class MappedRangeInputStream extends InputStream {
+        private final FileChannel channel;
+        private long position;
+        private final long end;
+        private MappedByteBuffer window;
+
+        MappedRangeInputStream(FileChannel channel, long offset, long length) throws IOException {
+            this.channel = channel;
+            this.position = offset;
+            this.end = Math.min(offset + length, channel.size());
+        }
+
+        private boolean ensureWindow() throws IOException {
+            if (window != null && window.hasRemaining()) return true;
+            if (position >= end) return false;
+            long size = Math.min(MAP_WINDOW, end - position);
+            window = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+            position += size;
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return ensureWindow() ? window.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (!ensureWindow()) return -1;
+            int n = Math.min(len, window.remaining());
+            window.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
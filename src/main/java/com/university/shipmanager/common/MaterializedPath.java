@@ -0,0 +1,47 @@
+package com.university.shipmanager.common;
+
+import org.bson.types.ObjectId;
+
+import java.util.List;
+
+/**
+ * BOM 节点的路径串 (ComponentDoc.path)：祖先 ID + 自己的 ID 依次拼起来，每段都是 24 位 ObjectId 十六进制，定长不用分隔符
+ * 例：根 a..a 下的 b..b 下的 c..c -> "a..ab..bc..c" (72 个字符)
+ * 某个节点的子孙 = 路径以它的路径开头、但比它长的节点，在 path 的普通升序索引上就是一段区间：
+ *   path > P 且 path < P + "g" ("g" 比所有十六进制字符都大)
+ * 和 ancestors 多键索引比：每个节点只有一个索引键 (多键索引每个祖先一个)，子树查询是一次区间扫描
+ */
+public final class MaterializedPath {
+
+    public static final int SEGMENT_LENGTH = 24;
+    private static final String UPPER_BOUND = "g";
+
+    private MaterializedPath() {
+    }
+
+    /**
+     * @return 有某一段不是 ObjectId (老数据 / 手工插入) 时返回 null，这类节点只能走 ancestors
+     */
+    public static String encode(List<String> ancestors, String id) {
+        StringBuilder path = new StringBuilder(SEGMENT_LENGTH * ((ancestors == null ? 0 : ancestors.size()) + 1));
+        if (ancestors != null) {
+            for (String ancestor : ancestors) {
+                if (!isSegment(ancestor)) return null;
+                path.append(ancestor);
+            }
+        }
+        if (!isSegment(id)) return null;
+        return path.append(id).toString();
+    }
+
+    /**
+     * 子孙区间的上界 (不含)
+     */
+    public static String upperBound(String path) {
+        return path + UPPER_BOUND;
+    }
+
+    private static boolean isSegment(String id) {
+        return id != null && id.length() == SEGMENT_LENGTH && ObjectId.isValid(id) && id.equals(id.toLowerCase());
+    }
+}
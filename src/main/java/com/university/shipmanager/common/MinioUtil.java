@@ -1,32 +1,104 @@
 package com.university.shipmanager.common;
 
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.thread.ThreadUtil;
+import cn.hutool.core.util.HexUtil;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimap;
+import io.minio.GetObjectArgs;
+import io.minio.GetPresignedObjectUrlArgs;
+import io.minio.MinioAsyncClient;
 import io.minio.MinioClient;
 import io.minio.PutObjectArgs;
 import io.minio.RemoveObjectArgs;
+import io.minio.RemoveObjectsArgs;
+import io.minio.Result;
+import io.minio.StatObjectArgs;
+import io.minio.StatObjectResponse;
+import io.minio.UploadPartResponse;
+import io.minio.http.Method;
+import io.minio.messages.DeleteError;
+import io.minio.messages.DeleteObject;
+import io.minio.messages.Part;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * MinIO 实现 (默认)
+ * 连接配置放在 application.yml 的 storage.minio.*
+ */
 @Slf4j
 @Component
-public class MinioUtil {
+@ConditionalOnProperty(name = "storage.type", havingValue = "minio", matchIfMissing = true)
+public class MinioUtil implements ObjectStore {
 
-    // 硬编码配置 (生产环境应该放 application.yml)
+    // 默认配置 (application.yml 没配的时候用)
     private static final String ENDPOINT = "http://localhost:9000";
     private static final String ACCESS_KEY = "minioadmin";
     private static final String SECRET_KEY = "minioadmin";
     private static final String BUCKET_NAME = "ship-files";
 
+    // 分片上传参数：每片 8MB (S3 要求除最后一片外不小于 5MB)，同一个文件最多 4 片同时在传
+    // 单个上传最多占用 (UPLOAD_CONCURRENCY + 1) * PART_SIZE 的内存，与文件大小无关
+    private static final int PART_SIZE = 8 * 1024 * 1024;
+    private static final int UPLOAD_CONCURRENCY = 4;
+
+    // 批量删除：S3 的 DeleteObjects 一次最多 1000 个对象
+    private static final int REMOVE_BATCH_SIZE = 1000;
+
+    private final String bucketName;
     private final MinioClient minioClient;
+    private final MultipartClient multipartClient;
+    private final ExecutorService ioExecutor; // 分片上传、批量删除共用的后台线程池
 
     public MinioUtil() {
+        this(ENDPOINT, ACCESS_KEY, SECRET_KEY, BUCKET_NAME);
+    }
+
+    @Autowired
+    public MinioUtil(@Value("${storage.minio.endpoint:" + ENDPOINT + "}") String endpoint,
+                     @Value("${storage.minio.access-key:" + ACCESS_KEY + "}") String accessKey,
+                     @Value("${storage.minio.secret-key:" + SECRET_KEY + "}") String secretKey,
+                     @Value("${storage.minio.bucket:" + BUCKET_NAME + "}") String bucketName) {
+        this.bucketName = bucketName;
         this.minioClient = MinioClient.builder()
-                .endpoint(ENDPOINT)
-                .credentials(ACCESS_KEY, SECRET_KEY)
+                .endpoint(endpoint)
+                .credentials(accessKey, secretKey)
                 .build();
+        this.multipartClient = new MultipartClient(MinioAsyncClient.builder()
+                .endpoint(endpoint)
+                .credentials(accessKey, secretKey)
+                .build());
+        this.ioExecutor = Executors.newFixedThreadPool(
+                UPLOAD_CONCURRENCY * 2, ThreadUtil.newNamedThreadFactory("minio-io-", true));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        ioExecutor.shutdown();
     }
 
     /**
@@ -41,7 +113,7 @@ public class MinioUtil {
         try (InputStream inputStream = file.getInputStream()) {
             minioClient.putObject(
                     PutObjectArgs.builder()
-                            .bucket(BUCKET_NAME)                        // 1. 指定存在哪个“桶”里（类似于 Windows 的 D盘）
+                            .bucket(bucketName)                        // 1. 指定存在哪个“桶”里（类似于 Windows 的 D盘）
                             .object(fileName)                           // 2. 指定存进去叫什么名字（UUID 防止重名）
                             .stream(inputStream, file.getSize(), -1)    // 3. 【关键】把水管接上，把数据流灌进去
                             .contentType(file.getContentType())         // 4. 告诉它这是 PDF 还是 JPG
@@ -56,14 +128,287 @@ public class MinioUtil {
         }
     }
 
+    /**
+     * 【新增】流式分片上传 (大图纸专用)
+     * 只把输入流读一遍：边读边算大小和 SHA-256，每凑满一片就交给线程池并发上传，
+     * 读得比传得快时会在信号量上等待，所以内存占用是固定的。
+     * 不足一片的小文件直接走普通 putObject。
+     */
+    @Override
+    public UploadResult uploadStream(InputStream inputStream, String originalFilename, String contentType) {
+        String fileName = ObjectStore.newObjectName(originalFilename);
+        String type = contentType != null ? contentType : "application/octet-stream";
+
+        MessageDigest digest = newSha256();
+        String uploadId = null;
+        try {
+            byte[] first = inputStream.readNBytes(PART_SIZE);
+            digest.update(first);
+
+            // 1. 小文件：一片都凑不满，没必要走分片协议
+            if (first.length < PART_SIZE) {
+                minioClient.putObject(
+                        PutObjectArgs.builder()
+                                .bucket(bucketName)
+                                .object(fileName)
+                                .stream(new ByteArrayInputStream(first), first.length, -1)
+                                .contentType(type)
+                                .build()
+                );
+                log.info("文件上传成功: {} ({} bytes)", fileName, first.length);
+                return new UploadResult(fileName, first.length, HexUtil.encodeHexStr(digest.digest()), type);
+            }
+
+            // 2. 大文件：初始化分片上传，读一片传一片
+            uploadId = multipartClient.createUpload(bucketName, fileName, type);
+            Semaphore inFlight = new Semaphore(UPLOAD_CONCURRENCY);
+            AtomicReference<Throwable> partFailure = new AtomicReference<>(); // 第一个失败的分片，有了就不再往下读
+            List<CompletableFuture<Part>> futures = new ArrayList<>();
+            long totalSize = 0;
+            int partNumber = 1;
+            byte[] buffer = first;
+
+            while (buffer.length > 0) {
+                totalSize += buffer.length;
+                throwIfFailed(partFailure);
+                inFlight.acquire();
+                throwIfFailed(partFailure); // 等空位时可能刚好有分片失败
+                futures.add(submitPart(uploadId, fileName, buffer, partNumber++, inFlight, partFailure));
+
+                buffer = inputStream.readNBytes(PART_SIZE);
+                digest.update(buffer);
+            }
+
+            // 3. 等所有分片完成后合并
+            List<Part> parts = new ArrayList<>();
+            for (CompletableFuture<Part> future : futures) {
+                parts.add(future.join());
+            }
+            parts.sort(Comparator.comparingInt(Part::partNumber));
+            multipartClient.completeUpload(bucketName, fileName, uploadId, parts.toArray(new Part[0]));
+
+            log.info("文件分片上传成功: {} ({} bytes, {} 片)", fileName, totalSize, parts.size());
+            return new UploadResult(fileName, totalSize, HexUtil.encodeHexStr(digest.digest()), type);
+        } catch (Exception e) {
+            log.error("文件上传失败", e);
+            if (uploadId != null) {
+                multipartClient.abortUpload(bucketName, fileName, uploadId);
+            }
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            throw new RuntimeException("文件上传失败");
+        }
+    }
+
+    private CompletableFuture<Part> submitPart(String uploadId, String fileName, byte[] data, int partNumber, Semaphore inFlight,
+                                               AtomicReference<Throwable> partFailure) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                UploadPartResponse response = multipartClient.uploadPart(bucketName, fileName, uploadId, data, partNumber);
+                return new Part(partNumber, response.etag());
+            } catch (Exception e) {
+                RuntimeException failure = new RuntimeException("分片 " + partNumber + " 上传失败", e);
+                partFailure.compareAndSet(null, failure);
+                throw failure;
+            } finally {
+                inFlight.release();
+            }
+        }, ioExecutor);
+    }
+
+    /**
+     * 已经有分片失败了就别再读、别再传了，直接去 abort (不然要把剩下几百 MB 读完、传完，join 时才报错)
+     */
+    private static void throwIfFailed(AtomicReference<Throwable> partFailure) {
+        Throwable failure = partFailure.get();
+        if (failure != null) throw new RuntimeException(failure.getMessage(), failure);
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 【新增】批量删除文件
+     * 每 1000 个对象一个 DeleteObjects 请求，多个请求并发发出，全部结束后才返回。
+     * 和 removeFile 一样，失败只打日志不抛异常。
+     * @return 删除失败的文件数
+     */
+    @Override
+    public int removeFiles(Collection<String> fileNames) {
+        if (fileNames == null || fileNames.isEmpty()) return 0;
+
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (List<String> batch : CollUtil.split(fileNames, REMOVE_BATCH_SIZE)) {
+            futures.add(CompletableFuture.supplyAsync(() -> removeBatch(batch), ioExecutor));
+        }
+        int failed = futures.stream().mapToInt(CompletableFuture::join).sum();
+        log.info("批量删除文件: 共 {} 个，失败 {} 个", fileNames.size(), failed);
+        return failed;
+    }
+
+    private int removeBatch(List<String> batch) {
+        List<DeleteObject> objects = batch.stream().map(DeleteObject::new).toList();
+        int failed = 0;
+        try {
+            // 结果是懒加载的，必须遍历一遍请求才会真正发出去
+            for (Result<DeleteError> result : minioClient.removeObjects(
+                    RemoveObjectsArgs.builder().bucket(bucketName).objects(objects).build())) {
+                DeleteError error = result.get();
+                log.error("文件删除失败: {} ({})", error.objectName(), error.message());
+                failed++;
+            }
+        } catch (Exception e) {
+            log.error("批量删除文件失败", e);
+            return batch.size();
+        }
+        return failed;
+    }
+
+    /**
+     * 【新增】断点续传用的底层分片接口
+     * 每个上传会话对应 MinIO 的一个 multipart upload，分片可以乱序、并发地传，
+     * 最后由 MinIO 在服务端拼成一个完整对象，应用内存里不用攒整个文件。
+     */
+    @Override
+    public String createMultipartUpload(String objectName, String contentType) {
+        try {
+            return multipartClient.createUpload(bucketName, objectName,
+                    contentType != null ? contentType : "application/octet-stream");
+        } catch (Exception e) {
+            log.error("初始化分片上传失败: {}", objectName, e);
+            throw new RuntimeException("初始化分片上传失败");
+        }
+    }
+
+    /**
+     * 上传一个分片
+     * @return 分片的 ETag，合并时要用
+     */
+    @Override
+    public String uploadPart(String objectName, String uploadId, int partNumber, byte[] data) {
+        try {
+            return multipartClient.uploadPart(bucketName, objectName, uploadId, data, partNumber).etag();
+        } catch (Exception e) {
+            log.error("分片上传失败: {} #{}", objectName, partNumber, e);
+            throw new RuntimeException("分片 " + partNumber + " 上传失败");
+        }
+    }
+
+    /**
+     * 合并分片
+     * @param etags 分片号 -> ETag
+     */
+    @Override
+    public void completeMultipartUpload(String objectName, String uploadId, Map<Integer, String> etags) {
+        Part[] parts = etags.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .map(e -> new Part(e.getKey(), e.getValue()))
+                .toArray(Part[]::new);
+        try {
+            multipartClient.completeUpload(bucketName, objectName, uploadId, parts);
+        } catch (Exception e) {
+            log.error("合并分片失败: {}", objectName, e);
+            throw new RuntimeException("合并分片失败");
+        }
+    }
+
+    @Override
+    public void abortMultipartUpload(String objectName, String uploadId) {
+        multipartClient.abortUpload(bucketName, objectName, uploadId);
+    }
+
+    /**
+     * 读取文件内容 (调用方负责关闭流)
+     */
+    @Override
+    public InputStream getObject(String objectName) {
+        try {
+            return minioClient.getObject(
+                    GetObjectArgs.builder()
+                            .bucket(bucketName)
+                            .object(objectName)
+                            .build()
+            );
+        } catch (Exception e) {
+            log.error("文件读取失败: {}", objectName, e);
+            throw new RuntimeException("文件读取失败");
+        }
+    }
+
+    /**
+     * 【新增】按字节区间读取 (HTTP Range 下载用)，调用方负责关闭流
+     */
+    @Override
+    public InputStream getObject(String objectName, long offset, long length) {
+        try {
+            return minioClient.getObject(
+                    GetObjectArgs.builder()
+                            .bucket(bucketName)
+                            .object(objectName)
+                            .offset(offset)
+                            .length(length)
+                            .build()
+            );
+        } catch (Exception e) {
+            log.error("文件读取失败: {} [{}+{}]", objectName, offset, length, e);
+            throw new RuntimeException("文件读取失败");
+        }
+    }
+
+    /**
+     * 【新增】查文件元信息 (大小、ETag、修改时间)，不读内容
+     */
+    @Override
+    public ObjectInfo statObject(String objectName) {
+        try {
+            StatObjectResponse stat = minioClient.statObject(
+                    StatObjectArgs.builder()
+                            .bucket(bucketName)
+                            .object(objectName)
+                            .build()
+            );
+            return new ObjectInfo(stat.size(), stat.etag(), stat.lastModified().toInstant(), stat.contentType());
+        } catch (Exception e) {
+            log.error("文件不存在或读取失败: {}", objectName, e);
+            throw new RuntimeException("文件不存在");
+        }
+    }
+
+    /**
+     * 【新增】生成临时下载链接 (预签名 URL)，过期后自动失效，桶不用再设成公开
+     */
+    @Override
+    public Optional<String> getPresignedUrl(String objectName, int expirySeconds) {
+        try {
+            return Optional.of(minioClient.getPresignedObjectUrl(
+                    GetPresignedObjectUrlArgs.builder()
+                            .method(Method.GET)
+                            .bucket(bucketName)
+                            .object(objectName)
+                            .expiry(expirySeconds, TimeUnit.SECONDS)
+                            .build()
+            ));
+        } catch (Exception e) {
+            log.error("生成下载链接失败: {}", objectName, e);
+            throw new RuntimeException("生成下载链接失败");
+        }
+    }
+
     /**
      * 删除文件
      */
+    @Override
     public void removeFile(String fileName) {
         try {
             minioClient.removeObject(
                     RemoveObjectArgs.builder()
-                            .bucket(BUCKET_NAME)
+                            .bucket(bucketName)
                             .object(fileName)
                             .build()
             );
@@ -73,4 +418,48 @@ public class MinioUtil {
             // 删除失败不抛异常，打印日志即可，避免影响主业务
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * MinIO SDK 没有公开"跨请求的分片上传"接口 (putObject 只在一次调用里自己分片)，断点续传只能用 S3Base 里 protected 的那一套，
+     * 所以集中在这一个类里继承暴露出来，别的地方不碰 SDK 内部。
+     * 用的是 *Async 版本：同步版本在 8.5.x 里已经废弃，异步版本就是它们的替代。
+     * 依赖 protected 方法签名，升级 SDK 前先核对 (版本固定在 pom.xml 的 minio.version)。
+     */
+    private static class MultipartClient extends MinioAsyncClient {
+
+        MultipartClient(MinioAsyncClient client) {
+            super(client);
+        }
+
+        String createUpload(String bucket, String object, String contentType) throws Exception {
+            Multimap<String, String> headers = HashMultimap.create();
+            headers.put("Content-Type", contentType);
+            return await(createMultipartUploadAsync(bucket, null, object, headers, null)).result().uploadId();
+        }
+
+        UploadPartResponse uploadPart(String bucket, String object, String uploadId, byte[] data, int partNumber) throws Exception {
+            return await(uploadPartAsync(bucket, null, object, data, data.length, uploadId, partNumber, null, null));
+        }
+
+        void completeUpload(String bucket, String object, String uploadId, Part[] parts) throws Exception {
+            await(completeMultipartUploadAsync(bucket, null, object, uploadId, parts, null, null));
+        }
+
+        void abortUpload(String bucket, String object, String uploadId) {
+            try {
+                await(abortMultipartUploadAsync(bucket, null, object, uploadId, null, null));
+            } catch (Exception e) {
+                log.warn("取消分片上传失败: {} / {}", object, uploadId, e);
+            }
+        }
+
+        // 等结果，把 SDK 包在 ExecutionException 里的真实异常拆出来 (和同步版本抛的一样)
+        private static <T> T await(CompletableFuture<T> future) throws Exception {
+            try {
+                return future.get();
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception cause ? cause : e;
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.university.shipmanager.common;
+
+import lombok.Data;
+
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * 文件存储抽象
+ * 业务层只依赖这个接口，具体用哪个实现由 application.yml 的 storage.type 决定：
+ * 1. minio (默认)：MinioUtil，对接 MinIO / S3
+ * 2. local：LocalObjectStore，单机部署 (船上离线环境) 和测试用，直接读写本地磁盘
+ */
+public interface ObjectStore {
+
+    /**
+     * 流式上传：输入流只读一遍，边读边算大小和 SHA-256
+     */
+    UploadResult uploadStream(InputStream inputStream, String originalFilename, String contentType);
+
+    // --- 分片上传 (断点续传) ---
+
+    String createMultipartUpload(String objectName, String contentType);
+
+    /**
+     * @return 分片的 ETag，合并时要用
+     */
+    String uploadPart(String objectName, String uploadId, int partNumber, byte[] data);
+
+    /**
+     * @param etags 分片号 -> ETag
+     */
+    void completeMultipartUpload(String objectName, String uploadId, Map<Integer, String> etags);
+
+    void abortMultipartUpload(String objectName, String uploadId);
+
+    // --- 读取 ---
+
+    /**
+     * 读取文件内容 (调用方负责关闭流)
+     */
+    InputStream getObject(String objectName);
+
+    /**
+     * 按字节区间读取 (HTTP Range 下载用)，调用方负责关闭流
+     */
+    InputStream getObject(String objectName, long offset, long length);
+
+    /**
+     * 查文件元信息 (大小、ETag、修改时间)，不读内容
+     */
+    ObjectInfo statObject(String objectName);
+
+    /**
+     * 生成短时有效的直连下载链接；存储本身不能直连 (例如本地磁盘) 时返回 empty，调用方退回应用下载接口
+     */
+    Optional<String> getPresignedUrl(String objectName, int expirySeconds);
+
+    /**
+     * 文件就在本机磁盘上时返回它的路径 (下载时可以走 sendfile 零拷贝)，否则返回 null
+     */
+    default Path localPath(String objectName) {
+        return null;
+    }
+
+    // --- 删除 (失败只打日志不抛异常，避免影响主业务) ---
+
+    void removeFile(String objectName);
+
+    /**
+     * @return 删除失败的文件数
+     */
+    int removeFiles(Collection<String> objectNames);
+
+    /**
+     * 生成唯一文件名，防止重名覆盖
+     */
+    static String newObjectName(String originalFilename) {
+        return UUID.randomUUID() + "_" + originalFilename;
+    }
+
+    /**
+     * 流式上传的结果：存储路径 + 边读边算出来的大小和校验和
+     */
+    @Data
+    class UploadResult {
+        private final String storagePath;
+        private final long size;
+        private final String sha256;
+        private final String contentType;
+    }
+
+    /**
+     * 文件元信息
+     */
+    @Data
+    class ObjectInfo {
+        private final long size;
+        private final String etag;
+        private final Instant lastModified;
+        private final String contentType;
+    }
+}
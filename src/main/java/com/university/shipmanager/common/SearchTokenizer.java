@@ -0,0 +1,74 @@
+package com.university.shipmanager.common;
+
+import java.text.Normalizer;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * 搜索分词 (中英文混排)
+ * 1. 英文 / 数字：按连续的字母数字切词，统一小写 ("MAN B&W 6S50MC" -> man, b, w, 6s50mc)
+ * 2. 中文：不上词典，按相邻两个字切 (二元切分)，"主机滑油泵" -> 主机, 机滑, 滑油, 油泵
+ *    建索引时额外存单字，这样只搜一个字 ("泵") 也能命中
+ * 全角字符先转半角 (NFKC)，"ＰＤＦ" 和 "pdf" 是一个词
+ */
+public final class SearchTokenizer {
+
+    private SearchTokenizer() {
+    }
+
+    /**
+     * 建索引用：中文二元 + 单字
+     */
+    public static Set<String> tokenizeForIndex(String text) {
+        return tokenize(text, true);
+    }
+
+    /**
+     * 查询用：中文只取二元 (单独一个字时取单字)，避免单字把结果放得太宽
+     */
+    public static Set<String> tokenizeQuery(String text) {
+        return tokenize(text, false);
+    }
+
+    private static Set<String> tokenize(String text, boolean forIndex) {
+        Set<String> tokens = new LinkedHashSet<>();
+        if (text == null || text.isBlank()) return tokens;
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase();
+
+        StringBuilder word = new StringBuilder();   // 当前的英文 / 数字串
+        StringBuilder han = new StringBuilder();    // 当前的连续汉字
+        for (int i = 0; i < normalized.length(); ) {
+            int cp = normalized.codePointAt(i);
+            i += Character.charCount(cp);
+            if (Character.UnicodeScript.of(cp) == Character.UnicodeScript.HAN) {
+                flushWord(word, tokens);
+                han.appendCodePoint(cp);
+            } else if (Character.isLetterOrDigit(cp)) {
+                flushHan(han, tokens, forIndex);
+                word.appendCodePoint(cp);
+            } else {
+                flushWord(word, tokens);
+                flushHan(han, tokens, forIndex);
+            }
+        }
+        flushWord(word, tokens);
+        flushHan(han, tokens, forIndex);
+        return tokens;
+    }
+
+    private static void flushWord(StringBuilder word, Set<String> tokens) {
+        if (word.length() > 0) tokens.add(word.toString());
+        word.setLength(0);
+    }
+
+    private static void flushHan(StringBuilder han, Set<String> tokens, boolean forIndex) {
+        int[] chars = han.codePoints().toArray();
+        if (chars.length == 1 || (forIndex && chars.length > 0)) {
+            for (int c : chars) tokens.add(new String(Character.toChars(c)));
+        }
+        for (int i = 0; i + 1 < chars.length; i++) {
+            tokens.add(new String(chars, i, 2));
+        }
+        han.setLength(0);
+    }
+}
@@ -0,0 +1,75 @@
+package com.university.shipmanager.config;
+
+import com.university.shipmanager.entity.mongo.ComponentDoc;
+import com.university.shipmanager.entity.mongo.SearchDocument;
+import com.university.shipmanager.entity.mongo.UploadOutbox;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.PartialIndexFilter;
+import org.springframework.data.mongodb.core.index.WildcardIndex;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 启动时建实体上声明的 Mongo 索引
+ * Spring Data MongoDB 默认不开 auto-index-creation，@Indexed / @CompoundIndex 只是声明，不会真的去建，
+ * 这里按注解上的名字和字段显式建一遍 (已存在的直接跳过)；在后台线程里跑，数据库连不上也不耽误启动。
+ * 单个索引建失败 (比如唯一索引撞上了历史重复数据) 只记日志，不影响其它索引。
+ */
+@Slf4j
+@Component
+public class MongoIndexInitializer {
+
+    private final MongoTemplate mongoTemplate;
+
+    public MongoIndexInitializer(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void createIndexesAsync() {
+        CompletableFuture.runAsync(this::createIndexes);
+    }
+
+    void createIndexes() {
+        // search_docs：按船过滤 + 按词命中
+        create(SearchDocument.class, new Index().on("shipId", Sort.Direction.ASC).on("tokens", Sort.Direction.ASC).named("ship_tokens"));
+
+        // ship_components：懒加载树按父节点 / 按船取根节点分页
+        create(ComponentDoc.class, new Index().on("parentId", Sort.Direction.ASC).on("_id", Sort.Direction.ASC).named("parent_page"));
+        create(ComponentDoc.class, new Index().on("shipId", Sort.Direction.ASC).on("parentId", Sort.Direction.ASC)
+                .on("_id", Sort.Direction.ASC).named("ship_root_page"));
+        // 子树查询 / 移动时改写 ancestors 都按祖先 ID 查 (多键索引)
+        create(ComponentDoc.class, new Index().on("ancestors", Sort.Direction.ASC).named("ancestors"));
+        // bom.subtree-index=path 时子树查询按物化路径前缀做范围扫描
+        create(ComponentDoc.class, new Index().on("path", Sort.Direction.ASC).named("path"));
+        // 批量导入按外部编码找已有节点，同一艘船上编码唯一 (并发导入同一批编码时由它兜底)；
+        // 手工建的节点可以不填编码 (null 不落库，字段不存在)，只约束有编码的
+        create(ComponentDoc.class, new Index().on("shipId", Sort.Direction.ASC).on("code", Sort.Direction.ASC).named("ship_code")
+                .unique().partial(PartialIndexFilter.of(Criteria.where("code").exists(true))));
+        // 通配符索引 specs.$**：按任意属性的等值 / 范围查询 (ComponentSpecQueryService)
+        create(ComponentDoc.class, new WildcardIndex("specs").named("specs_wildcard"));
+
+        // upload_outbox：后台扫到期的 PENDING / 过期的 FAILED
+        create(UploadOutbox.class, new Index().on("status", Sort.Direction.ASC).on("nextAttemptAt", Sort.Direction.ASC).named("status_due"));
+        // DONE 的留 7 天给客户端查进度，到期 Mongo 自己删 (FAILED 要释放文件，由 UploadOutboxService 过期清理)
+        create(UploadOutbox.class, new Index().on("finishedAt", Sort.Direction.ASC).named("done_ttl")
+                .expire(Duration.ofDays(7)).partial(PartialIndexFilter.of(Criteria.where("status").is("DONE"))));
+    }
+
+    private void create(Class<?> entity, IndexDefinition index) {
+        try {
+            mongoTemplate.indexOps(entity).createIndex(index);
+        } catch (Exception e) {
+            log.warn("Mongo 索引创建失败: {}.{}", mongoTemplate.getCollectionName(entity), index.getIndexOptions().get("name"), e);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.university.shipmanager.config;
+
+import com.university.shipmanager.mapper.DocIndexMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 启动时检查代码正确性依赖的 MySQL 唯一索引，没有就补建
+ * 只管会影响结果的约束 (比如异步上传的幂等)；纯性能的索引仍然按实体上的 DDL 注释由 DBA 建。
+ * 在后台线程里跑，数据库连不上 / 没有 ALTER 权限只记日志，不耽误启动。
+ */
+@Slf4j
+@Component
+public class MysqlIndexInitializer {
+
+    static final String UK_MONGO_DOC_ID = "uk_mongo_doc_id";
+
+    private final DocIndexMapper docIndexMapper;
+
+    public MysqlIndexInitializer(DocIndexMapper docIndexMapper) {
+        this.docIndexMapper = docIndexMapper;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void createIndexesAsync() {
+        CompletableFuture.runAsync(this::createIndexes);
+    }
+
+    void createIndexes() {
+        try {
+            // 异步上传重试 / 租约过期后重复处理时，靠它保证一篇 Mongo 详情只有一条 doc_index
+            if (docIndexMapper.countIndex(UK_MONGO_DOC_ID) > 0) return;
+            docIndexMapper.addMongoDocIdUniqueKey();
+            log.info("已补建 doc_index.{}", UK_MONGO_DOC_ID);
+        } catch (Exception e) {
+            log.warn("doc_index.{} 创建失败 (已有重复的 mongo_doc_id？)，异步上传重复处理时可能建出两条索引", UK_MONGO_DOC_ID, e);
+        }
+    }
+}
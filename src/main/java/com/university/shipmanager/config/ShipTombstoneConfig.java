@@ -0,0 +1,42 @@
+package com.university.shipmanager.config;
+
+import cn.hutool.core.util.NumberUtil;
+import com.university.shipmanager.service.ShipTombstones;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * 按查询参数 shipId 挡掉已删除 (墓碑) 的船：GET 按船不存在处理，其它方法 (上传 / 导入 / 重建) 直接拒绝
+ * 零件树、文档列表、搜索、导出、上传、导入的 shipId 都在查询参数里，在这里统一处理；
+ * shipId 在请求体里的接口 (建断点续传会话、建零件、按属性查询) 由控制器自己检查
+ */
+@Configuration
+public class ShipTombstoneConfig implements WebMvcConfigurer {
+
+    private final ShipTombstones shipTombstones;
+
+    public ShipTombstoneConfig(ShipTombstones shipTombstones) {
+        this.shipTombstones = shipTombstones;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new HandlerInterceptor() {
+            @Override
+            public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+                String shipId = request.getParameter("shipId");
+                if (!NumberUtil.isLong(shipId)) return true; // 没传 / 格式不对交给参数绑定去报错
+                if ("GET".equals(request.getMethod())) {
+                    shipTombstones.checkReadable(Long.parseLong(shipId));
+                } else {
+                    shipTombstones.checkWritable(Long.parseLong(shipId));
+                }
+                return true;
+            }
+        }).addPathPatterns("/api/**");
+    }
+}
@@ -0,0 +1,78 @@
+package com.university.shipmanager.controller;
+
+import com.university.shipmanager.service.AuditLogWriter;
+import com.university.shipmanager.service.AuditQueryService;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+
+@RestController
+@RequestMapping("/api/audit")
+@RequiredArgsConstructor
+public class AuditController {
+
+    private final AuditLogWriter auditLogWriter;
+    private final AuditQueryService auditQueryService; // 【新增】审计日志查询
+
+    /**
+     * 【新增】审计日志查询，按时间倒序，keyset 翻页 (下一页带上 after=上一页的 nextAfter)
+     * GET /api/audit/logs?from=2026-10-01T00:00:00&to=2026-10-18T00:00:00&action=DELETE_DOC&operator=admin&limit=100
+     */
+    @GetMapping("/logs")
+    public AuditQueryService.AuditPage query(@RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                             @RequestParam(required = false) String action,
+                                             @RequestParam(required = false) String targetType,
+                                             @RequestParam(required = false) String operator,
+                                             @RequestParam(required = false) String after,
+                                             @RequestParam(required = false) Integer limit) {
+        AuditQueryService.AuditQuery query = toQuery(from, to, action, targetType, operator);
+        query.setAfter(after);
+        query.setLimit(limit);
+        return auditQueryService.query(query);
+    }
+
+    /**
+     * 【新增】大范围导出：同样的过滤条件，NDJSON 边查边写
+     * GET /api/audit/logs/export?from=2026-01-01T00:00:00&to=2026-07-01T00:00:00
+     */
+    @GetMapping("/logs/export")
+    public void export(@RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                       @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                       @RequestParam(required = false) String action,
+                       @RequestParam(required = false) String targetType,
+                       @RequestParam(required = false) String operator,
+                       HttpServletResponse httpResponse) throws IOException {
+        AuditQueryService.AuditQuery query = toQuery(from, to, action, targetType, operator);
+        httpResponse.setContentType("application/x-ndjson;charset=UTF-8");
+        httpResponse.setHeader("Content-Disposition", "attachment; filename=\"audit-logs.ndjson\"");
+        auditQueryService.stream(query, httpResponse.getOutputStream());
+    }
+
+    /**
+     * 【新增】审计日志写入器指标：缓冲区积压、丢弃 / 同步写次数、批量写耗时
+     * GET /api/audit/writer/stats
+     */
+    @GetMapping("/writer/stats")
+    public AuditLogWriter.Stats writerStats() {
+        return auditLogWriter.stats();
+    }
+
+    private static AuditQueryService.AuditQuery toQuery(LocalDateTime from, LocalDateTime to, String action,
+                                                        String targetType, String operator) {
+        AuditQueryService.AuditQuery query = new AuditQueryService.AuditQuery();
+        query.setFrom(from);
+        query.setTo(to);
+        query.setAction(action);
+        query.setTargetType(targetType);
+        query.setOperator(operator);
+        return query;
+    }
+}
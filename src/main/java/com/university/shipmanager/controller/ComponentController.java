@@ -1,12 +1,26 @@
 package com.university.shipmanager.controller;
 
-import cn.hutool.core.lang.tree.Tree;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.university.shipmanager.entity.mongo.ComponentDoc;
+import com.university.shipmanager.service.BomTree;
+import com.university.shipmanager.service.BomTreeCache;
+import com.university.shipmanager.service.ComponentImportService;
+import com.university.shipmanager.service.ComponentRollupService;
 import com.university.shipmanager.service.ComponentService;
+import com.university.shipmanager.service.ComponentSpecQueryService;
+import com.university.shipmanager.service.ShipTombstones;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.util.List;
 import java.util.Map;
 import lombok.extern.slf4j.Slf4j; // 1. 记得引入这个
@@ -18,13 +32,117 @@ import lombok.extern.slf4j.Slf4j; // 1. 记得引入这个
 public class ComponentController {
 
     private final ComponentService componentService;
+    private final BomTreeCache bomTreeCache;
+    private final ComponentImportService componentImportService;
+    private final ComponentSpecQueryService componentSpecQueryService;
+    private final ComponentRollupService componentRollupService;
+    private final ObjectMapper objectMapper;
+    private final ShipTombstones shipTombstones; // 【新增】整船删除中的船不能再读写 (shipId 在查询参数里的由拦截器统一处理)
 
     /**
      * 获取零件树
+     * 【优化】不再经过中间的 Map 结构，直接从缓存的树写 JSON 到响应流
      */
     @GetMapping("/tree")
-    public List<Tree<String>> getTree(@RequestParam Long shipId) {
-        return componentService.getShipBomTree(shipId);
+    public void getTree(@RequestParam Long shipId, HttpServletResponse httpResponse) throws IOException {
+        BomTree tree = componentService.getShipBomTree(shipId);
+        httpResponse.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        httpResponse.setCharacterEncoding("UTF-8");
+        try (JsonGenerator gen = objectMapper.createGenerator(httpResponse.getOutputStream())) {
+            tree.writeJson(gen);
+        }
+    }
+
+    /**
+     * 【新增】懒加载树：一次取一层，分页，每个节点带子节点数
+     * GET /api/components/children?shipId=1                       (根节点)
+     * GET /api/components/children?parentId=xxx&page=0&size=100   (某个节点的孩子)
+     * depth=2 / 3 时顺便往下预取，首屏一次请求就够
+     */
+    @GetMapping("/children")
+    public ComponentService.ChildPage children(@RequestParam(required = false) Long shipId,
+                                               @RequestParam(required = false) String parentId,
+                                               @RequestParam(defaultValue = "0") int page,
+                                               @RequestParam(defaultValue = "100") int size,
+                                               @RequestParam(defaultValue = "1") int depth) {
+        if (shipId == null && parentId != null && !"root".equals(parentId)) {
+            shipTombstones.checkReadable(componentService.getShipIdOf(parentId)); // 只传了 parentId，按父节点所在的船判断
+        }
+        return componentService.getChildren(shipId, parentId, page, size, depth);
+    }
+
+    /**
+     * 【新增】按动态属性查部件 (可限定子树)，按 _id 翻页
+     * POST /api/components/spec-query
+     * {"shipId": 1, "subtreeId": "xxx", "type": "Engine", "specs": [{"key": "power", "op": "gt", "value": 5000}], "limit": 100}
+     */
+    @PostMapping("/spec-query")
+    public ComponentSpecQueryService.SpecQueryResult specQuery(@RequestBody ComponentSpecQueryService.SpecQuery request) {
+        shipTombstones.checkReadable(request.getShipId());
+        return componentSpecQueryService.query(request);
+    }
+
+    /**
+     * 【新增】BOM 批量导入 (CSV / JSON，按外部编码 code / parentCode 建父子关系)
+     * POST /api/components/import?shipId=1&dryRun=false   form-data: file
+     * 返回 NDJSON，边导边回：第一行是校验结果 (batch = 0)，之后每写完一批一行，最后一行是汇总
+     */
+    @PostMapping("/import")
+    public void importBom(@RequestParam Long shipId,
+                          @RequestParam("file") MultipartFile file,
+                          @RequestParam(required = false) String format,
+                          @RequestParam(defaultValue = "false") boolean dryRun,
+                          HttpServletResponse httpResponse) throws IOException {
+        ComponentImportService.Format importFormat = ComponentImportService.Format.of(format, file.getOriginalFilename());
+        List<ComponentImportService.BomRow> rows;
+        try (InputStream in = file.getInputStream()) {
+            rows = componentImportService.parse(in, importFormat);
+        }
+        log.info("【BOM 导入】 船ID: {}, 文件: {}, 行数: {}, dryRun: {}", shipId, file.getOriginalFilename(), rows.size(), dryRun);
+
+        httpResponse.setContentType("application/x-ndjson;charset=UTF-8");
+        OutputStream out = httpResponse.getOutputStream();
+        ComponentImportService.ImportSummary summary = componentImportService.importRows(shipId, rows, dryRun, report -> {
+            try {
+                writeLine(out, report);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        writeLine(out, summary);
+    }
+
+    private void writeLine(OutputStream out, Object value) throws IOException {
+        out.write(objectMapper.writeValueAsBytes(value));
+        out.write('\n');
+        out.flush(); // 每批推给客户端，导入大文件时能看到进度
+    }
+
+    /**
+     * 【新增】按船重建子树汇总 (老数据补齐 / 汇总更新失败后修复)
+     * POST /api/components/rollup/rebuild?shipId=1
+     */
+    @PostMapping("/rollup/rebuild")
+    public Map<String, Object> rebuildRollup(@RequestParam Long shipId) {
+        return Map.of("shipId", shipId, "nodes", componentRollupService.rebuildShip(shipId));
+    }
+
+    /**
+     * 【新增】按船回填路径串 (切到 bom.subtree-index=path 之前跑一次)
+     * POST /api/components/path/rebuild?shipId=1
+     */
+    @PostMapping("/path/rebuild")
+    public Map<String, Object> rebuildPaths(@RequestParam Long shipId) {
+        return Map.of("shipId", shipId, "nodes", componentService.rebuildPaths(shipId));
+    }
+
+    /**
+     * 【新增】BOM 树缓存命中率 / 淘汰次数
+     * GET /api/components/cache/stats
+     */
+    @GetMapping("/cache/stats")
+    public BomTreeCache.Stats cacheStats() {
+        return bomTreeCache.stats();
     }
 
     /**
@@ -38,6 +156,7 @@ public class ComponentController {
 
         // 打印动态参数 (看看 specs 传没传)
         log.info(" -> 动态参数 Specs: {}", request.getSpecs());
+        shipTombstones.checkWritable(request.getShipId());
 
         try {
             ComponentDoc created = componentService.createComponent(
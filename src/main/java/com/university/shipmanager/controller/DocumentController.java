@@ -1,12 +1,26 @@
 package com.university.shipmanager.controller;
 
 import com.university.shipmanager.entity.mysql.DocIndex;
+import com.university.shipmanager.service.DocumentDetailCache;
+import com.university.shipmanager.service.DocumentExportService;
+import com.university.shipmanager.service.DocumentSearchService;
 import com.university.shipmanager.service.DocumentService;
+import com.university.shipmanager.service.FileDownloadService;
+import com.university.shipmanager.service.UploadOutboxService;
+import com.university.shipmanager.entity.mongo.UploadOutbox;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 import com.baomidou.mybatisplus.core.metadata.IPage;
 
@@ -19,6 +33,11 @@ import java.util.Map;
 public class DocumentController {
 
     private final DocumentService documentService;
+    private final FileDownloadService fileDownloadService;
+    private final DocumentDetailCache documentDetailCache;
+    private final DocumentSearchService documentSearchService;
+    private final DocumentExportService documentExportService;
+    private final UploadOutboxService uploadOutboxService; // 【新增】异步上传 (发件箱)
 
     /**
      * 真正的上传接口
@@ -35,6 +54,7 @@ public class DocumentController {
             @RequestParam("title") String title,
             @RequestParam("category") String category,
             @RequestParam(value = "componentId", required = false) String componentId, // 【新增】可选
+            @RequestParam(value = "sha256", required = false) String sha256, // 【新增】可选，内容哈希 (传完校验)
 
             // 3. 简化处理：暂时不强求前端传复杂的 JSON metadata，我们后端模拟一下
             // 如果要传，可以让前端传一个 JSON 字符串，这里用 String 接收再转 Map
@@ -47,6 +67,7 @@ public class DocumentController {
         request.setTitle(title);
         request.setCategory(category);
         request.setComponentId(componentId);
+        request.setSha256(sha256);
 
         // 模拟一些动态参数 (实际项目中应该解析 metadataJson)
         request.setMetadata(Map.of(
@@ -59,6 +80,106 @@ public class DocumentController {
         return "上传成功！文件名: " + file.getOriginalFilename();
     }
 
+    /**
+     * 【新增】大文件流式上传接口 (80~100MB 的船体图纸走这里)
+     * 请求体就是文件本身 (application/octet-stream)，其余信息放在 URL 参数里。
+     * 不经过 multipart 解析，请求体只读一遍，边读边分片并发传到 MinIO，也不受 multipart 的 100MB 限制。
+     * POST /api/docs/upload/stream?shipId=1&title=xx&category=xx&fileName=hull.dwg
+     */
+    @PostMapping(value = "/upload/stream", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public String uploadStream(
+            HttpServletRequest httpRequest,
+            @RequestParam("shipId") Long shipId,
+            @RequestParam("title") String title,
+            @RequestParam("category") String category,
+            @RequestParam("fileName") String fileName,
+            @RequestParam(value = "componentId", required = false) String componentId,
+            @RequestParam(value = "sha256", required = false) String sha256) throws IOException {
+        log.info("接收到流式上传请求: shipId={}, title={}, filename={}, length={}",
+                shipId, title, fileName, httpRequest.getContentLengthLong());
+
+        DocumentService.UploadRequest request = new DocumentService.UploadRequest();
+        request.setShipId(shipId);
+        request.setTitle(title);
+        request.setCategory(category);
+        request.setComponentId(componentId);
+        request.setFileName(fileName);
+        request.setSha256(sha256);
+        request.setMetadata(Map.of(
+                "uploaded_via", "Stream API",
+                "original_name", fileName));
+
+        // 根据文件名猜 Content-Type (请求头里固定是 octet-stream)
+        String contentType = MediaTypeFactory.getMediaType(fileName)
+                .orElse(MediaType.APPLICATION_OCTET_STREAM)
+                .toString();
+
+        documentService.uploadNewDocument(request, httpRequest.getInputStream(), fileName, contentType);
+
+        return "上传成功！文件名: " + fileName;
+    }
+
+    /**
+     * 【新增】异步上传：文件存好就回执 (202 + 回执号)，建档在后台做，前端拿回执号轮询
+     * POST /api/docs/upload/async  (form-data 和 /upload 一样)
+     */
+    @PostMapping("/upload/async")
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public UploadOutbox uploadAsync(@RequestParam("file") MultipartFile file,
+                                    @RequestParam("shipId") Long shipId,
+                                    @RequestParam("title") String title,
+                                    @RequestParam("category") String category,
+                                    @RequestParam(value = "componentId", required = false) String componentId,
+                                    @RequestParam(value = "sha256", required = false) String sha256) throws IOException {
+        log.info("接收到异步上传请求: shipId={}, title={}, filename={}", shipId, title, file.getOriginalFilename());
+        DocumentService.UploadRequest request = new DocumentService.UploadRequest();
+        request.setShipId(shipId);
+        request.setTitle(title);
+        request.setCategory(category);
+        request.setComponentId(componentId);
+        request.setSha256(sha256);
+        request.setMetadata(Map.of(
+                "uploaded_via", "Async API",
+                "original_name", file.getOriginalFilename()));
+        try (InputStream in = file.getInputStream()) {
+            return uploadOutboxService.accept(request, in, file.getOriginalFilename(), file.getContentType());
+        }
+    }
+
+    /**
+     * 【新增】异步上传进度：PENDING (建档中 / 等重试) -> DONE (带 docId) / FAILED (带 error)
+     * GET /api/docs/upload/async/{uploadId}
+     */
+    @GetMapping("/upload/async/{uploadId}")
+    public UploadOutbox uploadAsyncStatus(@PathVariable String uploadId) {
+        return uploadOutboxService.getStatus(uploadId);
+    }
+
+    /**
+     * 【新增】手动重试失败的异步上传
+     * POST /api/docs/upload/async/{uploadId}/retry
+     */
+    @PostMapping("/upload/async/{uploadId}/retry")
+    public UploadOutbox retryUploadAsync(@PathVariable String uploadId) {
+        return uploadOutboxService.retry(uploadId);
+    }
+
+    /**
+     * 【新增】上传新版本 (V2.0, V3.0 ...)
+     * POST /api/docs/1/versions  (form-data: file, commitMsg)
+     * 开启 storage.encoding.delta 后只存和上一版的差分，下载时自动还原
+     */
+    @PostMapping("/{id}/versions")
+    public Map<String, Object> uploadVersion(@PathVariable Long id,
+                                             @RequestParam("file") MultipartFile file,
+                                             @RequestParam(value = "commitMsg", required = false) String commitMsg) throws IOException {
+        log.info("接收到新版本上传: docId={}, filename={}", id, file.getOriginalFilename());
+        try (InputStream in = file.getInputStream()) {
+            String versionNo = documentService.uploadNewVersion(id, in, file.getOriginalFilename(), file.getContentType(), commitMsg);
+            return Map.of("id", id, "versionNo", versionNo);
+        }
+    }
+
     /**
      * 【新增】获取文件分类列表 (给前端下拉框用)
      */
@@ -82,13 +203,113 @@ public class DocumentController {
         return documentService.listDocs(shipId, componentId, keyword, page, size);
     }
 
+    /**
+     * 【新增】游标分页 (翻得再深也不变慢，适合几万条文档的船)
+     * GET /api/docs/list?mode=cursor&shipId=1&size=20              第一页
+     * GET /api/docs/list?mode=cursor&shipId=1&size=20&cursor=xxx   下一页 (cursor 用上一页返回的 nextCursor)
+     */
+    @GetMapping(value = "/list", params = "mode=cursor")
+    public DocumentService.CursorPage listByCursor(
+            @RequestParam Long shipId,
+            @RequestParam(required = false) String componentId,
+            @RequestParam(required = false) String keyword,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(defaultValue = "false") boolean withTotal) {
+        return documentService.listDocsByCursor(shipId, componentId, keyword, cursor, size, withTotal);
+    }
+
+    /**
+     * 【新增】全文搜索 (标题 + 元数据，中英文混排，按相关度排序)
+     * GET /api/docs/search?shipId=1&q=主机 滑油泵&offset=0&limit=20
+     */
+    @GetMapping("/search")
+    public List<DocumentSearchService.SearchHit> search(
+            @RequestParam Long shipId,
+            @RequestParam("q") String keyword,
+            @RequestParam(required = false) String componentId,
+            @RequestParam(defaultValue = "0") int offset,
+            @RequestParam(defaultValue = "20") int limit) {
+        return documentSearchService.search(shipId, componentId, keyword, offset, limit);
+    }
+
+    /**
+     * 【新增】按船重建搜索索引 (老数据 / 索引更新失败后补救)
+     * POST /api/docs/search/reindex?shipId=1
+     */
+    @PostMapping("/search/reindex")
+    public Map<String, Object> reindex(@RequestParam Long shipId) {
+        return Map.of("shipId", shipId, "indexed", documentSearchService.reindexShip(shipId));
+    }
+
+    /**
+     * 【新增】按船导出文档清单 (边查边写，不占内存)
+     * GET /api/docs/export?shipId=1&format=ndjson   (format: ndjson / csv)
+     */
+    @GetMapping("/export")
+    public void export(@RequestParam Long shipId,
+                       @RequestParam(defaultValue = "ndjson") String format,
+                       HttpServletResponse httpResponse) throws IOException {
+        DocumentExportService.Format exportFormat = DocumentExportService.Format.of(format);
+        httpResponse.setContentType(exportFormat.contentType + ";charset=UTF-8");
+        httpResponse.setHeader("Content-Disposition",
+                "attachment; filename=\"ship-" + shipId + "-docs." + exportFormat.extension + "\"");
+        documentExportService.export(shipId, exportFormat, httpResponse.getOutputStream());
+    }
+
     /**
      * 获取文档详情
      * GET /api/docs/1
      */
     @GetMapping("/{id}")
-    public DocumentService.DocumentDetailVO getDetail(@PathVariable Long id) {
-        return documentService.getDocumentDetail(id);
+    public DocumentService.DocumentDetailVO getDetail(@PathVariable Long id,
+                                                      @RequestParam(defaultValue = "false") boolean presigned) {
+        return documentService.getDocumentDetail(id, presigned);
+    }
+
+    /**
+     * 【新增】批量获取文档详情 (按传入顺序返回，查不到的放在 missingIds)
+     * POST /api/docs/batch   请求体: [1, 2, 3]
+     */
+    @PostMapping("/batch")
+    public DocumentService.BatchDetailVO batchDetail(@RequestBody List<Long> ids) {
+        return documentService.getDocumentDetails(ids);
+    }
+
+    /**
+     * 【新增】下载文件 (经应用转发，支持 Range 断点续传 / ETag 缓存)
+     * GET /api/docs/1/download?version=V1.0   (不传 version 默认最新版)
+     */
+    @GetMapping("/{id}/download")
+    public void download(@PathVariable Long id,
+                         @RequestParam(required = false) String version,
+                         HttpServletRequest httpRequest,
+                         HttpServletResponse httpResponse) throws IOException {
+        fileDownloadService.download(id, version, httpRequest, httpResponse);
+    }
+
+    /**
+     * 【新增】获取短时有效的预签名下载链接 (浏览器直连 MinIO，不占应用带宽)
+     * 本地存储 / 压缩差分版本没法直连，返回应用下载接口 (presigned = false)
+     * GET /api/docs/1/download-url?version=V1.0&expirySeconds=600
+     */
+    @GetMapping("/{id}/download-url")
+    public FileDownloadService.DownloadLink downloadUrl(@PathVariable Long id,
+                                                        @RequestParam(required = false) String version,
+                                                        @RequestParam(defaultValue = "600") int expirySeconds) {
+        if (expirySeconds < 1 || expirySeconds > 3600) {
+            throw new IllegalArgumentException("链接有效期必须在 1 ~ 3600 秒之间");
+        }
+        return fileDownloadService.downloadLink(id, version, expirySeconds);
+    }
+
+    /**
+     * 【新增】详情缓存命中率 / 淘汰次数
+     * GET /api/docs/cache/stats
+     */
+    @GetMapping("/cache/stats")
+    public DocumentDetailCache.Stats cacheStats() {
+        return documentDetailCache.stats();
     }
 
     /**
@@ -0,0 +1,51 @@
+package com.university.shipmanager.controller;
+
+import com.university.shipmanager.entity.mongo.ImportJob;
+import com.university.shipmanager.service.BulkImportService;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 【新增】批量导入接口 (ZIP 包 + 清单)
+ * 1. POST /api/docs/import?shipId=1          form-data: file (ZIP), manifest (JSON，可选)
+ * 2. POST /api/docs/import?shipId=1&fileName=legacy.zip   请求体就是 ZIP (超过 100MB 走这个)，清单放在 ZIP 根目录 manifest.json
+ * 3. GET  /api/docs/import/{jobId}           查询进度 (成功 / 失败计数 + 每个文件的结果)
+ */
+@Slf4j
+@RestController
+@RequestMapping("/api/docs/import")
+@RequiredArgsConstructor
+public class ImportController {
+
+    private final BulkImportService bulkImportService;
+
+    @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ImportJob importZip(@RequestParam("shipId") Long shipId,
+                               @RequestParam("file") MultipartFile file,
+                               @RequestParam(value = "manifest", required = false) String manifestJson) throws IOException {
+        log.info("接收到批量导入请求: shipId={}, filename={}, size={}", shipId, file.getOriginalFilename(), file.getSize());
+        try (InputStream in = file.getInputStream()) {
+            return bulkImportService.startImport(shipId, in, file.getOriginalFilename(), manifestJson);
+        }
+    }
+
+    @PostMapping(consumes = {MediaType.APPLICATION_OCTET_STREAM_VALUE, "application/zip"})
+    public ImportJob importZipStream(HttpServletRequest httpRequest,
+                                     @RequestParam("shipId") Long shipId,
+                                     @RequestParam(value = "fileName", defaultValue = "import.zip") String fileName) throws IOException {
+        log.info("接收到批量导入请求 (流式): shipId={}, filename={}, length={}", shipId, fileName, httpRequest.getContentLengthLong());
+        return bulkImportService.startImport(shipId, httpRequest.getInputStream(), fileName, null);
+    }
+
+    @GetMapping("/{jobId}")
+    public ImportJob get(@PathVariable String jobId) {
+        return bulkImportService.getJob(jobId);
+    }
+}
@@ -1,14 +1,18 @@
 package com.university.shipmanager.controller;
 
+import com.university.shipmanager.entity.mongo.ShipDeleteJob;
 import com.university.shipmanager.entity.mysql.Ship;
 import com.university.shipmanager.mapper.ShipMapper;
 import com.university.shipmanager.service.ComponentService;
+import com.university.shipmanager.service.ShipDeleteService;
+import com.university.shipmanager.service.ShipTombstones;
 import lombok.RequiredArgsConstructor;
 import org.springframework.transaction.annotation.Transactional; // 事务
 import org.springframework.web.bind.annotation.*;
 
 import java.util.HashMap;
 import java.util.List;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/api/ships")
@@ -17,10 +21,15 @@ public class ShipController {
 
     private final ShipMapper shipMapper;
     private final ComponentService componentService; // 注入 ComponentService
+    private final ShipDeleteService shipDeleteService; // 【新增】整船级联删除 (后台任务)
+    private final ShipTombstones shipTombstones;       // 【新增】有删除任务的船 (墓碑) 列表 / 详情里都看不到
 
     @GetMapping
     public List<Ship> list() {
-        return shipMapper.selectList(null);
+        List<Ship> ships = shipMapper.selectList(null);
+        if (ships.isEmpty()) return ships;
+        Set<Long> deleted = shipTombstones.deletedAmong(ships.stream().map(Ship::getId).toList());
+        return deleted.isEmpty() ? ships : ships.stream().filter(s -> !deleted.contains(s.getId())).toList();
     }
 
     /**
@@ -48,25 +57,34 @@ public class ShipController {
 
     @GetMapping("/{id}")
     public Ship get(@PathVariable Long id) {
-        return shipMapper.selectById(id);
+        return shipTombstones.isDeleted(id) ? null : shipMapper.selectById(id);
     }
 
     /**
-     * 【新增】删除船舶 (级联删除：MySQL档案 + MongoDB结构)
+     * 【优化】删除船舶：只打墓碑 + 建后台任务，马上返回任务 (列表里立刻看不到这艘船)
+     * 文档 / 文件 / 零件树在后台分批删，用下面的接口轮询进度
      * DELETE /api/ships/{id}
      */
     @DeleteMapping("/{id}")
-    @Transactional(rollbackFor = Exception.class)
-    public String delete(@PathVariable Long id) {
-        // 1. 删 MySQL 档案
-        shipMapper.deleteById(id);
+    public ShipDeleteJob delete(@PathVariable Long id) {
+        return shipDeleteService.startDelete(id);
+    }
 
-        // 2. 删 MongoDB 里的整棵树
-        // 注意：这里为了简单，暂时没去删 MinIO 的文件，
-        // 严谨的做法是先查出所有文件路径删 MinIO，再删 Mongo。
-        // 但为了课设演示，先保证删掉数据结构即可。
-        componentService.deleteShipTree(id);
+    /**
+     * 【新增】查整船删除进度
+     * GET /api/ships/{id}/delete-job
+     */
+    @GetMapping("/{id}/delete-job")
+    public ShipDeleteJob deleteJob(@PathVariable Long id) {
+        return shipDeleteService.getJob(id);
+    }
 
-        return "删除成功";
+    /**
+     * 【新增】续跑失败的整船删除任务
+     * POST /api/ships/{id}/delete-job/resume
+     */
+    @PostMapping("/{id}/delete-job/resume")
+    public ShipDeleteJob resumeDeleteJob(@PathVariable Long id) {
+        return shipDeleteService.resume(id);
     }
 }
\ No newline at end of file
@@ -0,0 +1,60 @@
+package com.university.shipmanager.controller;
+
+import com.university.shipmanager.service.ChunkedUploadService;
+import com.university.shipmanager.service.ShipTombstones;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+
+/**
+ * 【新增】断点续传接口
+ * 1. POST   /api/docs/upload/sessions                      创建会话
+ * 2. PUT    /api/docs/upload/sessions/{id}/chunks/{chunkNo} 上传分片 (请求体就是分片内容)
+ * 3. GET    /api/docs/upload/sessions/{id}                  查询进度 (断线后看还缺哪几片)
+ * 4. POST   /api/docs/upload/sessions/{id}/complete         合并并建档
+ * 5. DELETE /api/docs/upload/sessions/{id}                  放弃上传
+ */
+@Slf4j
+@RestController
+@RequestMapping("/api/docs/upload/sessions")
+@RequiredArgsConstructor
+public class UploadSessionController {
+
+    private final ChunkedUploadService chunkedUploadService;
+    private final ShipTombstones shipTombstones;
+
+    @PostMapping
+    public ChunkedUploadService.SessionVO create(@RequestBody ChunkedUploadService.CreateSessionRequest request) {
+        log.info("创建断点续传会话: shipId={}, title={}, filename={}, size={}",
+                request.getShipId(), request.getTitle(), request.getFileName(), request.getTotalSize());
+        shipTombstones.checkWritable(request.getShipId()); // 整船删除中的船不能再上传
+        return chunkedUploadService.createSession(request);
+    }
+
+    @GetMapping("/{id}")
+    public ChunkedUploadService.SessionVO get(@PathVariable String id) {
+        return chunkedUploadService.getSession(id);
+    }
+
+    @PutMapping(value = "/{id}/chunks/{chunkNo}", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public String uploadChunk(@PathVariable String id, @PathVariable int chunkNo,
+                              HttpServletRequest httpRequest) throws IOException {
+        chunkedUploadService.uploadChunk(id, chunkNo, httpRequest.getInputStream());
+        return "分片 " + chunkNo + " 上传成功";
+    }
+
+    @PostMapping("/{id}/complete")
+    public ChunkedUploadService.SessionVO complete(@PathVariable String id) {
+        return chunkedUploadService.complete(id);
+    }
+
+    @DeleteMapping("/{id}")
+    public String abort(@PathVariable String id) {
+        chunkedUploadService.abort(id);
+        return "已取消上传";
+    }
+}
@@ -7,6 +7,7 @@ import java.time.LocalDateTime;
 
 /**
  * 审计日志：记录谁干了什么坏事
+ * 索引 (按过滤字段的复合索引 + time 上的 TTL 保留期) 由 AuditQueryService 启动时建
  */
 @Data
 @Document(collection = "system_audit_logs")
@@ -18,5 +19,5 @@ public class AuditLog {
     private String targetName;  // 对象名字：主柴油机, 维修手册.pdf
     private String operator;    // 操作人：admin (暂时写死)
     private String detail;      // 详情备注
-    private LocalDateTime time = LocalDateTime.now();
+    private LocalDateTime time = LocalDateTime.now(); // 查询排序 / 过期都按它
 }
\ No newline at end of file
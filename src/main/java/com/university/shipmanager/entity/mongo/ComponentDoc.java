@@ -2,7 +2,9 @@ package com.university.shipmanager.entity.mongo;
 
 import lombok.Data;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.index.WildcardIndexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.Field;
 
@@ -15,9 +17,15 @@ import java.util.Map;
  * 核心亮点：
  * 1. 树形结构设计 (Materialized Paths)
  * 2. 动态属性 (Dynamic Specs)
+ * 下面声明的索引由 MongoIndexInitializer 启动时建 (没开 auto-index-creation，注解只是声明)
  */
 @Data
 @Document(collection = "ship_components")
+// 【新增】懒加载树按父节点分页 (按 _id 排序)，走索引直接取一页，不在内存里排序
+@CompoundIndex(name = "parent_page", def = "{'parentId': 1, '_id': 1}")
+@CompoundIndex(name = "ship_root_page", def = "{'shipId': 1, 'parentId': 1, '_id': 1}")
+// 【新增】批量导入按外部编码找已有节点；同一艘船上编码唯一 (没填编码的节点不参与，见 MongoIndexInitializer)
+@CompoundIndex(name = "ship_code", def = "{'shipId': 1, 'code': 1}", unique = true)
 public class ComponentDoc {
 
     @Id
@@ -39,16 +47,51 @@ public class ComponentDoc {
     @Indexed
     private String parentId; // 父节点 ID (根节点为 null)
 
+    @Indexed // 多键索引：子树查询 / 移动 / 删除都靠它
     private List<String> ancestors; // 祖先 ID 链，例如 ["root_id", "system_id"]
 
+    // 【新增】路径串 = 祖先 ID + 自己的 ID 定长拼接 (见 MaterializedPath)，子树查询可以走这个索引上的一段区间
+    // 配置 bom.subtree-index=path 时启用；老数据为 null，按船跑一次 POST /api/components/path/rebuild
+    @Indexed
+    private String path;
+
     // --- 核心 2: 动态属性 (NoSQL 的灵魂) ---
     // MySQL 此时在哭泣：它没法在一个字段里同时存 "功率(int)" 和 "材质(string)"
     // MongoDB 笑而不语：Map<String, Object> 解决一切。
     // 示例数据：
     // Engine -> { "power": 5000, "cylinders": 12 }
     // Pump -> { "flow_rate": "500L/min", "material": "Steel" }
+    // 【新增】通配符索引 specs.$**：按任意属性的等值 / 范围查询都走索引 (ComponentSpecQueryService)
+    @WildcardIndexed(name = "specs_wildcard")
     private Map<String, Object> specs;
 
+    // --- 【新增】子树汇总 (含自己)：沿 ancestors 增量维护，树接口直接带出去，不用再查 ---
+    // 老数据为 null，跑一次 POST /api/components/rollup/rebuild 补上
+    private Rollup rollup;
+
     private LocalDateTime createdAt = LocalDateTime.now();
     private LocalDateTime updatedAt = LocalDateTime.now();
-}
\ No newline at end of file
+
+    @Data
+    public static class Rollup {
+        private long docCount;        // 挂在这个节点和它所有子孙上的文档数
+        private long storedBytes;     // 这些文档所有版本的存储字节数 (压缩 / 差分后)
+        private long descendantCount; // 子孙节点数 (不含自己)
+
+        public static Rollup of(long docCount, long storedBytes, long descendantCount) {
+            Rollup rollup = new Rollup();
+            rollup.setDocCount(docCount);
+            rollup.setStoredBytes(storedBytes);
+            rollup.setDescendantCount(descendantCount);
+            return rollup;
+        }
+
+        public Rollup plus(Rollup delta) {
+            return of(docCount + delta.docCount, storedBytes + delta.storedBytes, descendantCount + delta.descendantCount);
+        }
+
+        public Rollup negate() {
+            return of(-docCount, -storedBytes, -descendantCount);
+        }
+    }
+}
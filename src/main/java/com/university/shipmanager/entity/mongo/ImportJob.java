@@ -0,0 +1,45 @@
+package com.university.shipmanager.entity.mongo;
+
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 批量导入任务 (ZIP 包 + 清单)
+ * 后台边解压边导入，每写完一批就把计数和这批条目的结果追加进来，前端轮询看进度
+ */
+@Data
+@Document(collection = "import_jobs")
+public class ImportJob {
+
+    @Id
+    private String id;
+
+    private Long shipId;
+    private String fileName;     // 上传的 ZIP 文件名
+
+    private String status;       // RUNNING / COMPLETED / FAILED
+    private Integer total;       // 要导入的文件数 (目录、清单文件不算)
+    private Integer succeeded = 0;
+    private Integer failed = 0;
+    private String error;        // 整个任务失败的原因 (ZIP 损坏等)
+
+    // 每个条目的结果，按完成顺序追加 ($push + $each)
+    private List<EntryResult> entries = new ArrayList<>();
+
+    private LocalDateTime leaseUntil; // 跑它的实例不断续期；过期了说明那个实例已经不在了，任务会被标记为失败
+    private LocalDateTime createdAt = LocalDateTime.now();
+    private LocalDateTime finishedAt;
+
+    @Data
+    public static class EntryResult {
+        private String path;     // ZIP 里的路径
+        private String status;   // SUCCESS / FAILED
+        private Long docId;      // 成功时生成的 doc_index 主键
+        private String error;    // 失败原因
+    }
+}
@@ -0,0 +1,34 @@
+package com.university.shipmanager.entity.mongo;
+
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 文档搜索索引 (倒排：每个文档存一份分好的词，按词建多键索引)
+ * 由 DocumentSearchService 在上传 / 改标题 / 删除时同步维护，丢了可以按船重建
+ * 索引由 MongoIndexInitializer 启动时建 (没开 auto-index-creation，注解只是声明)
+ */
+@Data
+@Document(collection = "search_docs")
+@CompoundIndex(name = "ship_tokens", def = "{'shipId': 1, 'tokens': 1}") // 按船过滤 + 按词命中
+public class SearchDocument {
+
+    @Id
+    private Long id;             // 就是 doc_index 的主键
+
+    private Long shipId;
+    private String componentId;
+    private String title;
+    private String category;
+
+    private List<String> titleTokens; // 标题分词 (命中权重高)
+    private List<String> metaTokens;  // 元数据取值分词
+    private List<String> tokens;      // 上面两个的并集，查询走这个字段的索引
+
+    private LocalDateTime updatedAt;
+}
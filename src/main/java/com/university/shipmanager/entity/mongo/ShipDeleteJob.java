@@ -0,0 +1,40 @@
+package com.university.shipmanager.entity.mongo;
+
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 整船级联删除任务 (一艘船一个，主键就是船 ID)
+ * 后台分批删：文档 (MySQL 索引 + Mongo 详情 + 文件) -> 零件树 -> 船舶档案；每批写一次进度，前端轮询
+ * 可续跑：正在处理的那一批先记在 pending* 里，重启后从这一批接着删，已经删掉的不会再删一遍
+ */
+@Data
+@Document(collection = "ship_delete_jobs")
+public class ShipDeleteJob {
+
+    @Id
+    private Long shipId;
+
+    private String status;  // RUNNING / COMPLETED / FAILED
+    private String phase;   // DOCUMENTS -> COMPONENTS -> SHIP
+    private long documentsDeleted;
+    private long versionsReleased;   // 交给文件释放的版本数 (去重的文件等引用清零才真正删)
+    private long componentsDeleted;
+    private int attempts;            // 第几次跑 (续跑一次加一)
+    private String error;
+
+    // --- 当前批 (删记录之前先记下来，记录删掉以后就查不到要释放哪些文件了) ---
+    private List<Long> pendingDocIds = new ArrayList<>();
+    private List<String> pendingMongoIds = new ArrayList<>();
+    private List<ShipDocument.DocVersion> pendingVersions = new ArrayList<>();
+
+    private LocalDateTime leaseUntil; // 谁在跑：租约没过期别的实例 / 线程不接手
+    private LocalDateTime createdAt = LocalDateTime.now();
+    private LocalDateTime updatedAt;
+    private LocalDateTime finishedAt;
+}
@@ -37,7 +37,12 @@ public class ShipDocument {
     public static class DocVersion {
         private String versionNo;    // V1.0, V1.1
         private String storagePath;  // MinIO/OSS 文件路径
-        private Long fileSize;       // 字节数
+        private Long fileSize;       // 字节数 (原文大小)
+        private String checksum;     // 存储对象的 SHA-256 (上传时边读边算)
+        private String encoding;     // 存储编码: RAW / DEFLATE / DELTA，老数据为空按 RAW 处理
+        private Long storedSize;     // 实际占用的存储字节数 (压缩 / 差分后)
+        private String baseVersionNo; // DELTA: 差分基于哪个版本
+        private Integer deltaDepth;  // DELTA: 差分链深度 (完整版本为 0)
         private String uploadedBy;   // 上传人用户名
         private String commitMsg;    // 修改记录
         private LocalDateTime uploadTime = LocalDateTime.now();
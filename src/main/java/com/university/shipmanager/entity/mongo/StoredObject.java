@@ -0,0 +1,27 @@
+package com.university.shipmanager.entity.mongo;
+
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * MinIO 里的一个实体文件 (按内容去重)
+ * 核心亮点：内容寻址 + 引用计数
+ * 同一份证书/手册传给 10 条船，MinIO 里只存一份，这里记着有几个版本在用它。
+ */
+@Data
+@Document(collection = "stored_objects")
+public class StoredObject {
+
+    @Id
+    private String id;          // 内容 SHA-256，和 ShipDocument.DocVersion.checksum 对应
+
+    private String storagePath; // MinIO 里真正的对象名，和 DocVersion.storagePath 对应
+    private Long size;
+    private String contentType;
+    private Integer refCount;   // 引用这份内容的版本数，减到 0 才真正删 MinIO 文件
+
+    private LocalDateTime createdAt = LocalDateTime.now();
+}
@@ -0,0 +1,44 @@
+package com.university.shipmanager.entity.mongo;
+
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * 异步上传的发件箱 (一次上传一条)
+ * 文件存好之后只写这一条就给客户端回执；Mongo 详情 + MySQL 索引由后台按这条记录去建，失败了按 nextAttemptAt 重试
+ * Mongo 详情的主键在这里事先定好，重试时 upsert 同一篇文档，不会建出两份
+ * 索引由 MongoIndexInitializer 启动时建 (没开 auto-index-creation，注解只是声明)，另外还有 DONE 的 TTL 索引
+ */
+@Data
+@Document(collection = "upload_outbox")
+@CompoundIndex(name = "status_due", def = "{'status': 1, 'nextAttemptAt': 1}") // 后台扫到期的 PENDING
+public class UploadOutbox {
+
+    @Id
+    private String id; // 上传回执号，客户端拿它查进度
+
+    // --- 建档要用的 (和同步上传的 UploadRequest 一致) ---
+    private Long shipId;
+    private String componentId;
+    private String title;
+    private String category;
+    private Map<String, Object> metadata;
+    private ShipDocument.DocVersion version; // 已经存好的 V1.0 (存储路径 / 大小 / 校验和)
+    private String mongoDocId;               // 事先分配好的 Mongo 详情主键
+
+    private String status;  // PENDING / DONE / FAILED
+    private Long docId;     // 建档成功后的 doc_index 主键
+    private int attempts;
+    private String error;   // 最后一次失败的原因
+
+    private LocalDateTime nextAttemptAt;
+    private LocalDateTime leaseUntil; // 谁在处理：租约没过期别的实例 / 线程不接手
+    private LocalDateTime createdAt = LocalDateTime.now();
+    private LocalDateTime updatedAt;
+    private LocalDateTime finishedAt;
+}
@@ -0,0 +1,48 @@
+package com.university.shipmanager.entity.mongo;
+
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 断点续传会话
+ * 一个会话对应 MinIO 里的一个 multipart upload，记录已经确认收到的分片，
+ * 断线重连后客户端查一下会话就知道还差哪几片。
+ */
+@Data
+@Document(collection = "upload_sessions")
+public class UploadSession {
+
+    @Id
+    private String id;
+
+    // --- 建档信息 (合并完成后原样交给 DocumentService) ---
+    private Long shipId;
+    private String componentId;
+    private String title;
+    private String category;
+    private String fileName;
+    private String contentType;
+    private String sha256;        // 客户端声明的内容哈希 (可选)
+
+    // --- 分片信息 ---
+    private Long totalSize;
+    private Integer chunkSize;
+    private Integer totalChunks;
+    private String objectName;    // MinIO 对象名
+    private String uploadId;      // MinIO multipart upload ID
+
+    // 已确认的分片：分片号 (从 1 开始) -> ETag
+    // 每个分片用 $set 单独写入，多个分片并发上传也不会互相覆盖
+    private Map<String, String> parts = new HashMap<>();
+
+    private String status;        // UPLOADING / COMPLETING / COMPLETED / FAILED / ABORTED / EXPIRED
+    private Long docIndexId;      // 完成后生成的 doc_index 主键
+
+    private LocalDateTime createdAt = LocalDateTime.now();
+    private LocalDateTime updatedAt; // 【新增】最后一次收到分片的时间，过期清理按它算
+}
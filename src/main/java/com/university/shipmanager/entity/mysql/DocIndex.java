@@ -25,9 +25,14 @@ public class DocIndex {
     private Integer latestVersion; // 当前最新版本号 (冗余字段，方便列表显示)
 
     // --- 核心指针 ---
+    // 异步上传按它判断建没建过档，靠唯一索引兜底 (MysqlIndexInitializer 启动时检查，没有就补建)：
+    // ALTER TABLE doc_index ADD UNIQUE KEY uk_mongo_doc_id (mongo_doc_id);
     private String mongoDocId; // 指向 MongoDB 中 ship_document_details 的 _id
     private String componentId;
 
+    // 游标分页 (listDocsByCursor) 按 (created_at, id) 倒序翻页，需要索引：
+    // ALTER TABLE doc_index ADD KEY idx_ship_created (ship_id, created_at, id);
+    // 按零件筛选时走：ALTER TABLE doc_index ADD KEY idx_ship_component_created (ship_id, component_id, created_at, id);
     private LocalDateTime createdAt;
 
 }
\ No newline at end of file
@@ -2,7 +2,41 @@ package com.university.shipmanager.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.university.shipmanager.entity.mysql.DocIndex;
+import org.apache.ibatis.annotations.Options;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.mapping.ResultSetType;
 
 public interface DocIndexMapper extends BaseMapper<DocIndex> {
     // 基础 CRUD 已经由 BaseMapper 提供了，这里暂时不需要写 SQL
-}
\ No newline at end of file
+
+    /**
+     * 【新增】流式读取某艘船的全部文档索引 (导出用)
+     * fetchSize = Integer.MIN_VALUE 是 MySQL 驱动的流式约定：一行一行从网络读，不把整个结果集攒进内存
+     * 注意：游标要在事务里 (连接不关) 读完，读的过程中这个连接不能再发别的 SQL
+     */
+    @Select("SELECT * FROM doc_index WHERE ship_id = #{shipId} ORDER BY id")
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = Integer.MIN_VALUE)
+    Cursor<DocIndex> streamByShipId(@Param("shipId") Long shipId);
+
+    /**
+     * 【新增】按 Mongo 详情主键查索引 (异步上传重试时判断建没建过档)
+     */
+    @Select("SELECT * FROM doc_index WHERE mongo_doc_id = #{mongoDocId} LIMIT 1")
+    DocIndex selectByMongoDocId(@Param("mongoDocId") String mongoDocId);
+
+    /**
+     * 【新增】当前库的 doc_index 上有没有这个名字的索引 (启动时检查用)
+     */
+    @Select("SELECT COUNT(*) FROM information_schema.statistics WHERE table_schema = DATABASE() "
+            + "AND table_name = 'doc_index' AND index_name = #{indexName}")
+    int countIndex(@Param("indexName") String indexName);
+
+    /**
+     * 【新增】补建 mongo_doc_id 唯一索引 (异步上传幂等靠它)
+     */
+    @Update("ALTER TABLE doc_index ADD UNIQUE KEY uk_mongo_doc_id (mongo_doc_id)")
+    void addMongoDocIdUniqueKey();
+}
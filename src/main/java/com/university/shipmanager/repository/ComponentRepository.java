@@ -1,6 +1,8 @@
 package com.university.shipmanager.repository;
 
 import com.university.shipmanager.entity.mongo.ComponentDoc;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import java.util.List;
 
@@ -12,6 +14,12 @@ public interface ComponentRepository extends MongoRepository<ComponentDoc, Strin
     // 自动生成查询：找某个父节点下的所有直接子节点
     List<ComponentDoc> findByParentId(String parentId);
 
+    // 【新增】分页版：懒加载树一次只取一层的一页 (走 parentId 索引)
+    Page<ComponentDoc> findByParentId(String parentId, Pageable pageable);
+
+    // 【新增】某艘船的根节点，分页
+    Page<ComponentDoc> findByShipIdAndParentIdIsNull(Long shipId, Pageable pageable);
+
     // 高级查询：找某个节点的所有后代（用于删除子树或展示整棵树）
     // MongoDB 语法: { ancestors: "目标ID" }
     List<ComponentDoc> findByAncestorsContaining(String ancestorId);
@@ -0,0 +1,7 @@
+package com.university.shipmanager.repository;
+
+import com.university.shipmanager.entity.mongo.ImportJob;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+public interface ImportJobRepository extends MongoRepository<ImportJob, String> {
+}
@@ -0,0 +1,11 @@
+package com.university.shipmanager.repository;
+
+import com.university.shipmanager.entity.mongo.ShipDeleteJob;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+import java.util.List;
+
+public interface ShipDeleteJobRepository extends MongoRepository<ShipDeleteJob, Long> {
+
+    List<ShipDeleteJob> findByStatus(String status);
+}
@@ -0,0 +1,7 @@
+package com.university.shipmanager.repository;
+
+import com.university.shipmanager.entity.mongo.UploadSession;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+public interface UploadSessionRepository extends MongoRepository<UploadSession, String> {
+}
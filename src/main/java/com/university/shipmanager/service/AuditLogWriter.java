@@ -0,0 +1,254 @@
+package com.university.shipmanager.service;
+
+import com.mongodb.bulk.BulkWriteError;
+import com.university.shipmanager.entity.mongo.AuditLog;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 审计日志异步批量写入 (system_audit_logs)
+ * 1. 业务线程只把日志放进有界缓冲区就返回，不再同步等 Mongo
+ * 2. 后台线程攒够 batch-size 条，或者第一条进来后过了 flush-interval-ms，就一次批量 insert
+ * 3. 缓冲区满了按 overflow-policy 处理：
+ *    CALLER_RUNS (默认) = 业务线程自己同步写，不丢日志，只是这一次变慢
+ *    BLOCK = 最多等 block-timeout-ms，还是满的就丢
+ *    DROP = 直接丢 (计数)
+ * 4. 主键提交时就定好，批量写失败重试时重复键说明上次其实写进去了，不会写出两条
+ * 5. 关闭时先等后台线程退出，再把缓冲区里剩下的全部写掉
+ */
+@Slf4j
+@Component
+public class AuditLogWriter {
+
+    public enum OverflowPolicy { CALLER_RUNS, BLOCK, DROP }
+
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long RETRY_BACKOFF_MILLIS = 200;
+    private static final int DUPLICATE_KEY = 11000;
+    private static final long POLL_SLICE_MILLIS = 100; // 后台线程每次最多等这么久就看一眼是不是要关了
+
+    private final MongoTemplate mongoTemplate;
+    private final BlockingQueue<AuditLog> buffer;
+    private final int capacity;
+    private final int batchSize;
+    private final long flushIntervalMillis;
+    private final OverflowPolicy overflowPolicy;
+    private final long blockMillis;
+
+    private volatile boolean running;
+    private volatile boolean closed;
+    private Thread worker;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong callerRuns = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong flushNanos = new AtomicLong();
+    private final AtomicLong maxFlushNanos = new AtomicLong();
+    private volatile long lastFlushNanos;
+
+    public AuditLogWriter(MongoTemplate mongoTemplate,
+                          @Value("${audit.writer.buffer-capacity:10000}") int capacity,
+                          @Value("${audit.writer.batch-size:500}") int batchSize,
+                          @Value("${audit.writer.flush-interval-ms:1000}") long flushIntervalMillis,
+                          @Value("${audit.writer.overflow-policy:CALLER_RUNS}") OverflowPolicy overflowPolicy,
+                          @Value("${audit.writer.block-timeout-ms:100}") long blockMillis) {
+        this.mongoTemplate = mongoTemplate;
+        this.buffer = new ArrayBlockingQueue<>(capacity);
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.overflowPolicy = overflowPolicy;
+        this.blockMillis = blockMillis;
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        worker = new Thread(this::runLoop, "audit-log-writer");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    public void submit(AuditLog auditLog) {
+        submitAll(List.of(auditLog));
+    }
+
+    /**
+     * 放进缓冲区就返回；缓冲区满且策略是 CALLER_RUNS 时，放不下的这几条由调用线程一次写掉
+     */
+    public void submitAll(Collection<AuditLog> auditLogs) {
+        List<AuditLog> overflow = new ArrayList<>();
+        for (AuditLog auditLog : auditLogs) {
+            submitted.incrementAndGet();
+            if (auditLog.getId() == null) auditLog.setId(new ObjectId().toHexString());
+            if (closed || !enqueue(auditLog)) overflow.add(auditLog);
+        }
+        if (overflow.isEmpty()) return;
+        if (closed || overflowPolicy == OverflowPolicy.CALLER_RUNS) {
+            callerRuns.addAndGet(overflow.size());
+            write(overflow);
+        } else {
+            dropped.addAndGet(overflow.size());
+            log.warn("审计日志缓冲区已满 ({} 条)，丢弃 {} 条", capacity, overflow.size());
+        }
+    }
+
+    private boolean enqueue(AuditLog auditLog) {
+        if (overflowPolicy != OverflowPolicy.BLOCK) return buffer.offer(auditLog);
+        try {
+            return buffer.offer(auditLog, blockMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * 后台线程：等第一条，然后在一个刷盘周期内尽量攒满一批 (要关闭时不再等，手上有多少写多少)
+     */
+    private void runLoop() {
+        while (running) {
+            List<AuditLog> batch = new ArrayList<>(batchSize);
+            try {
+                AuditLog first = buffer.poll(POLL_SLICE_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+                while (batch.size() < batchSize && running) {
+                    buffer.drainTo(batch, batchSize - batch.size());
+                    long wait = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || wait <= 0) break;
+                    AuditLog next = buffer.poll(Math.min(wait, TimeUnit.MILLISECONDS.toNanos(POLL_SLICE_MILLIS)), TimeUnit.NANOSECONDS);
+                    if (next != null) batch.add(next);
+                }
+                write(batch);
+            } catch (InterruptedException e) {
+                write(batch);
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("审计日志后台写入异常", e); // 线程不能死，下一轮接着写
+            }
+        }
+    }
+
+    /**
+     * 无序批量 insert，失败的部分重试；重复键 = 之前某次其实已经写进去了，算成功
+     */
+    private void write(List<AuditLog> batch) {
+        if (batch.isEmpty()) return;
+        long start = System.nanoTime();
+        List<AuditLog> pending = batch;
+        RuntimeException lastError = null;
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS && !pending.isEmpty(); attempt++) {
+            if (attempt > 1) {
+                try {
+                    Thread.sleep(RETRY_BACKOFF_MILLIS * (attempt - 1));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt(); // 关闭时被打断：不再等，直接把这次重试做完
+                }
+            }
+            try {
+                mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, AuditLog.class).insert(pending).execute();
+                written.addAndGet(pending.size());
+                pending = List.of();
+            } catch (BulkOperationException e) {
+                List<AuditLog> retry = new ArrayList<>();
+                for (BulkWriteError error : e.getErrors()) {
+                    if (error.getCode() != DUPLICATE_KEY) retry.add(pending.get(error.getIndex()));
+                }
+                written.addAndGet(pending.size() - retry.size());
+                pending = retry;
+                lastError = e;
+            } catch (RuntimeException e) {
+                lastError = e;
+            }
+        }
+        if (!pending.isEmpty()) {
+            failed.addAndGet(pending.size());
+            log.error("审计日志写入失败，放弃 {} 条", pending.size(), lastError);
+        }
+        long elapsed = System.nanoTime() - start;
+        flushes.incrementAndGet();
+        flushNanos.addAndGet(elapsed);
+        maxFlushNanos.accumulateAndGet(elapsed, Math::max);
+        lastFlushNanos = elapsed;
+    }
+
+    /**
+     * 关闭：不再接新日志进缓冲区 (之后来的由调用线程直接写)，等后台线程写完手上这一批，剩下的在这里写掉
+     * 不打断后台线程 (免得打断正在进行的写入)，它最多 POLL_SLICE_MILLIS 就会发现要关了
+     */
+    @PreDestroy
+    public void shutdown() {
+        closed = true;
+        running = false;
+        if (worker != null) {
+            try {
+                worker.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        List<AuditLog> rest = new ArrayList<>();
+        buffer.drainTo(rest);
+        for (int i = 0; i < rest.size(); i += batchSize) {
+            write(rest.subList(i, Math.min(rest.size(), i + batchSize)));
+        }
+        log.info("审计日志写入器已关闭，关闭时补写 {} 条", rest.size());
+    }
+
+    public Stats stats() {
+        Stats stats = new Stats();
+        stats.setQueueDepth(buffer.size());
+        stats.setCapacity(capacity);
+        stats.setOverflowPolicy(overflowPolicy);
+        stats.setSubmitted(submitted.get());
+        stats.setWritten(written.get());
+        stats.setDropped(dropped.get());
+        stats.setCallerRuns(callerRuns.get());
+        stats.setFailed(failed.get());
+        long count = flushes.get();
+        stats.setFlushes(count);
+        stats.setLastFlushMillis(lastFlushNanos / 1e6);
+        stats.setAvgFlushMillis(count == 0 ? 0 : flushNanos.get() / 1e6 / count);
+        stats.setMaxFlushMillis(maxFlushNanos.get() / 1e6);
+        return stats;
+    }
+
+    // --- 写入器指标 ---
+    @Data
+    public static class Stats {
+        private int queueDepth;      // 缓冲区里还没写的条数
+        private int capacity;
+        private OverflowPolicy overflowPolicy;
+        private long submitted;
+        private long written;
+        private long dropped;        // 缓冲区满被丢掉的
+        private long callerRuns;     // 缓冲区满由业务线程同步写的
+        private long failed;         // 重试后还是没写进去的
+        private long flushes;        // 批量写的次数
+        private double lastFlushMillis;
+        private double avgFlushMillis;
+        private double maxFlushMillis;
+    }
+}
@@ -0,0 +1,185 @@
+package com.university.shipmanager.service;
+
+import cn.hutool.core.util.StrUtil;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.university.shipmanager.entity.mongo.AuditLog;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 审计日志查询 (system_audit_logs)
+ * 1. 按时间倒序 (time, _id) keyset 翻页：下一页把上一页的 nextAfter 传回来，翻多深都是一次索引定位
+ * 2. 大范围导出走 NDJSON，游标边读边写，内存恒定
+ * 3. 索引：每个过滤字段一个 (字段, time, _id) 复合索引 + 一个 (time, _id)，等值过滤 + 时间范围 + 排序都在索引里完成
+ * 4. 保留期：time 上的 TTL 索引，过期的由 Mongo 后台删掉，集合大小只和保留期内的写入量有关
+ *    (TTL 要求单字段索引，所以和 (time, _id) 分开建)
+ */
+@Slf4j
+@Service
+public class AuditQueryService {
+
+    static final String TTL_INDEX = "time_ttl";
+    private static final int MAX_LIMIT = 500;
+    private static final int STREAM_FLUSH_EVERY = 500;
+    private static final Sort NEWEST_FIRST = Sort.by(Sort.Order.desc("time"), Sort.Order.desc("_id"));
+
+    private final MongoTemplate mongoTemplate;
+    private final ObjectMapper objectMapper;
+    private final long retentionSeconds;
+
+    public AuditQueryService(MongoTemplate mongoTemplate, ObjectMapper objectMapper,
+                             @Value("${audit.retention-days:180}") long retentionDays) {
+        this.mongoTemplate = mongoTemplate;
+        this.objectMapper = objectMapper;
+        this.retentionSeconds = TimeUnit.DAYS.toSeconds(retentionDays);
+    }
+
+    /**
+     * 启动后在后台建索引 (已存在的直接跳过，数据库连不上也不耽误启动)
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureIndexesAsync() {
+        CompletableFuture.runAsync(() -> {
+            try {
+                ensureIndexes();
+            } catch (Exception e) {
+                log.warn("审计日志索引创建失败", e);
+            }
+        });
+    }
+
+    void ensureIndexes() {
+        IndexOperations indexOps = mongoTemplate.indexOps(AuditLog.class);
+        indexOps.createIndex(new Index().on("time", Sort.Direction.DESC).on("_id", Sort.Direction.DESC).named("time_id"));
+        for (String field : List.of("action", "targetType", "operator")) {
+            indexOps.createIndex(new Index().on(field, Sort.Direction.ASC)
+                    .on("time", Sort.Direction.DESC).on("_id", Sort.Direction.DESC).named(field + "_time_id"));
+        }
+        try {
+            indexOps.createIndex(new Index().on("time", Sort.Direction.ASC).named(TTL_INDEX)
+                    .expire(retentionSeconds, TimeUnit.SECONDS));
+        } catch (RuntimeException e) {
+            // 保留期改过：同名索引选项冲突，直接改 TTL，不用删了重建
+            mongoTemplate.executeCommand(new Document("collMod", mongoTemplate.getCollectionName(AuditLog.class))
+                    .append("index", new Document("name", TTL_INDEX).append("expireAfterSeconds", retentionSeconds)));
+            log.info("审计日志保留期已调整为 {} 秒", retentionSeconds);
+        }
+    }
+
+    public AuditPage query(AuditQuery request) {
+        int limit = request.getLimit() == null ? 100 : request.getLimit();
+        if (limit < 1 || limit > MAX_LIMIT) throw new IllegalArgumentException("limit 必须在 1 ~ " + MAX_LIMIT + " 之间");
+        Query query = toQuery(request).limit(limit);
+        List<AuditLog> records = mongoTemplate.find(query, AuditLog.class);
+
+        AuditPage page = new AuditPage();
+        page.setRecords(records);
+        page.setNextAfter(records.size() < limit ? null : cursorOf(records.get(records.size() - 1)));
+        return page;
+    }
+
+    /**
+     * 按同样的条件 (忽略 limit) 导出成 NDJSON，一行一条，每 STREAM_FLUSH_EVERY 行 flush 一次
+     * @return 导出的条数
+     */
+    public long stream(AuditQuery request, OutputStream out) throws IOException {
+        long total = 0;
+        // 响应流由容器关，这里不能替它关
+        SequenceWriter writer = objectMapper.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                .withRootValueSeparator("\n").writeValues(out);
+        try (Stream<AuditLog> logs = mongoTemplate.stream(toQuery(request), AuditLog.class)) {
+            for (AuditLog auditLog : (Iterable<AuditLog>) logs::iterator) {
+                writer.write(auditLog);
+                if (++total % STREAM_FLUSH_EVERY == 0) writer.flush();
+            }
+        }
+        writer.close();
+        if (total > 0) out.write('\n'); // 分隔符只写在两行之间，最后一行自己补上换行
+        return total;
+    }
+
+    private static Query toQuery(AuditQuery request) {
+        if (request.getFrom() != null && request.getTo() != null && request.getFrom().isAfter(request.getTo())) {
+            throw new IllegalArgumentException("from 不能晚于 to");
+        }
+        List<Criteria> and = new ArrayList<>();
+        if (StrUtil.isNotBlank(request.getAction())) and.add(Criteria.where("action").is(request.getAction()));
+        if (StrUtil.isNotBlank(request.getTargetType())) and.add(Criteria.where("targetType").is(request.getTargetType()));
+        if (StrUtil.isNotBlank(request.getOperator())) and.add(Criteria.where("operator").is(request.getOperator()));
+        if (request.getFrom() != null || request.getTo() != null) {
+            Criteria time = Criteria.where("time");
+            if (request.getFrom() != null) time.gte(request.getFrom());
+            if (request.getTo() != null) time.lt(request.getTo());
+            and.add(time);
+        }
+        if (StrUtil.isNotBlank(request.getAfter())) {
+            // 倒序翻页：比上一页最后一条旧，时间相同的按 _id 再往前
+            int at = request.getAfter().lastIndexOf('_');
+            LocalDateTime time = cursorTime(request.getAfter(), at);
+            String id = request.getAfter().substring(at + 1);
+            and.add(new Criteria().orOperator(
+                    Criteria.where("time").lt(time),
+                    Criteria.where("time").is(time).and("_id").lt(id)));
+        }
+        Criteria criteria = and.isEmpty() ? new Criteria() : new Criteria().andOperator(and);
+        return Query.query(criteria).with(NEWEST_FIRST);
+    }
+
+    /**
+     * 翻页游标 = 时间_主键，例如 2026-10-18T09:30:00.123_6712c0ffee...
+     */
+    static String cursorOf(AuditLog auditLog) {
+        return auditLog.getTime() + "_" + auditLog.getId();
+    }
+
+    private static LocalDateTime cursorTime(String after, int at) {
+        if (at <= 0 || !ObjectId.isValid(after.substring(at + 1))) throw new IllegalArgumentException("非法的翻页游标: " + after);
+        try {
+            return LocalDateTime.parse(after.substring(0, at));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("非法的翻页游标: " + after);
+        }
+    }
+
+    // --- 查询条件 ---
+    @Data
+    public static class AuditQuery {
+        private LocalDateTime from;     // 含
+        private LocalDateTime to;       // 不含
+        private String action;
+        private String targetType;
+        private String operator;
+        private String after;           // 翻页：上一页的 nextAfter
+        private Integer limit;          // 默认 100，最多 500 (导出时忽略)
+    }
+
+    @Data
+    public static class AuditPage {
+        private List<AuditLog> records;
+        private String nextAfter;       // 为 null 表示没有下一页
+    }
+}
@@ -0,0 +1,114 @@
+package com.university.shipmanager.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.university.shipmanager.entity.mongo.ComponentDoc;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 整船 BOM 树 (只读快照)
+ * 1. 组树是线性的：一遍按 id 建下标，一遍按 parentId 挂到父节点的孩子链表尾部，孩子顺序和输入顺序一致
+ * 2. 不再给每个节点建一个 Map (Hutool Tree)，父子关系只用几个 int 数组 (第一个孩子 / 最后一个孩子 / 下一个兄弟)
+ * 3. 直接用 JsonGenerator 写进响应流，输出格式和原来 Hutool 的一样：{id, parentId, name, type, specs, children}
+ *    叶子节点没有 children 字段；不再有深度限制 (原来超过 5 层直接截掉)
+ *    节点上有子树汇总 (rollup) 的顺便带上，不用另外查
+ * 4. 遍历用显式栈，不会因为树深导致栈溢出；父节点找不到的节点 (脏数据) 和原来一样不输出
+ */
+public final class BomTree {
+
+    private static final int NONE = -1;
+
+    private final ComponentDoc[] nodes;
+    private final int[] firstChild;
+    private final int[] nextSibling;
+    private final int firstRoot;
+
+    private BomTree(ComponentDoc[] nodes, int[] firstChild, int[] nextSibling, int firstRoot) {
+        this.nodes = nodes;
+        this.firstChild = firstChild;
+        this.nextSibling = nextSibling;
+        this.firstRoot = firstRoot;
+    }
+
+    public static BomTree build(List<ComponentDoc> components) {
+        int n = components.size();
+        ComponentDoc[] nodes = components.toArray(new ComponentDoc[0]);
+        Map<String, Integer> index = new HashMap<>(n * 4 / 3 + 1);
+        for (int i = 0; i < n; i++) index.put(nodes[i].getId(), i);
+
+        int[] firstChild = new int[n];
+        int[] lastChild = new int[n];
+        int[] nextSibling = new int[n];
+        Arrays.fill(firstChild, NONE);
+        Arrays.fill(nextSibling, NONE);
+        int firstRoot = NONE;
+        int lastRoot = NONE;
+        for (int i = 0; i < n; i++) {
+            String parentId = nodes[i].getParentId();
+            if (parentId == null) {
+                if (lastRoot == NONE) firstRoot = i; else nextSibling[lastRoot] = i;
+                lastRoot = i;
+                continue;
+            }
+            Integer parent = index.get(parentId);
+            if (parent == null || parent == i) continue; // 父节点不在这艘船里 / 自己挂自己：不输出
+            if (firstChild[parent] == NONE) firstChild[parent] = i; else nextSibling[lastChild[parent]] = i;
+            lastChild[parent] = i;
+        }
+        return new BomTree(nodes, firstChild, nextSibling, firstRoot);
+    }
+
+    public int size() {
+        return nodes.length;
+    }
+
+    /**
+     * 输出整棵树 (JSON 数组，每个根节点一个对象)
+     * specs 交给 generator 自带的 ObjectMapper 写
+     */
+    public void writeJson(JsonGenerator gen) throws IOException {
+        gen.writeStartArray();
+        int[] stack = new int[Math.max(nodes.length, 1)]; // 存还没写完 children 的祖先
+        int top = 0;
+        int current = firstRoot;
+        while (true) {
+            if (current != NONE) {
+                ComponentDoc node = nodes[current];
+                gen.writeStartObject();
+                gen.writeStringField("id", node.getId());
+                gen.writeStringField("parentId", node.getParentId());
+                gen.writeStringField("name", node.getName());
+                gen.writeStringField("type", node.getType());
+                gen.writeFieldName("specs");
+                gen.writeObject(node.getSpecs());
+                ComponentDoc.Rollup rollup = node.getRollup();
+                if (rollup != null) {
+                    gen.writeObjectFieldStart("rollup");
+                    gen.writeNumberField("docCount", rollup.getDocCount());
+                    gen.writeNumberField("storedBytes", rollup.getStoredBytes());
+                    gen.writeNumberField("descendantCount", rollup.getDescendantCount());
+                    gen.writeEndObject();
+                }
+                if (firstChild[current] != NONE) {
+                    gen.writeArrayFieldStart("children");
+                    stack[top++] = current;
+                    current = firstChild[current];
+                    continue;
+                }
+                gen.writeEndObject();
+                current = nextSibling[current];
+            } else {
+                if (top == 0) break;
+                int parent = stack[--top];
+                gen.writeEndArray();  // children
+                gen.writeEndObject(); // parent
+                current = nextSibling[parent];
+            }
+        }
+        gen.writeEndArray();
+    }
+}
@@ -0,0 +1,327 @@
+package com.university.shipmanager.service;
+
+import com.university.shipmanager.common.MaterializedPath;
+import com.university.shipmanager.entity.mongo.ComponentDoc;
+import lombok.Data;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 按船缓存 BOM 树 (进程内，读多写少)
+ * 1. 每艘船在内存里存一份全部节点 + 父子索引；增删改移时直接改这份索引，不用整船重新查 Mongo
+ * 2. 对外返回的树 (BomTree) 是只读快照，写之后第一次读时用内存里的节点重新组一次 (线性)，之后一直复用
+ *    内存里的节点只换不改 (移动时换成副本)，快照和正在组树的线程看到的都是一致的数据
+ * 3. 按总节点数限容，超了按 LRU 淘汰最久没看的船；太久没人看的冷船也主动清掉
+ * 4. 兜底过期时间：多实例部署时别的节点改了数据，这里最多旧这么久
+ * 5. 防并发脏写：加载期间有写操作，加载出来的结果就不放进去
+ */
+@Component
+public class BomTreeCache {
+
+    private final long maxNodes;
+    private final long idleMillis;
+    private final long ttlMillis;
+
+    // accessOrder = true：队头就是最久没看的船
+    private final LinkedHashMap<Long, ShipTree> ships = new LinkedHashMap<>(16, 0.75f, true);
+    private long currentNodes;
+    private long writes; // 写计数，加载前后对一下就知道期间有没有写
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public BomTreeCache(@Value("${cache.bom-tree.max-nodes:500000}") long maxNodes,
+                        @Value("${cache.bom-tree.idle-seconds:1800}") long idleSeconds,
+                        @Value("${cache.bom-tree.ttl-seconds:600}") long ttlSeconds) {
+        this.maxNodes = maxNodes;
+        this.idleMillis = idleSeconds * 1000;
+        this.ttlMillis = ttlSeconds * 1000;
+    }
+
+    /**
+     * 读穿：缓存里有这艘船就用内存里的节点 (快照没过期直接返回)，没有就整船加载一次
+     * @param loader 整船查节点
+     */
+    public BomTree getTree(Long shipId, Supplier<List<ComponentDoc>> loader) {
+        List<ComponentDoc> nodes;
+        long version;
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            evictCold(now);
+            ShipTree ship = ships.get(shipId);
+            if (ship != null && now - ship.loadedAt > ttlMillis) {
+                drop(shipId); // 过期了，整船重载一次
+                ship = null;
+            }
+            if (ship != null) {
+                hits.incrementAndGet();
+                ship.lastAccess = now;
+                if (ship.snapshot != null) return ship.snapshot;
+                // 写过，快照作废：拷一份节点出来在锁外组树
+                nodes = new ArrayList<>(ship.nodes.values());
+                version = ship.version;
+            } else {
+                nodes = null;
+                version = writes;
+            }
+        }
+
+        if (nodes != null) {
+            BomTree snapshot = BomTree.build(nodes);
+            synchronized (this) {
+                ShipTree ship = ships.get(shipId);
+                if (ship != null && ship.version == version) ship.snapshot = snapshot;
+            }
+            return snapshot;
+        }
+
+        misses.incrementAndGet();
+        List<ComponentDoc> loaded = loader.get(); // 查库不占锁
+        BomTree snapshot = BomTree.build(loaded);
+        synchronized (this) {
+            if (version == writes) put(shipId, new ShipTree(loaded, snapshot));
+        }
+        return snapshot;
+    }
+
+    /**
+     * 新建节点
+     */
+    public synchronized void onCreated(ComponentDoc saved) {
+        ShipTree ship = writeTarget(saved.getShipId());
+        if (ship == null) return;
+        ship.add(saved);
+        currentNodes++;
+        evictOverBudget();
+    }
+
+    /**
+     * 改名 / 改类型 / 改参数 (父子关系不变)
+     */
+    public synchronized void onUpdated(ComponentDoc saved) {
+        ShipTree ship = writeTarget(saved.getShipId());
+        if (ship == null) return;
+        if (ship.nodes.containsKey(saved.getId())) {
+            ship.nodes.put(saved.getId(), saved);
+        } else {
+            drop(saved.getShipId()); // 内存里没有这个节点，说明和库对不上了，下次整船重载
+        }
+    }
+
+    /**
+     * 移动节点：挂到新父节点下，整棵子树的祖先链在内存里一起改
+     * @param newAncestors 被移动节点的新祖先链
+     */
+    public synchronized void onMoved(Long shipId, String id, String newParentId, List<String> newAncestors) {
+        ShipTree ship = writeTarget(shipId);
+        if (ship == null) return;
+        if (!ship.move(id, newParentId, newAncestors)) drop(shipId);
+    }
+
+    /**
+     * 删除一批节点 (一棵子树)
+     */
+    public synchronized void onDeleted(Long shipId, Collection<String> ids) {
+        ShipTree ship = writeTarget(shipId);
+        if (ship == null) return;
+        int before = ship.nodes.size();
+        ids.forEach(ship::remove);
+        currentNodes -= before - ship.nodes.size();
+    }
+
+    /**
+     * 子树汇总变了 (上传文档 / 增删移节点之后沿祖先链累加的变化量)
+     * @param deltas 节点 ID -> 变化量
+     */
+    public synchronized void onRollup(Long shipId, Map<String, ComponentDoc.Rollup> deltas) {
+        ShipTree ship = writeTarget(shipId);
+        if (ship == null) return;
+        deltas.forEach(ship::addRollup);
+    }
+
+    /**
+     * 整艘船的结构删了
+     */
+    public synchronized void evictShip(Long shipId) {
+        writes++;
+        drop(shipId);
+    }
+
+    public synchronized Stats stats() {
+        Stats stats = new Stats();
+        stats.setHits(hits.get());
+        stats.setMisses(misses.get());
+        stats.setEvictions(evictions.get());
+        stats.setShips(ships.size());
+        stats.setNodes(currentNodes);
+        stats.setMaxNodes(maxNodes);
+        long total = stats.getHits() + stats.getMisses();
+        stats.setHitRate(total == 0 ? 0 : (double) stats.getHits() / total);
+        return stats;
+    }
+
+    /**
+     * 写操作统一入口：记一次写，返回要改的那艘船 (没缓存就不用改)，并让它的快照作废
+     */
+    private ShipTree writeTarget(Long shipId) {
+        writes++;
+        ShipTree ship = ships.get(shipId); // get 会把它挪到队尾，访问时间也跟着更新，保持队列按时间有序
+        if (ship == null) return null;
+        ship.lastAccess = System.currentTimeMillis();
+        ship.version++;
+        ship.snapshot = null;
+        return ship;
+    }
+
+    private void put(Long shipId, ShipTree ship) {
+        if (ship.nodes.size() > maxNodes) return; // 单艘船就超限的不缓存
+        drop(shipId);
+        ships.put(shipId, ship);
+        currentNodes += ship.nodes.size();
+        evictOverBudget();
+    }
+
+    private void evictOverBudget() {
+        Iterator<ShipTree> it = ships.values().iterator();
+        while (currentNodes > maxNodes && it.hasNext()) {
+            currentNodes -= it.next().nodes.size();
+            it.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * 冷船淘汰：队头是最久没看的，从头往后扫到第一个最近看过的就停
+     */
+    private void evictCold(long now) {
+        Iterator<ShipTree> it = ships.values().iterator();
+        while (it.hasNext()) {
+            ShipTree ship = it.next();
+            if (now - ship.lastAccess <= idleMillis) break;
+            currentNodes -= ship.nodes.size();
+            it.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private void drop(Long shipId) {
+        ShipTree removed = ships.remove(shipId);
+        if (removed != null) currentNodes -= removed.nodes.size();
+    }
+
+    /**
+     * 一艘船的内存索引：全部节点 (按加载 / 创建顺序) + 父节点 -> 子节点 (根节点挂在 null 下)
+     */
+    private static class ShipTree {
+        final LinkedHashMap<String, ComponentDoc> nodes = new LinkedHashMap<>();
+        final Map<String, LinkedHashSet<String>> children = new HashMap<>();
+        final long loadedAt = System.currentTimeMillis();
+        long lastAccess = loadedAt;
+        long version;
+        BomTree snapshot;
+
+        ShipTree(List<ComponentDoc> loaded, BomTree snapshot) {
+            loaded.forEach(this::add);
+            this.snapshot = snapshot;
+        }
+
+        void add(ComponentDoc node) {
+            nodes.put(node.getId(), node);
+            children.computeIfAbsent(node.getParentId(), k -> new LinkedHashSet<>()).add(node.getId());
+        }
+
+        void remove(String id) {
+            ComponentDoc node = nodes.remove(id);
+            if (node == null) return;
+            LinkedHashSet<String> siblings = children.get(node.getParentId());
+            if (siblings != null) siblings.remove(id);
+            children.remove(id);
+        }
+
+        /**
+         * @return false 表示内存里的数据对不上 (节点不在)，需要整船重载
+         */
+        boolean move(String id, String newParentId, List<String> newAncestors) {
+            ComponentDoc node = nodes.get(id);
+            if (node == null) return false;
+            LinkedHashSet<String> oldSiblings = children.get(node.getParentId());
+            if (oldSiblings != null) oldSiblings.remove(id);
+            children.computeIfAbsent(newParentId, k -> new LinkedHashSet<>()).add(id);
+            // 换成副本再改：旧快照 / 正在锁外组树的线程手里拿的还是原来的对象
+            ComponentDoc moved = copyOf(node);
+            moved.setParentId(newParentId);
+            moved.setAncestors(new ArrayList<>(newAncestors));
+            moved.setPath(MaterializedPath.encode(newAncestors, id));
+            nodes.put(id, moved);
+
+            // 子孙：新祖先链 = 被移动节点的新祖先链 + 被移动节点 + 原来在它下面的那一段
+            List<String> prefix = new ArrayList<>(newAncestors);
+            prefix.add(id);
+            Deque<String> stack = new ArrayDeque<>(children.getOrDefault(id, new LinkedHashSet<>()));
+            while (!stack.isEmpty()) {
+                ComponentDoc child = nodes.get(stack.pop());
+                if (child == null) continue;
+                List<String> old = child.getAncestors();
+                int at = old == null ? -1 : old.indexOf(id);
+                List<String> updated = new ArrayList<>(prefix);
+                if (at != -1) updated.addAll(old.subList(at + 1, old.size()));
+                ComponentDoc copy = copyOf(child);
+                copy.setAncestors(updated);
+                copy.setPath(MaterializedPath.encode(updated, copy.getId()));
+                nodes.put(copy.getId(), copy);
+                stack.addAll(children.getOrDefault(child.getId(), new LinkedHashSet<>()));
+            }
+            return true;
+        }
+
+        void addRollup(String id, ComponentDoc.Rollup delta) {
+            ComponentDoc node = nodes.get(id);
+            if (node == null) return;
+            ComponentDoc copy = copyOf(node); // 同样换成副本，不改快照里的对象
+            copy.setRollup(node.getRollup() == null ? delta : node.getRollup().plus(delta)); // 和库里 $inc 的结果一致
+            nodes.put(id, copy);
+        }
+
+        private static ComponentDoc copyOf(ComponentDoc node) {
+            ComponentDoc copy = new ComponentDoc();
+            copy.setId(node.getId());
+            copy.setShipId(node.getShipId());
+            copy.setName(node.getName());
+            copy.setCode(node.getCode());
+            copy.setType(node.getType());
+            copy.setParentId(node.getParentId());
+            copy.setAncestors(node.getAncestors());
+            copy.setPath(node.getPath());
+            copy.setSpecs(node.getSpecs());
+            copy.setRollup(node.getRollup());
+            copy.setCreatedAt(node.getCreatedAt());
+            copy.setUpdatedAt(node.getUpdatedAt());
+            return copy;
+        }
+    }
+
+    @Data
+    public static class Stats {
+        private long hits;
+        private long misses;
+        private long evictions;
+        private double hitRate;
+        private int ships;
+        private long nodes;
+        private long maxNodes;
+    }
+}
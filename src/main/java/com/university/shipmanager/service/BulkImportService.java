@@ -0,0 +1,421 @@
+package com.university.shipmanager.service;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.thread.ThreadUtil;
+import cn.hutool.core.util.StrUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.university.shipmanager.entity.mongo.ImportJob;
+import com.university.shipmanager.entity.mongo.ShipDocument;
+import com.university.shipmanager.entity.mysql.DocIndex;
+import com.university.shipmanager.repository.ImportJobRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+/**
+ * 批量导入 (新船建档：一次导入几千份历史文档)
+ * 流水线：
+ * 1. ZIP 先落到临时文件，用 ZipFile 随机读，多个条目可以同时解压，不用先整个解开
+ * 2. 条目并发上传到存储 (边解压边上传，去重 / 压缩规则和普通上传一样)
+ * 3. 上传完成的条目攒够一批，Mongo insertMany + MySQL 批量插入一次写掉，同时下一批还在上传
+ * 4. 每写完一批把计数和条目结果追加到 import_jobs，前端轮询看进度和失败原因
+ * 在途条目有上限 (传完一个才补交一个)，几万个条目也不会一股脑堆进线程池队列；
+ * 导入计划只在内存里，服务重启后接不上：跑的实例不断给任务续租约，定时把租约过期 (实例已经挂了) 的任务标记为失败，
+ * 别的实例上正在跑的任务不受影响。
+ */
+@Slf4j
+@Service
+public class BulkImportService {
+
+    private static final int UPLOAD_CONCURRENCY = 8;     // 同时上传的条目数
+    private static final int RECORD_BATCH_SIZE = 200;    // 每批建档的条目数
+    private static final int MAX_IN_FLIGHT = UPLOAD_CONCURRENCY * 4; // 每个任务同时交给线程池 (排队 + 在传) 的条目数
+    private static final int MAX_ENTRIES = 20000;
+    private static final String MANIFEST_NAME = "manifest.json";
+    private static final String DEFAULT_CATEGORY = "Other (其他)";
+    private static final Duration LEASE = Duration.ofMinutes(2);
+    private static final Duration RENEW_EVERY = Duration.ofSeconds(30);
+
+    private final DocumentService documentService;
+    private final VersionStorageService versionStorageService;
+    private final ContentStoreService contentStoreService;
+    private final ImportJobRepository jobRepository;
+    private final MongoTemplate mongoTemplate;
+    private final ObjectMapper objectMapper;
+
+    private final ExecutorService jobExecutor = Executors.newFixedThreadPool(2, ThreadUtil.newNamedThreadFactory("doc-import-", true)); // 同时最多跑 2 个导入任务
+    private final ExecutorService uploadExecutor = Executors.newFixedThreadPool(UPLOAD_CONCURRENCY, ThreadUtil.newNamedThreadFactory("doc-import-io-", true));
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(ThreadUtil.newNamedThreadFactory("doc-import-sweep-", true));
+
+    public BulkImportService(DocumentService documentService, VersionStorageService versionStorageService,
+                             ContentStoreService contentStoreService, ImportJobRepository jobRepository,
+                             MongoTemplate mongoTemplate, ObjectMapper objectMapper) {
+        this.documentService = documentService;
+        this.versionStorageService = versionStorageService;
+        this.contentStoreService = contentStoreService;
+        this.jobRepository = jobRepository;
+        this.mongoTemplate = mongoTemplate;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * 接收 ZIP，建任务，后台导入；立即返回任务 (带 ID，用来查进度)
+     * @param manifestJson 清单 (可选)，不传就用 ZIP 根目录下的 manifest.json，都没有就全部按默认值导入
+     */
+    public ImportJob startImport(Long shipId, InputStream zipStream, String zipFileName, String manifestJson) {
+        if (shipId == null) throw new IllegalArgumentException("shipId 不能为空");
+
+        // 1. 请求结束后请求体就读不到了 (multipart 的临时文件也会被删)，先落到自己的临时文件里
+        Path zipPath;
+        try {
+            zipPath = Files.createTempFile("doc-import-", ".zip");
+            Files.copy(zipStream, zipPath, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new RuntimeException("读取上传文件失败", e);
+        }
+
+        try {
+            // 2. 解析目录和清单，生成导入计划 (校验失败直接在请求里报错)
+            List<ImportItem> items;
+            try (ZipFile zip = openZip(zipPath)) {
+                ImportManifest manifest = StrUtil.isNotBlank(manifestJson)
+                        ? objectMapper.readValue(manifestJson, ImportManifest.class)
+                        : readManifest(zip);
+                items = plan(shipId, zip, manifest);
+            }
+            if (items.isEmpty()) throw new IllegalArgumentException("ZIP 里没有可导入的文件");
+            if (items.size() > MAX_ENTRIES) throw new IllegalArgumentException("单次最多导入 " + MAX_ENTRIES + " 个文件");
+
+            ImportJob job = new ImportJob();
+            job.setShipId(shipId);
+            job.setFileName(zipFileName);
+            job.setStatus("RUNNING");
+            job.setTotal(items.size());
+            job.setLeaseUntil(LocalDateTime.now().plus(LEASE));
+            ImportJob saved = jobRepository.save(job);
+
+            // 3. 后台跑流水线
+            jobExecutor.execute(() -> run(saved.getId(), zipPath, items));
+            log.info("批量导入任务已创建: job={}, shipId={}, 文件数={}", saved.getId(), shipId, items.size());
+            return saved;
+        } catch (IOException e) {
+            FileUtil.del(zipPath);
+            throw new IllegalArgumentException("ZIP 或清单格式不正确: " + e.getMessage());
+        } catch (RuntimeException e) {
+            FileUtil.del(zipPath);
+            throw e;
+        }
+    }
+
+    /**
+     * 启动后定时把租约过期的任务 (跑它的实例重启 / 宕机了) 标记为失败 (在后台线程里做，数据库连不上也不耽误启动)
+     * 已经建档的条目保留，任务里有逐条结果，用户按失败 / 缺失的条目重新导入即可
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void reconcileInterrupted() {
+        sweeper.scheduleWithFixedDelay(() -> {
+            try {
+                long failed = failInterrupted();
+                if (failed > 0) log.warn("有 {} 个批量导入任务的实例已经不在了，已标记为失败", failed);
+            } catch (Exception e) {
+                log.warn("清理中断的批量导入任务失败", e);
+            }
+        }, 0, LEASE.toSeconds(), TimeUnit.SECONDS);
+    }
+
+    long failInterrupted() {
+        LocalDateTime now = LocalDateTime.now();
+        // 老任务没有租约字段，按过期算
+        Query expired = Query.query(Criteria.where("status").is("RUNNING")
+                .orOperator(Criteria.where("leaseUntil").is(null), Criteria.where("leaseUntil").lt(now)));
+        return mongoTemplate.updateMulti(expired,
+                new Update().set("status", "FAILED")
+                        .set("error", "服务重启，导入中断 (已完成的条目保留，请重新导入剩下的文件)")
+                        .set("finishedAt", LocalDateTime.now()),
+                ImportJob.class).getModifiedCount();
+    }
+
+    public ImportJob getJob(String jobId) {
+        return jobRepository.findById(jobId).orElseThrow(() -> new RuntimeException("导入任务不存在"));
+    }
+
+    private void run(String jobId, Path zipPath, List<ImportItem> items) {
+        long start = System.currentTimeMillis();
+        // 1. 条目交给上传线程池，谁先传完谁先出来；在途的最多 MAX_IN_FLIGHT 个，收一个补一个
+        CompletionService<Uploaded> completion = new ExecutorCompletionService<>(uploadExecutor);
+        // 2. 按完成顺序收结果，攒够一批就建档
+        List<Uploaded> batch = new ArrayList<>(RECORD_BATCH_SIZE);
+        try (ZipFile zip = openZip(zipPath)) {
+            int submitted = 0;
+            List<ImportJob.EntryResult> failures = new ArrayList<>();
+            LocalDateTime renewAt = LocalDateTime.now().plus(RENEW_EVERY);
+            for (int i = 0; i < items.size(); i++) {
+                if (LocalDateTime.now().isAfter(renewAt)) {
+                    renewLease(jobId);
+                    renewAt = LocalDateTime.now().plus(RENEW_EVERY);
+                }
+                while (submitted < items.size() && submitted - i < MAX_IN_FLIGHT) {
+                    ImportItem item = items.get(submitted++);
+                    completion.submit(() -> upload(zip, item));
+                }
+                Uploaded uploaded = completion.take().get();
+                if (uploaded.getError() != null) {
+                    failures.add(result(uploaded.getItem().getPath(), null, uploaded.getError()));
+                } else {
+                    batch.add(uploaded);
+                }
+                if (batch.size() >= RECORD_BATCH_SIZE || failures.size() >= RECORD_BATCH_SIZE) {
+                    flush(jobId, batch, failures);
+                }
+            }
+            flush(jobId, batch, failures);
+
+            // 只改还在 RUNNING 的：租约过期被判失败的任务不会再被改回 COMPLETED
+            mongoTemplate.updateFirst(running(jobId),
+                    new Update().set("status", "COMPLETED").unset("leaseUntil").set("finishedAt", LocalDateTime.now()), ImportJob.class);
+            log.info("批量导入完成: job={}, 文件数={}, 耗时 {} ms", jobId, items.size(), System.currentTimeMillis() - start);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            releaseUnrecorded(batch, completion);
+            markFailed(jobId, "导入被中断");
+        } catch (Exception e) {
+            log.error("批量导入失败: job={}", jobId, e);
+            markFailed(jobId, e.getMessage());
+        } finally {
+            FileUtil.del(zipPath);
+        }
+    }
+
+    /**
+     * 上传一个条目 (在上传线程池里跑)，失败不抛异常，记到结果里
+     */
+    private Uploaded upload(ZipFile zip, ImportItem item) {
+        Uploaded uploaded = new Uploaded();
+        uploaded.setItem(item);
+        try (InputStream in = zip.getInputStream(zip.getEntry(item.getPath()))) {
+            uploaded.setStored(versionStorageService.storeInitial(in, item.getFileName(), item.getContentType(), null));
+        } catch (Exception e) {
+            log.warn("导入条目上传失败: {}", item.getPath(), e);
+            uploaded.setError(StrUtil.blankToDefault(e.getMessage(), e.getClass().getSimpleName()));
+        }
+        return uploaded;
+    }
+
+    /**
+     * 一批上传完的条目一次建档，再把这批结果 (连同期间的上传失败) 一次写进任务进度
+     */
+    private void flush(String jobId, List<Uploaded> batch, List<ImportJob.EntryResult> failures) {
+        if (batch.isEmpty() && failures.isEmpty()) return;
+
+        List<ImportJob.EntryResult> results = new ArrayList<>(failures);
+        int succeeded = 0;
+        if (!batch.isEmpty()) {
+            List<DocumentService.UploadRequest> requests = batch.stream().map(u -> u.getItem().getRequest()).toList();
+            List<VersionStorageService.StoredVersion> stored = batch.stream().map(Uploaded::getStored).toList();
+            try {
+                List<DocIndex> indexes = documentService.saveDocumentRecordsBatch(requests, stored);
+                for (int i = 0; i < batch.size(); i++) {
+                    results.add(result(batch.get(i).getItem().getPath(), indexes.get(i).getId(), null));
+                }
+                succeeded = batch.size();
+            } catch (Exception e) {
+                log.error("批量建档失败: job={}, 本批 {} 个", jobId, batch.size(), e);
+                String error = "建档失败: " + StrUtil.blankToDefault(e.getMessage(), e.getClass().getSimpleName());
+                batch.forEach(u -> results.add(result(u.getItem().getPath(), null, error)));
+            }
+        }
+
+        mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(jobId)),
+                new Update().inc("succeeded", succeeded)
+                        .inc("failed", results.size() - succeeded)
+                        .push("entries").each(results.toArray()),
+                ImportJob.class);
+        batch.clear();
+        failures.clear();
+    }
+
+    /**
+     * 中断时已经传好、还没建档的条目没人引用了，放掉 (还在传的传完也没人收，最多漏几个文件)
+     */
+    private void releaseUnrecorded(List<Uploaded> batch, CompletionService<Uploaded> completion) {
+        List<ShipDocument.DocVersion> versions = new ArrayList<>();
+        batch.forEach(u -> versions.add(DocumentService.initialVersion(u.getStored())));
+        Future<Uploaded> done;
+        while ((done = completion.poll()) != null) {
+            try {
+                Uploaded uploaded = done.get(); // 已经完成的，不会阻塞
+                if (uploaded.getStored() != null) versions.add(DocumentService.initialVersion(uploaded.getStored()));
+            } catch (Exception ignored) {
+                // 上传本身失败了，没有文件要放
+            }
+        }
+        if (versions.isEmpty()) return;
+        try {
+            contentStoreService.releaseAll(versions);
+        } catch (Exception e) {
+            log.warn("释放中断导入的 {} 个文件失败", versions.size(), e);
+        }
+        batch.clear();
+    }
+
+    private void renewLease(String jobId) {
+        mongoTemplate.updateFirst(running(jobId), new Update().set("leaseUntil", LocalDateTime.now().plus(LEASE)), ImportJob.class);
+    }
+
+    private void markFailed(String jobId, String error) {
+        mongoTemplate.updateFirst(running(jobId), new Update().set("status", "FAILED").set("error", error)
+                .unset("leaseUntil").set("finishedAt", LocalDateTime.now()), ImportJob.class);
+    }
+
+    private static Query running(String jobId) {
+        return Query.query(Criteria.where("_id").is(jobId).and("status").is("RUNNING"));
+    }
+
+    /**
+     * 把 ZIP 目录和清单对上，生成每个文件的建档信息
+     */
+    private List<ImportItem> plan(Long shipId, ZipFile zip, ImportManifest manifest) {
+        Map<String, ManifestEntry> byPath = new HashMap<>();
+        if (manifest.getEntries() != null) {
+            manifest.getEntries().forEach(e -> byPath.put(normalize(e.getPath()), e));
+        }
+
+        List<ImportItem> items = new ArrayList<>();
+        for (ZipEntry entry : Collections.list(zip.entries())) {
+            String path = entry.getName();
+            if (entry.isDirectory() || path.startsWith("__MACOSX/") || MANIFEST_NAME.equals(path)) continue;
+            String fileName = FileUtil.getName(path);
+            if (fileName.startsWith(".")) continue; // .DS_Store 之类
+
+            ManifestEntry m = byPath.getOrDefault(normalize(path), new ManifestEntry());
+            DocumentService.UploadRequest request = new DocumentService.UploadRequest();
+            request.setShipId(shipId);
+            request.setComponentId(StrUtil.blankToDefault(m.getComponentId(), manifest.getDefaultComponentId()));
+            request.setTitle(StrUtil.blankToDefault(m.getTitle(), FileUtil.mainName(fileName)));
+            request.setCategory(StrUtil.blankToDefault(m.getCategory(), StrUtil.blankToDefault(manifest.getDefaultCategory(), DEFAULT_CATEGORY)));
+            request.setFileName(fileName);
+            Map<String, Object> metadata = new HashMap<>();
+            if (m.getMetadata() != null) metadata.putAll(m.getMetadata());
+            metadata.put("uploaded_via", "Bulk Import");
+            metadata.put("original_name", fileName);
+            metadata.put("import_path", path);
+            request.setMetadata(metadata);
+
+            ImportItem item = new ImportItem();
+            item.setPath(path);
+            item.setFileName(fileName);
+            item.setContentType(MediaTypeFactory.getMediaType(fileName).orElse(MediaType.APPLICATION_OCTET_STREAM).toString());
+            item.setRequest(request);
+            items.add(item);
+        }
+        return items;
+    }
+
+    private ImportManifest readManifest(ZipFile zip) throws IOException {
+        ZipEntry entry = zip.getEntry(MANIFEST_NAME);
+        if (entry == null) return new ImportManifest();
+        try (InputStream in = zip.getInputStream(entry)) {
+            return objectMapper.readValue(in, ImportManifest.class);
+        }
+    }
+
+    /**
+     * Windows 自带压缩工具打的包文件名是 GBK，按 UTF-8 打不开就换 GBK 再试
+     */
+    private static ZipFile openZip(Path path) throws IOException {
+        try {
+            return new ZipFile(path.toFile(), StandardCharsets.UTF_8);
+        } catch (ZipException e) {
+            return new ZipFile(path.toFile(), Charset.forName("GBK"));
+        }
+    }
+
+    private static String normalize(String path) {
+        return path == null ? "" : StrUtil.removePrefix(path.replace('\\', '/'), "/");
+    }
+
+    private static ImportJob.EntryResult result(String path, Long docId, String error) {
+        ImportJob.EntryResult r = new ImportJob.EntryResult();
+        r.setPath(path);
+        r.setStatus(error == null ? "SUCCESS" : "FAILED");
+        r.setDocId(docId);
+        r.setError(error);
+        return r;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sweeper.shutdownNow();
+        jobExecutor.shutdownNow();
+        uploadExecutor.shutdownNow();
+    }
+
+    // --- 导入计划里的一个文件 ---
+    @Data
+    private static class ImportItem {
+        private String path;
+        private String fileName;
+        private String contentType;
+        private DocumentService.UploadRequest request;
+    }
+
+    // --- 上传结果：成功带存储信息，失败带原因 ---
+    @Data
+    private static class Uploaded {
+        private ImportItem item;
+        private VersionStorageService.StoredVersion stored;
+        private String error;
+    }
+
+    // --- 清单 (manifest.json) ---
+    // {"defaultCategory": "Drawing (图纸)", "entries": [{"path": "hull/frame-12.dwg", "componentId": "...", "title": "..."}]}
+    @Data
+    public static class ImportManifest {
+        private String defaultCategory;
+        private String defaultComponentId;
+        private List<ManifestEntry> entries;
+    }
+
+    @Data
+    public static class ManifestEntry {
+        private String path;         // ZIP 里的路径
+        private String componentId;  // 挂到哪个零件下
+        private String title;        // 不填就用文件名
+        private String category;
+        private Map<String, Object> metadata;
+    }
+}
@@ -0,0 +1,352 @@
+package com.university.shipmanager.service;
+
+import cn.hutool.core.thread.ThreadUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.crypto.digest.DigestUtil;
+import com.university.shipmanager.common.ObjectStore;
+import com.university.shipmanager.entity.mongo.UploadSession;
+import com.university.shipmanager.entity.mysql.DocIndex;
+import com.university.shipmanager.repository.UploadSessionRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 断点续传 (分片上传)
+ * 步骤：建会话 -> 分片乱序/并发上传 (每片单独确认) -> 合并 (MinIO 服务端拼接) -> 建档
+ * 断线后查询会话拿到已确认的分片，只补传缺的那几片即可。
+ * 过期清理：UPLOADING 的会话超过 upload.session.ttl-hours 没有新分片就标 EXPIRED，并取消 MinIO 的 multipart upload，
+ * 否则放弃的上传会一直占着 MinIO 里已传的分片。
+ */
+@Slf4j
+@Service
+public class ChunkedUploadService {
+
+    private static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+    private static final int MIN_CHUNK_SIZE = 5 * 1024 * 1024;   // S3 规定除最后一片外不能小于 5MB
+    private static final int MAX_CHUNK_SIZE = 64 * 1024 * 1024;  // 单片会整片读进内存，限制一下
+    private static final int MAX_CHUNKS = 10000;                 // S3 分片号上限
+    private static final int SWEEP_BATCH = 100;
+
+    private final UploadSessionRepository sessionRepository;
+    private final MongoTemplate mongoTemplate;
+    private final ObjectStore objectStore;
+    private final ContentStoreService contentStoreService;
+    private final DocumentService documentService;
+    private final ShipTombstones shipTombstones;
+    private final long ttlHours;
+    private final long sweepMinutes;
+
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(ThreadUtil.newNamedThreadFactory("upload-session-sweep-", true));
+
+    public ChunkedUploadService(UploadSessionRepository sessionRepository, MongoTemplate mongoTemplate, ObjectStore objectStore,
+                                ContentStoreService contentStoreService, DocumentService documentService,
+                                ShipTombstones shipTombstones,
+                                @Value("${upload.session.ttl-hours:24}") long ttlHours,
+                                @Value("${upload.session.sweep-minutes:10}") long sweepMinutes) {
+        this.sessionRepository = sessionRepository;
+        this.mongoTemplate = mongoTemplate;
+        this.objectStore = objectStore;
+        this.contentStoreService = contentStoreService;
+        this.documentService = documentService;
+        this.shipTombstones = shipTombstones;
+        this.ttlHours = ttlHours;
+        this.sweepMinutes = sweepMinutes;
+    }
+
+    /**
+     * 1. 创建上传会话
+     * 客户端带的 sha256 只用于合并后校验，不凭它秒传 (去重只认服务端自己算出来的哈希)
+     */
+    public SessionVO createSession(CreateSessionRequest request) {
+        if (request.getTotalSize() == null || request.getTotalSize() <= 0) {
+            throw new IllegalArgumentException("文件大小必须大于 0");
+        }
+        if (StrUtil.isBlank(request.getFileName())) {
+            throw new IllegalArgumentException("文件名不能为空");
+        }
+
+        int chunkSize = request.getChunkSize() != null ? request.getChunkSize() : DEFAULT_CHUNK_SIZE;
+        if (chunkSize < MIN_CHUNK_SIZE || chunkSize > MAX_CHUNK_SIZE) {
+            throw new IllegalArgumentException("分片大小必须在 5MB ~ 64MB 之间");
+        }
+        long totalChunks = (request.getTotalSize() + chunkSize - 1) / chunkSize;
+        if (totalChunks > MAX_CHUNKS) {
+            throw new IllegalArgumentException("分片数量超过上限 " + MAX_CHUNKS + "，请调大分片大小");
+        }
+
+        UploadSession session = new UploadSession();
+        session.setShipId(request.getShipId());
+        session.setComponentId(request.getComponentId());
+        session.setTitle(request.getTitle());
+        session.setCategory(request.getCategory());
+        session.setFileName(request.getFileName());
+        session.setContentType(request.getContentType());
+        session.setSha256(request.getSha256());
+        session.setTotalSize(request.getTotalSize());
+        session.setChunkSize(chunkSize);
+        session.setTotalChunks((int) totalChunks);
+        session.setUpdatedAt(LocalDateTime.now());
+
+        String objectName = ObjectStore.newObjectName(request.getFileName());
+        session.setObjectName(objectName);
+        session.setUploadId(objectStore.createMultipartUpload(objectName, request.getContentType()));
+        session.setStatus("UPLOADING");
+        UploadSession saved = sessionRepository.save(session);
+        log.info("创建上传会话: {} ({} bytes, {} 片)", saved.getId(), saved.getTotalSize(), saved.getTotalChunks());
+        return toVO(saved);
+    }
+
+    /**
+     * 查询会话 (断线重连后用来确认还缺哪几片)
+     */
+    public SessionVO getSession(String sessionId) {
+        return toVO(findSession(sessionId));
+    }
+
+    /**
+     * 2. 上传一个分片 (分片号从 1 开始，可以乱序、并发，重复上传同一片会覆盖)
+     */
+    public void uploadChunk(String sessionId, int chunkNo, InputStream body) {
+        UploadSession session = findSession(sessionId);
+        if (!"UPLOADING".equals(session.getStatus())) {
+            throw new RuntimeException("会话状态为 " + session.getStatus() + "，不能继续上传");
+        }
+        if (chunkNo < 1 || chunkNo > session.getTotalChunks()) {
+            throw new IllegalArgumentException("分片号超出范围: " + chunkNo);
+        }
+
+        // 最后一片可以不满，其余的必须正好是 chunkSize
+        long expected = chunkNo < session.getTotalChunks()
+                ? session.getChunkSize()
+                : session.getTotalSize() - (long) session.getChunkSize() * (session.getTotalChunks() - 1);
+        byte[] data;
+        try {
+            data = body.readNBytes((int) expected + 1);
+        } catch (IOException e) {
+            throw new RuntimeException("分片 " + chunkNo + " 读取失败 (连接中断?)", e);
+        }
+        if (data.length != expected) {
+            throw new IllegalArgumentException("分片 " + chunkNo + " 大小不对：期望 " + expected + "，实际 " + data.length);
+        }
+
+        String etag = objectStore.uploadPart(session.getObjectName(), session.getUploadId(), chunkNo, data);
+
+        // 单独 $set 这一片，并发确认互不干扰
+        // 传的过程中会话可能已经开始合并 / 过期 / 取消了，这时没有匹配上，这一片不算数，不能告诉客户端成功
+        Query query = Query.query(Criteria.where("_id").is(sessionId).and("status").is("UPLOADING"));
+        Update update = new Update().set("parts." + chunkNo, etag).set("updatedAt", LocalDateTime.now());
+        if (mongoTemplate.updateFirst(query, update, UploadSession.class).getMatchedCount() == 0) {
+            throw new RuntimeException("会话已不在上传中 (正在合并、已过期或已取消)，分片 " + chunkNo + " 未确认");
+        }
+        log.info("分片确认: session={}, chunk={}/{}", sessionId, chunkNo, session.getTotalChunks());
+    }
+
+    /**
+     * 3. 合并并建档 (重复调用是安全的：已完成的会话直接返回结果)
+     */
+    public SessionVO complete(String sessionId) {
+        UploadSession session = findSession(sessionId);
+        if ("COMPLETED".equals(session.getStatus())) return toVO(session);
+
+        List<Integer> missing = missingChunks(session);
+        if (!missing.isEmpty()) {
+            throw new RuntimeException("还有分片没传完: " + missing);
+        }
+
+        // 抢占合并权，防止两个请求同时合并
+        Query query = Query.query(Criteria.where("_id").is(sessionId).and("status").is("UPLOADING"));
+        UploadSession locked = mongoTemplate.findAndModify(query, new Update().set("status", "COMPLETING"),
+                FindAndModifyOptions.options().returnNew(true), UploadSession.class);
+        if (locked == null) {
+            throw new RuntimeException("会话正在合并或已失效，请稍后查询");
+        }
+
+        Map<Integer, String> etags = new HashMap<>();
+        locked.getParts().forEach((k, v) -> etags.put(Integer.valueOf(k), v));
+        try {
+            objectStore.completeMultipartUpload(locked.getObjectName(), locked.getUploadId(), etags);
+        } catch (RuntimeException e) {
+            // MinIO 还没合并，放回去让客户端重试
+            mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(sessionId)),
+                    new Update().set("status", "UPLOADING"), UploadSession.class);
+            throw e;
+        }
+
+        ObjectStore.UploadResult uploaded = null;
+        try {
+            // 服务端回读一遍算哈希 (MinIO 和应用在同一个机房，远比船岸链路快)，再按内容登记去重
+            String sha256;
+            try (InputStream in = objectStore.getObject(locked.getObjectName())) {
+                sha256 = DigestUtil.sha256Hex(in);
+            }
+            if (StrUtil.isNotBlank(locked.getSha256()) && !locked.getSha256().equalsIgnoreCase(sha256)) {
+                throw new RuntimeException("文件校验失败：合并后的内容与声明的 SHA-256 不一致");
+            }
+            uploaded = contentStoreService.register(new ObjectStore.UploadResult(
+                    locked.getObjectName(), locked.getTotalSize(), sha256, locked.getContentType()));
+
+            // 会话是删船前建的、合并时船已经删了 (后台可能已经删过这艘船的文档)：不建档，刚登记的引用放掉
+            try {
+                shipTombstones.checkWritable(locked.getShipId());
+            } catch (IllegalStateException e) {
+                contentStoreService.release(uploaded.getSha256(), uploaded.getStoragePath());
+                throw e;
+            }
+            DocIndex docIndex = documentService.saveDocumentRecords(toUploadRequest(locked), uploaded);
+
+            mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(sessionId)),
+                    new Update().set("status", "COMPLETED").set("docIndexId", docIndex.getId()), UploadSession.class);
+            log.info("分片合并完成: session={}, docIndexId={}", sessionId, docIndex.getId());
+            return getSession(sessionId);
+        } catch (Exception e) {
+            log.error("分片合并后建档失败: session={}", sessionId, e);
+            mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(sessionId)),
+                    new Update().set("status", "FAILED"), UploadSession.class);
+            // 还没登记的话文件没人引用，直接删；登记过的由建档失败时的回滚去释放引用
+            if (uploaded == null) {
+                objectStore.removeFile(locked.getObjectName());
+            }
+            throw new RuntimeException("文件合并失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 放弃上传，清理 MinIO 里已经传上去的分片
+     */
+    public void abort(String sessionId) {
+        UploadSession session = findSession(sessionId);
+        // 先抢状态再取消，和合并 / 过期清理互斥
+        Query query = Query.query(Criteria.where("_id").is(sessionId).and("status").is("UPLOADING"));
+        Update update = new Update().set("status", "ABORTED").set("updatedAt", LocalDateTime.now());
+        if (mongoTemplate.updateFirst(query, update, UploadSession.class).getModifiedCount() == 0) return;
+        objectStore.abortMultipartUpload(session.getObjectName(), session.getUploadId());
+    }
+
+    /**
+     * 启动后开始定时清理过期会话 (在后台线程里查，数据库连不上也不耽误启动)
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void startSweeper() {
+        sweeper.scheduleWithFixedDelay(this::sweepExpired, sweepMinutes, sweepMinutes, TimeUnit.MINUTES);
+    }
+
+    /**
+     * 清理过期会话：先把状态从 UPLOADING 抢成 EXPIRED (和合并 / 上传分片互斥)，抢到的再去取消 multipart upload
+     * @return 清理掉的会话数
+     */
+    int sweepExpired() {
+        int expired = 0;
+        try {
+            LocalDateTime cutoff = LocalDateTime.now().minusHours(ttlHours);
+            // 老会话没有 updatedAt，按创建时间算
+            Criteria stale = new Criteria().orOperator(Criteria.where("updatedAt").lt(cutoff),
+                    Criteria.where("updatedAt").is(null).and("createdAt").lt(cutoff));
+            Query due = Query.query(Criteria.where("status").is("UPLOADING").andOperator(stale)).limit(SWEEP_BATCH);
+            for (UploadSession session : mongoTemplate.find(due, UploadSession.class)) {
+                Query claim = Query.query(Criteria.where("_id").is(session.getId()).and("status").is("UPLOADING"))
+                        .addCriteria(new Criteria().andOperator(stale));
+                Update update = new Update().set("status", "EXPIRED").set("updatedAt", LocalDateTime.now());
+                if (mongoTemplate.updateFirst(claim, update, UploadSession.class).getModifiedCount() == 0) continue;
+                objectStore.abortMultipartUpload(session.getObjectName(), session.getUploadId());
+                expired++;
+            }
+            if (expired > 0) log.info("清理过期上传会话 {} 个", expired);
+        } catch (Exception e) {
+            log.warn("清理过期上传会话失败", e);
+        }
+        return expired;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sweeper.shutdownNow();
+    }
+
+    private UploadSession findSession(String sessionId) {
+        return sessionRepository.findById(sessionId).orElseThrow(() -> new RuntimeException("上传会话不存在"));
+    }
+
+    private static List<Integer> missingChunks(UploadSession session) {
+        List<Integer> missing = new ArrayList<>();
+        for (int i = 1; i <= session.getTotalChunks(); i++) {
+            if (!session.getParts().containsKey(String.valueOf(i))) missing.add(i);
+        }
+        return missing;
+    }
+
+    private static DocumentService.UploadRequest toUploadRequest(UploadSession session) {
+        DocumentService.UploadRequest request = new DocumentService.UploadRequest();
+        request.setShipId(session.getShipId());
+        request.setComponentId(session.getComponentId());
+        request.setTitle(session.getTitle());
+        request.setCategory(session.getCategory());
+        request.setFileName(session.getFileName());
+        request.setSha256(session.getSha256());
+        request.setMetadata(Map.of(
+                "uploaded_via", "Chunked API",
+                "original_name", session.getFileName()));
+        return request;
+    }
+
+    private static SessionVO toVO(UploadSession session) {
+        SessionVO vo = new SessionVO();
+        vo.setSessionId(session.getId());
+        vo.setStatus(session.getStatus());
+        vo.setChunkSize(session.getChunkSize());
+        vo.setTotalChunks(session.getTotalChunks());
+        vo.setDocIndexId(session.getDocIndexId());
+        List<Integer> received = new ArrayList<>();
+        session.getParts().keySet().forEach(k -> received.add(Integer.valueOf(k)));
+        received.sort(null);
+        vo.setReceivedChunks(received);
+        vo.setMissingChunks("COMPLETED".equals(session.getStatus()) ? List.of() : missingChunks(session));
+        return vo;
+    }
+
+    // --- DTO: 创建会话的参数 ---
+    @Data
+    public static class CreateSessionRequest {
+        private Long shipId;
+        private String componentId;
+        private String title;
+        private String category;
+        private String fileName;
+        private String contentType;
+        private Long totalSize;     // 文件总字节数
+        private Integer chunkSize;  // 分片大小 (可选，默认 8MB)
+        private String sha256;      // 内容哈希 (可选，合并后校验用)
+    }
+
+    // --- VO: 返回给前端的会话状态 ---
+    @Data
+    public static class SessionVO {
+        private String sessionId;
+        private String status;
+        private Integer chunkSize;
+        private Integer totalChunks;
+        private List<Integer> receivedChunks; // 已确认的分片
+        private List<Integer> missingChunks;  // 还缺的分片 (断点续传就补这些)
+        private Long docIndexId;
+    }
+}
@@ -0,0 +1,374 @@
+package com.university.shipmanager.service;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.text.csv.CsvData;
+import cn.hutool.core.text.csv.CsvReadConfig;
+import cn.hutool.core.text.csv.CsvRow;
+import cn.hutool.core.text.csv.CsvUtil;
+import cn.hutool.core.util.StrUtil;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.bulk.BulkWriteError;
+import com.university.shipmanager.common.MaterializedPath;
+import com.university.shipmanager.entity.mongo.ComponentDoc;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * BOM 批量导入 (船厂给的零件表，几万行)
+ * 1. 每行用外部编码 (code) 标识，parentCode 指向上级：可以是同一个文件里的行，也可以是库里这艘船已有的节点
+ * 2. 主键在内存里预先生成，祖先链 (ancestors) 一遍算完，不用逐行 findById 父节点
+ * 3. 找不到上级 (孤儿)、循环引用、编码重复的行在写库前就挑出来，连带它们下面的行一起报错
+ * 4. 按层级 (祖先链长度) 从上往下写，一批只放同一层的行 (最多 BATCH_SIZE 行)，一次无序批量 insert；
+ *    父节点一定在更早的批次里写完，写失败的父节点下面的行就不再写，不会留下挂在不存在节点上的子节点。
+ *    每写完一批回报一次进度和错误
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ComponentImportService {
+
+    public static final int BATCH_SIZE = 1000;
+    private static final int MAX_ROWS = 200_000;
+    private static final int LOOKUP_CHUNK = 1000;
+
+    private final MongoTemplate mongoTemplate;
+    private final ObjectMapper objectMapper;
+    private final BomTreeCache bomTreeCache;
+    private final ComponentRollupService rollupService;
+
+    public enum Format {
+        CSV, JSON;
+
+        /**
+         * 显式传了就用传的，否则看文件扩展名
+         */
+        public static Format of(String value, String fileName) {
+            String name = StrUtil.isNotBlank(value) ? value : StrUtil.nullToEmpty(FileUtil.extName(fileName));
+            try {
+                return valueOf(name.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("不支持的导入格式: " + name + " (可选 csv / json)");
+            }
+        }
+    }
+
+    /**
+     * 解析上传的文件
+     * CSV：表头必须有 code, parent_code, name, type，其余列都当作 specs (数字 / true / false 自动转类型，空值跳过)
+     * JSON：数组，每个元素 {code, parentCode, name, type, specs}
+     */
+    public List<BomRow> parse(InputStream in, Format format) throws IOException {
+        List<BomRow> rows = format == Format.CSV ? parseCsv(in) : parseJson(in);
+        if (rows.size() > MAX_ROWS) {
+            throw new IllegalArgumentException("一次最多导入 " + MAX_ROWS + " 行，当前 " + rows.size() + " 行");
+        }
+        return rows;
+    }
+
+    /**
+     * 导入
+     * @param dryRun   只校验不写库
+     * @param listener 校验完回调一次 (batch = 0)，之后每写完一批回调一次
+     */
+    public ImportSummary importRows(Long shipId, List<BomRow> rows, boolean dryRun, Consumer<BatchReport> listener) {
+        if (shipId == null) throw new IllegalArgumentException("shipId 不能为空");
+        Map<String, String> failed = new LinkedHashMap<>(); // code -> 原因
+        BatchReport validation = new BatchReport(0, rows.size());
+
+        // 1. 单行校验 + 文件内编码去重 (重复的以第一次出现为准)
+        Map<String, BomRow> byCode = new LinkedHashMap<>();
+        Map<String, Long> firstLine = new HashMap<>();
+        for (BomRow row : rows) {
+            String error = StrUtil.isBlank(row.getCode()) ? "code 不能为空"
+                    : firstLine.containsKey(row.getCode()) ? "编码重复 (第 " + firstLine.get(row.getCode()) + " 行已有)"
+                    : StrUtil.isBlank(row.getName()) || StrUtil.isBlank(row.getType()) ? "name 和 type 不能为空"
+                    : null;
+            if (StrUtil.isNotBlank(row.getCode())) firstLine.putIfAbsent(row.getCode(), row.getLine());
+            if (error == null) {
+                byCode.put(row.getCode(), row);
+            } else {
+                validation.addError(row, error);
+                if (StrUtil.isNotBlank(row.getCode()) && !byCode.containsKey(row.getCode())) failed.putIfAbsent(row.getCode(), error);
+            }
+        }
+
+        // 2. 一次性 (分块 $in) 查出库里已有的编码：文件里的编码不能和库里重复，parentCode 可以指向库里的节点
+        Set<String> lookup = new HashSet<>(byCode.keySet());
+        byCode.values().forEach(r -> { if (StrUtil.isNotBlank(r.getParentCode())) lookup.add(r.getParentCode()); });
+        Map<String, ComponentDoc> existing = findExisting(shipId, lookup);
+        for (BomRow row : new ArrayList<>(byCode.values())) {
+            if (existing.containsKey(row.getCode())) {
+                validation.addError(row, "编码在这艘船上已存在");
+                byCode.remove(row.getCode());
+                failed.put(row.getCode(), "编码在这艘船上已存在");
+            }
+        }
+
+        // 3. 内存里一遍算祖先链：顺着 parentCode 往上走到已解析的节点 / 库里的节点 / 根，再原路往下填
+        Map<String, ComponentDoc> resolved = new LinkedHashMap<>(); // 按先父后子的顺序
+        for (BomRow row : byCode.values()) {
+            if (resolved.containsKey(row.getCode()) || failed.containsKey(row.getCode())) continue;
+            Deque<BomRow> path = new ArrayDeque<>();
+            Set<String> onPath = new HashSet<>();
+            List<String> base = null;
+            String failure = null;
+            BomRow current = row;
+            while (true) {
+                path.push(current);
+                onPath.add(current.getCode());
+                String parentCode = current.getParentCode();
+                if (StrUtil.isBlank(parentCode)) {
+                    base = List.of();
+                } else if (resolved.containsKey(parentCode)) {
+                    base = childPath(resolved.get(parentCode));
+                } else if (existing.containsKey(parentCode)) {
+                    base = childPath(existing.get(parentCode)); // 挂到库里已有的节点下 (分批导入 / 补录)
+                } else if (failed.containsKey(parentCode)) {
+                    failure = "上级节点 " + parentCode + " 无法导入";
+                } else if (!byCode.containsKey(parentCode)) {
+                    failure = "找不到上级节点: " + parentCode; // 孤儿
+                } else if (onPath.contains(parentCode)) {
+                    failure = "循环引用: " + parentCode + " 是自己的下级";
+                } else {
+                    current = byCode.get(parentCode);
+                    continue;
+                }
+                break;
+            }
+            // 栈顶是这条链上最上面的一个
+            String top = path.peek().getCode();
+            while (!path.isEmpty()) {
+                BomRow r = path.pop();
+                if (failure != null) {
+                    String reason = r.getCode().equals(top) ? failure : "上级节点 " + top + " 无法导入 (" + failure + ")";
+                    failed.put(r.getCode(), reason);
+                    validation.addError(r, reason);
+                    continue;
+                }
+                ComponentDoc doc = toComponent(shipId, r, base);
+                resolved.put(r.getCode(), doc);
+                base = childPath(doc);
+            }
+        }
+        listener.accept(validation);
+
+        ImportSummary summary = new ImportSummary();
+        summary.setTotal(rows.size());
+        summary.setFailed(validation.getFailed());
+        summary.setDryRun(dryRun);
+        if (dryRun) {
+            summary.setValid(resolved.size());
+            return summary;
+        }
+
+        // 4. 按层分批写库：同一批里没有父子关系，某一行写失败，后面批次里挂在它下面的行也不写了
+        List<ComponentDoc> docs = new ArrayList<>(resolved.values());
+        docs.sort(Comparator.comparingInt(d -> d.getAncestors().size())); // 稳定排序，同一层里保持原来的顺序
+        Map<String, String> codeById = new HashMap<>();
+        docs.forEach(d -> codeById.put(d.getId(), d.getCode()));
+        Set<String> failedIds = new HashSet<>();
+        for (int from = 0, batchNo = 1; from < docs.size(); batchNo++) {
+            int depth = docs.get(from).getAncestors().size();
+            int to = from;
+            while (to < docs.size() && to - from < BATCH_SIZE && docs.get(to).getAncestors().size() == depth) to++;
+            List<ComponentDoc> batch = new ArrayList<>();
+            BatchReport report = new BatchReport(batchNo, to - from);
+            for (ComponentDoc doc : docs.subList(from, to)) {
+                if (doc.getParentId() != null && failedIds.contains(doc.getParentId())) {
+                    failedIds.add(doc.getId());
+                    report.addError(byCode.get(doc.getCode()), "上级节点 " + codeById.get(doc.getParentId()) + " 写入失败");
+                } else {
+                    batch.add(doc);
+                }
+            }
+            insertBatch(batch, report, failedIds, byCode);
+            from = to;
+            summary.setInserted(summary.getInserted() + report.getInserted());
+            summary.setFailed(summary.getFailed() + report.getFailed());
+            listener.accept(report);
+        }
+
+        if (summary.getInserted() > 0) {
+            bomTreeCache.evictShip(shipId); // 一次进来几万个节点，直接让缓存整船重载
+            // 新节点自己的汇总从 0 开始，祖先 (库里已有的 + 这次导入的) 按写成功的节点加子孙数
+            rollupService.onImported(shipId, docs.stream().filter(d -> !failedIds.contains(d.getId())).toList());
+        }
+        log.info("BOM 导入完成: shipId={}, 总行数={}, 成功={}, 失败={}", shipId, summary.getTotal(), summary.getInserted(), summary.getFailed());
+        return summary;
+    }
+
+    /**
+     * 一批一次无序 insertMany：个别行失败 (比如 (shipId, code) 唯一索引冲突) 不影响同批其它行
+     * 同一批都是同一层的节点，互相之间没有依赖
+     */
+    private void insertBatch(List<ComponentDoc> batch, BatchReport report, Set<String> failedIds, Map<String, BomRow> byCode) {
+        if (batch.isEmpty()) return;
+        try {
+            mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ComponentDoc.class).insert(batch).execute();
+            report.setInserted(batch.size());
+        } catch (BulkOperationException e) {
+            for (BulkWriteError error : e.getErrors()) {
+                ComponentDoc doc = batch.get(error.getIndex());
+                failedIds.add(doc.getId());
+                report.addError(byCode.get(doc.getCode()), error.getMessage());
+            }
+            report.setInserted(batch.size() - e.getErrors().size());
+        } catch (Exception e) {
+            log.error("BOM 导入第 {} 批写入失败", report.getBatch(), e);
+            for (ComponentDoc doc : batch) {
+                failedIds.add(doc.getId());
+                report.addError(byCode.get(doc.getCode()), "写入失败: " + e.getMessage());
+            }
+        }
+    }
+
+    private Map<String, ComponentDoc> findExisting(Long shipId, Set<String> codes) {
+        Map<String, ComponentDoc> existing = new HashMap<>();
+        List<String> all = new ArrayList<>(codes);
+        for (int from = 0; from < all.size(); from += LOOKUP_CHUNK) {
+            Query query = Query.query(Criteria.where("shipId").is(shipId)
+                    .and("code").in(all.subList(from, Math.min(from + LOOKUP_CHUNK, all.size()))));
+            query.fields().include("code", "ancestors");
+            for (ComponentDoc doc : mongoTemplate.find(query, ComponentDoc.class)) {
+                existing.putIfAbsent(doc.getCode(), doc);
+            }
+        }
+        return existing;
+    }
+
+    /**
+     * 子节点的祖先链 = 父节点的祖先链 + 父节点
+     */
+    private static List<String> childPath(ComponentDoc parent) {
+        List<String> path = new ArrayList<>(parent.getAncestors() == null ? List.of() : parent.getAncestors());
+        path.add(parent.getId());
+        return path;
+    }
+
+    private static ComponentDoc toComponent(Long shipId, BomRow row, List<String> ancestors) {
+        ComponentDoc doc = new ComponentDoc();
+        doc.setId(new ObjectId().toHexString()); // 主键先在内存里定好，子节点的祖先链才能直接算
+        doc.setShipId(shipId);
+        doc.setCode(row.getCode());
+        doc.setName(row.getName());
+        doc.setType(row.getType());
+        doc.setSpecs(row.getSpecs());
+        doc.setRollup(ComponentDoc.Rollup.of(0, 0, 0));
+        doc.setAncestors(new ArrayList<>(ancestors));
+        doc.setPath(MaterializedPath.encode(ancestors, doc.getId()));
+        doc.setParentId(ancestors.isEmpty() ? null : ancestors.get(ancestors.size() - 1));
+        return doc;
+    }
+
+    private List<BomRow> parseCsv(InputStream in) {
+        CsvReadConfig config = CsvReadConfig.defaultConfig();
+        config.setContainsHeader(true);
+        config.setSkipEmptyRows(true);
+        config.setTrimField(true);
+        CsvData data = CsvUtil.getReader(config).read(new InputStreamReader(in, StandardCharsets.UTF_8));
+
+        List<BomRow> rows = new ArrayList<>();
+        for (CsvRow csvRow : data.getRows()) {
+            BomRow row = new BomRow();
+            row.setLine(csvRow.getOriginalLineNumber() + 1);
+            Map<String, Object> specs = new LinkedHashMap<>();
+            csvRow.getFieldMap().forEach((header, value) -> {
+                String key = StrUtil.removePrefix(header, "\uFEFF").trim(); // Excel 导出的 CSV 带 BOM
+                switch (key.toLowerCase(Locale.ROOT)) {
+                    case "code" -> row.setCode(StrUtil.emptyToNull(value));
+                    case "parent_code", "parentcode" -> row.setParentCode(StrUtil.emptyToNull(value));
+                    case "name" -> row.setName(value);
+                    case "type" -> row.setType(value);
+                    default -> { if (StrUtil.isNotBlank(value)) specs.put(key, typed(value)); }
+                }
+            });
+            row.setSpecs(specs);
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private List<BomRow> parseJson(InputStream in) throws IOException {
+        List<BomRow> rows = objectMapper.readValue(in, new TypeReference<List<BomRow>>() {});
+        for (int i = 0; i < rows.size(); i++) rows.get(i).setLine(i + 1);
+        return rows;
+    }
+
+    /**
+     * CSV 里都是字符串：像数字的转成数字，true / false 转布尔，方便以后按参数范围查询
+     */
+    static Object typed(String value) {
+        if ("true".equalsIgnoreCase(value) || "false".equalsIgnoreCase(value)) return Boolean.parseBoolean(value);
+        if (value.matches("-?\\d{1,18}")) return Long.parseLong(value);
+        if (value.matches("-?\\d+\\.\\d+")) return Double.parseDouble(value);
+        return value;
+    }
+
+    // --- DTO ---
+    @Data
+    public static class BomRow {
+        private long line;          // 第几行 (CSV 按文件行号，JSON 按数组下标 + 1)，报错用
+        private String code;
+        private String parentCode;  // 为空表示根节点
+        private String name;
+        private String type;
+        private Map<String, Object> specs;
+    }
+
+    @Data
+    public static class BatchReport {
+        private int batch;          // 0 = 写库前的校验结果
+        private int rows;
+        private int inserted;
+        private int failed;
+        private List<RowError> errors = new ArrayList<>();
+
+        BatchReport(int batch, int rows) {
+            this.batch = batch;
+            this.rows = rows;
+        }
+
+        void addError(BomRow row, String message) {
+            errors.add(new RowError(row == null ? 0 : row.getLine(), row == null ? null : row.getCode(), message));
+            failed++;
+        }
+    }
+
+    public record RowError(long line, String code, String message) {
+    }
+
+    @Data
+    public static class ImportSummary {
+        private int total;
+        private int inserted;
+        private int failed;
+        private int valid;          // dryRun 时：校验通过的行数
+        private boolean dryRun;
+    }
+}
@@ -0,0 +1,268 @@
+package com.university.shipmanager.service;
+
+import com.university.shipmanager.entity.mongo.ComponentDoc;
+import com.university.shipmanager.entity.mongo.ShipDocument;
+import com.university.shipmanager.entity.mysql.DocIndex;
+import com.university.shipmanager.mapper.DocIndexMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cursor.Cursor;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * BOM 节点的子树汇总 (ComponentDoc.rollup)：文档数 / 存储字节数 / 子孙节点数
+ * 增量维护：上传文档 / 新版本、建节点、移动、删子树时，把变化量沿祖先链 $inc 上去
+ *   变化量相同的节点合成一条 updateMulti ($in)，一次上传就是一条语句；不同的才拆成 bulk
+ * 汇总是派生数据：更新失败只记日志不影响主流程，并发写造成的偏差也一样，按船跑一次 rebuildShip 就修好了
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ComponentRollupService {
+
+    private static final int REBUILD_BATCH_SIZE = 500;
+    private static final int WRITE_BATCH_SIZE = 1000;
+
+    private final MongoTemplate mongoTemplate;
+    private final DocIndexMapper docIndexMapper;
+    private final BomTreeCache bomTreeCache;
+
+    /**
+     * 新建了一批文档 (单个上传 / 批量导入)
+     * @param storedBytes 和 docs 一一对应，每个文档第一个版本的存储字节数
+     */
+    public void onDocumentsAdded(List<DocIndex> docs, List<Long> storedBytes) {
+        Map<String, ComponentDoc.Rollup> byComponent = new HashMap<>();
+        for (int i = 0; i < docs.size(); i++) {
+            String componentId = docs.get(i).getComponentId();
+            if (componentId == null) continue; // 没挂在零件上的文档不进汇总
+            byComponent.merge(componentId, ComponentDoc.Rollup.of(1, bytes(storedBytes.get(i)), 0), ComponentDoc.Rollup::plus);
+        }
+        addAlongPaths(byComponent);
+    }
+
+    /**
+     * 已有文档传了新版本：只加字节数
+     */
+    public void onVersionAdded(String componentId, Long storedBytes) {
+        if (componentId == null) return;
+        addAlongPaths(Map.of(componentId, ComponentDoc.Rollup.of(0, bytes(storedBytes), 0)));
+    }
+
+    /**
+     * 新建节点：祖先的子孙数 + 1 (祖先链就在节点上，不用再查)
+     */
+    public void onCreated(ComponentDoc saved) {
+        Map<String, ComponentDoc.Rollup> deltas = new HashMap<>();
+        ComponentDoc.Rollup one = ComponentDoc.Rollup.of(0, 0, 1);
+        for (String ancestor : ancestorsOf(saved)) deltas.put(ancestor, one);
+        apply(saved.getShipId(), deltas);
+    }
+
+    /**
+     * 批量导入了一批节点：每个节点给它的每个祖先 (库里已有的 + 同批导入的) 记一个子孙
+     */
+    public void onImported(Long shipId, Collection<ComponentDoc> inserted) {
+        Map<String, ComponentDoc.Rollup> deltas = new HashMap<>();
+        ComponentDoc.Rollup one = ComponentDoc.Rollup.of(0, 0, 1);
+        for (ComponentDoc doc : inserted) {
+            for (String ancestor : ancestorsOf(doc)) deltas.merge(ancestor, one, ComponentDoc.Rollup::plus);
+        }
+        apply(shipId, deltas);
+    }
+
+    /**
+     * 移动子树：整棵子树的汇总从旧祖先上减掉、加到新祖先上；新旧共有的祖先不变，不用写
+     * @param node        移动前的节点 (带旧祖先链和它自己的汇总)
+     * @param descendants 子孙数 (移动时已经 count 过)
+     */
+    public void onMoved(ComponentDoc node, List<String> newAncestors, long descendants) {
+        ComponentDoc.Rollup subtree = subtreeOf(node, descendants);
+        Set<String> oldAncestors = new HashSet<>(ancestorsOf(node));
+        Map<String, ComponentDoc.Rollup> deltas = new HashMap<>();
+        for (String ancestor : oldAncestors) {
+            if (!newAncestors.contains(ancestor)) deltas.put(ancestor, subtree.negate());
+        }
+        for (String ancestor : newAncestors) {
+            if (!oldAncestors.contains(ancestor)) deltas.put(ancestor, subtree);
+        }
+        apply(node.getShipId(), deltas);
+    }
+
+    /**
+     * 删了一棵子树 (连同上面的文档)：祖先减掉整棵子树的汇总
+     */
+    public void onSubtreeDeleted(ComponentDoc root, long descendants) {
+        ComponentDoc.Rollup removed = subtreeOf(root, descendants).negate();
+        Map<String, ComponentDoc.Rollup> deltas = new HashMap<>();
+        for (String ancestor : ancestorsOf(root)) deltas.put(ancestor, removed);
+        apply(root.getShipId(), deltas);
+    }
+
+    /**
+     * 按船全量重建 (老数据补齐 / 修偏差)
+     * 节点只查 _id + ancestors；文档按主键流式读 MySQL，每批一次 Mongo $in 只取版本大小；最后按节点批量覆盖
+     * @return 重建的节点数
+     */
+    @Transactional(readOnly = true) // 流式游标要在事务里
+    public int rebuildShip(Long shipId) {
+        Query nodeQuery = Query.query(Criteria.where("shipId").is(shipId));
+        nodeQuery.fields().include("ancestors");
+        List<ComponentDoc> nodes = mongoTemplate.find(nodeQuery, ComponentDoc.class);
+        Map<String, long[]> totals = new LinkedHashMap<>(); // id -> {docCount, storedBytes, descendantCount}
+        for (ComponentDoc node : nodes) totals.put(node.getId(), new long[3]);
+        for (ComponentDoc node : nodes) {
+            for (String ancestor : ancestorsOf(node)) {
+                long[] total = totals.get(ancestor);
+                if (total != null) total[2]++;
+            }
+        }
+
+        Map<String, ComponentDoc> byId = new HashMap<>();
+        nodes.forEach(n -> byId.put(n.getId(), n));
+        List<DocIndex> batch = new ArrayList<>(REBUILD_BATCH_SIZE);
+        try (Cursor<DocIndex> cursor = docIndexMapper.streamByShipId(shipId)) {
+            for (DocIndex doc : cursor) {
+                if (doc.getComponentId() == null || doc.getMongoDocId() == null) continue;
+                batch.add(doc);
+                if (batch.size() == REBUILD_BATCH_SIZE) {
+                    accumulate(batch, byId, totals);
+                    batch.clear();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        accumulate(batch, byId, totals);
+
+        List<Map.Entry<String, long[]>> entries = new ArrayList<>(totals.entrySet());
+        for (int from = 0; from < entries.size(); from += WRITE_BATCH_SIZE) {
+            BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ComponentDoc.class);
+            for (Map.Entry<String, long[]> entry : entries.subList(from, Math.min(from + WRITE_BATCH_SIZE, entries.size()))) {
+                long[] t = entry.getValue();
+                bulk.updateOne(Query.query(Criteria.where("_id").is(entry.getKey())),
+                        new Update().set("rollup", ComponentDoc.Rollup.of(t[0], t[1], t[2])));
+            }
+            bulk.execute();
+        }
+        bomTreeCache.evictShip(shipId);
+        log.info("子树汇总重建完成: shipId={}, 节点数={}", shipId, nodes.size());
+        return nodes.size();
+    }
+
+    /**
+     * 一批文档：一次 $in 取版本大小，加到所在节点和它的全部祖先上
+     */
+    private void accumulate(List<DocIndex> docs, Map<String, ComponentDoc> byId, Map<String, long[]> totals) {
+        if (docs.isEmpty()) return;
+        Query query = Query.query(Criteria.where("_id").in(docs.stream().map(DocIndex::getMongoDocId).toList()));
+        query.fields().include("versions.storedSize", "versions.fileSize");
+        Map<String, Long> bytesByMongoId = new HashMap<>();
+        for (ShipDocument mongoDoc : mongoTemplate.find(query, ShipDocument.class)) {
+            long sum = 0;
+            if (mongoDoc.getVersions() != null) {
+                for (ShipDocument.DocVersion v : mongoDoc.getVersions()) {
+                    sum += bytes(v.getStoredSize() != null ? v.getStoredSize() : v.getFileSize()); // 老数据没有 storedSize
+                }
+            }
+            bytesByMongoId.put(mongoDoc.getId(), sum);
+        }
+        for (DocIndex doc : docs) {
+            ComponentDoc node = byId.get(doc.getComponentId());
+            if (node == null) continue; // 零件已经不在了
+            long size = bytesByMongoId.getOrDefault(doc.getMongoDocId(), 0L);
+            List<String> path = new ArrayList<>(ancestorsOf(node));
+            path.add(node.getId());
+            for (String id : path) {
+                long[] total = totals.get(id);
+                if (total == null) continue;
+                total[0]++;
+                total[1] += size;
+            }
+        }
+    }
+
+    /**
+     * 节点自己 + 全部祖先都加上这个节点的变化量 (一次 $in 查出这些节点的祖先链)
+     */
+    private void addAlongPaths(Map<String, ComponentDoc.Rollup> byComponent) {
+        if (byComponent.isEmpty()) return;
+        Query query = Query.query(Criteria.where("_id").in(byComponent.keySet()));
+        query.fields().include("shipId", "ancestors");
+        Map<Long, Map<String, ComponentDoc.Rollup>> byShip = new HashMap<>();
+        try {
+            for (ComponentDoc component : mongoTemplate.find(query, ComponentDoc.class)) {
+                ComponentDoc.Rollup delta = byComponent.get(component.getId());
+                Map<String, ComponentDoc.Rollup> deltas = byShip.computeIfAbsent(component.getShipId(), k -> new HashMap<>());
+                deltas.merge(component.getId(), delta, ComponentDoc.Rollup::plus);
+                for (String ancestor : ancestorsOf(component)) deltas.merge(ancestor, delta, ComponentDoc.Rollup::plus);
+            }
+        } catch (Exception e) {
+            log.warn("子树汇总更新失败 (零件 {} 个)，可以按船重建", byComponent.size(), e);
+            return;
+        }
+        byShip.forEach(this::apply);
+    }
+
+    /**
+     * 写库：变化量一样的节点一条 updateMulti，最后同步到 BOM 树缓存
+     */
+    private void apply(Long shipId, Map<String, ComponentDoc.Rollup> deltas) {
+        Map<ComponentDoc.Rollup, List<String>> groups = new HashMap<>();
+        deltas.forEach((id, delta) -> {
+            if (!delta.equals(ComponentDoc.Rollup.of(0, 0, 0))) groups.computeIfAbsent(delta, k -> new ArrayList<>()).add(id);
+        });
+        if (groups.isEmpty()) return;
+        try {
+            if (groups.size() == 1) {
+                Map.Entry<ComponentDoc.Rollup, List<String>> only = groups.entrySet().iterator().next();
+                mongoTemplate.updateMulti(Query.query(Criteria.where("_id").in(only.getValue())), inc(only.getKey()), ComponentDoc.class);
+            } else {
+                BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ComponentDoc.class);
+                groups.forEach((delta, ids) -> bulk.updateMulti(Query.query(Criteria.where("_id").in(ids)), inc(delta)));
+                bulk.execute();
+            }
+        } catch (Exception e) {
+            log.warn("子树汇总更新失败: shipId={}, 节点 {} 个，可以按船重建", shipId, deltas.size(), e);
+            return;
+        }
+        bomTreeCache.onRollup(shipId, deltas);
+    }
+
+    private static Update inc(ComponentDoc.Rollup delta) {
+        return new Update()
+                .inc("rollup.docCount", delta.getDocCount())
+                .inc("rollup.storedBytes", delta.getStoredBytes())
+                .inc("rollup.descendantCount", delta.getDescendantCount());
+    }
+
+    private static ComponentDoc.Rollup subtreeOf(ComponentDoc root, long descendants) {
+        ComponentDoc.Rollup own = root.getRollup() != null ? root.getRollup() : ComponentDoc.Rollup.of(0, 0, 0);
+        return ComponentDoc.Rollup.of(own.getDocCount(), own.getStoredBytes(), descendants + 1); // 子树里的节点数含自己
+    }
+
+    private static List<String> ancestorsOf(ComponentDoc doc) {
+        return doc.getAncestors() == null ? List.of() : doc.getAncestors();
+    }
+
+    private static long bytes(Long value) {
+        return value == null ? 0 : value;
+    }
+}
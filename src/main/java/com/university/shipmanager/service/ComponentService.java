@@ -1,31 +1,70 @@
 package com.university.shipmanager.service;
 
-import cn.hutool.core.collection.CollUtil;
-import cn.hutool.core.lang.tree.Tree;
-import cn.hutool.core.lang.tree.TreeNodeConfig;
-import cn.hutool.core.lang.tree.TreeUtil;
 import cn.hutool.core.util.StrUtil;
+import com.mongodb.client.result.UpdateResult;
+import com.university.shipmanager.common.MaterializedPath;
 import com.university.shipmanager.entity.mongo.AuditLog;
 import com.university.shipmanager.entity.mongo.ComponentDoc;
-import com.university.shipmanager.repository.AuditLogRepository;
 import com.university.shipmanager.repository.ComponentRepository;
+import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationExpression;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class ComponentService {
 
+    private static final int MAX_CHILD_PAGE_SIZE = 500;
+    private static final int MAX_PREFETCH_DEPTH = 3;
+    private static final int PREFETCH_CHILDREN = 20; // 预取时每个节点最多带多少个孩子，多的让前端自己翻页
+    private static final int MAX_MOVE_SUBTREE = 100_000; // 一次移动最多带多少个子孙 (单条更新语句的规模上限)
+    static final String SUBTREE_BY_ANCESTORS = "ancestors";
+    static final String SUBTREE_BY_PATH = "path";
+
+    // 路径串 = $reduce 把祖先链拼起来 + 自己的 _id，和 MaterializedPath.encode 算出来的一样
+    // 移动子孙 / 老数据回填都用它，在服务端按 (已经改好的) ancestors 重新算 path
+    private static final AggregationExpression PATH_FROM_ANCESTORS = context -> new Document("$concat", List.of(
+            new Document("$reduce", new Document("input", new Document("$ifNull", List.of("$ancestors", List.of())))
+                    .append("initialValue", "")
+                    .append("in", new Document("$concat", List.of("$$value", "$$this")))),
+            new Document("$toString", "$_id")));
+
     private final ComponentRepository componentRepository;
     private final DocumentService documentService;
-    private final AuditLogRepository auditLogRepository; // 【修复】注入日志库
+    private final AuditLogWriter auditLogWriter; // 【优化】审计日志异步批量写
+    private final BomTreeCache bomTreeCache; // 【新增】按船缓存的 BOM 树，写操作同步增量更新
+    private final MongoTemplate mongoTemplate;
+    private final ComponentRollupService rollupService; // 【新增】子树汇总 (文档数 / 字节数 / 子孙数)
+    private final ShipTombstones shipTombstones; // 【新增】整船删除中的船，按节点 ID 也读写不到
+
+    // 【新增】子树查询走哪个索引：ancestors (多键) / path (路径串区间)，见 application.yml 的 bom.subtree-index
+    @Value("${bom.subtree-index:" + SUBTREE_BY_ANCESTORS + "}")
+    private String subtreeIndex = SUBTREE_BY_ANCESTORS;
 
     public ComponentDoc createComponent(Long shipId, String name, String type, String parentId, Map<String, Object> specs) {
         log.info("Service层开始处理: name={}, parentId={}", name, parentId);
@@ -37,10 +76,12 @@ public class ComponentService {
         }
 
         ComponentDoc component = new ComponentDoc();
+        component.setId(new ObjectId().toHexString()); // 主键先定好，路径串里要用
         component.setShipId(shipId);
         component.setName(name);
         component.setType(type);
         component.setSpecs(specs);
+        component.setRollup(ComponentDoc.Rollup.of(0, 0, 0));
 
         // 2. 树形逻辑处理
         if (parentId != null) {
@@ -68,40 +109,165 @@ public class ComponentService {
             component.setAncestors(new ArrayList<>());
         }
 
+        component.setPath(MaterializedPath.encode(component.getAncestors(), component.getId()));
+
         // 3. 保存
         ComponentDoc saved = componentRepository.save(component);
         log.info("保存到 MongoDB 成功! ID: {}", saved.getId());
+        bomTreeCache.onCreated(saved);
+        rollupService.onCreated(saved);
         return saved;
     }
 
-    public List<Tree<String>> getShipBomTree(Long shipId) {
-        List<ComponentDoc> allComponents = componentRepository.findByShipId(shipId);
-        if (CollUtil.isEmpty(allComponents)) return new ArrayList<>();
-        TreeNodeConfig config = new TreeNodeConfig();
-        config.setIdKey("id");
-        config.setParentIdKey("parentId");
-        config.setNameKey("name");
-        config.setDeep(5);
-        return TreeUtil.build(allComponents, null, config, (component, treeNode) -> {
-            treeNode.setId(component.getId());
-            treeNode.setParentId(component.getParentId());
-            treeNode.setName(component.getName());
-            treeNode.putExtra("type", component.getType());
-            treeNode.putExtra("specs", component.getSpecs());
-        });
+    /**
+     * 【优化】整船 BOM 树走缓存：只有第一次 (或被淘汰后) 才整船查 Mongo，写操作直接改缓存里的节点
+     * 返回的 BomTree 由调用方直接流式写成 JSON
+     */
+    public BomTree getShipBomTree(Long shipId) {
+        return bomTreeCache.getTree(shipId, () -> componentRepository.findByShipId(shipId));
+    }
+
+    /**
+     * 【新增】懒加载树：一次只返回一层 (分页)，每个节点带子节点数，前端点开再取下一层
+     * 查询次数和整棵树多大无关：这一层一次分页查询 + 每往下一层一次 count 聚合 (+ 一次 $in 预取)
+     * @param parentId 为空 (或 "root") 表示取这艘船的根节点
+     * @param depth    1 = 只要这一层；N = 顺便往下预取 N-1 层，首屏一次拿够
+     */
+    public ChildPage getChildren(Long shipId, String parentId, int page, int size, int depth) {
+        if (page < 0) throw new IllegalArgumentException("page 不能小于 0");
+        if (size < 1 || size > MAX_CHILD_PAGE_SIZE) throw new IllegalArgumentException("size 必须在 1 ~ " + MAX_CHILD_PAGE_SIZE + " 之间");
+        if (depth < 1 || depth > MAX_PREFETCH_DEPTH) throw new IllegalArgumentException("depth 必须在 1 ~ " + MAX_PREFETCH_DEPTH + " 之间");
+        boolean roots = StrUtil.isBlank(parentId) || "root".equals(parentId);
+        if (roots && shipId == null) throw new IllegalArgumentException("取根节点时 shipId 不能为空");
+
+        Pageable pageable = PageRequest.of(page, size, Sort.by("_id")); // 按 _id 排，翻页稳定，也就是创建顺序
+        Page<ComponentDoc> result = roots
+                ? componentRepository.findByShipIdAndParentIdIsNull(shipId, pageable)
+                : componentRepository.findByParentId(parentId, pageable);
+
+        List<LazyNode> level = result.getContent().stream().map(LazyNode::of).toList();
+        ChildPage childPage = ChildPage.of(roots ? null : parentId, result.getTotalElements(), page, size, level);
+        for (int d = 1; d <= depth && !level.isEmpty(); d++) {
+            fillChildCounts(level);
+            if (d < depth) level = prefetchChildren(level);
+        }
+        return childPage;
+    }
+
+    /**
+     * 一次聚合算出这一层每个节点的直接子节点数 (parentId 有索引)
+     */
+    private void fillChildCounts(List<LazyNode> nodes) {
+        List<String> ids = nodes.stream().map(LazyNode::getId).toList();
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("parentId").in(ids)),
+                Aggregation.group("parentId").count().as("count"));
+        Map<String, Long> counts = new HashMap<>();
+        for (Document row : mongoTemplate.aggregate(aggregation, ComponentDoc.class, Document.class).getMappedResults()) {
+            counts.put(row.getString("_id"), ((Number) row.get("count")).longValue());
+        }
+        for (LazyNode node : nodes) {
+            node.setChildCount(counts.getOrDefault(node.getId(), 0L));
+            node.setHasChildren(node.getChildCount() > 0);
+        }
     }
 
+    /**
+     * 预取下一层：孩子不多的节点一次 $in 全取回来；孩子特别多的 (宽节点) 单独只取第一页，不把整层拖回来
+     * @return 下一层的全部节点
+     */
+    private List<LazyNode> prefetchChildren(List<LazyNode> parents) {
+        List<String> narrow = parents.stream()
+                .filter(p -> p.isHasChildren() && p.getChildCount() <= PREFETCH_CHILDREN)
+                .map(LazyNode::getId).toList();
+        Map<String, List<ComponentDoc>> byParent = new HashMap<>();
+        if (!narrow.isEmpty()) {
+            Query query = Query.query(Criteria.where("parentId").in(narrow)).with(Sort.by("_id"));
+            for (ComponentDoc child : mongoTemplate.find(query, ComponentDoc.class)) {
+                byParent.computeIfAbsent(child.getParentId(), k -> new ArrayList<>()).add(child);
+            }
+        }
+
+        List<LazyNode> next = new ArrayList<>();
+        for (LazyNode parent : parents) {
+            if (!parent.isHasChildren()) continue;
+            List<ComponentDoc> children = parent.getChildCount() <= PREFETCH_CHILDREN
+                    ? byParent.getOrDefault(parent.getId(), List.of())
+                    : mongoTemplate.find(Query.query(Criteria.where("parentId").is(parent.getId()))
+                            .with(Sort.by("_id")).limit(PREFETCH_CHILDREN), ComponentDoc.class);
+            List<LazyNode> childNodes = children.stream().map(LazyNode::of).toList();
+            parent.setChildren(ChildPage.of(parent.getId(), parent.getChildCount(), 0, PREFETCH_CHILDREN, childNodes));
+            next.addAll(childNodes);
+        }
+        return next;
+    }
+
+    /**
+     * 只 $set 这几个字段：整条 save 会把读出来之后别人 $inc 过的 rollup 覆盖回旧值
+     */
     public ComponentDoc updateComponent(String id, String name, String type, Map<String, Object> specs) {
         if (StrUtil.isBlank(name) || StrUtil.isBlank(type)) throw new IllegalArgumentException("名称和类型不能为空");
-        ComponentDoc doc = componentRepository.findById(id).orElseThrow(() -> new RuntimeException("节点不存在"));
-        doc.setName(name);
-        doc.setType(type);
-        if (specs != null) doc.setSpecs(specs);
-        return componentRepository.save(doc);
+        shipTombstones.checkWritable(getShipIdOf(id));
+        Update update = new Update().set("name", name).set("type", type).set("updatedAt", LocalDateTime.now());
+        if (specs != null) update.set("specs", specs);
+        ComponentDoc saved = mongoTemplate.findAndModify(Query.query(Criteria.where("_id").is(id)), update,
+                FindAndModifyOptions.options().returnNew(true), ComponentDoc.class);
+        if (saved == null) throw new RuntimeException("节点不存在");
+        bomTreeCache.onUpdated(saved);
+        return saved;
+    }
+
+    /**
+     * 节点属于哪艘船 (只取 shipId 一个字段)，节点不存在返回 null
+     */
+    public Long getShipIdOf(String componentId) {
+        Query query = Query.query(Criteria.where("_id").is(componentId));
+        query.fields().include("shipId");
+        ComponentDoc doc = mongoTemplate.findOne(query, ComponentDoc.class);
+        return doc == null ? null : doc.getShipId();
     }
 
     public List<ComponentDoc> getSubTree(String systemId) {
-        return componentRepository.findByAncestorsContaining(systemId);
+        List<ComponentDoc> subtree;
+        if (!usePath()) {
+            subtree = componentRepository.findByAncestorsContaining(systemId);
+        } else {
+            ComponentDoc root = componentRepository.findById(systemId).orElse(null);
+            if (root == null) return List.of();
+            subtree = mongoTemplate.find(subtreeQuery(root), ComponentDoc.class);
+        }
+        if (!subtree.isEmpty()) shipTombstones.checkReadable(subtree.get(0).getShipId()); // 整棵子树都在同一艘船上
+        return subtree;
+    }
+
+    /**
+     * 【新增】回填路径串：老数据 (没有 path 的) 按 ancestors 在服务端一条 pipeline update 算出来
+     * 切到 bom.subtree-index=path 之前每艘船跑一次；之后的写操作都会顺手维护 path
+     * @return 回填了多少个节点
+     */
+    public long rebuildPaths(Long shipId) {
+        if (shipId == null) throw new IllegalArgumentException("shipId 不能为空");
+        UpdateResult result = mongoTemplate.updateMulti(
+                Query.query(Criteria.where("shipId").is(shipId).and("path").exists(false)),
+                AggregationUpdate.update().set("path").toValue(PATH_FROM_ANCESTORS), ComponentDoc.class);
+        bomTreeCache.evictShip(shipId);
+        log.info("船 {} 回填路径串 {} 个节点", shipId, result.getModifiedCount());
+        return result.getModifiedCount();
+    }
+
+    /**
+     * 某个节点的全部子孙 (不含自己)
+     * path 策略：path 索引上的一段区间 (P, P + "g")；节点还没有 path (老数据没回填) 时退回 ancestors
+     */
+    private Query subtreeQuery(ComponentDoc node) {
+        if (usePath() && node.getPath() != null) {
+            return Query.query(Criteria.where("path").gt(node.getPath()).lt(MaterializedPath.upperBound(node.getPath())));
+        }
+        return Query.query(Criteria.where("ancestors").is(node.getId()));
+    }
+
+    private boolean usePath() {
+        return SUBTREE_BY_PATH.equals(subtreeIndex);
     }
 
     /**
@@ -110,7 +276,10 @@ public class ComponentService {
     @Transactional
     public void deleteComponentAndChildren(String componentId) {
         ComponentDoc self = componentRepository.findById(componentId).orElseThrow(() -> new RuntimeException("节点不存在"));
-        List<ComponentDoc> children = componentRepository.findByAncestorsContaining(componentId);
+        shipTombstones.checkWritable(self.getShipId());
+        List<ComponentDoc> children = usePath()
+                ? mongoTemplate.find(subtreeQuery(self), ComponentDoc.class)
+                : componentRepository.findByAncestorsContaining(componentId);
 
         List<String> allIdsToDelete = new ArrayList<>();
         allIdsToDelete.add(self.getId());
@@ -123,6 +292,8 @@ public class ComponentService {
 
         // 2. 删零件
         componentRepository.deleteAllById(allIdsToDelete);
+        bomTreeCache.onDeleted(self.getShipId(), allIdsToDelete);
+        rollupService.onSubtreeDeleted(self, children.size());
 
         // 3. 【修复】记录“删除零件”的审计日志 (之前只记录了删文档)
         AuditLog auditLog = new AuditLog();
@@ -131,7 +302,7 @@ public class ComponentService {
         auditLog.setTargetName(self.getName() + " (及其子节点)");
         auditLog.setOperator("admin");
         auditLog.setDetail("删除了节点ID: " + componentId + ", 影响节点数: " + allIdsToDelete.size());
-        auditLogRepository.save(auditLog); // 保存到 Mongo
+        auditLogWriter.submit(auditLog); // 后台批量写到 Mongo
     }
 
     /**
@@ -140,6 +311,7 @@ public class ComponentService {
     @Transactional
     public void moveComponent(String id, String newParentId) {
         ComponentDoc node = componentRepository.findById(id).orElseThrow(() -> new RuntimeException("节点不存在"));
+        shipTombstones.checkWritable(node.getShipId());
 
         // 1. 计算新祖先
         List<String> newAncestors = new ArrayList<>();
@@ -149,9 +321,13 @@ public class ComponentService {
             // A. 移动到某个父节点下
             ComponentDoc newParent = componentRepository.findById(newParentId)
                     .orElseThrow(() -> new RuntimeException("目标父节点不存在"));
-            if (newParent.getAncestors() != null && newParent.getAncestors().contains(id)) {
+            // 防环：目标就是自己，或者目标的祖先链里有自己 (= 目标在自己的子树里)
+            if (id.equals(newParentId) || (newParent.getAncestors() != null && newParent.getAncestors().contains(id))) {
                 throw new RuntimeException("不能把自己移动到自己的子节点下！");
             }
+            if (!Objects.equals(newParent.getShipId(), node.getShipId())) {
+                throw new RuntimeException("不能把节点移动到别的船下");
+            }
             if (newParent.getAncestors() != null) {
                 newAncestors.addAll(newParent.getAncestors());
             }
@@ -163,30 +339,37 @@ public class ComponentService {
             actualParentId = null;
         }
 
-        // 2. 更新自己
-        node.setParentId(actualParentId);
-        node.setAncestors(newAncestors);
-        componentRepository.save(node);
-
-        // 3. 更新子孙 (逻辑简化：重新计算所有子孙的路径)
-        // 这里的逻辑稍微复杂，为了 Demo 稳定，我们假设子孙跟随移动。
-        // 生产环境通常需要递归更新子孙的 ancestors。
-        // 简单修复：如果只是 Demo 演示，只要 TreeUtil 重新构建时 parentId 对了，树就能显示对。
-        // 但为了数据一致性，建议重建子孙的 ancestors。
-        List<ComponentDoc> children = componentRepository.findByAncestorsContaining(id);
-        for (ComponentDoc child : children) {
-            // 重新计算子孙的 ancestors: 新的 ancestors + 我 + 我之后的路径
-            List<String> childAncestors = child.getAncestors();
-            int myIndex = childAncestors.indexOf(id);
-
-            List<String> updated = new ArrayList<>(newAncestors);
-            updated.add(id);
-            if (myIndex != -1 && myIndex + 1 < childAncestors.size()) {
-                updated.addAll(childAncestors.subList(myIndex + 1, childAncestors.size()));
-            }
-            child.setAncestors(updated);
-            componentRepository.save(child);
+        // 2. 【优化】子树大小上限：一次 count (走 ancestors / path 索引)，不把子孙查回来
+        Query subtree = subtreeQuery(node);
+        long descendants = mongoTemplate.count(subtree, ComponentDoc.class);
+        if (descendants > MAX_MOVE_SUBTREE) {
+            throw new IllegalArgumentException("子树有 " + descendants + " 个节点，超过单次移动上限 " + MAX_MOVE_SUBTREE);
         }
+
+        // 3. 更新自己：只改 parentId / ancestors / path
+        mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(id)),
+                new Update().set("parentId", actualParentId).set("ancestors", newAncestors)
+                        .set("path", MaterializedPath.encode(newAncestors, id)).set("updatedAt", LocalDateTime.now()),
+                ComponentDoc.class);
+
+        // 4. 【优化】更新子孙：一条 pipeline update 在服务端改完整棵子树，只动 ancestors / path 字段
+        //    新祖先链 = 我的新祖先链 + 我 + 原来在我后面的那一段
+        //    即 $concatArrays(newPrefix, $slice(ancestors, indexOf(ancestors, 我) + 1, size(ancestors)))
+        //    path 放在第二个 $set 里，按改好的 ancestors 重新拼
+        if (descendants > 0) {
+            List<String> prefix = new ArrayList<>(newAncestors);
+            prefix.add(id);
+            AggregationExpression rewritten = context -> new Document("$concatArrays", List.of(prefix,
+                    new Document("$slice", List.of("$ancestors",
+                            new Document("$add", List.of(new Document("$indexOfArray", List.of("$ancestors", id)), 1)),
+                            new Document("$size", "$ancestors")))));
+            UpdateResult result = mongoTemplate.updateMulti(subtree,
+                    AggregationUpdate.update().set("ancestors").toValue(rewritten).set("path").toValue(PATH_FROM_ANCESTORS),
+                    ComponentDoc.class);
+            log.info("移动节点 {}：子孙 {} 个，更新 {} 个", id, descendants, result.getModifiedCount());
+        }
+        bomTreeCache.onMoved(node.getShipId(), id, actualParentId, newAncestors);
+        rollupService.onMoved(node, newAncestors, descendants);
     }
 
     /**
@@ -194,5 +377,54 @@ public class ComponentService {
      */
     public void deleteShipTree(Long shipId) {
         componentRepository.deleteByShipId(shipId);
+        bomTreeCache.evictShip(shipId);
+    }
+
+    // --- 【新增】懒加载树的返回结构 ---
+    @Data
+    public static class ChildPage {
+        private String parentId;       // 根节点这一层为 null
+        private long total;            // 这个父节点下一共多少个孩子
+        private int page;
+        private int size;
+        private boolean hasMore;
+        private List<LazyNode> records;
+
+        static ChildPage of(String parentId, long total, int page, int size, List<LazyNode> records) {
+            ChildPage childPage = new ChildPage();
+            childPage.setParentId(parentId);
+            childPage.setTotal(total);
+            childPage.setPage(page);
+            childPage.setSize(size);
+            childPage.setHasMore((long) (page + 1) * size < total);
+            childPage.setRecords(records);
+            return childPage;
+        }
+    }
+
+    @Data
+    public static class LazyNode {
+        private String id;
+        private String parentId;
+        private String name;
+        private String code;
+        private String type;
+        private Map<String, Object> specs;
+        private ComponentDoc.Rollup rollup; // 子树汇总 (文档数 / 字节数 / 子孙数)，老数据重建前为 null
+        private long childCount;
+        private boolean hasChildren;   // 前端据此决定显不显示展开箭头
+        private ChildPage children;    // 只有预取到的节点才有，否则为 null，点开时再按 parentId 取
+
+        static LazyNode of(ComponentDoc doc) {
+            LazyNode node = new LazyNode();
+            node.setId(doc.getId());
+            node.setParentId(doc.getParentId());
+            node.setName(doc.getName());
+            node.setCode(doc.getCode());
+            node.setType(doc.getType());
+            node.setSpecs(doc.getSpecs());
+            node.setRollup(doc.getRollup());
+            return node;
+        }
     }
-}
\ No newline at end of file
+}
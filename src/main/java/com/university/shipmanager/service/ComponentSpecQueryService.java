@@ -0,0 +1,162 @@
+package com.university.shipmanager.service;
+
+import cn.hutool.core.util.StrUtil;
+import com.university.shipmanager.entity.mongo.ComponentDoc;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 按动态属性 (specs) 查部件，比如 "功率 > 5000 的主机"、"材质是不锈钢的阀门"
+ * 查询：船 (必填) + 子树 (可选，走 ancestors 多键索引) + 类型 (可选) + 若干 specs 条件 (AND)
+ * 索引：specs 上建了通配符索引 (specs.$**)，任意 key 的等值 / 范围条件都能走索引，不用扫整个 ship_components
+ * 类型：按 JSON 里的类型比较，数字只和数字比、字符串只和字符串比 (Mongo 的类型区间规则)，
+ *       "5000" 这种存成字符串的值不会被 power > 1000 查到
+ */
+@Service
+@RequiredArgsConstructor
+public class ComponentSpecQueryService {
+
+    private static final int MAX_LIMIT = 500;
+    private static final int MAX_PREDICATES = 10;
+    private static final int MAX_IN_VALUES = 100;
+
+    private final MongoTemplate mongoTemplate;
+
+    /**
+     * 按 _id 翻页 (keyset)：下一页把上一页的 nextAfter 传回来
+     */
+    public SpecQueryResult query(SpecQuery request) {
+        if (request.getShipId() == null) throw new IllegalArgumentException("shipId 不能为空");
+        int limit = request.getLimit() == null ? 100 : request.getLimit();
+        if (limit < 1 || limit > MAX_LIMIT) throw new IllegalArgumentException("limit 必须在 1 ~ " + MAX_LIMIT + " 之间");
+        List<SpecPredicate> predicates = request.getSpecs() == null ? List.of() : request.getSpecs();
+        if (predicates.size() > MAX_PREDICATES) throw new IllegalArgumentException("specs 条件最多 " + MAX_PREDICATES + " 个");
+
+        List<Criteria> and = new ArrayList<>();
+        and.add(Criteria.where("shipId").is(request.getShipId()));
+        if (StrUtil.isNotBlank(request.getSubtreeId())) {
+            // 子树包含它自己
+            and.add(new Criteria().orOperator(
+                    Criteria.where("_id").is(request.getSubtreeId()),
+                    Criteria.where("ancestors").is(request.getSubtreeId())));
+        }
+        if (StrUtil.isNotBlank(request.getType())) and.add(Criteria.where("type").is(request.getType()));
+        for (SpecPredicate predicate : predicates) and.add(toCriteria(predicate));
+        if (StrUtil.isNotBlank(request.getAfter())) and.add(Criteria.where("_id").gt(request.getAfter()));
+
+        Query query = Query.query(new Criteria().andOperator(and)).with(Sort.by("_id")).limit(limit);
+        List<ComponentDoc> records = mongoTemplate.find(query, ComponentDoc.class);
+
+        SpecQueryResult result = new SpecQueryResult();
+        result.setRecords(records);
+        result.setNextAfter(records.size() < limit ? null : records.get(records.size() - 1).getId());
+        return result;
+    }
+
+    /**
+     * 单个条件 -> specs.{key} 上的 Criteria；同一个 key 出现多次 (比如 gt + lt) 各自成一个条件，由外层 $and 合并
+     */
+    static Criteria toCriteria(SpecPredicate predicate) {
+        String key = predicate.getKey();
+        if (StrUtil.isBlank(key) || key.contains(".") || key.startsWith("$")) {
+            throw new IllegalArgumentException("非法的 spec 名称: " + key);
+        }
+        Op op = Op.of(predicate.getOp());
+        Criteria field = Criteria.where("specs." + key);
+        Object value = predicate.getValue();
+        return switch (op) {
+            case EXISTS -> field.exists(value == null || Boolean.TRUE.equals(value));
+            case IN -> field.in(inValues(key, value));
+            case EQ -> field.is(scalar(key, value, false));
+            case NE -> field.ne(scalar(key, value, false));
+            case GT -> field.gt(scalar(key, value, true));
+            case GTE -> field.gte(scalar(key, value, true));
+            case LT -> field.lt(scalar(key, value, true));
+            case LTE -> field.lte(scalar(key, value, true));
+        };
+    }
+
+    private static List<Object> inValues(String key, Object value) {
+        if (!(value instanceof Collection<?> values) || values.isEmpty()) {
+            throw new IllegalArgumentException("spec " + key + " 的 in 条件需要一个非空数组");
+        }
+        if (values.size() > MAX_IN_VALUES) throw new IllegalArgumentException("in 条件最多 " + MAX_IN_VALUES + " 个值");
+        List<Object> result = new ArrayList<>(values.size());
+        for (Object v : values) result.add(scalar(key, v, false));
+        return result;
+    }
+
+    /**
+     * 只接受数字 / 字符串 / 布尔 (范围条件不接受布尔)
+     * 数字统一成 Long / Double：JSON 里的 5000 和库里的 5000.0 照样相等，BigInteger 这类 Mongo 存不了的也转掉
+     */
+    private static Object scalar(String key, Object value, boolean range) {
+        if (value instanceof Number number) return normalize(number);
+        if (value instanceof String) return value;
+        if (value instanceof Boolean && !range) return value;
+        throw new IllegalArgumentException("spec " + key + " 的条件值类型不支持: " + value);
+    }
+
+    private static Object normalize(Number number) {
+        if (number instanceof Integer || number instanceof Long || number instanceof Short || number instanceof Byte) {
+            return number.longValue();
+        }
+        if (number instanceof BigInteger big && big.bitLength() < 64) return big.longValue();
+        if (number instanceof BigDecimal decimal) {
+            try {
+                return decimal.longValueExact();
+            } catch (ArithmeticException e) {
+                return decimal.doubleValue();
+            }
+        }
+        return number.doubleValue();
+    }
+
+    public enum Op {
+        EQ, NE, GT, GTE, LT, LTE, IN, EXISTS;
+
+        static Op of(String value) {
+            if (StrUtil.isBlank(value)) return EQ;
+            try {
+                return valueOf(value.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("不支持的条件: " + value + "，可选 eq / ne / gt / gte / lt / lte / in / exists");
+            }
+        }
+    }
+
+    // --- 查询条件 ---
+    @Data
+    public static class SpecQuery {
+        private Long shipId;
+        private String subtreeId;          // 可选，只查某个节点 (含) 下面的部件
+        private String type;               // 可选，Engine / Pump / Valve ...
+        private List<SpecPredicate> specs; // 全部满足 (AND)
+        private String after;              // 翻页：上一页的 nextAfter
+        private Integer limit;
+    }
+
+    @Data
+    public static class SpecPredicate {
+        private String key;   // specs 里的名字，如 power / material
+        private String op;    // eq (默认) / ne / gt / gte / lt / lte / in / exists
+        private Object value; // 数字 / 字符串 / 布尔；in 传数组；exists 传 true / false
+    }
+
+    @Data
+    public static class SpecQueryResult {
+        private List<ComponentDoc> records;
+        private String nextAfter; // 为 null 表示没有下一页
+    }
+}
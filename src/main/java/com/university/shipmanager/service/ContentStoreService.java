@@ -0,0 +1,174 @@
+package com.university.shipmanager.service;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.util.StrUtil;
+import com.university.shipmanager.common.ObjectStore;
+import com.university.shipmanager.entity.mongo.ShipDocument;
+import com.university.shipmanager.entity.mongo.StoredObject;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 内容寻址的文件存储 (按 SHA-256 去重 + 引用计数)
+ * 步骤：上传 (边传边算哈希) -> 按哈希登记 (原子 upsert + 计数 +1) -> 已存在就丢掉刚传的副本
+ * 删除：计数 -1 -> 减到 0 才删实体文件
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ContentStoreService {
+
+    private static final int BATCH_SIZE = 1000; // 批量释放时 $in / bulk 每批最多这么多个哈希
+
+    private final ObjectStore objectStore;
+    private final MongoTemplate mongoTemplate;
+
+    /**
+     * 存一份文件内容，返回实际使用的存储路径 (可能是别人早就传过的那份)
+     * 只按服务端自己边读边算出来的哈希去重：客户端报的哈希谁都能猜，拿它去重等于凭一个哈希就能把别人的文件挂到自己名下
+     * @param expectedSha256 客户端声明的哈希 (可选)，只用来在读完以后校验内容有没有传坏
+     */
+    public ObjectStore.UploadResult store(InputStream inputStream, String originalFilename, String contentType, String expectedSha256) {
+        ObjectStore.UploadResult uploaded = objectStore.uploadStream(inputStream, originalFilename, contentType);
+        if (StrUtil.isNotBlank(expectedSha256) && !expectedSha256.equalsIgnoreCase(uploaded.getSha256())) {
+            objectStore.removeFile(uploaded.getStoragePath());
+            throw new RuntimeException("文件校验失败：上传内容与声明的 SHA-256 不一致");
+        }
+        return register(uploaded);
+    }
+
+    /**
+     * 已经在 MinIO 里的文件按哈希登记 (断点续传合并完的文件也走这里)
+     * 哈希必须是服务端读过内容算出来的；第一次见到这份内容就用它的路径，否则只把计数 +1 并删掉这份重复的
+     */
+    public ObjectStore.UploadResult register(ObjectStore.UploadResult uploaded) {
+        // 原子登记：upsert + 计数 +1，并发上传同一份内容也只会留下一份
+        Query query = Query.query(Criteria.where("_id").is(uploaded.getSha256()));
+        Update update = new Update()
+                .setOnInsert("storagePath", uploaded.getStoragePath())
+                .setOnInsert("size", uploaded.getSize())
+                .setOnInsert("contentType", uploaded.getContentType())
+                .setOnInsert("createdAt", LocalDateTime.now())
+                .inc("refCount", 1);
+        StoredObject stored = mongoTemplate.findAndModify(query, update,
+                FindAndModifyOptions.options().upsert(true).returnNew(true), StoredObject.class);
+
+        // 别人先存过同样的内容 -> 刚传的这份是重复的，删掉
+        if (stored != null && !uploaded.getStoragePath().equals(stored.getStoragePath())) {
+            log.info("内容重复，复用已有文件: {} -> {}", uploaded.getStoragePath(), stored.getStoragePath());
+            objectStore.removeFile(uploaded.getStoragePath());
+            return toResult(stored);
+        }
+        return uploaded;
+    }
+
+    /**
+     * 释放一个版本对文件的引用，最后一个引用没了才删 MinIO 文件
+     */
+    public void release(ShipDocument.DocVersion version) {
+        release(version.getChecksum(), version.getStoragePath());
+    }
+
+    public void release(String sha256, String storagePath) {
+        if (storagePath == null) return;
+
+        // 老数据没有校验和，不参与去重，直接删
+        if (StrUtil.isBlank(sha256)) {
+            objectStore.removeFile(storagePath);
+            return;
+        }
+
+        Query query = Query.query(Criteria.where("_id").is(sha256));
+        StoredObject stored = mongoTemplate.findAndModify(query, new Update().inc("refCount", -1),
+                FindAndModifyOptions.options().returnNew(true), StoredObject.class);
+        if (stored == null) {
+            // 没登记过 (去重上线前的文件)，按老逻辑直接删
+            objectStore.removeFile(storagePath);
+            return;
+        }
+        if (stored.getRefCount() > 0) return;
+
+        // 条件删除：如果这期间有人又引用了它 (refCount 又涨回去)，这里就删不掉，文件也就保住了
+        Query orphan = Query.query(Criteria.where("_id").is(sha256).and("refCount").lte(0));
+        if (mongoTemplate.remove(orphan, StoredObject.class).getDeletedCount() > 0) {
+            objectStore.removeFile(stored.getStoragePath());
+        }
+    }
+
+    /**
+     * 【新增】批量释放引用 (级联删除用)
+     * 1. 同一个哈希的引用先在内存里合并，一条 $inc 扣掉
+     * 2. 每 BATCH_SIZE 个哈希的扣减放进一个无序 bulk 请求
+     * 3. 同一批 $in 查出计数归零的，条件删除后再核对一遍，确认是我们删掉的才去删文件
+     * 4. 文件统一交给存储批量删除 (MinIO 下并发)
+     */
+    public void releaseAll(Collection<ShipDocument.DocVersion> versions) {
+        List<String> toRemove = new ArrayList<>();
+        Map<String, Integer> decrements = new HashMap<>();
+        Map<String, String> pathsByHash = new HashMap<>();
+        for (ShipDocument.DocVersion v : versions) {
+            if (v.getStoragePath() == null) continue;
+            if (StrUtil.isBlank(v.getChecksum())) {
+                toRemove.add(v.getStoragePath()); // 老数据，直接删
+            } else {
+                decrements.merge(v.getChecksum(), 1, Integer::sum);
+                pathsByHash.put(v.getChecksum(), v.getStoragePath());
+            }
+        }
+
+        for (List<String> hashes : CollUtil.split(decrements.keySet(), BATCH_SIZE)) {
+            BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, StoredObject.class);
+            hashes.forEach(hash ->
+                    bulk.updateOne(Query.query(Criteria.where("_id").is(hash)), new Update().inc("refCount", -decrements.get(hash))));
+            bulk.execute();
+
+            // 没登记过的 (去重上线前的文件) 按老逻辑直接删
+            List<StoredObject> registered = mongoTemplate.find(
+                    Query.query(Criteria.where("_id").in(hashes)), StoredObject.class);
+            Set<String> registeredIds = new HashSet<>();
+            registered.forEach(o -> registeredIds.add(o.getId()));
+            for (String hash : hashes) {
+                if (!registeredIds.contains(hash)) toRemove.add(pathsByHash.get(hash));
+            }
+
+            List<StoredObject> orphans = registered.stream().filter(o -> o.getRefCount() <= 0).toList();
+            if (!orphans.isEmpty()) {
+                List<String> orphanIds = orphans.stream().map(StoredObject::getId).toList();
+                mongoTemplate.remove(Query.query(Criteria.where("_id").in(orphanIds).and("refCount").lte(0)), StoredObject.class);
+
+                // 删完再查一遍：还在 (并且路径没变) 说明期间被重新引用了，文件要保住
+                Map<String, String> survivors = new HashMap<>();
+                mongoTemplate.find(Query.query(Criteria.where("_id").in(orphanIds)), StoredObject.class)
+                        .forEach(o -> survivors.put(o.getId(), o.getStoragePath()));
+                for (StoredObject orphan : orphans) {
+                    if (!orphan.getStoragePath().equals(survivors.get(orphan.getId()))) {
+                        toRemove.add(orphan.getStoragePath());
+                    }
+                }
+            }
+        }
+
+        objectStore.removeFiles(toRemove);
+    }
+
+    private static ObjectStore.UploadResult toResult(StoredObject stored) {
+        return new ObjectStore.UploadResult(stored.getStoragePath(), stored.getSize(), stored.getId(), stored.getContentType());
+    }
+}
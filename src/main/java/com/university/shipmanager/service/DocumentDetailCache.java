@@ -0,0 +1,193 @@
+package com.university.shipmanager.service;
+
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 文档详情缓存 (进程内，读多写少)
+ * 1. 按估算的字节数限容，超了按 LRU 淘汰最久没看的
+ * 2. 写路径 (改标题、传新版本、级联删除) 精确失效对应的文档
+ * 3. 兜底过期时间：多实例部署时别的节点改了数据，这里最多旧这么久
+ * 4. 防并发脏写：加载期间有人失效过缓存，加载出来的结果就不放进去 (可能是改之前读的)
+ */
+@Slf4j
+@Component
+public class DocumentDetailCache {
+
+    private final long maxBytes;
+    private final long ttlMillis;
+
+    // accessOrder = true：每次 get 都把条目挪到队尾，队头就是最久没用的
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long currentBytes;
+    private long invalidations; // 失效计数，加载前后对一下就知道期间有没有写
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public DocumentDetailCache(@Value("${cache.doc-detail.max-bytes:33554432}") long maxBytes,
+                               @Value("${cache.doc-detail.ttl-seconds:600}") long ttlSeconds) {
+        this.maxBytes = maxBytes;
+        this.ttlMillis = ttlSeconds * 1000;
+    }
+
+    /**
+     * 读穿：有就直接返回，没有就加载并放进缓存
+     */
+    public DocumentService.DocumentDetailVO get(Long id, Supplier<DocumentService.DocumentDetailVO> loader) {
+        long stamp;
+        synchronized (this) {
+            Entry entry = entries.get(id);
+            if (entry != null && entry.expiresAt > System.currentTimeMillis()) {
+                hits.incrementAndGet();
+                return entry.value;
+            }
+            if (entry != null) removeEntry(id);
+            stamp = invalidations;
+        }
+
+        misses.incrementAndGet();
+        DocumentService.DocumentDetailVO value = loader.get(); // 查库不占锁
+
+        synchronized (this) {
+            if (stamp == invalidations) put(id, value);
+        }
+        return value;
+    }
+
+    /**
+     * 批量读穿：命中的直接用，没命中的交给 loader 一次查完 (loader 返回的 Map 里没有的就是查不到)
+     */
+    public Map<Long, DocumentService.DocumentDetailVO> getAll(Collection<Long> ids,
+                                                              Function<Collection<Long>, Map<Long, DocumentService.DocumentDetailVO>> loader) {
+        Map<Long, DocumentService.DocumentDetailVO> result = new HashMap<>();
+        List<Long> missing = new ArrayList<>();
+        long stamp;
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            for (Long id : ids) {
+                Entry entry = entries.get(id);
+                if (entry != null && entry.expiresAt > now) {
+                    result.put(id, entry.value);
+                } else {
+                    if (entry != null) removeEntry(id);
+                    missing.add(id);
+                }
+            }
+            stamp = invalidations;
+        }
+        hits.addAndGet(result.size());
+        misses.addAndGet(missing.size());
+        if (missing.isEmpty()) return result;
+
+        Map<Long, DocumentService.DocumentDetailVO> loaded = loader.apply(missing);
+        synchronized (this) {
+            if (stamp == invalidations) loaded.forEach(this::put);
+        }
+        result.putAll(loaded);
+        return result;
+    }
+
+    public synchronized void invalidate(Long id) {
+        invalidations++;
+        removeEntry(id);
+    }
+
+    public synchronized void invalidateAll(Collection<Long> ids) {
+        invalidations++;
+        ids.forEach(this::removeEntry);
+    }
+
+    public synchronized Stats stats() {
+        Stats stats = new Stats();
+        stats.setHits(hits.get());
+        stats.setMisses(misses.get());
+        stats.setEvictions(evictions.get());
+        stats.setEntries(entries.size());
+        stats.setBytes(currentBytes);
+        stats.setMaxBytes(maxBytes);
+        long total = stats.getHits() + stats.getMisses();
+        stats.setHitRate(total == 0 ? 0 : (double) stats.getHits() / total);
+        return stats;
+    }
+
+    private void put(Long id, DocumentService.DocumentDetailVO value) {
+        long weight = weigh(value);
+        if (weight > maxBytes) return; // 单个就超限的不缓存
+        removeEntry(id);
+        entries.put(id, new Entry(value, weight, System.currentTimeMillis() + ttlMillis));
+        currentBytes += weight;
+
+        Iterator<Map.Entry<Long, Entry>> it = entries.entrySet().iterator();
+        while (currentBytes > maxBytes && it.hasNext()) {
+            Entry eldest = it.next().getValue();
+            it.remove();
+            currentBytes -= eldest.weight;
+            evictions.incrementAndGet();
+        }
+    }
+
+    private void removeEntry(Long id) {
+        Entry removed = entries.remove(id);
+        if (removed != null) currentBytes -= removed.weight;
+    }
+
+    /**
+     * 粗估占用：对象头 + 字符串按 2 字节一个字符，够用来限容就行
+     */
+    private static long weigh(DocumentService.DocumentDetailVO vo) {
+        long bytes = 128 + chars(vo.getTitle());
+        if (vo.getMetadata() != null) {
+            for (Map.Entry<String, Object> e : vo.getMetadata().entrySet()) {
+                bytes += 64 + chars(e.getKey()) + chars(String.valueOf(e.getValue()));
+            }
+        }
+        if (vo.getVersions() != null) {
+            for (DocumentService.DocumentDetailVO.VersionVO v : vo.getVersions()) {
+                bytes += 128 + chars(v.getVersionNo()) + chars(v.getDownloadUrl());
+            }
+        }
+        return bytes;
+    }
+
+    private static long chars(String s) {
+        return s == null ? 0 : 40 + 2L * s.length();
+    }
+
+    private static class Entry {
+        final DocumentService.DocumentDetailVO value;
+        final long weight;
+        final long expiresAt;
+
+        Entry(DocumentService.DocumentDetailVO value, long weight, long expiresAt) {
+            this.value = value;
+            this.weight = weight;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    @Data
+    public static class Stats {
+        private long hits;
+        private long misses;
+        private long evictions;
+        private double hitRate;
+        private int entries;
+        private long bytes;
+        private long maxBytes;
+    }
+}
@@ -0,0 +1,247 @@
+package com.university.shipmanager.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.university.shipmanager.entity.mongo.ShipDocument;
+import com.university.shipmanager.entity.mysql.DocIndex;
+import com.university.shipmanager.mapper.DocIndexMapper;
+import com.university.shipmanager.repository.ShipDocumentRepository;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cursor.Cursor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 按船导出文档清单 (NDJSON / CSV)
+ * 内存恒定：MySQL 用游标一行一行读，每攒够一批去 Mongo $in 查一次详情，拼好就写进响应，写完这批就扔
+ * 不管船上有 100 个文档还是 100 万个，堆里最多只有一批 (EXPORT_BATCH_SIZE) 的数据
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DocumentExportService {
+
+    public static final int EXPORT_BATCH_SIZE = 500;
+
+    private static final String[] CSV_HEADER = {
+            "id", "ship_id", "component_id", "title", "category", "status", "latest_version", "created_at",
+            "version_count", "latest_version_no", "latest_file_size", "latest_checksum", "latest_upload_time", "versions", "metadata"};
+
+    private final DocIndexMapper docIndexMapper;
+    private final ShipDocumentRepository mongoRepository;
+    private final ObjectMapper objectMapper;
+
+    public enum Format {
+        NDJSON("application/x-ndjson", "ndjson"),
+        CSV("text/csv", "csv");
+
+        public final String contentType;
+        public final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        public static Format of(String value) {
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException | NullPointerException e) {
+                throw new IllegalArgumentException("不支持的导出格式: " + value + " (可选 ndjson / csv)");
+            }
+        }
+    }
+
+    /**
+     * 导出一艘船的全部文档，直接写进 out (调用方负责设置响应头)
+     * 只读事务：游标要一直占着连接，直到读完
+     * @return 导出的行数
+     */
+    @Transactional(readOnly = true)
+    public long export(Long shipId, Format format, OutputStream out) throws IOException {
+        if (shipId == null) throw new IllegalArgumentException("shipId 不能为空");
+        RowSink sink = format == Format.CSV ? new CsvSink(out) : new NdjsonSink(out);
+        long total = 0;
+        try (Cursor<DocIndex> cursor = docIndexMapper.streamByShipId(shipId)) {
+            List<DocIndex> batch = new ArrayList<>(EXPORT_BATCH_SIZE);
+            for (DocIndex index : cursor) {
+                batch.add(index);
+                if (batch.size() == EXPORT_BATCH_SIZE) {
+                    total += writeBatch(batch, sink);
+                    batch.clear();
+                }
+            }
+            total += writeBatch(batch, sink);
+        }
+        sink.finish();
+        log.info("文档导出完成: shipId={}, format={}, 行数={}", shipId, format, total);
+        return total;
+    }
+
+    /**
+     * 一批：一次 Mongo $in 补详情，按 MySQL 的顺序写出去，然后 flush 给客户端
+     */
+    private int writeBatch(List<DocIndex> batch, RowSink sink) throws IOException {
+        if (batch.isEmpty()) return 0;
+        Map<String, ShipDocument> details = new HashMap<>(batch.size() * 2);
+        for (ShipDocument doc : mongoRepository.findAllById(batch.stream().map(DocIndex::getMongoDocId).filter(Objects::nonNull).toList())) {
+            details.put(doc.getId(), doc);
+        }
+        for (DocIndex index : batch) {
+            sink.write(toRow(index, details.get(index.getMongoDocId())));
+        }
+        sink.flush();
+        return batch.size();
+    }
+
+    private static ExportRow toRow(DocIndex index, ShipDocument detail) {
+        ExportRow row = new ExportRow();
+        row.setId(index.getId());
+        row.setShipId(index.getShipId());
+        row.setComponentId(index.getComponentId());
+        row.setTitle(index.getTitle());
+        row.setCategory(index.getCategory());
+        row.setStatus(index.getStatus());
+        row.setLatestVersion(index.getLatestVersion());
+        row.setCreatedAt(index.getCreatedAt());
+        if (detail != null) { // Mongo 详情丢了也照样导出 MySQL 这一半
+            row.setMetadata(detail.getMetadata());
+            List<ShipDocument.DocVersion> versions = detail.getVersions();
+            if (versions != null && !versions.isEmpty()) {
+                ShipDocument.DocVersion latest = versions.get(versions.size() - 1);
+                row.setVersionCount(versions.size());
+                row.setLatestVersionNo(latest.getVersionNo());
+                row.setLatestFileSize(latest.getFileSize());
+                row.setLatestChecksum(latest.getChecksum());
+                row.setLatestUploadTime(latest.getUploadTime());
+                row.setVersions(versions);
+            }
+        }
+        return row;
+    }
+
+    // --- 输出格式 ---
+    private interface RowSink {
+        void write(ExportRow row) throws IOException;
+
+        void flush() throws IOException;
+
+        void finish() throws IOException;
+    }
+
+    /**
+     * 一行一个 JSON 对象
+     */
+    private class NdjsonSink implements RowSink {
+        private final OutputStream out;
+        private final SequenceWriter writer;
+        private boolean empty = true;
+
+        NdjsonSink(OutputStream out) throws IOException {
+            this.out = out;
+            // 响应流由容器关，这里不能替它关
+            this.writer = objectMapper.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                    .withRootValueSeparator("\n").writeValues(out);
+        }
+
+        @Override
+        public void write(ExportRow row) throws IOException {
+            writer.write(row);
+            empty = false;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            writer.flush();
+        }
+
+        @Override
+        public void finish() throws IOException {
+            writer.close();
+            if (!empty) out.write('\n'); // 分隔符只写在两行之间，最后一行自己补上换行
+        }
+    }
+
+    /**
+     * CSV (RFC 4180)，开头带 BOM，Excel 直接打开中文不乱码；版本列表、元数据各自整体作为一个 JSON 字符串列
+     */
+    private class CsvSink implements RowSink {
+        private final Writer writer;
+
+        CsvSink(OutputStream out) throws IOException {
+            this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            writer.write('\uFEFF');
+            writeLine((Object[]) CSV_HEADER);
+        }
+
+        @Override
+        public void write(ExportRow row) throws IOException {
+            writeLine(row.getId(), row.getShipId(), row.getComponentId(), row.getTitle(), row.getCategory(),
+                    row.getStatus(), row.getLatestVersion(), row.getCreatedAt(), row.getVersionCount(),
+                    row.getLatestVersionNo(), row.getLatestFileSize(), row.getLatestChecksum(), row.getLatestUploadTime(),
+                    row.getVersions() == null ? null : objectMapper.writeValueAsString(row.getVersions()),
+                    row.getMetadata() == null ? null : objectMapper.writeValueAsString(row.getMetadata()));
+        }
+
+        private void writeLine(Object... values) throws IOException {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) writer.write(',');
+                if (values[i] != null) writer.write(escapeCsv(String.valueOf(values[i])));
+            }
+            writer.write("\r\n");
+        }
+
+        @Override
+        public void flush() throws IOException {
+            writer.flush();
+        }
+
+        @Override
+        public void finish() throws IOException {
+            writer.flush();
+        }
+    }
+
+    static String escapeCsv(String value) {
+        boolean quote = value.indexOf(',') >= 0 || value.indexOf('"') >= 0
+                || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0;
+        return quote ? '"' + value.replace("\"", "\"\"") + '"' : value;
+    }
+
+    // --- 导出的一行 (MySQL 索引 + Mongo 里的最新版本 / 完整版本历史 / 元数据) ---
+    @Data
+    public static class ExportRow {
+        private Long id;
+        private Long shipId;
+        private String componentId;
+        private String title;
+        private String category;
+        private String status;
+        private Integer latestVersion;
+        private LocalDateTime createdAt;
+        private Integer versionCount;
+        private String latestVersionNo;
+        private Long latestFileSize;
+        private String latestChecksum;
+        private LocalDateTime latestUploadTime;
+        private List<ShipDocument.DocVersion> versions; // 全部版本 (按上传顺序)，交接时版本历史不丢
+        private Map<String, Object> metadata;
+    }
+}
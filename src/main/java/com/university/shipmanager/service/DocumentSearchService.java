@@ -0,0 +1,209 @@
+package com.university.shipmanager.service;
+
+import cn.hutool.core.util.StrUtil;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.university.shipmanager.common.SearchTokenizer;
+import com.university.shipmanager.entity.mongo.SearchDocument;
+import com.university.shipmanager.entity.mongo.ShipDocument;
+import com.university.shipmanager.entity.mysql.DocIndex;
+import com.university.shipmanager.mapper.DocIndexMapper;
+import com.university.shipmanager.repository.ShipDocumentRepository;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationExpression;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * 文档全文搜索 (标题 + 元数据)
+ * 索引：每个文档在 search_docs 里存一份分好的词 (中文二元切分 + 英文单词)，(shipId, tokens) 多键索引
+ * 查询：按船过滤 + 命中任意一个词，按相关度排序 (标题命中 3 分，元数据命中 1 分)
+ * 维护：上传 / 批量导入 / 改标题 / 级联删除时顺手更新；索引只是派生数据，更新失败不影响主流程，可以按船重建
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DocumentSearchService {
+
+    private static final int TITLE_WEIGHT = 3;
+    private static final int META_WEIGHT = 1;
+    private static final int MAX_LIMIT = 100;
+    private static final int REINDEX_BATCH_SIZE = 500;
+    // 这些元数据是系统填的，不是文档内容，不进索引
+    private static final Set<String> SKIPPED_METADATA = Set.of("uploaded_via", "import_path");
+
+    private final MongoTemplate mongoTemplate;
+    private final DocIndexMapper docIndexMapper;
+    private final ShipDocumentRepository mongoRepository;
+
+    /**
+     * 新建档的文档进索引
+     */
+    public void index(DocIndex doc, Map<String, Object> metadata) {
+        indexAll(List.of(doc), Collections.singletonList(metadata)); // metadata 可能是 null，不能用 List.of
+    }
+
+    /**
+     * 批量进索引 (一次 bulk upsert)
+     */
+    public void indexAll(List<DocIndex> docs, List<Map<String, Object>> metadata) {
+        if (docs.isEmpty()) return;
+        try {
+            BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, SearchDocument.class);
+            for (int i = 0; i < docs.size(); i++) {
+                SearchDocument searchDoc = toSearchDocument(docs.get(i), metadata.get(i));
+                bulk.replaceOne(Query.query(Criteria.where("_id").is(searchDoc.getId())), searchDoc,
+                        FindAndReplaceOptions.options().upsert());
+            }
+            bulk.execute();
+        } catch (Exception e) {
+            log.warn("搜索索引更新失败 ({} 个文档)，可以稍后按船重建", docs.size(), e);
+        }
+    }
+
+    /**
+     * 标题 / 分类改了：只重算标题分词，元数据分词不动
+     */
+    public void updateInfo(Long id, String title, String category) {
+        try {
+            SearchDocument searchDoc = mongoTemplate.findById(id, SearchDocument.class);
+            if (searchDoc == null) return; // 还没进过索引 (老数据)，等重建
+            searchDoc.setTitle(title);
+            searchDoc.setCategory(category);
+            searchDoc.setTitleTokens(new ArrayList<>(SearchTokenizer.tokenizeForIndex(title)));
+            searchDoc.setTokens(union(searchDoc.getTitleTokens(), searchDoc.getMetaTokens()));
+            searchDoc.setUpdatedAt(LocalDateTime.now());
+            mongoTemplate.save(searchDoc);
+        } catch (Exception e) {
+            log.warn("搜索索引更新失败: id={}", id, e);
+        }
+    }
+
+    public void removeAll(Collection<Long> ids) {
+        if (ids.isEmpty()) return;
+        try {
+            mongoTemplate.remove(Query.query(Criteria.where("_id").in(ids)), SearchDocument.class);
+        } catch (Exception e) {
+            log.warn("搜索索引删除失败 ({} 个文档)", ids.size(), e);
+        }
+    }
+
+    /**
+     * 搜索
+     * @param componentId 可选，只搜某个零件下的文档
+     */
+    public List<SearchHit> search(Long shipId, String componentId, String keyword, int offset, int limit) {
+        if (shipId == null) throw new IllegalArgumentException("shipId 不能为空");
+        if (limit < 1 || limit > MAX_LIMIT) throw new IllegalArgumentException("limit 必须在 1 ~ " + MAX_LIMIT + " 之间");
+        List<String> queryTokens = new ArrayList<>(SearchTokenizer.tokenizeQuery(keyword));
+        if (queryTokens.isEmpty()) return List.of();
+
+        Criteria criteria = Criteria.where("shipId").is(shipId).and("tokens").in(queryTokens);
+        if (StrUtil.isNotBlank(componentId)) criteria.and("componentId").is(componentId);
+
+        // score = 3 * |标题分词 ∩ 查询词| + |元数据分词 ∩ 查询词|
+        AggregationExpression score = context -> new Document("$add", List.of(
+                new Document("$multiply", List.of(TITLE_WEIGHT, matchCount("$titleTokens", queryTokens))),
+                new Document("$multiply", List.of(META_WEIGHT, matchCount("$metaTokens", queryTokens)))));
+
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(criteria),
+                Aggregation.addFields().addField("score").withValueOf(score).build(),
+                Aggregation.sort(Sort.by(Sort.Order.desc("score"), Sort.Order.desc("_id"))), // 同分时新文档在前
+                Aggregation.skip((long) Math.max(offset, 0)),
+                Aggregation.limit(limit),
+                Aggregation.project("shipId", "componentId", "title", "category", "score"));
+        return mongoTemplate.aggregate(aggregation, SearchDocument.class, SearchHit.class).getMappedResults();
+    }
+
+    /**
+     * 按船重建索引 (上线前的老文档 / 索引更新失败后补救)
+     * 按主键分批：每批一次 MySQL 查询 + 一次 Mongo $in + 一次 bulk upsert
+     */
+    public int reindexShip(Long shipId) {
+        int total = 0;
+        Long lastId = 0L;
+        while (true) {
+            List<DocIndex> docs = docIndexMapper.selectList(new LambdaQueryWrapper<DocIndex>()
+                    .eq(DocIndex::getShipId, shipId)
+                    .gt(DocIndex::getId, lastId)
+                    .orderByAsc(DocIndex::getId)
+                    .last("LIMIT " + REINDEX_BATCH_SIZE));
+            if (docs.isEmpty()) break;
+
+            Map<String, Map<String, Object>> metadataByMongoId = new HashMap<>();
+            for (ShipDocument mongoDoc : mongoRepository.findAllById(docs.stream().map(DocIndex::getMongoDocId).filter(Objects::nonNull).toList())) {
+                metadataByMongoId.put(mongoDoc.getId(), mongoDoc.getMetadata());
+            }
+            indexAll(docs, docs.stream().map(d -> metadataByMongoId.get(d.getMongoDocId())).toList());
+
+            total += docs.size();
+            lastId = docs.get(docs.size() - 1).getId();
+        }
+        log.info("搜索索引重建完成: shipId={}, 文档数={}", shipId, total);
+        return total;
+    }
+
+    private static SearchDocument toSearchDocument(DocIndex doc, Map<String, Object> metadata) {
+        Set<String> metaTokens = new LinkedHashSet<>();
+        if (metadata != null) {
+            metadata.forEach((key, value) -> {
+                if (value != null && !SKIPPED_METADATA.contains(key)) {
+                    metaTokens.addAll(SearchTokenizer.tokenizeForIndex(String.valueOf(value)));
+                }
+            });
+        }
+        SearchDocument searchDoc = new SearchDocument();
+        searchDoc.setId(doc.getId());
+        searchDoc.setShipId(doc.getShipId());
+        searchDoc.setComponentId(doc.getComponentId());
+        searchDoc.setTitle(doc.getTitle());
+        searchDoc.setCategory(doc.getCategory());
+        searchDoc.setTitleTokens(new ArrayList<>(SearchTokenizer.tokenizeForIndex(doc.getTitle())));
+        searchDoc.setMetaTokens(new ArrayList<>(metaTokens));
+        searchDoc.setTokens(union(searchDoc.getTitleTokens(), searchDoc.getMetaTokens()));
+        searchDoc.setUpdatedAt(LocalDateTime.now());
+        return searchDoc;
+    }
+
+    private static List<String> union(List<String> a, List<String> b) {
+        Set<String> all = new LinkedHashSet<>(a);
+        if (b != null) all.addAll(b);
+        return new ArrayList<>(all);
+    }
+
+    private static Document matchCount(String field, List<String> queryTokens) {
+        return new Document("$size", new Document("$setIntersection",
+                List.of(new Document("$ifNull", List.of(field, List.of())), queryTokens)));
+    }
+
+    // --- 搜索结果 ---
+    @Data
+    public static class SearchHit {
+        private Long id;          // doc_index 主键，拿去调 /api/docs/{id} 看详情
+        private Long shipId;
+        private String componentId;
+        private String title;
+        private String category;
+        private Integer score;    // 相关度
+    }
+}
@@ -1,6 +1,8 @@
 package com.university.shipmanager.service;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.extension.toolkit.Db;
+import com.university.shipmanager.common.ObjectStore;
 import com.university.shipmanager.entity.mongo.ShipDocument;
 import com.university.shipmanager.entity.mysql.DocIndex;
 import com.university.shipmanager.mapper.DocIndexMapper;
@@ -8,16 +10,32 @@ import com.university.shipmanager.repository.ShipDocumentRepository;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import cn.hutool.core.collection.CollUtil;
 import cn.hutool.core.util.StrUtil; // 记得引入 Hutool
 import com.university.shipmanager.entity.mongo.AuditLog;
-import com.university.shipmanager.repository.AuditLogRepository;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
 import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 
@@ -26,12 +44,24 @@ import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 @Service
 @RequiredArgsConstructor // Lombok 自动生成构造函数注入 Bean
 public class DocumentService {
-    private static final String MINIO_BASE_URL = "http://localhost:9000/ship-files/";
+    // 下载统一走应用自己的接口 (支持 Range / ETag)，桶不再需要公开
+    private static final String DOWNLOAD_API = "/api/docs/%d/download?version=%s";
+    private static final int PRESIGNED_EXPIRY_SECONDS = 600; // 预签名链接 10 分钟有效
+    private static final int BATCH_SIZE = 1000; // IN 列表每批最多 1000 个，防止 SQL 过长
+    private static final int MAX_BATCH_DETAIL = 500; // 批量详情每次最多查 500 个
+    private static final int MAX_PAGE_SIZE = 200;
 
     private final DocIndexMapper docIndexMapper;       // MySQL 操作
     private final ShipDocumentRepository mongoRepository; // Mongo 操作
-    private final com.university.shipmanager.common.MinioUtil minioUtil;
-    private final AuditLogRepository auditLogRepository;
+    private final ContentStoreService contentStoreService; // 【新增】按内容去重的文件存储
+    private final ObjectStore objectStore;
+    private final AuditLogWriter auditLogWriter; // 【优化】审计日志异步批量写，不占删除接口的时间
+    private final VersionStorageService versionStorageService; // 【新增】版本压缩 / 差分存储
+    private final MongoTemplate mongoTemplate;
+    private final DocumentDetailCache detailCache; // 【新增】详情缓存
+    private final DocumentSearchService searchService; // 【新增】全文搜索索引
+    private final ComponentRollupService rollupService; // 【新增】零件子树汇总
+    private final ShipTombstones shipTombstones; // 【新增】整船删除中的船，按 ID 也读写不到它的文档
 
 
     /**
@@ -40,69 +70,314 @@ public class DocumentService {
      */
     @Transactional(rollbackFor = Exception.class) // MySQL 事务
     public void uploadNewDocument(UploadRequest request, org.springframework.web.multipart.MultipartFile file) {
+        try (InputStream inputStream = file.getInputStream()) {
+            uploadNewDocument(request, inputStream, file.getOriginalFilename(), file.getContentType());
+        } catch (IOException e) {
+            throw new RuntimeException("读取上传文件失败", e);
+        }
+    }
 
-        // 1. 【真实上传】先传文件到 MinIO
-        String storagePath = minioUtil.uploadFile(file);
+    /**
+     * 【新增】流式上传新文档：请求体只读一遍，边读边分片并发传到 MinIO
+     * 大文件走 /api/docs/upload/stream 直接把 HTTP 请求体交进来，不再经过 Spring 的 multipart 落盘
+     */
+    @Transactional(rollbackFor = Exception.class) // MySQL 事务
+    public void uploadNewDocument(UploadRequest request, InputStream inputStream, String originalFilename, String contentType) {
 
-        // 2. 准备 MongoDB 数据
-        ShipDocument mongoDoc = new ShipDocument();
-        mongoDoc.setMetadata(request.getMetadata());
+        // 1. 【真实上传】先传文件到 MinIO (分片并发，顺便拿到大小和校验和；内容重复时直接复用已有文件；开了压缩就边读边压)
+        VersionStorageService.StoredVersion uploaded = versionStorageService.storeInitial(inputStream, originalFilename, contentType, request.getSha256());
 
-        ShipDocument.DocVersion v1 = new ShipDocument.DocVersion();
-        v1.setVersionNo("V1.0");
-        v1.setCommitMsg("Initial Upload");
-        v1.setFileSize(file.getSize()); // 【真实】文件大小
-        v1.setStoragePath(storagePath); // 【真实】MinIO 路径
+        // 2. 建档 (Mongo 详情 + MySQL 索引)
+        saveDocumentRecords(request, uploaded);
+    }
 
-        mongoDoc.setVersions(new ArrayList<>(List.of(v1)));
+    /**
+     * 【新增】文件已经在 MinIO 里了，只负责建档：先存 Mongo 详情，再存 MySQL 索引
+     * 普通上传、断点续传合并完成后都走这里，保证两条路径建出来的数据一模一样
+     */
+    @Transactional(rollbackFor = Exception.class) // MySQL 事务
+    public DocIndex saveDocumentRecords(UploadRequest request, ObjectStore.UploadResult uploaded) {
+        return saveDocumentRecords(request, VersionStorageService.StoredVersion.raw(uploaded));
+    }
+
+    @Transactional(rollbackFor = Exception.class) // MySQL 事务
+    public DocIndex saveDocumentRecords(UploadRequest request, VersionStorageService.StoredVersion stored) {
+        // 1. 准备 MongoDB 数据
+        ShipDocument mongoDoc = newMongoDoc(request, stored);
+        ShipDocument.DocVersion v1 = mongoDoc.getVersions().get(0);
 
         // 2. 【关键】先存 MongoDB，拿到 ID
         ShipDocument savedMongoDoc = mongoRepository.save(mongoDoc);
         log.info("MongoDB 保存成功，ID: {}", savedMongoDoc.getId());
 
         try {
-            // 3. 准备 MySQL 的数据对象 (骨架)
-            DocIndex sqlIndex = new DocIndex();
-            sqlIndex.setShipId(request.getShipId());
-            sqlIndex.setTitle(request.getTitle());
-            sqlIndex.setCategory(request.getCategory());
-            sqlIndex.setStatus("DRAFT");
-            sqlIndex.setLatestVersion(1);
-            sqlIndex.setCreatedAt(LocalDateTime.now());
-            sqlIndex.setComponentId(request.getComponentId()); // 【新增】存入关联
-
-            // --- 建立关联 ---
-            sqlIndex.setMongoDocId(savedMongoDoc.getId()); // 把 Mongo ID 存进 MySQL
+            // 3. 准备 MySQL 的数据对象 (骨架)，并把 Mongo ID 存进 MySQL 建立关联
+            DocIndex sqlIndex = newIndex(request, savedMongoDoc.getId());
 
             // 4. 存入 MySQL
             docIndexMapper.insert(sqlIndex);
             log.info("MySQL 保存成功，IndexID: {}", sqlIndex.getId());
+            searchService.index(sqlIndex, request.getMetadata());
+            rollupService.onDocumentsAdded(List.of(sqlIndex), List.of(v1.getStoredSize()));
+            return sqlIndex;
 
         } catch (Exception e) {
             // 5. 【手动回滚】如果 MySQL 挂了，要把刚才 Mongo 里存的垃圾数据删掉！
             log.error("MySQL 保存失败，执行 MongoDB 回滚...");
-            minioUtil.removeFile(storagePath);
+            mongoRepository.deleteById(savedMongoDoc.getId());
+            contentStoreService.release(v1);
             throw e; // 继续抛出异常，让 Controller 知道失败了
         }
     }
 
+    /**
+     * 【新增】异步上传的建档 (发件箱后台调用，可以重复执行)
+     * 先按 mongoDocId 查 MySQL：建过就直接返回 (上次其实成功了，只是没来得及标记完成)，
+     * 没建过再用事先定好的主键 upsert Mongo 详情、插 MySQL 索引；失败不回滚，由发件箱下次重试
+     */
+    public DocIndex saveDocumentRecordsIdempotent(UploadRequest request, ShipDocument.DocVersion version, String mongoDocId) {
+        DocIndex existing = docIndexMapper.selectByMongoDocId(mongoDocId);
+        if (existing != null) return existing;
+
+        ShipDocument mongoDoc = new ShipDocument();
+        mongoDoc.setId(mongoDocId);
+        mongoDoc.setMetadata(request.getMetadata());
+        mongoDoc.setVersions(new ArrayList<>(List.of(version)));
+        mongoRepository.save(mongoDoc); // 主键已定：重试时覆盖同一篇
+
+        DocIndex sqlIndex = newIndex(request, mongoDocId);
+        try {
+            docIndexMapper.insert(sqlIndex);
+        } catch (DuplicateKeyException e) {
+            return docIndexMapper.selectByMongoDocId(mongoDocId); // uk_mongo_doc_id：租约过期后两边同时在建，另一边先插进去了
+        }
+        searchService.index(sqlIndex, request.getMetadata());
+        rollupService.onDocumentsAdded(List.of(sqlIndex), List.of(version.getStoredSize()));
+        log.info("异步建档完成: IndexID={}, MongoID={}", sqlIndex.getId(), mongoDocId);
+        return sqlIndex;
+    }
+
+    /**
+     * 【新增】放弃一份没建成的档 (异步上传失败过期时用)：MySQL 里没有索引才删 Mongo 详情、释放文件
+     * MySQL 里已经有了 (索引插进去了，后面的步骤失败) 说明文件在用，什么都不动
+     * @return 是否释放了文件
+     */
+    public boolean discardUnrecorded(String mongoDocId, ShipDocument.DocVersion version) {
+        if (docIndexMapper.selectByMongoDocId(mongoDocId) != null) return false;
+        mongoRepository.deleteById(mongoDocId);
+        contentStoreService.release(version);
+        return true;
+    }
+
+    /**
+     * 新文档的第一个版本 (V1.0)
+     */
+    public static ShipDocument.DocVersion initialVersion(VersionStorageService.StoredVersion stored) {
+        return toDocVersion("V1.0", "Initial Upload", stored);
+    }
+
+    /**
+     * 【新增】批量建档 (批量导入用)：Mongo 一次 insertMany，MySQL 一次 JDBC 批量插入
+     * 整批要么都成功，要么回滚 Mongo 并释放这批文件，由调用方把整批记为失败
+     */
+    public List<DocIndex> saveDocumentRecordsBatch(List<UploadRequest> requests, List<VersionStorageService.StoredVersion> stored) {
+        List<ShipDocument> mongoDocs = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            mongoDocs.add(newMongoDoc(requests.get(i), stored.get(i)));
+        }
+        List<ShipDocument.DocVersion> versions = mongoDocs.stream().map(d -> d.getVersions().get(0)).toList();
+
+        List<ShipDocument> savedDocs;
+        try {
+            savedDocs = mongoRepository.saveAll(mongoDocs);
+        } catch (Exception e) {
+            contentStoreService.releaseAll(versions);
+            throw e;
+        }
+
+        List<DocIndex> indexes = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            indexes.add(newIndex(requests.get(i), savedDocs.get(i).getId()));
+        }
+        try {
+            Db.saveBatch(indexes, BATCH_SIZE);
+        } catch (Exception e) {
+            log.error("MySQL 批量保存失败，回滚 {} 条 MongoDB 记录", savedDocs.size());
+            mongoRepository.deleteAllById(savedDocs.stream().map(ShipDocument::getId).toList());
+            contentStoreService.releaseAll(versions);
+            throw e;
+        }
+        searchService.indexAll(indexes, requests.stream().map(UploadRequest::getMetadata).toList());
+        rollupService.onDocumentsAdded(indexes, versions.stream().map(ShipDocument.DocVersion::getStoredSize).toList());
+        return indexes;
+    }
+
+    private static ShipDocument newMongoDoc(UploadRequest request, VersionStorageService.StoredVersion stored) {
+        ShipDocument mongoDoc = new ShipDocument();
+        mongoDoc.setMetadata(request.getMetadata());
+        mongoDoc.setVersions(new ArrayList<>(List.of(initialVersion(stored))));
+        return mongoDoc;
+    }
+
+    private static DocIndex newIndex(UploadRequest request, String mongoDocId) {
+        DocIndex sqlIndex = new DocIndex();
+        sqlIndex.setShipId(request.getShipId());
+        sqlIndex.setTitle(request.getTitle());
+        sqlIndex.setCategory(request.getCategory());
+        sqlIndex.setStatus("DRAFT");
+        sqlIndex.setLatestVersion(1);
+        sqlIndex.setCreatedAt(LocalDateTime.now());
+        sqlIndex.setComponentId(request.getComponentId()); // 【新增】存入关联
+        sqlIndex.setMongoDocId(mongoDocId);
+        return sqlIndex;
+    }
+
+    /**
+     * 【新增】给已有文档上传新版本 (V2.0, V3.0 ...)
+     * 开了差分存储时只存和上一版的差分；版本追加用 $push，不整篇覆盖 Mongo 文档
+     */
+    @Transactional(rollbackFor = Exception.class)
+    public String uploadNewVersion(Long id, InputStream inputStream, String originalFilename, String contentType, String commitMsg) {
+        DocIndex index = requireIndex(id);
+        ShipDocument mongoDoc = mongoRepository.findById(index.getMongoDocId())
+                .orElseThrow(() -> new RuntimeException("文档详情丢失"));
+        List<ShipDocument.DocVersion> versions = mongoDoc.getVersions() != null ? mongoDoc.getVersions() : List.of();
+
+        int next = Math.max(index.getLatestVersion() != null ? index.getLatestVersion() : 0, versions.size()) + 1;
+        VersionStorageService.StoredVersion stored = versionStorageService.storeNewVersion(inputStream, originalFilename, contentType, versions);
+        ShipDocument.DocVersion version = toDocVersion("V" + next + ".0", StrUtil.blankToDefault(commitMsg, "Update"), stored);
+
+        // 条件追加：同一个版本号已经被别人抢先传了就不追加 (并发上传新版本)
+        Query query = Query.query(Criteria.where("_id").is(mongoDoc.getId()).and("versions.versionNo").ne(version.getVersionNo()));
+        if (mongoTemplate.updateFirst(query, new Update().push("versions", version), ShipDocument.class).getModifiedCount() == 0) {
+            contentStoreService.release(version);
+            throw new RuntimeException("版本冲突，请刷新后重试");
+        }
+        detailCache.invalidate(id);
+
+        try {
+            index.setLatestVersion(next);
+            docIndexMapper.updateById(index);
+        } catch (Exception e) {
+            log.error("MySQL 更新失败，撤回新版本 {}", version.getVersionNo());
+            mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(mongoDoc.getId())),
+                    new Update().pull("versions", new Document("versionNo", version.getVersionNo())),
+                    ShipDocument.class);
+            contentStoreService.release(version);
+            detailCache.invalidate(id);
+            throw e;
+        }
+        rollupService.onVersionAdded(index.getComponentId(), version.getStoredSize());
+        log.info("文档 {} 新版本 {} ({}, {} -> {} bytes)", id, version.getVersionNo(),
+                version.getEncoding(), version.getFileSize(), version.getStoredSize());
+        return version.getVersionNo();
+    }
+
+    private static ShipDocument.DocVersion toDocVersion(String versionNo, String commitMsg, VersionStorageService.StoredVersion stored) {
+        ShipDocument.DocVersion v = new ShipDocument.DocVersion();
+        v.setVersionNo(versionNo);
+        v.setCommitMsg(commitMsg);
+        v.setFileSize(stored.getFileSize()); // 【真实】文件大小 (原文)
+        v.setChecksum(stored.getUploaded().getSha256());
+        v.setStoragePath(stored.getUploaded().getStoragePath()); // 【真实】MinIO 路径
+        v.setEncoding(stored.getEncoding());
+        v.setStoredSize(stored.getUploaded().getSize());
+        v.setBaseVersionNo(stored.getBaseVersionNo());
+        v.setDeltaDepth(stored.getDeltaDepth());
+        return v;
+    }
+
 
     /**
      * 获取文档详情 + 下载链接
      * @param id 这是 MySQL 表里的 id (主键)
      */
     public DocumentDetailVO getDocumentDetail(Long id) {
-        // 1. 先查 MySQL，拿到 mongoDocId
+        return getDocumentDetail(id, false);
+    }
+
+    /**
+     * @param presigned true = 下载链接用 MinIO 预签名 URL (短时有效，直连 MinIO)；false = 走应用下载接口
+     */
+    public DocumentDetailVO getDocumentDetail(Long id, boolean presigned) {
+        // 预签名链接有有效期，不能缓存；普通详情走缓存，没命中再查两个库
+        if (presigned) return loadDocumentDetail(id, true);
+        DocumentDetailVO vo = detailCache.get(id, () -> loadDocumentDetail(id, false));
+        if (shipTombstones.isDeleted(vo.getShipId())) throw new RuntimeException("文档不存在"); // 缓存里可能还有删船前的
+        return vo;
+    }
+
+    /**
+     * 按主键取索引：不存在、或者所属的船已经删除 (墓碑，后台还没删到它) 都按文档不存在处理
+     */
+    private DocIndex requireIndex(Long id) {
         DocIndex index = docIndexMapper.selectById(id);
-        if (index == null) throw new RuntimeException("文档不存在");
+        if (index == null || shipTombstones.isDeleted(index.getShipId())) throw new RuntimeException("文档不存在");
+        return index;
+    }
+
+    private DocumentDetailVO loadDocumentDetail(Long id, boolean presigned) {
+        // 1. 先查 MySQL，拿到 mongoDocId
+        DocIndex index = requireIndex(id);
 
         // 2. 再查 MongoDB，拿到详情
         ShipDocument mongoDoc = mongoRepository.findById(index.getMongoDocId())
                 .orElseThrow(() -> new RuntimeException("文档详情丢失"));
 
+        return toDetailVO(index, mongoDoc, presigned);
+    }
+
+    /**
+     * 【新增】批量获取文档详情 (看板一次打开很多文档)
+     * 缓存没命中的一次 selectBatchIds + 一次 $in 查完，和文档数量无关，固定两次往返
+     * 按传入顺序返回，查不到的 (不存在 / 详情丢失) 放在 missingIds 里
+     */
+    public BatchDetailVO getDocumentDetails(List<Long> ids) {
+        if (ids == null || ids.isEmpty()) throw new IllegalArgumentException("ids 不能为空");
+        if (ids.size() > MAX_BATCH_DETAIL) throw new IllegalArgumentException("单次最多查询 " + MAX_BATCH_DETAIL + " 个文档");
+
+        List<Long> distinctIds = ids.stream().filter(Objects::nonNull).distinct().toList();
+        Map<Long, DocumentDetailVO> found = detailCache.getAll(distinctIds, this::loadDocumentDetails);
+        Set<Long> deletedShips = shipTombstones.deletedAmong(
+                found.values().stream().map(DocumentDetailVO::getShipId).filter(Objects::nonNull).collect(Collectors.toSet()));
+
+        BatchDetailVO result = new BatchDetailVO();
+        for (Long id : distinctIds) {
+            DocumentDetailVO vo = found.get(id);
+            if (vo != null && !deletedShips.contains(vo.getShipId())) {
+                result.getItems().add(vo);
+            } else {
+                result.getMissingIds().add(id);
+            }
+        }
+        return result;
+    }
+
+    private Map<Long, DocumentDetailVO> loadDocumentDetails(Collection<Long> ids) {
+        List<DocIndex> indexes = docIndexMapper.selectBatchIds(ids);
+        List<String> mongoIds = indexes.stream().map(DocIndex::getMongoDocId).filter(Objects::nonNull).toList();
+        Map<String, ShipDocument> mongoDocs = new HashMap<>();
+        for (ShipDocument doc : mongoRepository.findAllById(mongoIds)) {
+            mongoDocs.put(doc.getId(), doc);
+        }
+
+        Map<Long, DocumentDetailVO> result = new HashMap<>();
+        for (DocIndex index : indexes) {
+            ShipDocument mongoDoc = mongoDocs.get(index.getMongoDocId());
+            if (mongoDoc == null) {
+                log.warn("文档详情丢失: id={}, mongoDocId={}", index.getId(), index.getMongoDocId());
+                continue;
+            }
+            result.put(index.getId(), toDetailVO(index, mongoDoc, false));
+        }
+        return result;
+    }
+
+    private DocumentDetailVO toDetailVO(DocIndex index, ShipDocument mongoDoc, boolean presigned) {
         // 3. 组装返回给前端的对象 (VO)
         DocumentDetailVO vo = new DocumentDetailVO();
         vo.setId(index.getId());
+        vo.setShipId(index.getShipId());
         vo.setTitle(index.getTitle());
         vo.setMetadata(mongoDoc.getMetadata()); // 动态参数
 
@@ -115,9 +390,14 @@ public class DocumentService {
                 vVo.setFileSize(v.getFileSize());
                 vVo.setUploadTime(v.getUploadTime());
 
-                // 拼接 MinIO 公开访问地址
-                // 例如: http://localhost:9000/ship-files/uuid-engine.pdf
-                vVo.setDownloadUrl(MINIO_BASE_URL + v.getStoragePath());
+                // 【升级】不再拼 MinIO 公开地址
+                // 默认: /api/docs/1/download?version=V1.0 (应用转发，支持断点续传和拖动预览)
+                // 预签名: http://localhost:9000/ship-files/uuid-engine.pdf?X-Amz-... (10 分钟后失效)
+                // 压缩 / 差分存储的版本 MinIO 里不是原文，本地存储也没法直连，都退回应用接口
+                String apiUrl = downloadApiUrl(index.getId(), v.getVersionNo());
+                vVo.setDownloadUrl(presigned && VersionStorageService.isRaw(v)
+                        ? objectStore.getPresignedUrl(v.getStoragePath(), PRESIGNED_EXPIRY_SECONDS).orElse(apiUrl)
+                        : apiUrl);
 
                 versionVOs.add(vVo);
             }
@@ -127,12 +407,92 @@ public class DocumentService {
         return vo;
     }
 
+    /**
+     * 应用下载接口的地址 (支持 Range，任何存储、任何编码的版本都能下)
+     */
+    public static String downloadApiUrl(Long id, String versionNo) {
+        return String.format(DOWNLOAD_API, id, URLEncoder.encode(versionNo, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 【新增】找到要下载的那个版本 (versionNo 为空时取最新版本)
+     */
+    public DownloadTarget resolveDownload(Long id, String versionNo) {
+        DocIndex index = requireIndex(id);
+        ShipDocument mongoDoc = mongoRepository.findById(index.getMongoDocId())
+                .orElseThrow(() -> new RuntimeException("文档详情丢失"));
+        List<ShipDocument.DocVersion> versions = mongoDoc.getVersions();
+        if (versions == null || versions.isEmpty()) throw new RuntimeException("文档没有任何版本");
+
+        ShipDocument.DocVersion version = StrUtil.isBlank(versionNo)
+                ? versions.get(versions.size() - 1)
+                : versions.stream().filter(v -> versionNo.equals(v.getVersionNo())).findFirst()
+                        .orElseThrow(() -> new RuntimeException("版本不存在: " + versionNo));
+
+        // 文件名优先用上传时的原始文件名，否则把 UUID_ 前缀去掉
+        Object originalName = mongoDoc.getMetadata() != null ? mongoDoc.getMetadata().get("original_name") : null;
+        String fileName = originalName != null
+                ? originalName.toString()
+                : StrUtil.subAfter(version.getStoragePath(), "_", false);
+
+        DownloadTarget target = new DownloadTarget();
+        target.setStoragePath(version.getStoragePath());
+        target.setChecksum(version.getChecksum());
+        target.setFileName(fileName);
+        target.setVersion(version);
+        target.setVersions(versions);
+        return target;
+    }
+
     /**
      * 【升级】分页查询文档
      * @param pageNum 当前页码 (1开始)
      * @param pageSize 每页条数
      */
     public IPage<DocIndex> listDocs(Long shipId, String componentId, String keyword, int pageNum, int pageSize) {
+        LambdaQueryWrapper<DocIndex> wrapper = listWrapper(shipId, componentId, keyword);
+
+        wrapper.orderByDesc(DocIndex::getCreatedAt);
+
+        // 执行分页查询
+        // MyBatis Plus 会自动生成 LIMIT 0, 10 这种 SQL
+        return docIndexMapper.selectPage(new Page<>(pageNum, pageSize), wrapper);
+    }
+
+    /**
+     * 【新增】游标分页 (keyset)：按 (created_at, id) 倒序，从上一页最后一条接着往下查
+     * WHERE ... AND (created_at < ? OR (created_at = ? AND id < ?)) ORDER BY created_at DESC, id DESC LIMIT size + 1
+     * 不用 OFFSET，翻到多深都是走索引 (ship_id, created_at, id) 定位后顺序读 size 条 (建索引的 DDL 见 DocIndex.createdAt)；
+     * 总数默认不查 (COUNT(*) 要扫整个船的文档)，需要时传 withTotal=true
+     * @param cursor 上一页返回的 nextCursor，第一页传空
+     */
+    public CursorPage listDocsByCursor(Long shipId, String componentId, String keyword, String cursor, int size, boolean withTotal) {
+        if (size < 1 || size > MAX_PAGE_SIZE) throw new IllegalArgumentException("每页条数必须在 1 ~ " + MAX_PAGE_SIZE + " 之间");
+
+        LambdaQueryWrapper<DocIndex> wrapper = listWrapper(shipId, componentId, keyword);
+        if (StrUtil.isNotBlank(cursor)) {
+            Cursor c = Cursor.decode(cursor);
+            wrapper.and(w -> w.lt(DocIndex::getCreatedAt, c.createdAt)
+                    .or(o -> o.eq(DocIndex::getCreatedAt, c.createdAt).lt(DocIndex::getId, c.id)));
+        }
+        wrapper.orderByDesc(DocIndex::getCreatedAt).orderByDesc(DocIndex::getId);
+        wrapper.last("LIMIT " + (size + 1)); // 多查一条，用来判断后面还有没有
+
+        List<DocIndex> rows = docIndexMapper.selectList(wrapper);
+        CursorPage page = new CursorPage();
+        page.setHasMore(rows.size() > size);
+        page.setRecords(page.isHasMore() ? new ArrayList<>(rows.subList(0, size)) : rows);
+        if (page.isHasMore()) {
+            DocIndex last = page.getRecords().get(size - 1);
+            page.setNextCursor(new Cursor(last.getCreatedAt(), last.getId()).encode());
+        }
+        if (withTotal) {
+            page.setTotal(docIndexMapper.selectCount(listWrapper(shipId, componentId, keyword)));
+        }
+        return page;
+    }
+
+    private static LambdaQueryWrapper<DocIndex> listWrapper(Long shipId, String componentId, String keyword) {
         LambdaQueryWrapper<DocIndex> wrapper = new LambdaQueryWrapper<>();
 
         wrapper.eq(DocIndex::getShipId, shipId);
@@ -144,73 +504,98 @@ public class DocumentService {
         if (StrUtil.isBlank(keyword) && StrUtil.isNotBlank(componentId)) {
             wrapper.eq(DocIndex::getComponentId, componentId);
         }
+        return wrapper;
+    }
 
-        wrapper.orderByDesc(DocIndex::getCreatedAt);
+    /**
+     * 游标内容：上一页最后一条的 (created_at, id)，Base64 一下给前端当不透明字符串用
+     */
+    private record Cursor(LocalDateTime createdAt, Long id) {
+        String encode() {
+            return Base64.getUrlEncoder().withoutPadding()
+                    .encodeToString((createdAt + "," + id).getBytes(StandardCharsets.UTF_8));
+        }
 
-        // 执行分页查询
-        // MyBatis Plus 会自动生成 LIMIT 0, 10 这种 SQL
-        return docIndexMapper.selectPage(new Page<>(pageNum, pageSize), wrapper);
+        static Cursor decode(String token) {
+            try {
+                String[] parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split(",");
+                return new Cursor(LocalDateTime.parse(parts[0]), Long.parseLong(parts[1]));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("无效的分页游标");
+            }
+        }
     }
 
     /**
      * 【级联删除核心】根据一组 Component ID，删除它们关联的所有文档
-     * 步骤：查 MySQL -> 删 MinIO 文件 -> 删 Mongo 详情 -> 删 MySQL 索引
+     * 【升级】批量流水线，每 BATCH_SIZE 个文档一轮往返：
+     * 查 MySQL (IN) -> 查 Mongo ($in) -> 删 Mongo (deleteMany) -> 删 MySQL (IN) -> 审计日志 (insertMany) -> 并发批量删 MinIO 文件
+     * 文件放到最后删：数据库删失败时文件还在，不会出现“有记录没文件”的坏数据
      */
     @Transactional(rollbackFor = Exception.class)
     public void deleteDocumentsByComponentIds(List<String> componentIds) {
         if (componentIds == null || componentIds.isEmpty()) return;
 
-        // 1. 先去 MySQL 查出这就这几个零件下所有的文档
+        // 1. 先去 MySQL 查出这几个零件下所有的文档 (IN 列表太长时分批)
         // SQL: SELECT * FROM doc_index WHERE component_id IN ('id1', 'id2', ...)
-        LambdaQueryWrapper<DocIndex> wrapper = new LambdaQueryWrapper<>();
-        wrapper.in(DocIndex::getComponentId, componentIds);
-        List<DocIndex> docsToDelete = docIndexMapper.selectList(wrapper);
+        List<DocIndex> docsToDelete = new ArrayList<>();
+        for (List<String> batch : CollUtil.split(componentIds, BATCH_SIZE)) {
+            LambdaQueryWrapper<DocIndex> wrapper = new LambdaQueryWrapper<>();
+            wrapper.in(DocIndex::getComponentId, batch);
+            docsToDelete.addAll(docIndexMapper.selectList(wrapper));
+        }
 
         if (docsToDelete.isEmpty()) return;
 
-        // 2. 遍历每一个文档，执行删除
-        for (DocIndex doc : docsToDelete) {
-            // A. 查出 MongoDB 里的详情 (为了拿到文件名去删 MinIO)
-            ShipDocument mongoDoc = mongoRepository.findById(doc.getMongoDocId()).orElse(null);
-
-            if (mongoDoc != null && mongoDoc.getVersions() != null) {
-                // B. 遍历所有版本，删掉 MinIO 里的文件
-                for (ShipDocument.DocVersion v : mongoDoc.getVersions()) {
-                    if (v.getStoragePath() != null) {
-                        minioUtil.removeFile(v.getStoragePath()); // 🧹 清理硬盘
-                    }
-                }
-                // C. 删掉 MongoDB 里的记录
-                mongoRepository.deleteById(doc.getMongoDocId());
+        // 2~4. 按批处理，每批 BATCH_SIZE 个文档：Mongo 的 $in 和 MySQL 的 IN 一样不超过这个长度
+        List<ShipDocument.DocVersion> versions = new ArrayList<>();
+        for (List<DocIndex> batch : CollUtil.split(docsToDelete, BATCH_SIZE)) {
+            List<Long> indexIds = batch.stream().map(DocIndex::getId).toList();
+            List<String> mongoIds = batch.stream().map(DocIndex::getMongoDocId).filter(Objects::nonNull).toList();
+
+            // 2. 一次 $in 查出这批的 MongoDB 详情，收集要释放的文件版本
+            for (ShipDocument mongoDoc : mongoRepository.findAllById(mongoIds)) {
+                if (mongoDoc.getVersions() != null) versions.addAll(mongoDoc.getVersions());
             }
 
-            // D. 删掉 MySQL 里的记录
-            docIndexMapper.deleteById(doc.getId());
+            // 3. 删 MongoDB 详情 (deleteMany + $in) 和 MySQL 索引 (DELETE ... WHERE id IN (...))
+            mongoRepository.deleteAllById(mongoIds);
+            docIndexMapper.deleteBatchIds(indexIds);
+            detailCache.invalidateAll(indexIds);
+            searchService.removeAll(indexIds);
+        }
 
-            // 【新增】记录审计日志
+        // 4. 【优化】审计日志交给后台批量写 (insertMany)，这里不等
+        List<AuditLog> auditLogs = new ArrayList<>(docsToDelete.size());
+        for (DocIndex doc : docsToDelete) {
             AuditLog log = new AuditLog();
             log.setAction("DELETE_DOC");
             log.setTargetType("Document");
             log.setTargetName(doc.getTitle());
             log.setOperator("admin"); // 暂时写死
             log.setDetail("级联删除了文档，原所属零件ID: " + doc.getComponentId());
-            auditLogRepository.save(log);
+            auditLogs.add(log);
         }
+        auditLogWriter.submitAll(auditLogs);
+
+        // 5. 🧹 释放文件引用，没人用的文件并发批量删除 (所有批次的数据库都删完才动文件)
+        contentStoreService.releaseAll(versions);
 
-        log.info("级联删除了 {} 个文档，涉及零件: {}", docsToDelete.size(), componentIds);
+        log.info("级联删除了 {} 个文档 ({} 个文件版本)，涉及零件 {} 个", docsToDelete.size(), versions.size(), componentIds.size());
     }
 
     /**
      * 【新增】更新文档基本信息
      */
     public void updateDocumentInfo(Long id, String title, String category) {
-        DocIndex doc = docIndexMapper.selectById(id);
-        if (doc == null) throw new RuntimeException("文档不存在");
+        DocIndex doc = requireIndex(id);
 
         doc.setTitle(title);
         doc.setCategory(category);
         // 使用 MyBatis-Plus 的 updateById 更新
         docIndexMapper.updateById(doc);
+        detailCache.invalidate(id);
+        searchService.updateInfo(id, title, category);
     }
 
 
@@ -219,6 +604,7 @@ public class DocumentService {
     @Data
     public static class DocumentDetailVO {
         private Long id;
+        private Long shipId;
         private String title;
         private Map<String, Object> metadata;
         private List<VersionVO> versions;
@@ -232,6 +618,32 @@ public class DocumentService {
         }
     }
 
+    // --- 游标分页结果：nextCursor 为空说明到底了；total 只有 withTotal=true 才有 ---
+    @Data
+    public static class CursorPage {
+        private List<DocIndex> records;
+        private String nextCursor;
+        private boolean hasMore;
+        private Long total;
+    }
+
+    // --- 批量详情：按传入顺序的结果 + 查不到的 ID ---
+    @Data
+    public static class BatchDetailVO {
+        private List<DocumentDetailVO> items = new ArrayList<>();
+        private List<Long> missingIds = new ArrayList<>();
+    }
+
+    // --- 下载目标：MinIO 路径 + 校验和 + 给浏览器看的文件名 ---
+    @Data
+    public static class DownloadTarget {
+        private String storagePath;
+        private String checksum;
+        private String fileName;
+        private ShipDocument.DocVersion version;         // 【新增】压缩 / 差分版本还原时要用
+        private List<ShipDocument.DocVersion> versions;
+    }
+
     // --- DTO: 前端传来的参数 ---
     @Data
     public static class UploadRequest {
@@ -240,6 +652,7 @@ public class DocumentService {
         private String title;
         private String fileName;
         private String category;
+        private String sha256;      // 【新增】客户端预先算好的内容哈希 (可选)，读完内容后校验
         // 动态参数：前端传 JSON，后端直接用 Map 接，NoSQL 的优势！
         private Map<String, Object> metadata;
     }
@@ -0,0 +1,175 @@
+package com.university.shipmanager.service;
+
+import cn.hutool.core.util.StrUtil;
+import com.google.common.io.ByteStreams;
+import com.university.shipmanager.common.ObjectStore;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * 文件下载 (经应用转发)
+ * 1. 条件请求：ETag (内容 SHA-256) / Last-Modified，没变就回 304
+ * 2. Range：单区间断点续传 / PDF 拖动预览，回 206
+ * 3. 传输：本地存储 + Tomcat 支持时走 sendfile 零拷贝 (内核直接把文件发到 socket)；
+ *         否则把存储的输出流直接灌进 Servlet 输出流，不在应用里攒整个文件
+ * 4. 压缩 / 差分存储的版本：边还原边输出，Range 在还原后的内容上跳过 / 截取
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class FileDownloadService {
+
+    // Tomcat sendfile 约定的请求属性
+    private static final String SENDFILE_SUPPORT_ATTR = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+
+    private final DocumentService documentService;
+    private final ObjectStore objectStore;
+    private final VersionStorageService versionStorageService;
+
+    public void download(Long docId, String versionNo, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        DocumentService.DownloadTarget target = documentService.resolveDownload(docId, versionNo);
+        ObjectStore.ObjectInfo info = objectStore.statObject(target.getStoragePath());
+
+        // 1. 条件请求 (If-None-Match / If-Modified-Since / If-Match / If-Unmodified-Since)
+        //    HTTP 日期只精确到秒，这里也截到秒，不然 If-Modified-Since 永远对不上
+        String etag = "\"" + StrUtil.blankToDefault(target.getChecksum(), info.getEtag()) + "\"";
+        long lastModified = info.getLastModified().getEpochSecond() * 1000;
+        if (new ServletWebRequest(request, response).checkNotModified(etag, lastModified)) {
+            return; // 304 / 412，响应头已经设置好了
+        }
+
+        boolean raw = VersionStorageService.isRaw(target.getVersion());
+        long size = raw ? info.getSize() : target.getVersion().getFileSize(); // 编码过的版本，对外的大小是原文大小
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setContentType(resolveContentType(info, target.getFileName()));
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.inline()
+                .filename(target.getFileName(), StandardCharsets.UTF_8).build().toString());
+
+        // 2. 解析 Range (只支持单区间，多区间按规范退化成整个文件)
+        long start = 0;
+        long end = size - 1;
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (rangeHeader != null && ifRangeMatches(request, etag, lastModified)) {
+            List<HttpRange> ranges;
+            try {
+                ranges = HttpRange.parseRanges(rangeHeader);
+            } catch (IllegalArgumentException e) {
+                ranges = List.of();
+            }
+            if (ranges.size() == 1) {
+                try {
+                    start = ranges.get(0).getRangeStart(size);
+                    end = ranges.get(0).getRangeEnd(size);
+                } catch (IllegalArgumentException e) {
+                    // 区间超出文件范围
+                    response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+                    return;
+                }
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + size);
+            }
+        }
+
+        long length = end - start + 1;
+        response.setContentLengthLong(Math.max(length, 0));
+        if (length <= 0 || "HEAD".equals(request.getMethod())) return;
+
+        // 3A. 编码过的版本：还原出原文，跳到区间起点，只输出这一段
+        if (!raw) {
+            try (InputStream in = versionStorageService.open(target.getVersion(), target.getVersions())) {
+                in.skipNBytes(start);
+                OutputStream out = response.getOutputStream();
+                ByteStreams.limit(in, length).transferTo(out);
+                out.flush();
+            } catch (IOException e) {
+                log.debug("下载中断: doc={}, range={}-{}", docId, start, end);
+            }
+            return;
+        }
+
+        // 3B. 零拷贝：文件在本机磁盘上，交给 Tomcat 用 sendfile 发送，数据不经过 JVM 堆
+        Path localFile = objectStore.localPath(target.getStoragePath());
+        if (localFile != null && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT_ATTR))) {
+            request.setAttribute(SENDFILE_FILENAME_ATTR, localFile.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START_ATTR, start);
+            request.setAttribute(SENDFILE_END_ATTR, end + 1); // Tomcat 的 end 是开区间
+            return;
+        }
+
+        // 3C. 直通传输：存储只读这一段，读多少写多少
+        try (InputStream in = objectStore.getObject(target.getStoragePath(), start, length)) {
+            OutputStream out = response.getOutputStream();
+            in.transferTo(out);
+            out.flush();
+        } catch (IOException e) {
+            // 客户端中途断开 (拖动进度条、暂停下载) 很常见，不算错误
+            log.debug("下载中断: doc={}, range={}-{}", docId, start, end);
+        }
+    }
+
+    /**
+     * 生成下载链接：能预签名就给短时有效的直连链接；
+     * 存储不支持直连 (本地磁盘) 或版本是压缩 / 差分存储的 (存储里不是原文)，退回应用下载接口
+     */
+    public DownloadLink downloadLink(Long docId, String versionNo, int expirySeconds) {
+        DocumentService.DownloadTarget target = documentService.resolveDownload(docId, versionNo);
+        Optional<String> presigned = VersionStorageService.isRaw(target.getVersion())
+                ? objectStore.getPresignedUrl(target.getStoragePath(), expirySeconds)
+                : Optional.empty();
+        return presigned.map(url -> new DownloadLink(url, true, expirySeconds))
+                .orElseGet(() -> new DownloadLink(DocumentService.downloadApiUrl(docId, target.getVersion().getVersionNo()), false, null));
+    }
+
+    /**
+     * If-Range：客户端手里的版本和当前一致才按 Range 续传，否则给整个文件
+     */
+    private static boolean ifRangeMatches(HttpServletRequest request, String etag, long lastModified) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) return true;
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return ifRange.equals(etag);
+        }
+        try {
+            return request.getDateHeader(HttpHeaders.IF_RANGE) == lastModified;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static String resolveContentType(ObjectStore.ObjectInfo info, String fileName) {
+        if (StrUtil.isNotBlank(info.getContentType()) && !"application/octet-stream".equals(info.getContentType())) {
+            return info.getContentType();
+        }
+        return MediaTypeFactory.getMediaType(fileName).orElse(MediaType.APPLICATION_OCTET_STREAM).toString();
+    }
+
+    // --- VO: 下载链接 ---
+    @Data
+    public static class DownloadLink {
+        private final String url;
+        private final boolean presigned;  // false = 应用下载接口 (不会过期)
+        private final Integer expiresIn;  // 预签名链接的有效秒数
+    }
+}
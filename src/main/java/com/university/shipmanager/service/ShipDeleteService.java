@@ -0,0 +1,312 @@
+package com.university.shipmanager.service;
+
+import cn.hutool.core.thread.ThreadUtil;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.university.shipmanager.entity.mongo.ComponentDoc;
+import com.university.shipmanager.entity.mongo.ShipDeleteJob;
+import com.university.shipmanager.entity.mongo.ShipDocument;
+import com.university.shipmanager.entity.mysql.DocIndex;
+import com.university.shipmanager.mapper.DocIndexMapper;
+import com.university.shipmanager.mapper.ShipMapper;
+import com.university.shipmanager.repository.ShipDeleteJobRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * 整船级联删除 (后台任务)
+ * 1. 请求里只建任务 = 打墓碑 (ShipTombstones：有任务的船读接口查不到、写接口拒绝)，清掉 BOM 树缓存，马上返回
+ * 2. 后台分批删文档：每批 500 个，先把这批要释放的文件版本记进任务 (pending)，再删 Mongo 详情 + MySQL 索引，
+ *    最后清 pending、释放文件；文件释放 (引用计数 + 删 MinIO) 交给单独的线程池并发跑，同时在途的批数有上限
+ * 3. 再分批删零件树，最后删除 ship 行
+ * 4. 续跑：进程重启后把没跑完的任务接着跑 (租约过期才接手，多实例不会抢)；失败的任务可以手动续跑
+ *    每一步都是 "删剩下的"，重复执行没有副作用；唯一的例外是释放文件：
+ *    pending 先清再释放，宕在中间最多漏删几个文件 (多占点空间)，不会把别人还在用的文件删掉
+ */
+@Slf4j
+@Service
+public class ShipDeleteService {
+
+    static final String RUNNING = "RUNNING";
+    static final String COMPLETED = "COMPLETED";
+    static final String FAILED = "FAILED";
+    static final String PHASE_DOCUMENTS = "DOCUMENTS";
+    static final String PHASE_COMPONENTS = "COMPONENTS";
+    static final String PHASE_SHIP = "SHIP";
+
+    private static final int DOC_BATCH_SIZE = 500;
+    private static final int COMPONENT_BATCH_SIZE = 5000;
+    private static final int RELEASE_CONCURRENCY = 4; // 同时在释放文件的批数
+    private static final Duration LEASE = Duration.ofMinutes(5);
+
+    private final ShipMapper shipMapper;
+    private final DocIndexMapper docIndexMapper;
+    private final ShipDeleteJobRepository jobRepository;
+    private final MongoTemplate mongoTemplate;
+    private final ContentStoreService contentStoreService;
+    private final DocumentSearchService searchService;
+    private final DocumentDetailCache detailCache;
+    private final BomTreeCache bomTreeCache;
+    private final ShipTombstones shipTombstones;
+
+    private final ExecutorService jobExecutor = Executors.newFixedThreadPool(2, ThreadUtil.newNamedThreadFactory("ship-delete-", true)); // 同时最多删 2 艘船
+    private final ExecutorService releaseExecutor = Executors.newFixedThreadPool(RELEASE_CONCURRENCY, ThreadUtil.newNamedThreadFactory("ship-delete-io-", true));
+    private final Semaphore releaseSlots = new Semaphore(RELEASE_CONCURRENCY);
+
+    public ShipDeleteService(ShipMapper shipMapper, DocIndexMapper docIndexMapper, ShipDeleteJobRepository jobRepository,
+                             MongoTemplate mongoTemplate, ContentStoreService contentStoreService,
+                             DocumentSearchService searchService, DocumentDetailCache detailCache, BomTreeCache bomTreeCache,
+                             ShipTombstones shipTombstones) {
+        this.shipMapper = shipMapper;
+        this.docIndexMapper = docIndexMapper;
+        this.jobRepository = jobRepository;
+        this.mongoTemplate = mongoTemplate;
+        this.contentStoreService = contentStoreService;
+        this.searchService = searchService;
+        this.detailCache = detailCache;
+        this.bomTreeCache = bomTreeCache;
+        this.shipTombstones = shipTombstones;
+    }
+
+    /**
+     * 建任务 (即墓碑)，后台删；同一艘船已经有任务就直接返回那个任务，船不存在直接报错
+     */
+    public ShipDeleteJob startDelete(Long shipId) {
+        ShipDeleteJob existing = jobRepository.findById(shipId).orElse(null);
+        if (existing != null) return existing;
+
+        if (shipMapper.selectById(shipId) == null) throw new RuntimeException("船舶不存在: " + shipId);
+
+        ShipDeleteJob job = new ShipDeleteJob();
+        job.setShipId(shipId);
+        job.setStatus(RUNNING);
+        job.setPhase(PHASE_DOCUMENTS);
+        job.setUpdatedAt(LocalDateTime.now());
+        try {
+            job = jobRepository.insert(job);
+        } catch (DuplicateKeyException e) {
+            return getJob(shipId); // 并发删同一艘船，另一个请求已经建好了
+        }
+        shipTombstones.markDeleted(job);
+        bomTreeCache.evictShip(shipId);
+        jobExecutor.execute(() -> run(shipId));
+        log.info("整船删除任务已创建: shipId={}", shipId);
+        return job;
+    }
+
+    public ShipDeleteJob getJob(Long shipId) {
+        return jobRepository.findById(shipId).orElseThrow(() -> new RuntimeException("删除任务不存在"));
+    }
+
+    /**
+     * 手动续跑 (失败的任务，或者卡住的任务租约过期后)
+     */
+    public ShipDeleteJob resume(Long shipId) {
+        ShipDeleteJob job = getJob(shipId);
+        if (COMPLETED.equals(job.getStatus())) return job;
+        mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(shipId).and("status").ne(COMPLETED)),
+                new Update().set("status", RUNNING).unset("error").set("updatedAt", LocalDateTime.now()), ShipDeleteJob.class);
+        jobExecutor.execute(() -> run(shipId));
+        return getJob(shipId);
+    }
+
+    /**
+     * 启动后把上次没跑完的任务接着跑 (在后台线程里查，数据库连不上也不耽误启动)
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeUnfinished() {
+        jobExecutor.execute(() -> {
+            try {
+                for (ShipDeleteJob job : jobRepository.findByStatus(RUNNING)) {
+                    log.info("续跑整船删除任务: shipId={}, 阶段={}", job.getShipId(), job.getPhase());
+                    jobExecutor.execute(() -> run(job.getShipId()));
+                }
+            } catch (Exception e) {
+                log.warn("查询未完成的整船删除任务失败", e);
+            }
+        });
+    }
+
+    void run(Long shipId) {
+        if (!claim(shipId)) return; // 别人在跑
+        long start = System.currentTimeMillis();
+        List<CompletableFuture<Void>> inFlight = new ArrayList<>();
+        try {
+            ShipDeleteJob job = getJob(shipId);
+            mongoTemplate.updateFirst(byId(shipId), new Update().inc("attempts", 1), ShipDeleteJob.class);
+
+            if (PHASE_DOCUMENTS.equals(job.getPhase())) {
+                // 上次宕在某一批中间：先把这一批收尾
+                if (!job.getPendingDocIds().isEmpty() || !job.getPendingMongoIds().isEmpty()) {
+                    inFlight.add(finishBatch(shipId, job.getPendingDocIds(), job.getPendingMongoIds(), job.getPendingVersions()));
+                }
+                while (deleteDocumentBatch(shipId, inFlight)) {
+                    renewLease(shipId);
+                }
+                awaitReleases(inFlight);
+                setPhase(shipId, PHASE_COMPONENTS);
+                job.setPhase(PHASE_COMPONENTS);
+            }
+            if (PHASE_COMPONENTS.equals(job.getPhase())) {
+                while (deleteComponentBatch(shipId)) {
+                    renewLease(shipId);
+                }
+                setPhase(shipId, PHASE_SHIP);
+                job.setPhase(PHASE_SHIP);
+            }
+            shipMapper.deleteById(shipId);
+            bomTreeCache.evictShip(shipId);
+
+            mongoTemplate.updateFirst(byId(shipId), new Update().set("status", COMPLETED).unset("leaseUntil")
+                    .set("updatedAt", LocalDateTime.now()).set("finishedAt", LocalDateTime.now()), ShipDeleteJob.class);
+            log.info("整船删除完成: shipId={}, 耗时 {} ms", shipId, System.currentTimeMillis() - start);
+        } catch (InterruptedException e) {
+            // 停机：任务保持 RUNNING，放掉租约，重启后接着跑
+            Thread.currentThread().interrupt();
+            mongoTemplate.updateFirst(byId(shipId), new Update().unset("leaseUntil"), ShipDeleteJob.class);
+        } catch (Exception e) {
+            log.error("整船删除失败: shipId={}", shipId, e);
+            awaitQuietly(inFlight);
+            mongoTemplate.updateFirst(byId(shipId), new Update().set("status", FAILED).set("error", e.getMessage())
+                    .unset("leaseUntil").set("updatedAt", LocalDateTime.now()), ShipDeleteJob.class);
+        }
+    }
+
+    /**
+     * 一批文档：查 MySQL 索引 (删一批少一批，每次都从头取) -> 一次 $in 取文件版本 -> 记 pending -> 收尾
+     * @return false 表示删完了
+     */
+    private boolean deleteDocumentBatch(Long shipId, List<CompletableFuture<Void>> inFlight) throws InterruptedException {
+        List<DocIndex> docs = docIndexMapper.selectList(new LambdaQueryWrapper<DocIndex>()
+                .eq(DocIndex::getShipId, shipId)
+                .orderByAsc(DocIndex::getId)
+                .last("LIMIT " + DOC_BATCH_SIZE));
+        if (docs.isEmpty()) return false;
+
+        List<Long> docIds = docs.stream().map(DocIndex::getId).toList();
+        List<String> mongoIds = docs.stream().map(DocIndex::getMongoDocId).filter(Objects::nonNull).toList();
+        Query versionQuery = Query.query(Criteria.where("_id").in(mongoIds));
+        versionQuery.fields().include("versions");
+        List<ShipDocument.DocVersion> versions = new ArrayList<>();
+        for (ShipDocument mongoDoc : mongoTemplate.find(versionQuery, ShipDocument.class)) {
+            if (mongoDoc.getVersions() != null) versions.addAll(mongoDoc.getVersions());
+        }
+
+        mongoTemplate.updateFirst(byId(shipId), new Update().set("pendingDocIds", docIds).set("pendingMongoIds", mongoIds)
+                .set("pendingVersions", versions).set("updatedAt", LocalDateTime.now()), ShipDeleteJob.class);
+        inFlight.add(finishBatch(shipId, docIds, mongoIds, versions));
+        inFlight.removeIf(CompletableFuture::isDone);
+        return true;
+    }
+
+    /**
+     * 删记录 (可重复执行) -> 清 pending + 记进度 -> 后台释放文件 (在途批数到上限就等一等)
+     */
+    private CompletableFuture<Void> finishBatch(Long shipId, List<Long> docIds, List<String> mongoIds,
+                                  List<ShipDocument.DocVersion> versions) throws InterruptedException {
+        if (!mongoIds.isEmpty()) mongoTemplate.remove(Query.query(Criteria.where("_id").in(mongoIds)), ShipDocument.class);
+        if (!docIds.isEmpty()) docIndexMapper.deleteBatchIds(docIds);
+        detailCache.invalidateAll(docIds);
+        searchService.removeAll(docIds);
+
+        mongoTemplate.updateFirst(byId(shipId), new Update()
+                .set("pendingDocIds", List.of()).set("pendingMongoIds", List.of()).set("pendingVersions", List.of())
+                .inc("documentsDeleted", docIds.size()).inc("versionsReleased", versions.size())
+                .set("updatedAt", LocalDateTime.now()), ShipDeleteJob.class);
+
+        releaseSlots.acquire();
+        try {
+            return CompletableFuture.runAsync(() -> {
+                try {
+                    contentStoreService.releaseAll(versions);
+                } catch (Exception e) {
+                    log.warn("整船删除: 释放 {} 个文件版本失败 (shipId={})，文件会留在存储里", versions.size(), shipId, e);
+                } finally {
+                    releaseSlots.release();
+                }
+            }, releaseExecutor);
+        } catch (RuntimeException e) {
+            releaseSlots.release();
+            throw e;
+        }
+    }
+
+    /**
+     * 一批零件：只查 _id，再按 _id 删
+     * @return false 表示删完了
+     */
+    private boolean deleteComponentBatch(Long shipId) {
+        Query query = Query.query(Criteria.where("shipId").is(shipId)).limit(COMPONENT_BATCH_SIZE);
+        query.fields().include("_id");
+        List<String> ids = mongoTemplate.find(query, ComponentDoc.class).stream().map(ComponentDoc::getId).toList();
+        if (ids.isEmpty()) return false;
+        long removed = mongoTemplate.remove(Query.query(Criteria.where("_id").in(ids)), ComponentDoc.class).getDeletedCount();
+        mongoTemplate.updateFirst(byId(shipId), new Update().inc("componentsDeleted", removed)
+                .set("updatedAt", LocalDateTime.now()), ShipDeleteJob.class);
+        return true;
+    }
+
+    /**
+     * 抢租约：任务在跑、并且没人持有 (或租约过期)
+     */
+    private boolean claim(Long shipId) {
+        LocalDateTime now = LocalDateTime.now();
+        Query query = Query.query(Criteria.where("_id").is(shipId).and("status").is(RUNNING)
+                .orOperator(Criteria.where("leaseUntil").is(null), Criteria.where("leaseUntil").lt(now)));
+        return mongoTemplate.updateFirst(query, new Update().set("leaseUntil", now.plus(LEASE)), ShipDeleteJob.class)
+                .getModifiedCount() == 1;
+    }
+
+    private void renewLease(Long shipId) {
+        mongoTemplate.updateFirst(byId(shipId), new Update().set("leaseUntil", LocalDateTime.now().plus(LEASE)), ShipDeleteJob.class);
+    }
+
+    private void setPhase(Long shipId, String phase) {
+        mongoTemplate.updateFirst(byId(shipId), new Update().set("phase", phase).set("updatedAt", LocalDateTime.now()), ShipDeleteJob.class);
+    }
+
+    private static Query byId(Long shipId) {
+        return Query.query(Criteria.where("_id").is(shipId));
+    }
+
+    private static void awaitReleases(List<CompletableFuture<Void>> inFlight) throws InterruptedException {
+        try {
+            CompletableFuture.allOf(inFlight.toArray(new CompletableFuture<?>[0])).get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause()); // releaseAll 的异常已经在任务里吞掉了，到不了这里
+        }
+        inFlight.clear();
+    }
+
+    private static void awaitQuietly(List<CompletableFuture<Void>> inFlight) {
+        try {
+            awaitReleases(inFlight);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        jobExecutor.shutdownNow();
+        releaseExecutor.shutdownNow();
+    }
+}
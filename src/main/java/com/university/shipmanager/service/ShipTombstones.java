@@ -0,0 +1,58 @@
+package com.university.shipmanager.service;
+
+import com.university.shipmanager.entity.mongo.ShipDeleteJob;
+import com.university.shipmanager.repository.ShipDeleteJobRepository;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * 整船删除的墓碑：ship_delete_jobs 里有任务 (不管跑没跑完) 的船就当作已经删了
+ * 后台删文档 / 零件要一段时间，这期间读接口按船不存在处理，写接口 (上传 / 导入 / 建零件) 直接拒绝
+ * 船 ID 自增不复用，删了的船不会再回来：查到一次就记在内存里，之后不用再查库
+ */
+@Component
+public class ShipTombstones {
+
+    private final ShipDeleteJobRepository jobRepository;
+    private final Set<Long> deleted = ConcurrentHashMap.newKeySet();
+
+    public ShipTombstones(ShipDeleteJobRepository jobRepository) {
+        this.jobRepository = jobRepository;
+    }
+
+    public boolean isDeleted(Long shipId) {
+        if (shipId == null) return false;
+        if (deleted.contains(shipId)) return true;
+        if (!jobRepository.existsById(shipId)) return false;
+        deleted.add(shipId);
+        return true;
+    }
+
+    /**
+     * 一组船里哪些已经删了 (船舶列表用，一次 $in)
+     */
+    public Set<Long> deletedAmong(Collection<Long> shipIds) {
+        List<Long> unknown = shipIds.stream().filter(id -> !deleted.contains(id)).toList();
+        if (!unknown.isEmpty()) {
+            jobRepository.findAllById(unknown).forEach(job -> deleted.add(job.getShipId()));
+        }
+        return shipIds.stream().filter(deleted::contains).collect(Collectors.toSet());
+    }
+
+    public void checkReadable(Long shipId) {
+        if (isDeleted(shipId)) throw new RuntimeException("船舶不存在: " + shipId);
+    }
+
+    public void checkWritable(Long shipId) {
+        if (isDeleted(shipId)) throw new IllegalStateException("船舶已删除 (正在后台清理)，不能再上传或导入: " + shipId);
+    }
+
+    void markDeleted(ShipDeleteJob job) {
+        deleted.add(job.getShipId());
+    }
+}
@@ -0,0 +1,250 @@
+package com.university.shipmanager.service;
+
+import cn.hutool.core.thread.ThreadUtil;
+import com.university.shipmanager.entity.mongo.ShipDocument;
+import com.university.shipmanager.entity.mongo.UploadOutbox;
+import com.university.shipmanager.entity.mysql.DocIndex;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 异步上传 (发件箱模式)
+ * 1. 请求线程：文件存进对象存储 -> 写一条 upload_outbox (PENDING) -> 立刻回执，不等 Mongo 详情和 MySQL 索引
+ *    对象存储没法和数据库一起提交，所以"文件已存好"这件事以发件箱这一条记录为准：记录写进去才回执，写失败就释放文件
+ * 2. 后台：回执后马上处理一次；失败按指数退避重试，定时扫描到期的 PENDING (包括宕机前没处理完的)
+ * 3. 幂等：Mongo 详情主键事先定好，MySQL 先按它查有没有建过，同一条处理多少次都只建一份档
+ *    (MySQL 上由 uk_mongo_doc_id 兜底，启动时 MysqlIndexInitializer 检查并补建)
+ * 4. 重试 max-attempts 次还是失败就标 FAILED，文件保留，修好以后可以手动重试；
+ *    超过 failed-retention-days 没人管就删掉这条并释放文件 (没建成档的才释放)
+ * 5. DONE 的只留 7 天给客户端查进度，之后由 TTL 索引自动删 (MongoIndexInitializer 建)
+ */
+@Slf4j
+@Service
+public class UploadOutboxService {
+
+    static final String PENDING = "PENDING";
+    static final String DONE = "DONE";
+    static final String FAILED = "FAILED";
+
+    private static final Duration LEASE = Duration.ofMinutes(2);
+    private static final long MAX_BACKOFF_SECONDS = 300;
+    private static final int SWEEP_BATCH = 100;
+
+    private final DocumentService documentService;
+    private final VersionStorageService versionStorageService;
+    private final ContentStoreService contentStoreService;
+    private final MongoTemplate mongoTemplate;
+    private final ShipTombstones shipTombstones;
+    private final int maxAttempts;
+    private final long pollSeconds;
+    private final Duration failedRetention;
+
+    private final ExecutorService workers = Executors.newFixedThreadPool(4, ThreadUtil.newNamedThreadFactory("upload-outbox-", true));
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(ThreadUtil.newNamedThreadFactory("upload-outbox-sweep-", true));
+
+    public UploadOutboxService(DocumentService documentService, VersionStorageService versionStorageService,
+                               ContentStoreService contentStoreService, MongoTemplate mongoTemplate, ShipTombstones shipTombstones,
+                               @Value("${upload.outbox.max-attempts:8}") int maxAttempts,
+                               @Value("${upload.outbox.poll-seconds:10}") long pollSeconds,
+                               @Value("${upload.outbox.failed-retention-days:30}") long failedRetentionDays) {
+        this.documentService = documentService;
+        this.versionStorageService = versionStorageService;
+        this.contentStoreService = contentStoreService;
+        this.mongoTemplate = mongoTemplate;
+        this.shipTombstones = shipTombstones;
+        this.maxAttempts = maxAttempts;
+        this.pollSeconds = pollSeconds;
+        this.failedRetention = Duration.ofDays(failedRetentionDays);
+    }
+
+    /**
+     * 存文件 + 写发件箱，返回回执 (status = PENDING)，建档在后台做
+     */
+    public UploadOutbox accept(DocumentService.UploadRequest request, InputStream inputStream, String originalFilename, String contentType) {
+        VersionStorageService.StoredVersion stored = versionStorageService.storeInitial(inputStream, originalFilename, contentType, request.getSha256());
+        ShipDocument.DocVersion version = DocumentService.initialVersion(stored);
+
+        UploadOutbox entry = new UploadOutbox();
+        entry.setId(new ObjectId().toHexString());
+        entry.setShipId(request.getShipId());
+        entry.setComponentId(request.getComponentId());
+        entry.setTitle(request.getTitle());
+        entry.setCategory(request.getCategory());
+        entry.setMetadata(request.getMetadata());
+        entry.setVersion(version);
+        entry.setMongoDocId(new ObjectId().toHexString());
+        entry.setStatus(PENDING);
+        entry.setNextAttemptAt(LocalDateTime.now());
+        try {
+            mongoTemplate.insert(entry);
+        } catch (RuntimeException e) {
+            contentStoreService.release(version); // 没记下来就当没传过
+            throw e;
+        }
+        workers.execute(() -> process(entry.getId()));
+        return entry;
+    }
+
+    public UploadOutbox getStatus(String id) {
+        UploadOutbox entry = mongoTemplate.findById(id, UploadOutbox.class);
+        if (entry == null) throw new RuntimeException("上传回执不存在");
+        return entry;
+    }
+
+    /**
+     * 手动重试一条 FAILED 的 (次数清零)
+     */
+    public UploadOutbox retry(String id) {
+        Query query = Query.query(Criteria.where("_id").is(id).and("status").is(FAILED));
+        Update update = new Update().set("status", PENDING).set("attempts", 0)
+                .set("nextAttemptAt", LocalDateTime.now()).set("updatedAt", LocalDateTime.now());
+        if (mongoTemplate.updateFirst(query, update, UploadOutbox.class).getModifiedCount() == 0) {
+            throw new RuntimeException("只有失败的上传可以重试");
+        }
+        workers.execute(() -> process(id));
+        return getStatus(id);
+    }
+
+    /**
+     * 启动后开始定时扫描 (在后台线程里查，数据库连不上也不耽误启动)
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void startSweeper() {
+        sweeper.scheduleWithFixedDelay(this::sweep, pollSeconds, pollSeconds, TimeUnit.SECONDS);
+    }
+
+    void sweep() {
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            Query due = Query.query(Criteria.where("status").is(PENDING).and("nextAttemptAt").lte(now)
+                            .orOperator(Criteria.where("leaseUntil").is(null), Criteria.where("leaseUntil").lt(now)))
+                    .with(Sort.by("nextAttemptAt")).limit(SWEEP_BATCH);
+            due.fields().include("_id");
+            for (UploadOutbox entry : mongoTemplate.find(due, UploadOutbox.class)) {
+                workers.execute(() -> process(entry.getId()));
+            }
+            expireFailed(now.minus(failedRetention));
+        } catch (Exception e) {
+            log.warn("扫描上传发件箱失败", e);
+        }
+    }
+
+    /**
+     * 过期的 FAILED：先删记录 (删成功才算抢到，和手动重试不会撞上)，再放弃没建成的档、释放文件
+     * 宕在中间最多漏删一个文件，不会把在用的文件删掉
+     */
+    void expireFailed(LocalDateTime cutoff) {
+        Query expired = Query.query(Criteria.where("status").is(FAILED).and("finishedAt").lt(cutoff)).limit(SWEEP_BATCH);
+        expired.fields().include("_id");
+        for (UploadOutbox candidate : mongoTemplate.find(expired, UploadOutbox.class)) {
+            UploadOutbox entry = mongoTemplate.findAndRemove(
+                    Query.query(Criteria.where("_id").is(candidate.getId()).and("status").is(FAILED)), UploadOutbox.class);
+            if (entry == null) continue; // 刚被手动重试了
+            boolean released = entry.getVersion() != null // 船已删除被拒的，文件当时就放掉了
+                    && documentService.discardUnrecorded(entry.getMongoDocId(), entry.getVersion());
+            log.info("异步上传 {} 失败已过期，删除{}", entry.getId(), released ? "并释放文件" : " (档已建成，文件保留)");
+        }
+    }
+
+    /**
+     * 处理一条：抢到租约才做；成功标 DONE，失败记下原因并按退避时间排下一次
+     */
+    void process(String id) {
+        if (!claim(id)) return; // 别人在处理，或者已经处理完了
+        UploadOutbox entry = mongoTemplate.findById(id, UploadOutbox.class);
+        if (entry == null) return;
+        if (shipTombstones.isDeleted(entry.getShipId())) {
+            rejectDeletedShip(entry);
+            return;
+        }
+        try {
+            DocIndex index = documentService.saveDocumentRecordsIdempotent(toRequest(entry), entry.getVersion(), entry.getMongoDocId());
+            LocalDateTime now = LocalDateTime.now();
+            mongoTemplate.updateFirst(byId(id), new Update().set("status", DONE).set("docId", index.getId())
+                    .inc("attempts", 1).unset("error").unset("leaseUntil")
+                    .set("updatedAt", now).set("finishedAt", now), UploadOutbox.class);
+            log.info("异步上传 {} 建档完成: docId={}", id, index.getId());
+        } catch (Exception e) {
+            int attempts = entry.getAttempts() + 1;
+            boolean giveUp = attempts >= maxAttempts;
+            LocalDateTime now = LocalDateTime.now();
+            Update update = new Update().set("attempts", attempts).set("error", e.getMessage())
+                    .unset("leaseUntil").set("updatedAt", now);
+            if (giveUp) {
+                update.set("status", FAILED).set("finishedAt", now);
+            } else {
+                update.set("nextAttemptAt", now.plusSeconds(backoffSeconds(attempts)));
+            }
+            mongoTemplate.updateFirst(byId(id), update, UploadOutbox.class);
+            log.warn("异步上传 {} 第 {} 次建档失败{}", id, attempts, giveUp ? "，不再重试" : "，稍后重试", e);
+        }
+    }
+
+    /**
+     * 回执之后船被删了 (后台可能已经删过这艘船的文档)：不再建档，直接标 FAILED，不重试
+     * 先把 version 从记录里摘掉再释放文件：宕在中间最多漏删一个文件，过期清理也不会再释放一次
+     */
+    private void rejectDeletedShip(UploadOutbox entry) {
+        LocalDateTime now = LocalDateTime.now();
+        mongoTemplate.updateFirst(byId(entry.getId()), new Update().set("status", FAILED)
+                .set("error", "船舶已删除，不再建档").inc("attempts", 1).unset("version").unset("leaseUntil")
+                .set("updatedAt", now).set("finishedAt", now), UploadOutbox.class);
+        if (entry.getVersion() != null) {
+            documentService.discardUnrecorded(entry.getMongoDocId(), entry.getVersion());
+        }
+        log.warn("异步上传 {} 的船 {} 已删除，不再建档", entry.getId(), entry.getShipId());
+    }
+
+    /**
+     * 1s, 2s, 4s ... 最多 5 分钟
+     */
+    static long backoffSeconds(int attempts) {
+        return Math.min(MAX_BACKOFF_SECONDS, 1L << Math.min(attempts - 1, 20));
+    }
+
+    private boolean claim(String id) {
+        LocalDateTime now = LocalDateTime.now();
+        Query query = Query.query(Criteria.where("_id").is(id).and("status").is(PENDING)
+                .orOperator(Criteria.where("leaseUntil").is(null), Criteria.where("leaseUntil").lt(now)));
+        return mongoTemplate.updateFirst(query, new Update().set("leaseUntil", now.plus(LEASE)), UploadOutbox.class)
+                .getModifiedCount() == 1;
+    }
+
+    private static DocumentService.UploadRequest toRequest(UploadOutbox entry) {
+        DocumentService.UploadRequest request = new DocumentService.UploadRequest();
+        request.setShipId(entry.getShipId());
+        request.setComponentId(entry.getComponentId());
+        request.setTitle(entry.getTitle());
+        request.setCategory(entry.getCategory());
+        request.setMetadata(entry.getMetadata());
+        return request;
+    }
+
+    private static Query byId(String id) {
+        return Query.query(Criteria.where("_id").is(id));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sweeper.shutdownNow();
+        workers.shutdownNow(); // 没处理完的还是 PENDING，下次启动扫到接着做
+    }
+}
@@ -0,0 +1,264 @@
+package com.university.shipmanager.service;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.util.HexUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.crypto.digest.DigestAlgorithm;
+import cn.hutool.crypto.digest.DigestUtil;
+import com.google.common.io.CountingInputStream;
+import com.university.shipmanager.common.DeltaUtil;
+import com.university.shipmanager.common.ObjectStore;
+import com.university.shipmanager.entity.mongo.ShipDocument;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.DeflaterInputStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 版本文件的存储编码 (可选，默认关闭)
+ * 1. RAW：原样存 (老数据没有 encoding 字段，也按 RAW 处理)
+ * 2. DEFLATE：上传时边读边压缩 (storage.encoding.compress=true)
+ * 3. DELTA：新版本只存和上一个版本的二进制差分 (storage.encoding.delta=true)，差分本身也压缩
+ * 读取时按 encoding 透明还原，调用方拿到的永远是原始内容的输入流。
+ */
+@Slf4j
+@Service
+public class VersionStorageService {
+
+    public static final String RAW = "RAW";
+    public static final String DEFLATE = "DEFLATE";
+    public static final String DELTA = "DELTA";
+
+    private static final int MAX_DELTA_CHAIN = 5;       // 差分链最长 5 层，再往后存完整版本，免得还原太慢
+    private static final double MAX_DELTA_RATIO = 0.5;  // 差分超过新文件一半大小就不划算了，存完整版本
+    // 本身已经压缩过的格式再压一遍基本没收益，白费 CPU
+    private static final Set<String> INCOMPRESSIBLE_TYPES = Set.of(
+            "application/zip", "application/gzip", "application/x-7z-compressed", "application/vnd.rar",
+            "image/jpeg", "image/png", "image/gif", "image/webp", "video/mp4", "audio/mpeg");
+
+    private final ContentStoreService contentStoreService;
+    private final ObjectStore objectStore;
+    private final boolean compress;
+    private final boolean delta;
+
+    public VersionStorageService(ContentStoreService contentStoreService, ObjectStore objectStore,
+                                 @Value("${storage.encoding.compress:false}") boolean compress,
+                                 @Value("${storage.encoding.delta:false}") boolean delta) {
+        this.contentStoreService = contentStoreService;
+        this.objectStore = objectStore;
+        this.compress = compress;
+        this.delta = delta;
+    }
+
+    /**
+     * 存第一个版本 (没有可以做差分的前一版)
+     * @param expectedSha256 客户端声明的原文哈希，读完用来校验 (压缩存储时在压缩之前对原文算)
+     */
+    public StoredVersion storeInitial(InputStream inputStream, String originalFilename, String contentType, String expectedSha256) {
+        if (!shouldCompress(contentType)) {
+            return StoredVersion.raw(contentStoreService.store(inputStream, originalFilename, contentType, expectedSha256));
+        }
+        // 边读边压缩边上传，原文大小靠计数拿到、原文哈希在压缩之前顺手算；
+        // Deflate 输出是确定的，相同内容压出来哈希也相同，去重照样生效
+        CountingInputStream counting = new CountingInputStream(inputStream);
+        MessageDigest plainDigest = DigestUtil.digester(DigestAlgorithm.SHA256).getDigest();
+        ObjectStore.UploadResult uploaded = contentStoreService.store(
+                new DeflaterInputStream(new DigestInputStream(counting, plainDigest)), originalFilename, contentType, null);
+        if (StrUtil.isNotBlank(expectedSha256) && !expectedSha256.equalsIgnoreCase(HexUtil.encodeHexStr(plainDigest.digest()))) {
+            contentStoreService.release(uploaded.getSha256(), uploaded.getStoragePath()); // 已经登记过了，按引用释放
+            throw new RuntimeException("文件校验失败：上传内容与声明的 SHA-256 不一致");
+        }
+        log.info("压缩存储: {} {} -> {} bytes", originalFilename, counting.getCount(), uploaded.getSize());
+        return new StoredVersion(uploaded, DEFLATE, counting.getCount(), null, 0);
+    }
+
+    /**
+     * 存一个新版本：开了差分就先和上一版比一比，差分足够小就只存差分
+     * @param versions 这个文档已有的版本 (按时间顺序)
+     */
+    public StoredVersion storeNewVersion(InputStream inputStream, String originalFilename, String contentType,
+                                         List<ShipDocument.DocVersion> versions) {
+        ShipDocument.DocVersion previous = versions == null || versions.isEmpty() ? null : versions.get(versions.size() - 1);
+        int depth = previous == null ? 0 : (previous.getDeltaDepth() == null ? 0 : previous.getDeltaDepth()) + 1;
+        if (!delta || previous == null || depth > MAX_DELTA_CHAIN) {
+            return storeInitial(inputStream, originalFilename, contentType, null);
+        }
+
+        // 新内容要读两遍 (算差分 + 差分不划算时存完整版)，先落到临时文件；
+        // 上一版也落到临时文件映射进来，发 COPY 前要和它逐字节比对
+        Path content = createTempFile();
+        Path baseFile = createTempFile();
+        Path deltaFile = createTempFile();
+        try {
+            long size = Files.copy(inputStream, content, StandardCopyOption.REPLACE_EXISTING);
+            if (size > Integer.MAX_VALUE) {
+                return storeFromFile(content, originalFilename, contentType); // 超过 2GB 映射不了，直接存完整版
+            }
+            long baseSize;
+            try (InputStream base = open(previous, versions)) {
+                baseSize = Files.copy(base, baseFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+            if (baseSize > Integer.MAX_VALUE) {
+                return storeFromFile(content, originalFilename, contentType);
+            }
+
+            try (FileChannel baseChannel = FileChannel.open(baseFile, StandardOpenOption.READ);
+                 FileChannel channel = FileChannel.open(content, StandardOpenOption.READ);
+                 OutputStream out = new DeflaterOutputStream(new BufferedOutputStream(Files.newOutputStream(deltaFile)))) {
+                MappedByteBuffer base = baseChannel.map(FileChannel.MapMode.READ_ONLY, 0, baseSize);
+                MappedByteBuffer target = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                DeltaUtil.encode(DeltaUtil.signature(base), target, out);
+            }
+
+            long deltaSize = Files.size(deltaFile);
+            if (deltaSize > size * MAX_DELTA_RATIO) {
+                log.info("差分不划算 ({} / {} bytes)，存完整版本: {}", deltaSize, size, originalFilename);
+                return storeFromFile(content, originalFilename, contentType);
+            }
+
+            ObjectStore.UploadResult uploaded;
+            try (InputStream in = Files.newInputStream(deltaFile)) {
+                uploaded = contentStoreService.store(in, originalFilename + ".delta", "application/octet-stream", null);
+            }
+            log.info("差分存储: {} {} -> {} bytes (基于 {})", originalFilename, size, uploaded.getSize(), previous.getVersionNo());
+            return new StoredVersion(uploaded, DELTA, size, previous.getVersionNo(), depth);
+        } catch (IOException e) {
+            log.error("版本差分存储失败: {}", originalFilename, e);
+            throw new RuntimeException("文件上传失败");
+        } finally {
+            FileUtil.del(content);
+            FileUtil.del(baseFile);
+            FileUtil.del(deltaFile);
+        }
+    }
+
+    /**
+     * 读出某个版本的原始内容 (按 encoding 还原)
+     * @param versions 同一文档的所有版本，差分版本要顺着 baseVersionNo 找到基准版本
+     */
+    public InputStream open(ShipDocument.DocVersion version, List<ShipDocument.DocVersion> versions) {
+        String encoding = StrUtil.blankToDefault(version.getEncoding(), RAW);
+        switch (encoding) {
+            case RAW:
+                return objectStore.getObject(version.getStoragePath());
+            case DEFLATE:
+                return new InflaterInputStream(objectStore.getObject(version.getStoragePath()));
+            case DELTA:
+                return openDelta(version, versions);
+            default:
+                throw new RuntimeException("未知的存储编码: " + encoding);
+        }
+    }
+
+    /**
+     * 是否原样存储 (原样存储的才能按区间读、走零拷贝和预签名直连)
+     */
+    public static boolean isRaw(ShipDocument.DocVersion version) {
+        return StrUtil.isBlank(version.getEncoding()) || RAW.equals(version.getEncoding());
+    }
+
+    /**
+     * 差分版本：基准版本还原到临时文件 (要随机读)，再按差分指令拼出新版本，也放临时文件里流式读出去
+     * 临时文件在流关闭时删除
+     */
+    private InputStream openDelta(ShipDocument.DocVersion version, List<ShipDocument.DocVersion> versions) {
+        ShipDocument.DocVersion base = versions.stream()
+                .filter(v -> version.getBaseVersionNo().equals(v.getVersionNo()))
+                .findFirst()
+                .orElseThrow(() -> new RuntimeException("差分基准版本丢失: " + version.getBaseVersionNo()));
+
+        Path baseFile = createTempFile();
+        Path targetFile = createTempFile();
+        try {
+            try (InputStream in = open(base, versions)) {
+                Files.copy(in, baseFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+            try (FileChannel baseChannel = FileChannel.open(baseFile, StandardOpenOption.READ);
+                 InputStream deltaIn = new InflaterInputStream(objectStore.getObject(version.getStoragePath()));
+                 OutputStream out = new BufferedOutputStream(Files.newOutputStream(targetFile))) {
+                DeltaUtil.apply(baseChannel, deltaIn, out);
+            }
+            return new TempFileInputStream(targetFile);
+        } catch (IOException e) {
+            FileUtil.del(targetFile);
+            log.error("差分还原失败: {}", version.getStoragePath(), e);
+            throw new RuntimeException("文件读取失败");
+        } finally {
+            FileUtil.del(baseFile);
+        }
+    }
+
+    private StoredVersion storeFromFile(Path content, String originalFilename, String contentType) throws IOException {
+        try (InputStream in = Files.newInputStream(content)) {
+            return storeInitial(in, originalFilename, contentType, null);
+        }
+    }
+
+    private boolean shouldCompress(String contentType) {
+        return compress && (contentType == null || !INCOMPRESSIBLE_TYPES.contains(contentType.toLowerCase()));
+    }
+
+    private static Path createTempFile() {
+        try {
+            return Files.createTempFile("shipdoc-", ".tmp");
+        } catch (IOException e) {
+            throw new RuntimeException("无法创建临时文件", e);
+        }
+    }
+
+    /**
+     * 读完 (关闭) 就删掉的临时文件
+     */
+    private static class TempFileInputStream extends FilterInputStream {
+        private final Path file;
+
+        TempFileInputStream(Path file) throws IOException {
+            super(Files.newInputStream(file));
+            this.file = file;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                FileUtil.del(file);
+            }
+        }
+    }
+
+    // --- 存储结果：实际存进去的对象 + 编码方式 + 原文大小 ---
+    @Data
+    @AllArgsConstructor
+    public static class StoredVersion {
+        private ObjectStore.UploadResult uploaded;
+        private String encoding;
+        private long fileSize;          // 原文大小 (下载时的 Content-Length)
+        private String baseVersionNo;   // DELTA 的基准版本
+        private int deltaDepth;         // 差分链深度 (完整版本是 0)
+
+        public static StoredVersion raw(ObjectStore.UploadResult uploaded) {
+            return new StoredVersion(uploaded, RAW, uploaded.getSize(), null, 0);
+        }
+    }
+}
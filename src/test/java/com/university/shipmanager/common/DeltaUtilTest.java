@@ -0,0 +1,83 @@
+package com.university.shipmanager.common;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DeltaUtilTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void smallEditInLargeFileProducesSmallDelta() throws Exception {
+        byte[] base = randomBytes(1_000_000, 1);
+        // 中间插入 10 个字节、末尾改掉一段：后面的块全部错位，滚动哈希要能重新对齐
+        byte[] target = new byte[base.length + 10];
+        System.arraycopy(base, 0, target, 0, 500_000);
+        System.arraycopy(randomBytes(10, 2), 0, target, 500_000, 10);
+        System.arraycopy(base, 500_000, target, 500_010, base.length - 500_000);
+        System.arraycopy(randomBytes(100, 3), 0, target, target.length - 100, 100);
+
+        byte[] delta = encode(base, target);
+
+        assertTrue(delta.length < 20_000, "差分应该远小于文件本身, 实际 " + delta.length);
+        assertArrayEquals(target, apply(base, delta));
+    }
+
+    @Test
+    void unrelatedAndTinyContentRoundTrip() throws Exception {
+        assertArrayEquals(new byte[0], apply(randomBytes(10_000, 4), encode(randomBytes(10_000, 4), new byte[0])));
+        byte[] tiny = randomBytes(100, 5); // 比一个块还小
+        assertArrayEquals(tiny, apply(new byte[0], encode(new byte[0], tiny)));
+        byte[] other = randomBytes(50_000, 6);
+        assertArrayEquals(other, apply(randomBytes(50_000, 7), encode(randomBytes(50_000, 7), other)));
+    }
+
+    @Test
+    void hashMatchWithDifferentBytesIsNotCopied() throws Exception {
+        byte[] base = randomBytes(40_960, 8);
+        byte[] target = base.clone();
+        DeltaUtil.Signature signature = DeltaUtil.signature(ByteBuffer.wrap(base));
+        // 建完索引再改旧版本第 3 块的一个字节：索引里哈希还是对得上的，相当于一次哈希碰撞
+        base[3 * DeltaUtil.BLOCK_SIZE + 100] ^= 1;
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DeltaUtil.encode(signature, ByteBuffer.wrap(target), out);
+
+        // 只认逐字节比对过的块，还原出来的还是新版本，不会混进旧版本那一块
+        assertArrayEquals(target, apply(base, out.toByteArray()));
+    }
+
+    private static byte[] encode(byte[] base, byte[] target) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DeltaUtil.encode(DeltaUtil.signature(ByteBuffer.wrap(base)), ByteBuffer.wrap(target), out);
+        return out.toByteArray();
+    }
+
+    private byte[] apply(byte[] base, byte[] delta) throws Exception {
+        Path baseFile = Files.write(Files.createTempFile(dir, "base", ".bin"), base);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (FileChannel channel = FileChannel.open(baseFile, StandardOpenOption.READ)) {
+            DeltaUtil.apply(channel, new ByteArrayInputStream(delta), out);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] randomBytes(int size, long seed) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
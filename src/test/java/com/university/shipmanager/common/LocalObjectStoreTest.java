@@ -0,0 +1,99 @@
+package com.university.shipmanager.common;
+
+import cn.hutool.crypto.digest.DigestUtil;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LocalObjectStoreTest {
+
+    @TempDir
+    Path root;
+
+    @Test
+    void uploadStreamComputesSizeAndChecksum() throws Exception {
+        LocalObjectStore store = new LocalObjectStore(root.toString());
+        byte[] data = randomBytes(300_000);
+
+        ObjectStore.UploadResult result = store.uploadStream(new ByteArrayInputStream(data), "manual.pdf", "application/pdf");
+
+        assertEquals(data.length, result.getSize());
+        assertEquals(DigestUtil.sha256Hex(data), result.getSha256());
+        assertArrayEquals(data, Files.readAllBytes(store.localPath(result.getStoragePath())));
+        assertEquals(data.length, store.statObject(result.getStoragePath()).getSize());
+        assertTrue(store.getPresignedUrl(result.getStoragePath(), 600).isEmpty()); // 不能直连，由调用方退回下载接口
+    }
+
+    @Test
+    void rangeReadUsesRequestedSlice() throws Exception {
+        LocalObjectStore store = new LocalObjectStore(root.toString());
+        byte[] data = randomBytes(100_000);
+        String name = store.uploadStream(new ByteArrayInputStream(data), "hull.dwg", null).getStoragePath();
+
+        try (InputStream in = store.getObject(name, 1000, 5000)) {
+            assertArrayEquals(Arrays.copyOfRange(data, 1000, 6000), in.readAllBytes());
+        }
+        // 区间超过文件末尾时只读到末尾
+        try (InputStream in = store.getObject(name, 99_000, 5000)) {
+            assertArrayEquals(Arrays.copyOfRange(data, 99_000, 100_000), in.readAllBytes());
+        }
+    }
+
+    @Test
+    void multipartPartsAreAssembledInOrder() throws Exception {
+        LocalObjectStore store = new LocalObjectStore(root.toString());
+        byte[] part1 = randomBytes(4096);
+        byte[] part2 = randomBytes(1000);
+        String name = ObjectStore.newObjectName("big.dwg");
+
+        String uploadId = store.createMultipartUpload(name, null);
+        // 乱序上传
+        String etag2 = store.uploadPart(name, uploadId, 2, part2);
+        String etag1 = store.uploadPart(name, uploadId, 1, part1);
+        store.completeMultipartUpload(name, uploadId, Map.of(1, etag1, 2, etag2));
+
+        byte[] expected = new byte[part1.length + part2.length];
+        System.arraycopy(part1, 0, expected, 0, part1.length);
+        System.arraycopy(part2, 0, expected, part1.length, part2.length);
+        try (InputStream in = store.getObject(name)) {
+            assertArrayEquals(expected, in.readAllBytes());
+        }
+    }
+
+    @Test
+    void removeFilesDeletesObjects() {
+        LocalObjectStore store = new LocalObjectStore(root.toString());
+        String a = store.uploadStream(new ByteArrayInputStream(randomBytes(10)), "a.txt", null).getStoragePath();
+        String b = store.uploadStream(new ByteArrayInputStream(randomBytes(10)), "b.txt", null).getStoragePath();
+
+        assertEquals(0, store.removeFiles(List.of(a, b)));
+        assertFalse(Files.exists(store.localPath(a)));
+        assertFalse(Files.exists(store.localPath(b)));
+    }
+
+    @Test
+    void rejectsNamesOutsideRoot() {
+        LocalObjectStore store = new LocalObjectStore(root.toString());
+        assertThrows(IllegalArgumentException.class, () -> store.localPath("../escape.txt"));
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] data = new byte[size];
+        ThreadLocalRandom.current().nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,52 @@
+package com.university.shipmanager.common;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 上传吞吐量对比：单流 putObject (uploadFile) vs 分片并发 (uploadStream)
+ * 需要本地有 MinIO (localhost:9000, 桶 ship-files)，默认不跑，手动执行：
+ * mvn test -Dtest=MinioUploadBenchmark
+ */
+class MinioUploadBenchmark {
+
+    private static final int FILE_SIZE = 96 * 1024 * 1024; // 模拟一张 96MB 的船体图纸
+    private static final int ROUNDS = 3;
+
+    @Test
+    void compareSingleStreamAndMultipart() {
+        MinioUtil minioUtil = new MinioUtil();
+        byte[] data = new byte[FILE_SIZE];
+        ThreadLocalRandom.current().nextBytes(data);
+
+        // 预热一次，避免把连接建立的开销算进去
+        minioUtil.removeFile(minioUtil.uploadStream(new ByteArrayInputStream(data, 0, 1024), "warmup.bin", null).getStoragePath());
+
+        long singleNanos = 0;
+        long multipartNanos = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            MockMultipartFile file = new MockMultipartFile("file", "hull.dwg", "application/octet-stream", data);
+            long start = System.nanoTime();
+            String path = minioUtil.uploadFile(file);
+            singleNanos += System.nanoTime() - start;
+            minioUtil.removeFile(path);
+
+            start = System.nanoTime();
+            ObjectStore.UploadResult result = minioUtil.uploadStream(new ByteArrayInputStream(data), "hull.dwg", "application/octet-stream");
+            multipartNanos += System.nanoTime() - start;
+            minioUtil.removeFile(result.getStoragePath());
+        }
+
+        System.out.printf("单流 putObject : %.1f MB/s%n", throughput(singleNanos));
+        System.out.printf("分片并发上传   : %.1f MB/s%n", throughput(multipartNanos));
+        minioUtil.shutdown();
+    }
+
+    private static double throughput(long nanos) {
+        double seconds = nanos / 1e9;
+        return (double) FILE_SIZE * ROUNDS / (1024 * 1024) / seconds;
+    }
+}
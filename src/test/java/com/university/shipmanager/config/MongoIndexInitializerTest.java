@@ -0,0 +1,88 @@
+package com.university.shipmanager.config;
+
+import com.university.shipmanager.entity.mongo.ComponentDoc;
+import com.university.shipmanager.entity.mongo.SearchDocument;
+import com.university.shipmanager.entity.mongo.UploadOutbox;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MongoIndexInitializerTest {
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final Map<Class<?>, IndexOperations> indexOps = new HashMap<>();
+
+    @Test
+    void createsSearchIndex() {
+        Map<String, IndexDefinition> search = createdIndexes(SearchDocument.class);
+        assertEquals(new Document("shipId", 1).append("tokens", 1), search.get("ship_tokens").getIndexKeys());
+    }
+
+    @Test
+    void createsTreePagingIndexes() {
+        Map<String, IndexDefinition> components = createdIndexes(ComponentDoc.class);
+        assertEquals(new Document("parentId", 1).append("_id", 1), components.get("parent_page").getIndexKeys());
+        assertEquals(new Document("shipId", 1).append("parentId", 1).append("_id", 1), components.get("ship_root_page").getIndexKeys());
+    }
+
+    @Test
+    void createsAncestorsIndex() {
+        assertEquals(new Document("ancestors", 1), createdIndexes(ComponentDoc.class).get("ancestors").getIndexKeys());
+    }
+
+    @Test
+    void createsPathIndex() {
+        assertEquals(new Document("path", 1), createdIndexes(ComponentDoc.class).get("path").getIndexKeys());
+    }
+
+    @Test
+    void codeIsUniquePerShipWhenPresent() {
+        IndexDefinition shipCode = createdIndexes(ComponentDoc.class).get("ship_code");
+        assertEquals(new Document("shipId", 1).append("code", 1), shipCode.getIndexKeys());
+        assertEquals(true, shipCode.getIndexOptions().get("unique"));
+        assertEquals(new Document("code", new Document("$exists", true)),
+                shipCode.getIndexOptions().get("partialFilterExpression"));
+    }
+
+    @Test
+    void createsSpecsWildcardIndex() {
+        assertEquals(new Document("specs.$**", 1), createdIndexes(ComponentDoc.class).get("specs_wildcard").getIndexKeys());
+    }
+
+    @Test
+    void createsOutboxIndexesAndExpiresOnlyDoneEntries() {
+        Map<String, IndexDefinition> outbox = createdIndexes(UploadOutbox.class);
+        assertEquals(new Document("status", 1).append("nextAttemptAt", 1), outbox.get("status_due").getIndexKeys());
+        IndexDefinition ttl = outbox.get("done_ttl");
+        assertEquals(new Document("finishedAt", 1), ttl.getIndexKeys());
+        assertEquals(7L * 24 * 3600, ttl.getIndexOptions().get("expireAfterSeconds"));
+        assertEquals(new Document("status", "DONE"), ttl.getIndexOptions().get("partialFilterExpression"));
+    }
+
+    /**
+     * 跑一遍 createIndexes，按索引名收集某个实体上请求建的索引
+     */
+    private Map<String, IndexDefinition> createdIndexes(Class<?> entity) {
+        when(mongoTemplate.indexOps(any(Class.class))).then(inv -> indexOps.computeIfAbsent(inv.getArgument(0), k -> mock(IndexOperations.class)));
+        new MongoIndexInitializer(mongoTemplate).createIndexes();
+
+        ArgumentCaptor<IndexDefinition> captor = ArgumentCaptor.forClass(IndexDefinition.class);
+        verify(indexOps.get(entity), atLeastOnce()).createIndex(captor.capture());
+        Map<String, IndexDefinition> byName = new HashMap<>();
+        captor.getAllValues().forEach(index -> byName.put((String) index.getIndexOptions().get("name"), index));
+        return byName;
+    }
+}
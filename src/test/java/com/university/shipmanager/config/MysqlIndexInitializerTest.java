@@ -0,0 +1,26 @@
+package com.university.shipmanager.config;
+
+import com.university.shipmanager.mapper.DocIndexMapper;
+import org.junit.jupiter.api.Test;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MysqlIndexInitializerTest {
+
+    private final DocIndexMapper docIndexMapper = mock(DocIndexMapper.class);
+    private final MysqlIndexInitializer initializer = new MysqlIndexInitializer(docIndexMapper);
+
+    @Test
+    void addsMongoDocIdUniqueKeyOnlyWhenMissing() {
+        when(docIndexMapper.countIndex(MysqlIndexInitializer.UK_MONGO_DOC_ID)).thenReturn(1);
+        initializer.createIndexes();
+        verify(docIndexMapper, never()).addMongoDocIdUniqueKey();
+
+        when(docIndexMapper.countIndex(MysqlIndexInitializer.UK_MONGO_DOC_ID)).thenReturn(0);
+        initializer.createIndexes();
+        verify(docIndexMapper).addMongoDocIdUniqueKey();
+    }
+}
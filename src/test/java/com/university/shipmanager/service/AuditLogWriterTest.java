@@ -0,0 +1,81 @@
+package com.university.shipmanager.service;
+
+import com.university.shipmanager.entity.mongo.AuditLog;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AuditLogWriterTest {
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final BulkOperations bulk = mock(BulkOperations.class);
+
+    AuditLogWriterTest() {
+        when(mongoTemplate.bulkOps(any(BulkOperations.BulkMode.class), eq(AuditLog.class))).thenReturn(bulk);
+        when(bulk.insert(anyList())).thenReturn(bulk);
+    }
+
+    @Test
+    void flushesFullBatchesInBackgroundAndRestOnShutdown() {
+        // 刷盘周期设得很长：只有攒满一批才会写，剩下的 1 条要等关闭时补写
+        AuditLogWriter writer = new AuditLogWriter(mongoTemplate, 100, 3, 60_000, AuditLogWriter.OverflowPolicy.CALLER_RUNS, 0);
+        writer.start();
+        List<AuditLog> logs = new ArrayList<>();
+        for (int i = 0; i < 7; i++) logs.add(log(i));
+        writer.submitAll(logs);
+
+        verify(bulk, timeout(5000).times(2)).execute();
+
+        writer.shutdown();
+
+        ArgumentCaptor<List<AuditLog>> batches = batches(3);
+        assertEquals(List.of(3, 3, 1), batches.getAllValues().stream().map(List::size).toList());
+        assertEquals(7, writer.stats().getWritten());
+        assertNotNull(logs.get(0).getId()); // 提交时就定好主键，重试不会写重复
+    }
+
+    @Test
+    void overflowFollowsPolicy() {
+        // 不启动后台线程，缓冲区 2 条就满
+        AuditLogWriter dropping = new AuditLogWriter(mongoTemplate, 2, 10, 1000, AuditLogWriter.OverflowPolicy.DROP, 0);
+        dropping.submitAll(List.of(log(1), log(2), log(3)));
+        assertEquals(1, dropping.stats().getDropped());
+        assertEquals(2, dropping.stats().getQueueDepth());
+
+        // CALLER_RUNS：放不下的那条由调用线程当场写掉
+        AuditLogWriter callerRuns = new AuditLogWriter(mongoTemplate, 2, 10, 1000, AuditLogWriter.OverflowPolicy.CALLER_RUNS, 0);
+        callerRuns.submitAll(List.of(log(1), log(2), log(3)));
+        assertEquals(1, callerRuns.stats().getCallerRuns());
+        assertEquals(1, callerRuns.stats().getWritten());
+        assertEquals(List.of(1), batches(1).getAllValues().stream().map(List::size).toList());
+    }
+
+    @SuppressWarnings("unchecked")
+    private ArgumentCaptor<List<AuditLog>> batches(int count) {
+        ArgumentCaptor<List<AuditLog>> captor = ArgumentCaptor.forClass(List.class);
+        verify(bulk, times(count)).insert(captor.capture());
+        return captor;
+    }
+
+    private static AuditLog log(int i) {
+        AuditLog log = new AuditLog();
+        log.setAction("DELETE_DOC");
+        log.setTargetName("doc-" + i);
+        return log;
+    }
+}
@@ -0,0 +1,94 @@
+package com.university.shipmanager.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.university.shipmanager.entity.mongo.AuditLog;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AuditQueryServiceTest {
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final AuditQueryService queryService = new AuditQueryService(mongoTemplate, new ObjectMapper().findAndRegisterModules(), 30);
+
+    @Test
+    void filtersAndPagesNewestFirstByTimeAndId() {
+        AuditLog newer = log(LocalDateTime.of(2026, 10, 18, 9, 30, 1)), older = log(LocalDateTime.of(2026, 10, 18, 9, 30));
+        when(mongoTemplate.find(any(Query.class), eq(AuditLog.class))).thenReturn(List.of(newer, older)).thenReturn(List.of());
+
+        AuditQueryService.AuditQuery request = new AuditQueryService.AuditQuery();
+        request.setAction("DELETE_DOC");
+        request.setFrom(LocalDateTime.of(2026, 10, 1, 0, 0));
+        request.setLimit(2);
+        AuditQueryService.AuditPage page = queryService.query(request);
+        assertEquals(older.getTime() + "_" + older.getId(), page.getNextAfter());
+
+        // 下一页：条件里多一个 (time < t) 或 (time = t 且 _id < id)
+        request.setAfter(page.getNextAfter());
+        assertNull(queryService.query(request).getNextAfter());
+        ArgumentCaptor<Query> queries = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate, times(2)).find(queries.capture(), eq(AuditLog.class));
+        Query second = queries.getAllValues().get(1);
+        assertEquals(new Document("time", -1).append("_id", -1), second.getSortObject());
+        String where = second.getQueryObject().toString();
+        assertTrue(where.contains("DELETE_DOC") && where.contains("$or") && where.contains(older.getId()));
+
+        request.setAfter("not-a-cursor");
+        assertThrows(IllegalArgumentException.class, () -> queryService.query(request));
+    }
+
+    @Test
+    void streamsNdjsonAndEnsuresIndexesWithTtl() throws Exception {
+        when(mongoTemplate.stream(any(Query.class), eq(AuditLog.class)))
+                .thenReturn(Stream.of(log(LocalDateTime.of(2026, 10, 18, 9, 30)), log(LocalDateTime.of(2026, 10, 17, 8, 0))));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertEquals(2, queryService.stream(new AuditQueryService.AuditQuery(), out));
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n", -1);
+        assertEquals(3, lines.length); // 两行，每行都以换行结尾
+        assertTrue(lines[0].startsWith("{") && lines[0].contains("DELETE_DOC"));
+        assertEquals("", lines[2]);
+
+        // 4 个查询索引 + 1 个 TTL (30 天)
+        IndexOperations indexOps = mock(IndexOperations.class);
+        when(mongoTemplate.indexOps(AuditLog.class)).thenReturn(indexOps);
+        queryService.ensureIndexes();
+        ArgumentCaptor<IndexDefinition> indexes = ArgumentCaptor.forClass(IndexDefinition.class);
+        verify(indexOps, times(5)).createIndex(indexes.capture());
+        Document ttl = indexes.getAllValues().get(4).getIndexOptions();
+        assertEquals(AuditQueryService.TTL_INDEX, ttl.get("name"));
+        assertEquals(30L * 24 * 3600, ttl.get("expireAfterSeconds"));
+    }
+
+    private static AuditLog log(LocalDateTime time) {
+        AuditLog log = new AuditLog();
+        log.setId(new ObjectId().toHexString());
+        log.setAction("DELETE_DOC");
+        log.setTargetType("Document");
+        log.setOperator("admin");
+        log.setTime(time);
+        return log;
+    }
+}
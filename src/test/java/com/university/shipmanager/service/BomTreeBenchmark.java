@@ -0,0 +1,116 @@
+package com.university.shipmanager.service;
+
+import cn.hutool.core.lang.tree.Tree;
+import cn.hutool.core.lang.tree.TreeNodeConfig;
+import cn.hutool.core.lang.tree.TreeUtil;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.university.shipmanager.entity.mongo.ComponentDoc;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 整船树接口对比：Hutool TreeUtil.build + writeValue (旧 getShipBomTree) vs BomTree.build + writeJson
+ * 合成一棵 5 层、每层 8 个孩子的树 (4681 个节点，每个节点带 10 个 specs)，输出写到空流里，
+ * 统计每次请求的分配字节数和 p50 / p99 耗时。手动执行：
+ * mvn test -Dtest=BomTreeBenchmark
+ */
+class BomTreeBenchmark {
+
+    private static final int DEPTH = 5;
+    private static final int FAN_OUT = 8;
+    private static final int WARMUP = 30;
+    private static final int ITERATIONS = 200;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    @FunctionalInterface
+    private interface Request {
+        void run() throws Exception;
+    }
+
+    @Test
+    void compareHutoolTreeAndBomTree() throws Exception {
+        List<ComponentDoc> nodes = buildNodes();
+
+        Request legacy = () -> objectMapper.writeValue(OutputStream.nullOutputStream(), hutoolTree(nodes));
+        Request bomTree = () -> {
+            try (JsonGenerator gen = objectMapper.createGenerator(OutputStream.nullOutputStream())) {
+                BomTree.build(nodes).writeJson(gen);
+            }
+        };
+
+        System.out.printf("节点数: %d, 迭代: %d%n", nodes.size(), ITERATIONS);
+        measure("Hutool Tree", legacy);
+        measure("BomTree    ", bomTree);
+    }
+
+    private void measure(String name, Request request) throws Exception {
+        for (int i = 0; i < WARMUP; i++) request.run();
+        long[] nanos = new long[ITERATIONS];
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            request.run();
+            nanos[i] = System.nanoTime() - start;
+        }
+        long allocatedPerRequest = (threads.getThreadAllocatedBytes(threadId) - allocatedBefore) / ITERATIONS;
+        Arrays.sort(nanos);
+        System.out.printf("%s: p50 %6.2f ms, p99 %6.2f ms, 每次分配 %8.2f MB%n", name,
+                nanos[ITERATIONS / 2] / 1e6, nanos[ITERATIONS * 99 / 100] / 1e6, allocatedPerRequest / 1024.0 / 1024.0);
+    }
+
+    /**
+     * 旧 getShipBomTree 的组树方式
+     */
+    private static List<Tree<String>> hutoolTree(List<ComponentDoc> nodes) {
+        TreeNodeConfig config = new TreeNodeConfig();
+        config.setIdKey("id");
+        config.setParentIdKey("parentId");
+        config.setNameKey("name");
+        config.setDeep(DEPTH);
+        return TreeUtil.build(nodes, null, config, (component, treeNode) -> {
+            treeNode.setId(component.getId());
+            treeNode.setParentId(component.getParentId());
+            treeNode.setName(component.getName());
+            treeNode.putExtra("type", component.getType());
+            treeNode.putExtra("specs", component.getSpecs());
+        });
+    }
+
+    private static List<ComponentDoc> buildNodes() {
+        List<ComponentDoc> nodes = new ArrayList<>();
+        List<ComponentDoc> level = List.of(node(nodes, "root", null));
+        for (int d = 1; d < DEPTH; d++) {
+            List<ComponentDoc> next = new ArrayList<>();
+            for (ComponentDoc parent : level) {
+                for (int i = 0; i < FAN_OUT; i++) next.add(node(nodes, parent.getId() + "-" + i, parent.getId()));
+            }
+            level = next;
+        }
+        return nodes;
+    }
+
+    private static ComponentDoc node(List<ComponentDoc> nodes, String id, String parentId) {
+        ComponentDoc doc = new ComponentDoc();
+        doc.setId(id);
+        doc.setParentId(parentId);
+        doc.setName("部件 " + id);
+        doc.setType("Part");
+        Map<String, Object> specs = new HashMap<>();
+        for (int i = 0; i < 10; i++) specs.put("spec_" + i, "value-" + i);
+        doc.setSpecs(specs);
+        nodes.add(doc);
+        return doc;
+    }
+}
@@ -0,0 +1,122 @@
+package com.university.shipmanager.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.university.shipmanager.entity.mongo.ComponentDoc;
+import com.university.shipmanager.repository.ComponentRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BomTreeCacheTest {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final ComponentRepository componentRepository = mock(ComponentRepository.class);
+    private final BomTreeCache cache = new BomTreeCache(1000, 1800, 600);
+    private final ComponentService componentService = new ComponentService(componentRepository,
+            mock(DocumentService.class), mock(AuditLogWriter.class), cache, mock(MongoTemplate.class),
+            mock(ComponentRollupService.class), mock(ShipTombstones.class));
+
+    @Test
+    void writesUpdateCachedTreeWithoutReloadingShip() throws Exception {
+        // 船 1: hull -> engine -> pump, hull -> deck
+        ComponentDoc hull = node("hull", null);
+        ComponentDoc engine = node("engine", hull);
+        ComponentDoc pump = node("pump", engine);
+        ComponentDoc deck = node("deck", hull);
+        when(componentRepository.findByShipId(1L)).thenReturn(List.of(hull, engine, pump, deck));
+        when(componentRepository.save(any())).thenAnswer(inv -> inv.getArgument(0)); // 主键在 createComponent 里就定好了
+
+        BomTree first = componentService.getShipBomTree(1L);
+        assertSame(first, componentService.getShipBomTree(1L)); // 没写过，快照直接复用
+
+        // 新建：deck 下加 winch
+        when(componentRepository.findById("deck")).thenReturn(Optional.of(deck));
+        ComponentDoc winch = componentService.createComponent(1L, "winch", "Winch", "deck", null);
+        assertEquals(List.of("hull", "deck"), winch.getAncestors());
+
+        // 移动：engine (连同 pump) 挂到 deck 下
+        when(componentRepository.findById("engine")).thenReturn(Optional.of(engine));
+        when(componentRepository.findByAncestorsContaining("engine")).thenReturn(List.of(pump));
+        componentService.moveComponent("engine", "deck");
+
+        JsonNode deckNode = json(componentService.getShipBomTree(1L)).get(0).get("children").get(0);
+        assertEquals("deck", deckNode.get("id").asText());
+        assertEquals(List.of("engine", winch.getId()), ids(deckNode.get("children")));
+        assertEquals("pump", deckNode.get("children").get(0).get("children").get(0).get("id").asText());
+
+        // 删除：engine 子树
+        when(componentRepository.findByAncestorsContaining("engine")).thenReturn(List.of(pump));
+        componentService.deleteComponentAndChildren("engine");
+        deckNode = json(componentService.getShipBomTree(1L)).get(0).get("children").get(0);
+        assertEquals(List.of(winch.getId()), ids(deckNode.get("children")));
+
+        // 整个过程只整船查过一次
+        verify(componentRepository, times(1)).findByShipId(1L);
+        assertEquals(3, cache.stats().getNodes()); // hull, deck, winch
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedShipWhenOverNodeBudget() {
+        BomTreeCache small = new BomTreeCache(5, 1800, 600);
+        for (long shipId = 1; shipId <= 3; shipId++) {
+            long id = shipId;
+            small.getTree(shipId, () -> List.of(shipNode(id, "a"), shipNode(id, "b")));
+        }
+        // 每艘船 2 个节点，预算 5 个：放第 3 艘时淘汰最早的 1 号
+        assertEquals(2, small.stats().getShips());
+        assertEquals(1, small.stats().getEvictions());
+        List<ComponentDoc> reloaded = new ArrayList<>();
+        small.getTree(1L, () -> { reloaded.addAll(List.of(shipNode(1L, "a"), shipNode(1L, "b"))); return reloaded; });
+        assertEquals(2, reloaded.size()); // 1 号确实被淘汰过，重新查了库
+        assertEquals(2, small.stats().getEvictions()); // 1 号重新进来，又挤掉了 2 号
+    }
+
+    private static JsonNode json(BomTree tree) throws Exception {
+        StringWriter out = new StringWriter();
+        try (var gen = OBJECT_MAPPER.createGenerator(out)) {
+            tree.writeJson(gen);
+        }
+        return OBJECT_MAPPER.readTree(out.toString());
+    }
+
+    private static List<String> ids(JsonNode nodes) {
+        List<String> ids = new ArrayList<>();
+        nodes.forEach(n -> ids.add(n.get("id").asText()));
+        return ids;
+    }
+
+    private static ComponentDoc node(String id, ComponentDoc parent) {
+        ComponentDoc doc = shipNode(1L, id);
+        if (parent != null) {
+            doc.setParentId(parent.getId());
+            List<String> ancestors = new ArrayList<>(parent.getAncestors());
+            ancestors.add(parent.getId());
+            doc.setAncestors(ancestors);
+        }
+        return doc;
+    }
+
+    private static ComponentDoc shipNode(Long shipId, String id) {
+        ComponentDoc doc = new ComponentDoc();
+        doc.setId(id);
+        doc.setShipId(shipId);
+        doc.setName(id);
+        doc.setType("System");
+        doc.setAncestors(new ArrayList<>());
+        return doc;
+    }
+}
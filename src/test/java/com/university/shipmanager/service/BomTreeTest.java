@@ -0,0 +1,89 @@
+package com.university.shipmanager.service;
+
+import cn.hutool.core.lang.tree.Tree;
+import cn.hutool.core.lang.tree.TreeNodeConfig;
+import cn.hutool.core.lang.tree.TreeUtil;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.university.shipmanager.entity.mongo.ComponentDoc;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class BomTreeTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void writesSameJsonAsHutoolTreeWithinOldDepthLimit() throws Exception {
+        // 4 层、有叶子有分叉、有 specs、还有一个父节点不存在的脏节点
+        List<ComponentDoc> nodes = new ArrayList<>();
+        nodes.add(node("hull", null, Map.of("length", 180)));
+        nodes.add(node("engine", "hull", Map.of("power", 5000, "fuel", "HFO")));
+        nodes.add(node("deck", "hull", null));
+        nodes.add(node("pump", "engine", Map.of()));
+        nodes.add(node("valve", "pump", null));
+        nodes.add(node("lost", "missing", null));
+        nodes.add(node("bridge", null, null));
+
+        assertEquals(objectMapper.readTree(objectMapper.writeValueAsString(hutoolTree(nodes))), write(BomTree.build(nodes)));
+    }
+
+    @Test
+    void keepsEveryLevelOfVeryDeepTrees() throws Exception {
+        // 一条 500 层的链：原来超过 5 层就截掉 (Jackson 自己限制嵌套不超过 1000 层)
+        List<ComponentDoc> nodes = new ArrayList<>();
+        nodes.add(node("n0", null, null));
+        for (int i = 1; i < 500; i++) nodes.add(node("n" + i, "n" + (i - 1), null));
+
+        JsonNode current = write(BomTree.build(nodes)).get(0);
+        int depth = 1;
+        while (current.has("children")) {
+            current = current.get("children").get(0);
+            depth++;
+        }
+        assertEquals(500, depth);
+        assertEquals("n499", current.get("id").asText());
+    }
+
+    private JsonNode write(BomTree tree) throws Exception {
+        StringWriter out = new StringWriter();
+        try (var gen = objectMapper.createGenerator(out)) {
+            tree.writeJson(gen);
+        }
+        return objectMapper.readTree(out.toString());
+    }
+
+    /**
+     * 原来 ComponentService.getShipBomTree 的组树方式
+     */
+    private static List<Tree<String>> hutoolTree(List<ComponentDoc> nodes) {
+        TreeNodeConfig config = new TreeNodeConfig();
+        config.setIdKey("id");
+        config.setParentIdKey("parentId");
+        config.setNameKey("name");
+        config.setDeep(5);
+        return TreeUtil.build(nodes, null, config, (component, treeNode) -> {
+            treeNode.setId(component.getId());
+            treeNode.setParentId(component.getParentId());
+            treeNode.setName(component.getName());
+            treeNode.putExtra("type", component.getType());
+            treeNode.putExtra("specs", component.getSpecs());
+        });
+    }
+
+    private static ComponentDoc node(String id, String parentId, Map<String, Object> specs) {
+        ComponentDoc doc = new ComponentDoc();
+        doc.setId(id);
+        doc.setParentId(parentId);
+        doc.setName("部件 " + id);
+        doc.setType("Part");
+        doc.setSpecs(specs);
+        return doc;
+    }
+}
@@ -0,0 +1,160 @@
+package com.university.shipmanager.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.client.result.UpdateResult;
+import com.university.shipmanager.common.LocalObjectStore;
+import com.university.shipmanager.common.ObjectStore;
+import com.university.shipmanager.entity.mongo.ImportJob;
+import com.university.shipmanager.entity.mongo.ShipDocument;
+import com.university.shipmanager.entity.mysql.DocIndex;
+import com.university.shipmanager.repository.ImportJobRepository;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BulkImportServiceTest {
+
+    @TempDir
+    Path root;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void importsZipEntriesUsingManifest() throws Exception {
+        LocalObjectStore store = new LocalObjectStore(root.toString());
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+        VersionStorageService versionStorage = new VersionStorageService(
+                new ContentStoreService(store, mongoTemplate), store, false, false);
+        DocumentService documentService = mock(DocumentService.class);
+        ImportJobRepository jobRepository = mock(ImportJobRepository.class);
+        when(jobRepository.save(any())).then(inv -> {
+            ImportJob job = inv.getArgument(0);
+            job.setId("job-1");
+            return job;
+        });
+        when(documentService.saveDocumentRecordsBatch(anyList(), anyList())).then(inv -> {
+            List<?> requests = inv.getArgument(0);
+            return requests.stream().map(r -> new DocIndex()).toList();
+        });
+
+        byte[] zip = zip(Map.of(
+                "manifest.json", "{\"defaultCategory\": \"Drawing (图纸)\", \"entries\": [{\"path\": \"hull/frame-12.dwg\", \"componentId\": \"c-12\", \"title\": \"12 号肋位\"}]}",
+                "hull/frame-12.dwg", "frame",
+                "engine/main-engine-manual.pdf", "manual",
+                "hull/", ""));
+
+        BulkImportService service = new BulkImportService(documentService, versionStorage, mock(ContentStoreService.class),
+                jobRepository, mongoTemplate, new ObjectMapper());
+        ImportJob job = service.startImport(1L, new ByteArrayInputStream(zip), "legacy.zip", null);
+        assertEquals(2, job.getTotal()); // 目录和清单不算
+
+        ArgumentCaptor<List<DocumentService.UploadRequest>> captor = ArgumentCaptor.forClass(List.class);
+        verify(documentService, timeout(5000)).saveDocumentRecordsBatch(captor.capture(), anyList());
+        Map<String, DocumentService.UploadRequest> byName = captor.getValue().stream()
+                .collect(Collectors.toMap(DocumentService.UploadRequest::getFileName, Function.identity()));
+
+        DocumentService.UploadRequest frame = byName.get("frame-12.dwg");
+        assertEquals("c-12", frame.getComponentId());
+        assertEquals("12 号肋位", frame.getTitle());
+        assertEquals("Drawing (图纸)", frame.getCategory());
+
+        DocumentService.UploadRequest manual = byName.get("main-engine-manual.pdf"); // 不在清单里，按默认值导入
+        assertNull(manual.getComponentId());
+        assertEquals("main-engine-manual", manual.getTitle());
+        assertEquals("engine/main-engine-manual.pdf", manual.getMetadata().get("import_path"));
+        service.shutdown();
+    }
+
+    @Test
+    void runningJobsLeftByARestartAreMarkedFailed() {
+        // 只动租约过期的：别的实例上还在跑的任务一直在续租约，不受影响
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+        when(mongoTemplate.updateMulti(any(Query.class), any(UpdateDefinition.class), eq(ImportJob.class)))
+                .thenReturn(UpdateResult.acknowledged(2, 2L, null));
+        BulkImportService service = new BulkImportService(mock(DocumentService.class), mock(VersionStorageService.class),
+                mock(ContentStoreService.class), mock(ImportJobRepository.class), mongoTemplate, new ObjectMapper());
+
+        assertEquals(2, service.failInterrupted());
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<UpdateDefinition> update = ArgumentCaptor.forClass(UpdateDefinition.class);
+        verify(mongoTemplate).updateMulti(query.capture(), update.capture(), eq(ImportJob.class));
+        assertEquals("RUNNING", query.getValue().getQueryObject().get("status"));
+        assertTrue(query.getValue().getQueryObject().get("$or").toString().contains("leaseUntil"));
+        assertEquals("FAILED", update.getValue().getUpdateObject().get("$set", Document.class).get("status"));
+        service.shutdown();
+    }
+
+    @Test
+    void interruptedImportReleasesUploadsThatWereNotRecorded() throws Exception {
+        VersionStorageService versionStorage = mock(VersionStorageService.class);
+        ContentStoreService contentStore = mock(ContentStoreService.class);
+        ImportJobRepository jobRepository = mock(ImportJobRepository.class);
+        when(jobRepository.save(any())).then(inv -> {
+            ImportJob job = inv.getArgument(0);
+            job.setId("job-1");
+            return job;
+        });
+        // a 传完进了待建档的一批；b 一直传不完，导入线程卡在等它
+        CountDownLatch aStored = new CountDownLatch(1);
+        when(versionStorage.storeInitial(any(), any(), any(), any())).then(inv -> {
+            if ("a.pdf".equals(inv.getArgument(1))) {
+                aStored.countDown();
+                return VersionStorageService.StoredVersion.raw(new ObjectStore.UploadResult("objects/a", 1, "aaa", null));
+            }
+            Thread.sleep(60_000);
+            return null;
+        });
+        BulkImportService service = new BulkImportService(mock(DocumentService.class), versionStorage, contentStore,
+                jobRepository, mock(MongoTemplate.class), new ObjectMapper());
+        service.startImport(1L, new ByteArrayInputStream(zip(Map.of("a.pdf", "a", "b.pdf", "b"))), "x.zip", null);
+        assertTrue(aStored.await(5, TimeUnit.SECONDS));
+        Thread.sleep(200); // 等导入线程把 a 收进批里
+
+        service.shutdown(); // 停机：中断导入线程
+
+        ArgumentCaptor<Collection<ShipDocument.DocVersion>> released = ArgumentCaptor.captor();
+        verify(contentStore, timeout(5000)).releaseAll(released.capture());
+        assertEquals(List.of("objects/a"), released.getValue().stream().map(ShipDocument.DocVersion::getStoragePath).toList());
+    }
+
+    private static byte[] zip(Map<String, String> entries) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(out, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, String> e : entries.entrySet()) {
+                zip.putNextEntry(new ZipEntry(e.getKey()));
+                zip.write(e.getValue().getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+        }
+        return out.toByteArray();
+    }
+}
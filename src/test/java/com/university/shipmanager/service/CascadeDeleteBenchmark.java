@@ -0,0 +1,221 @@
+package com.university.shipmanager.service;
+
+import com.mongodb.client.result.DeleteResult;
+import com.university.shipmanager.common.ObjectStore;
+import com.university.shipmanager.entity.mongo.AuditLog;
+import com.university.shipmanager.entity.mongo.ShipDocument;
+import com.university.shipmanager.entity.mongo.StoredObject;
+import com.university.shipmanager.entity.mysql.DocIndex;
+import com.university.shipmanager.mapper.DocIndexMapper;
+import com.university.shipmanager.repository.AuditLogRepository;
+import com.university.shipmanager.repository.ShipDocumentRepository;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.mockito.stubbing.Answer;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 级联删除对比：逐个文档删除 (旧) vs 批量流水线 (deleteDocumentsByComponentIds)
+ * 注意：这是往返次数的模拟，不是真实存储上的性能测试。
+ * 合成一棵 1000 个零件、10000 个文档的子树，MySQL / Mongo / MinIO 全是 mock，每次调用固定睡 ROUND_TRIP_MICROS 当作一次往返，
+ * 输出的"耗时"只是往返次数 × 模拟延迟，不包含数据库真正执行 IN / $in / deleteMany 的开销，也不能拿来估算线上删除时间。
+ * 手动执行：mvn test -Dtest=CascadeDeleteBenchmark
+ */
+class CascadeDeleteBenchmark {
+
+    private static final int COMPONENTS = 1000;
+    private static final int DOCS_PER_COMPONENT = 10;
+    private static final long ROUND_TRIP_MICROS = 200;
+    private static final int MINIO_CONCURRENCY = 8;
+
+    private final AtomicLong roundTrips = new AtomicLong();
+    private final Set<String> removedHashes = ConcurrentHashMap.newKeySet();
+
+    private final List<String> componentIds = new ArrayList<>();
+    private final List<DocIndex> docs = new ArrayList<>();
+    private final Map<String, ShipDocument> mongoDocs = new HashMap<>();
+
+    private final DocIndexMapper docIndexMapper = mock(DocIndexMapper.class);
+    private final ShipDocumentRepository mongoRepository = mock(ShipDocumentRepository.class);
+    private final AuditLogRepository auditLogRepository = mock(AuditLogRepository.class);
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final ObjectStore objectStore = mock(ObjectStore.class);
+
+    @Test
+    void compareSimulatedRoundTrips() {
+        buildSubtree();
+        stubStores();
+
+        ContentStoreService contentStoreService = new ContentStoreService(objectStore, mongoTemplate);
+        DocumentService documentService = new DocumentService(
+                docIndexMapper, mongoRepository, contentStoreService, objectStore, mock(AuditLogWriter.class), // 审计日志后台写，不在删除路径上
+                new VersionStorageService(contentStoreService, objectStore, false, false), mongoTemplate,
+                new DocumentDetailCache(1024 * 1024, 600),
+                new DocumentSearchService(mongoTemplate, docIndexMapper, mongoRepository), mock(ComponentRollupService.class),
+                mock(ShipTombstones.class));
+
+        roundTrips.set(0);
+        long start = System.nanoTime();
+        legacyDelete(contentStoreService);
+        long legacyMillis = (System.nanoTime() - start) / 1_000_000;
+        long legacyTrips = roundTrips.get();
+
+        removedHashes.clear();
+        roundTrips.set(0);
+        start = System.nanoTime();
+        documentService.deleteDocumentsByComponentIds(componentIds);
+        long batchedMillis = (System.nanoTime() - start) / 1_000_000;
+        long batchedTrips = roundTrips.get();
+
+        System.out.printf("[模拟] 文档数: %d, 每次往返按 %dµs 计 (mock 存储，不是实测)%n", docs.size(), ROUND_TRIP_MICROS);
+        System.out.printf("逐个删除   : %6d 次往返, 模拟耗时 %6d ms%n", legacyTrips, legacyMillis);
+        System.out.printf("批量流水线 : %6d 次往返, 模拟耗时 %6d ms%n", batchedTrips, batchedMillis);
+    }
+
+    /**
+     * 旧实现：每个文档 findById -> 逐版本释放文件 -> deleteById (Mongo) -> deleteById (MySQL) -> save 审计
+     */
+    private void legacyDelete(ContentStoreService contentStoreService) {
+        for (DocIndex doc : docIndexMapper.selectList(null)) {
+            ShipDocument mongoDoc = mongoRepository.findById(doc.getMongoDocId()).orElse(null);
+            if (mongoDoc != null && mongoDoc.getVersions() != null) {
+                for (ShipDocument.DocVersion v : mongoDoc.getVersions()) {
+                    contentStoreService.release(v);
+                }
+                mongoRepository.deleteById(doc.getMongoDocId());
+            }
+            docIndexMapper.deleteById(doc.getId());
+            AuditLog log = new AuditLog();
+            log.setAction("DELETE_DOC");
+            auditLogRepository.save(log);
+        }
+    }
+
+    private void buildSubtree() {
+        long id = 1;
+        for (int c = 0; c < COMPONENTS; c++) {
+            String componentId = "comp-" + c;
+            componentIds.add(componentId);
+            for (int d = 0; d < DOCS_PER_COMPONENT; d++, id++) {
+                ShipDocument.DocVersion v = new ShipDocument.DocVersion();
+                v.setVersionNo("V1.0");
+                v.setChecksum(String.format("%064x", id));
+                v.setStoragePath("uuid-" + id + "_manual.pdf");
+
+                ShipDocument mongoDoc = new ShipDocument();
+                mongoDoc.setId("mongo-" + id);
+                mongoDoc.setVersions(List.of(v));
+                mongoDocs.put(mongoDoc.getId(), mongoDoc);
+
+                DocIndex doc = new DocIndex();
+                doc.setId(id);
+                doc.setTitle("Manual " + id);
+                doc.setComponentId(componentId);
+                doc.setMongoDocId(mongoDoc.getId());
+                docs.add(doc);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void stubStores() {
+        when(docIndexMapper.selectList(any())).then(roundTrip(inv -> docs));
+        when(docIndexMapper.deleteById(any(Long.class))).then(roundTrip(inv -> 1));
+        when(docIndexMapper.deleteBatchIds(anyCollection())).then(roundTrip(inv -> ((Collection<?>) inv.getArgument(0)).size()));
+
+        when(mongoRepository.findById(anyString())).then(roundTrip(inv -> Optional.ofNullable(mongoDocs.get(inv.<String>getArgument(0)))));
+        when(mongoRepository.findAllById(any())).then(roundTrip(inv -> {
+            List<ShipDocument> found = new ArrayList<>();
+            inv.<Iterable<String>>getArgument(0).forEach(mongoId -> found.add(mongoDocs.get(mongoId)));
+            return found;
+        }));
+        when(mongoRepository.save(any())).then(roundTrip(inv -> inv.getArgument(0)));
+        doAnswer(roundTrip(inv -> null)).when(mongoRepository).deleteById(anyString());
+        doAnswer(roundTrip(inv -> null)).when(mongoRepository).deleteAllById(any());
+
+        when(auditLogRepository.save(any())).then(roundTrip(inv -> inv.getArgument(0)));
+
+        // 引用计数：每份内容都只有一个引用，扣完就归零
+        when(mongoTemplate.findAndModify(any(Query.class), any(), any(), eq(StoredObject.class)))
+                .then(roundTrip(inv -> storedObject(idOf(inv.getArgument(0)))));
+        when(mongoTemplate.remove(any(Query.class), eq(StoredObject.class))).then(roundTrip(inv -> {
+            removedHashes.addAll(idsOf(inv.getArgument(0)));
+            return DeleteResult.acknowledged(1);
+        }));
+        when(mongoTemplate.find(any(Query.class), eq(StoredObject.class))).then(roundTrip(inv -> {
+            List<StoredObject> found = new ArrayList<>();
+            for (String hash : idsOf(inv.getArgument(0))) {
+                if (!removedHashes.contains(hash)) found.add(storedObject(hash));
+            }
+            return found;
+        }));
+        BulkOperations bulk = mock(BulkOperations.class);
+        when(bulk.updateOne(any(Query.class), any(UpdateDefinition.class))).thenReturn(bulk);
+        when(bulk.execute()).then(roundTrip(inv -> null));
+        when(mongoTemplate.bulkOps(any(BulkOperations.BulkMode.class), eq(StoredObject.class))).thenReturn(bulk);
+
+        // MinIO：单个删除一次往返；批量删除每 1000 个一个请求，MINIO_CONCURRENCY 个请求并发
+        doAnswer(roundTrip(inv -> null)).when(objectStore).removeFile(anyString());
+        when(objectStore.removeFiles(anyCollection())).then(inv -> {
+            int batches = (((Collection<?>) inv.getArgument(0)).size() + 999) / 1000;
+            int waves = (batches + MINIO_CONCURRENCY - 1) / MINIO_CONCURRENCY;
+            for (int i = 0; i < waves; i++) simulateRoundTrip();
+            return 0;
+        });
+    }
+
+    private <T> Answer<T> roundTrip(Answer<T> answer) {
+        return inv -> {
+            simulateRoundTrip();
+            return answer.answer(inv);
+        };
+    }
+
+    private void simulateRoundTrip() {
+        roundTrips.incrementAndGet();
+        LockSupport.parkNanos(ROUND_TRIP_MICROS * 1000);
+    }
+
+    private static StoredObject storedObject(String hash) {
+        StoredObject stored = new StoredObject();
+        stored.setId(hash);
+        stored.setStoragePath("uuid-" + Long.parseLong(hash, 16) + "_manual.pdf");
+        stored.setRefCount(0);
+        return stored;
+    }
+
+    private static String idOf(Query query) {
+        return query.getQueryObject().getString("_id");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> idsOf(Query query) {
+        Object id = query.getQueryObject().get("_id");
+        if (id instanceof Document in) {
+            return new ArrayList<>((Collection<String>) in.get("$in"));
+        }
+        return List.of((String) id);
+    }
+}
@@ -0,0 +1,72 @@
+package com.university.shipmanager.service;
+
+import com.mongodb.client.result.UpdateResult;
+import com.university.shipmanager.common.ObjectStore;
+import com.university.shipmanager.entity.mongo.UploadSession;
+import com.university.shipmanager.repository.UploadSessionRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+
+import java.io.ByteArrayInputStream;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ChunkedUploadServiceTest {
+
+    private final UploadSessionRepository sessionRepository = mock(UploadSessionRepository.class);
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final ObjectStore objectStore = mock(ObjectStore.class);
+    private final ChunkedUploadService service = new ChunkedUploadService(sessionRepository, mongoTemplate, objectStore,
+            mock(ContentStoreService.class), mock(DocumentService.class), mock(ShipTombstones.class), 24, 10);
+
+    @Test
+    void chunkIsNotAcknowledgedWhenSessionLeftUploadingMeanwhile() {
+        UploadSession session = session("s1");
+        when(sessionRepository.findById("s1")).thenReturn(Optional.of(session));
+        when(objectStore.uploadPart(any(), any(), anyInt(), any())).thenReturn("etag-1");
+        // 分片传到 MinIO 的过程中会话被合并 / 过期了：$set 一条都没匹配上
+        when(mongoTemplate.updateFirst(any(Query.class), any(UpdateDefinition.class), eq(UploadSession.class)))
+                .thenReturn(UpdateResult.acknowledged(0, 0L, null));
+
+        assertThrows(RuntimeException.class, () -> service.uploadChunk("s1", 1, new ByteArrayInputStream(new byte[10])));
+    }
+
+    @Test
+    void sweepAbortsOnlySessionsItManagesToExpire() {
+        UploadSession stale = session("s1"), raced = session("s2");
+        when(mongoTemplate.find(any(Query.class), eq(UploadSession.class))).thenReturn(List.of(stale, raced));
+        // s2 在扫描和抢占之间刚好开始合并了，抢不到就不能去取消它
+        when(mongoTemplate.updateFirst(any(Query.class), any(UpdateDefinition.class), eq(UploadSession.class)))
+                .thenReturn(UpdateResult.acknowledged(1, 1L, null), UpdateResult.acknowledged(0, 0L, null));
+
+        assertEquals(1, service.sweepExpired());
+        verify(objectStore).abortMultipartUpload("obj-s1", "upload-s1");
+        verify(objectStore, never()).abortMultipartUpload("obj-s2", "upload-s2");
+    }
+
+    private static UploadSession session(String id) {
+        UploadSession session = new UploadSession();
+        session.setId(id);
+        session.setStatus("UPLOADING");
+        session.setObjectName("obj-" + id);
+        session.setUploadId("upload-" + id);
+        session.setTotalSize(10L);
+        session.setChunkSize(5 * 1024 * 1024);
+        session.setTotalChunks(1);
+        session.setUpdatedAt(LocalDateTime.now().minusDays(2));
+        return session;
+    }
+}
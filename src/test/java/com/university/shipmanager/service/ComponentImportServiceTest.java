@@ -0,0 +1,134 @@
+package com.university.shipmanager.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.university.shipmanager.entity.mongo.ComponentDoc;
+import org.bson.BsonDocument;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ComponentImportServiceTest {
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final BulkOperations bulk = mock(BulkOperations.class);
+    private final ComponentImportService importService =
+            new ComponentImportService(mongoTemplate, new ObjectMapper(), new BomTreeCache(1000, 1800, 600),
+                    mock(ComponentRollupService.class));
+
+    @Test
+    void resolvesAncestorsInMemoryAndRejectsOrphansAndCycles() throws Exception {
+        // 库里已有 HULL；文件里 ME 挂在 HULL 下、P1 挂在 ME 下；X -> Y -> X 成环；ORPHAN 的上级不存在；ME 重复一行
+        String csv = """
+                code,parent_code,name,type,power,material
+                P1,ME,滑油泵,Pump,15.5,Steel
+                ME,HULL,主机,Engine,5000,
+                X,Y,x,Part,,
+                Y,X,y,Part,,
+                ORPHAN,NOPE,孤儿,Part,,
+                ME,HULL,主机 (重复),Engine,,
+                """;
+        ComponentDoc hull = new ComponentDoc();
+        hull.setId("hull-id");
+        hull.setCode("HULL");
+        hull.setAncestors(List.of());
+        when(mongoTemplate.find(any(Query.class), eq(ComponentDoc.class))).thenReturn(List.of(hull));
+        when(mongoTemplate.bulkOps(any(BulkOperations.BulkMode.class), eq(ComponentDoc.class))).thenReturn(bulk);
+        when(bulk.insert(anyList())).thenReturn(bulk);
+
+        List<ComponentImportService.BomRow> rows = importService.parse(
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), ComponentImportService.Format.CSV);
+        List<ComponentImportService.BatchReport> reports = new ArrayList<>();
+        ComponentImportService.ImportSummary summary = importService.importRows(1L, rows, false, reports::add);
+
+        assertEquals(6, summary.getTotal());
+        assertEquals(2, summary.getInserted());
+        assertEquals(4, summary.getFailed());
+        Map<String, String> errors = reports.get(0).getErrors().stream()
+                .collect(Collectors.toMap(e -> e.code() + "@" + e.line(), ComponentImportService.RowError::message));
+        assertTrue(errors.get("ORPHAN@6").startsWith("找不到上级节点"));
+        assertTrue(errors.keySet().containsAll(List.of("X@4", "Y@5", "ME@7")));
+
+        // 按层一批一次无序 insert，先父后子，祖先链在内存里算好
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<ComponentDoc>> inserted = ArgumentCaptor.forClass(List.class);
+        verify(bulk, times(2)).insert(inserted.capture());
+        Map<String, ComponentDoc> byCode = inserted.getAllValues().stream().flatMap(List::stream)
+                .collect(Collectors.toMap(ComponentDoc::getCode, Function.identity()));
+        assertEquals(List.of(List.of("ME"), List.of("P1")), inserted.getAllValues().stream()
+                .map(batch -> batch.stream().map(ComponentDoc::getCode).toList()).toList());
+        assertEquals(List.of("hull-id"), byCode.get("ME").getAncestors());
+        assertEquals(List.of("hull-id", byCode.get("ME").getId()), byCode.get("P1").getAncestors());
+        assertEquals(byCode.get("ME").getId(), byCode.get("P1").getParentId());
+        assertEquals(5000L, byCode.get("ME").getSpecs().get("power"));
+        assertEquals(15.5, byCode.get("P1").getSpecs().get("power"));
+    }
+
+    @Test
+    void childrenOfAFailedParentAreNotWritten() throws Exception {
+        // A、B 是根，A1 挂在 A 下，B1 挂在 B 下：A 写入失败 (比如别的导入抢先占了这个编码)，A1 就不能写
+        String json = "[{\"code\":\"A\",\"name\":\"a\",\"type\":\"System\"},"
+                + "{\"code\":\"A1\",\"parentCode\":\"A\",\"name\":\"a1\",\"type\":\"Part\"},"
+                + "{\"code\":\"B\",\"name\":\"b\",\"type\":\"System\"},"
+                + "{\"code\":\"B1\",\"parentCode\":\"B\",\"name\":\"b1\",\"type\":\"Part\"}]";
+        when(mongoTemplate.find(any(Query.class), eq(ComponentDoc.class))).thenReturn(List.of());
+        when(mongoTemplate.bulkOps(any(BulkOperations.BulkMode.class), eq(ComponentDoc.class))).thenReturn(bulk);
+        when(bulk.insert(anyList())).thenReturn(bulk);
+        BulkWriteError duplicate = new BulkWriteError(11000, "E11000 duplicate key", new BsonDocument(), 0);
+        when(bulk.execute())
+                .thenThrow(new BulkOperationException("E11000", new MongoBulkWriteException(
+                        BulkWriteResult.acknowledged(1, 0, 0, 0, List.of(), List.of()), List.of(duplicate), null, new ServerAddress(), Set.of())))
+                .thenReturn(BulkWriteResult.acknowledged(1, 0, 0, 0, List.of(), List.of()));
+        List<ComponentImportService.BomRow> rows = importService.parse(
+                new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), ComponentImportService.Format.JSON);
+
+        ComponentImportService.ImportSummary summary = importService.importRows(1L, rows, false, r -> { });
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<ComponentDoc>> inserted = ArgumentCaptor.forClass(List.class);
+        verify(bulk, times(2)).insert(inserted.capture());
+        assertEquals(List.of(List.of("A", "B"), List.of("B1")), inserted.getAllValues().stream()
+                .map(batch -> batch.stream().map(ComponentDoc::getCode).toList()).toList());
+        assertEquals(2, summary.getInserted());
+        assertEquals(2, summary.getFailed());
+    }
+
+    @Test
+    void dryRunOnlyValidates() throws Exception {
+        String json = "[{\"code\":\"A\",\"name\":\"a\",\"type\":\"System\"},{\"code\":\"B\",\"parentCode\":\"A\",\"name\":\"b\",\"type\":\"Part\"}]";
+        List<ComponentImportService.BomRow> rows = importService.parse(
+                new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), ComponentImportService.Format.JSON);
+
+        ComponentImportService.ImportSummary summary = importService.importRows(1L, rows, true, r -> { });
+
+        assertEquals(2, summary.getValid());
+        assertEquals(0, summary.getFailed());
+        verify(mongoTemplate, never()).bulkOps(any(BulkOperations.BulkMode.class), eq(ComponentDoc.class));
+    }
+}
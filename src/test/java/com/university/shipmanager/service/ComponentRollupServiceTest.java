@@ -0,0 +1,170 @@
+package com.university.shipmanager.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.university.shipmanager.entity.mongo.ComponentDoc;
+import com.university.shipmanager.entity.mongo.ShipDocument;
+import com.university.shipmanager.entity.mysql.DocIndex;
+import com.university.shipmanager.mapper.DocIndexMapper;
+import org.apache.ibatis.cursor.Cursor;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ComponentRollupServiceTest {
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final DocIndexMapper docIndexMapper = mock(DocIndexMapper.class);
+    private final BulkOperations bulk = mock(BulkOperations.class);
+    private final BomTreeCache cache = new BomTreeCache(1000, 1800, 600);
+    private final ComponentRollupService rollupService = new ComponentRollupService(mongoTemplate, docIndexMapper, cache);
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void uploadAndMoveAddDeltasAlongAncestors() throws Exception {
+        // hull -> engine -> pump, hull -> deck；缓存里已经有这艘船
+        ComponentDoc hull = node("hull"), engine = node("engine", "hull"), pump = node("pump", "hull", "engine"), deck = node("deck", "hull");
+        cache.getTree(1L, () -> List.of(hull, engine, pump, deck));
+        when(mongoTemplate.find(any(Query.class), eq(ComponentDoc.class))).thenReturn(List.of(pump));
+        when(mongoTemplate.bulkOps(any(BulkOperations.BulkMode.class), eq(ComponentDoc.class))).thenReturn(bulk);
+
+        // 1. pump 上传一个 100 字节的文档：pump 和两个祖先一条 updateMulti
+        DocIndex doc = new DocIndex();
+        doc.setComponentId("pump");
+        rollupService.onDocumentsAdded(List.of(doc), List.of(100L));
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<UpdateDefinition> update = ArgumentCaptor.forClass(UpdateDefinition.class);
+        verify(mongoTemplate, times(1)).updateMulti(query.capture(), update.capture(), eq(ComponentDoc.class));
+        assertEquals(Set.of("hull", "engine", "pump"), idsOf(query.getValue()));
+        assertEquals(new Document("rollup.docCount", 1L).append("rollup.storedBytes", 100L).append("rollup.descendantCount", 0L),
+                update.getValue().getUpdateObject().get("$inc"));
+
+        // 树接口直接从缓存带出汇总
+        Map<String, JsonNode> tree = flatten(cache.getTree(1L, () -> fail("不应该再查库")));
+        assertEquals(1, tree.get("hull").get("rollup").get("docCount").asInt());
+        assertEquals(100, tree.get("pump").get("rollup").get("storedBytes").asInt());
+        assertEquals(0, tree.get("deck").get("rollup").get("docCount").asInt());
+
+        // 2. pump 从 engine 下移到 deck 下：engine 减、deck 加，共同祖先 hull 不动
+        pump.setRollup(ComponentDoc.Rollup.of(1, 100, 0));
+        rollupService.onMoved(pump, List.of("hull", "deck"), 0);
+
+        ArgumentCaptor<Query> moved = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> movedUpdate = ArgumentCaptor.forClass(Update.class);
+        verify(bulk, times(2)).updateMulti(moved.capture(), movedUpdate.capture());
+        Map<String, Object> descendantDelta = new HashMap<>();
+        for (int i = 0; i < 2; i++) {
+            descendantDelta.put(idsOf(moved.getAllValues().get(i)).iterator().next(),
+                    ((Document) movedUpdate.getAllValues().get(i).getUpdateObject().get("$inc")).get("rollup.descendantCount"));
+        }
+        assertEquals(Map.of("engine", -1L, "deck", 1L), descendantDelta);
+    }
+
+    @Test
+    void rebuildRecomputesWholeShipFromDocuments() {
+        // hull -> engine -> pump；engine 上 1 个文档 (两个版本)，pump 上 1 个文档，还有一个没挂零件的
+        when(mongoTemplate.find(any(Query.class), eq(ComponentDoc.class)))
+                .thenReturn(List.of(node("hull"), node("engine", "hull"), node("pump", "hull", "engine")));
+        @SuppressWarnings("unchecked")
+        Cursor<DocIndex> cursor = mock(Cursor.class);
+        when(cursor.iterator()).thenReturn(List.of(index("engine", "m1"), index("pump", "m2"), index(null, "m3")).iterator());
+        when(docIndexMapper.streamByShipId(1L)).thenReturn(cursor);
+        when(mongoTemplate.find(any(Query.class), eq(ShipDocument.class)))
+                .thenReturn(List.of(mongoDoc("m1", 300L, null), mongoDoc("m2", null, 50L)));
+        when(mongoTemplate.bulkOps(any(BulkOperations.BulkMode.class), eq(ComponentDoc.class))).thenReturn(bulk);
+
+        assertEquals(3, rollupService.rebuildShip(1L));
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(bulk, times(3)).updateOne(query.capture(), update.capture());
+        Map<String, ComponentDoc.Rollup> rebuilt = new HashMap<>();
+        for (int i = 0; i < 3; i++) {
+            rebuilt.put((String) query.getAllValues().get(i).getQueryObject().get("_id"),
+                    (ComponentDoc.Rollup) ((Document) update.getAllValues().get(i).getUpdateObject().get("$set")).get("rollup"));
+        }
+        // m1 两个版本各 300，m2 没有 storedSize 按原文 50 算
+        assertEquals(ComponentDoc.Rollup.of(2, 650, 2), rebuilt.get("hull"));
+        assertEquals(ComponentDoc.Rollup.of(2, 650, 1), rebuilt.get("engine"));
+        assertEquals(ComponentDoc.Rollup.of(1, 50, 0), rebuilt.get("pump"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Set<String> idsOf(Query query) {
+        return new HashSet<>((List<String>) ((Document) query.getQueryObject().get("_id")).get("$in"));
+    }
+
+    private Map<String, JsonNode> flatten(BomTree tree) throws Exception {
+        StringWriter out = new StringWriter();
+        try (var gen = objectMapper.createGenerator(out)) {
+            tree.writeJson(gen);
+        }
+        Map<String, JsonNode> byId = new HashMap<>();
+        List<JsonNode> stack = new ArrayList<>();
+        objectMapper.readTree(out.toString()).forEach(stack::add);
+        while (!stack.isEmpty()) {
+            JsonNode node = stack.remove(stack.size() - 1);
+            byId.put(node.get("id").asText(), node);
+            if (node.has("children")) node.get("children").forEach(stack::add);
+        }
+        return byId;
+    }
+
+    private static ComponentDoc node(String id, String... ancestors) {
+        ComponentDoc doc = new ComponentDoc();
+        doc.setId(id);
+        doc.setShipId(1L);
+        doc.setName(id);
+        doc.setType("Part");
+        doc.setAncestors(List.of(ancestors));
+        doc.setParentId(ancestors.length == 0 ? null : ancestors[ancestors.length - 1]);
+        doc.setRollup(ComponentDoc.Rollup.of(0, 0, 0));
+        return doc;
+    }
+
+    private static DocIndex index(String componentId, String mongoDocId) {
+        DocIndex index = new DocIndex();
+        index.setShipId(1L);
+        index.setComponentId(componentId);
+        index.setMongoDocId(mongoDocId);
+        return index;
+    }
+
+    private static ShipDocument mongoDoc(String id, Long storedSize, Long fileSize) {
+        ShipDocument doc = new ShipDocument();
+        doc.setId(id);
+        List<ShipDocument.DocVersion> versions = new ArrayList<>();
+        int count = "m1".equals(id) ? 2 : 1;
+        for (int i = 0; i < count; i++) {
+            ShipDocument.DocVersion v = new ShipDocument.DocVersion();
+            v.setStoredSize(storedSize);
+            v.setFileSize(fileSize);
+            versions.add(v);
+        }
+        doc.setVersions(versions);
+        return doc;
+    }
+}
@@ -0,0 +1,203 @@
+package com.university.shipmanager.service;
+
+import com.mongodb.client.result.UpdateResult;
+import com.university.shipmanager.common.MaterializedPath;
+import com.university.shipmanager.entity.mongo.ComponentDoc;
+import com.university.shipmanager.repository.ComponentRepository;
+import com.university.shipmanager.repository.ShipDeleteJobRepository;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ComponentServiceTest {
+
+    private final ComponentRepository componentRepository = mock(ComponentRepository.class);
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final ShipDeleteJobRepository jobRepository = mock(ShipDeleteJobRepository.class);
+    private final ShipTombstones shipTombstones = new ShipTombstones(jobRepository);
+    private final ComponentService componentService = new ComponentService(componentRepository,
+            mock(DocumentService.class), mock(AuditLogWriter.class), new BomTreeCache(1000, 1800, 600), mongoTemplate,
+            mock(ComponentRollupService.class), shipTombstones);
+
+    @Test
+    void updateSetsOnlyEditedFieldsSoConcurrentRollupIncrementsSurvive() {
+        ComponentDoc updated = node("engine", "hull");
+        when(mongoTemplate.findAndModify(any(Query.class), any(UpdateDefinition.class), any(FindAndModifyOptions.class),
+                eq(ComponentDoc.class))).thenReturn(updated, (ComponentDoc) null); // 第二次：节点不存在
+
+        assertEquals(updated, componentService.updateComponent("engine", "主机", "Engine", Map.of("power", 5000)));
+
+        ArgumentCaptor<UpdateDefinition> update = ArgumentCaptor.forClass(UpdateDefinition.class);
+        verify(mongoTemplate).findAndModify(any(Query.class), update.capture(), any(FindAndModifyOptions.class), eq(ComponentDoc.class));
+        Document set = update.getValue().getUpdateObject().get("$set", Document.class);
+        assertEquals(Set.of("name", "type", "specs", "updatedAt"), set.keySet()); // rollup 不在里面
+        verify(componentRepository, never()).save(any());
+
+        assertThrows(RuntimeException.class, () -> componentService.updateComponent("missing", "x", "Part", null));
+    }
+
+    @Test
+    void lazyChildrenReturnsOneLevelWithCountsAndPrefetch() {
+        // 根节点一共 3 个，这一页取 2 个：hull (有 2 个孩子)、deck (没有孩子)
+        when(componentRepository.findByShipIdAndParentIdIsNull(eq(1L), any()))
+                .thenReturn(new PageImpl<>(List.of(node("hull", null), node("deck", null)), PageRequest.of(0, 2), 3));
+        when(mongoTemplate.aggregate(any(Aggregation.class), eq(ComponentDoc.class), eq(Document.class)))
+                .thenReturn(counts(new Document("_id", "hull").append("count", 2)))
+                .thenReturn(counts(new Document("_id", "engine").append("count", 5)));
+        when(mongoTemplate.find(any(Query.class), eq(ComponentDoc.class)))
+                .thenReturn(List.of(node("engine", "hull"), node("boiler", "hull")));
+
+        ComponentService.ChildPage page = componentService.getChildren(1L, null, 0, 2, 2);
+
+        assertEquals(3, page.getTotal());
+        assertTrue(page.isHasMore());
+        ComponentService.LazyNode hull = page.getRecords().get(0);
+        ComponentService.LazyNode deck = page.getRecords().get(1);
+        assertEquals(2, hull.getChildCount());
+        assertFalse(deck.isHasChildren());
+        assertNull(deck.getChildren());
+
+        // 预取的第二层也带了子节点数，但不再往下取
+        List<ComponentService.LazyNode> hullChildren = hull.getChildren().getRecords();
+        assertEquals(List.of("engine", "boiler"), hullChildren.stream().map(ComponentService.LazyNode::getId).toList());
+        assertEquals(5, hullChildren.get(0).getChildCount());
+        assertNull(hullChildren.get(0).getChildren());
+
+        // 一层一次 count 聚合，预取一次 $in，和树多大无关
+        verify(mongoTemplate, times(2)).aggregate(any(Aggregation.class), eq(ComponentDoc.class), eq(Document.class));
+        verify(mongoTemplate, times(1)).find(any(Query.class), eq(ComponentDoc.class));
+
+        assertThrows(IllegalArgumentException.class, () -> componentService.getChildren(null, null, 0, 2, 1));
+        assertThrows(IllegalArgumentException.class, () -> componentService.getChildren(1L, null, 0, 2, 9));
+    }
+
+    @Test
+    void moveRewritesSubtreeWithOneServerSideUpdate() {
+        ComponentDoc engine = node("engine", "hull");
+        engine.setAncestors(List.of("hull"));
+        ComponentDoc deck = node("deck", null);
+        deck.setAncestors(List.of());
+        when(componentRepository.findById("engine")).thenReturn(Optional.of(engine));
+        when(componentRepository.findById("deck")).thenReturn(Optional.of(deck));
+        when(mongoTemplate.count(any(Query.class), eq(ComponentDoc.class))).thenReturn(10_000L);
+        when(mongoTemplate.updateMulti(any(Query.class), any(UpdateDefinition.class), eq(ComponentDoc.class)))
+                .thenReturn(UpdateResult.acknowledged(10_000, 10_000L, null));
+
+        componentService.moveComponent("engine", "deck");
+
+        // 子孙一条 pipeline update 搞定，不逐个查、逐个存
+        ArgumentCaptor<UpdateDefinition> update = ArgumentCaptor.forClass(UpdateDefinition.class);
+        verify(mongoTemplate, times(1)).updateMulti(any(Query.class), update.capture(), eq(ComponentDoc.class));
+        verify(componentRepository, never()).findByAncestorsContaining(any());
+        verify(componentRepository, never()).save(any());
+        Document stage = ((AggregationUpdate) update.getValue()).toPipeline(Aggregation.DEFAULT_CONTEXT).get(0);
+        Document concat = stage.get("$set", Document.class).get("ancestors", Document.class);
+        assertEquals(List.of("deck", "engine"), concat.getList("$concatArrays", Object.class).get(0));
+
+        // 子树太大 / 移到自己下面都直接拒绝，不发更新
+        when(mongoTemplate.count(any(Query.class), eq(ComponentDoc.class))).thenReturn(1_000_000L);
+        assertThrows(IllegalArgumentException.class, () -> componentService.moveComponent("engine", "deck"));
+        ComponentDoc pump = node("pump", "engine");
+        pump.setAncestors(List.of("hull", "engine"));
+        when(componentRepository.findById("pump")).thenReturn(Optional.of(pump));
+        assertThrows(RuntimeException.class, () -> componentService.moveComponent("engine", "pump"));
+        verify(mongoTemplate, times(1)).updateMulti(any(Query.class), any(UpdateDefinition.class), eq(ComponentDoc.class));
+    }
+
+    @Test
+    void nodesOfADeletedShipCannotBeReadOrChangedById() {
+        ComponentDoc engine = node("engine", "hull");
+        engine.setAncestors(List.of("hull"));
+        when(componentRepository.findById("engine")).thenReturn(Optional.of(engine));
+        when(componentRepository.findByAncestorsContaining("hull")).thenReturn(List.of(engine));
+        when(jobRepository.existsById(1L)).thenReturn(true); // 1 号船正在后台删除
+
+        assertThrows(RuntimeException.class, () -> componentService.getSubTree("hull"));
+        assertThrows(IllegalStateException.class, () -> componentService.moveComponent("engine", "root"));
+        assertThrows(IllegalStateException.class, () -> componentService.deleteComponentAndChildren("engine"));
+        verify(mongoTemplate, never()).updateMulti(any(Query.class), any(UpdateDefinition.class), eq(ComponentDoc.class));
+        verify(componentRepository, never()).deleteAllById(any());
+    }
+
+    @Test
+    void pathStrategyUsesRangeQueryAndRewritesPathAfterAncestors() {
+        ReflectionTestUtils.setField(componentService, "subtreeIndex", ComponentService.SUBTREE_BY_PATH);
+        String hull = new ObjectId().toHexString(), engine = new ObjectId().toHexString(), deck = new ObjectId().toHexString();
+        ComponentDoc engineDoc = node(engine, hull);
+        engineDoc.setAncestors(List.of(hull));
+        engineDoc.setPath(MaterializedPath.encode(List.of(hull), engine));
+        ComponentDoc deckDoc = node(deck, null);
+        deckDoc.setAncestors(List.of());
+        deckDoc.setPath(MaterializedPath.encode(List.of(), deck));
+        when(componentRepository.findById(engine)).thenReturn(Optional.of(engineDoc));
+        when(componentRepository.findById(deck)).thenReturn(Optional.of(deckDoc));
+        when(mongoTemplate.count(any(Query.class), eq(ComponentDoc.class))).thenReturn(3L);
+        when(mongoTemplate.updateMulti(any(Query.class), any(UpdateDefinition.class), eq(ComponentDoc.class)))
+                .thenReturn(UpdateResult.acknowledged(3, 3L, null));
+
+        componentService.moveComponent(engine, deck);
+
+        // 子树 = path 索引上的一段区间 (P, P + "g")，不碰 ancestors
+        ArgumentCaptor<Query> subtree = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).count(subtree.capture(), eq(ComponentDoc.class));
+        Document range = subtree.getValue().getQueryObject().get("path", Document.class);
+        assertEquals(hull + engine, range.get("$gt"));
+        assertEquals(hull + engine + "g", range.get("$lt"));
+
+        // 自己的 path 直接算好；子孙的 path 在 ancestors 改完之后的第二个 $set 里重新拼
+        ArgumentCaptor<UpdateDefinition> self = ArgumentCaptor.forClass(UpdateDefinition.class);
+        verify(mongoTemplate).updateFirst(any(Query.class), self.capture(), eq(ComponentDoc.class));
+        assertEquals(deck + engine, self.getValue().getUpdateObject().get("$set", Document.class).get("path"));
+        ArgumentCaptor<UpdateDefinition> update = ArgumentCaptor.forClass(UpdateDefinition.class);
+        verify(mongoTemplate).updateMulti(any(Query.class), update.capture(), eq(ComponentDoc.class));
+        List<Document> pipeline = ((AggregationUpdate) update.getValue()).toPipeline(Aggregation.DEFAULT_CONTEXT);
+        assertEquals(2, pipeline.size());
+        assertTrue(pipeline.get(0).get("$set", Document.class).containsKey("ancestors"));
+        assertTrue(pipeline.get(1).get("$set", Document.class).containsKey("path"));
+
+        // 不是 ObjectId 的老节点编不出路径串，只能走 ancestors
+        assertNull(MaterializedPath.encode(List.of("hull"), engine));
+    }
+
+    private static AggregationResults<Document> counts(Document... rows) {
+        return new AggregationResults<>(List.of(rows), new Document());
+    }
+
+    private static ComponentDoc node(String id, String parentId) {
+        ComponentDoc doc = new ComponentDoc();
+        doc.setId(id);
+        doc.setShipId(1L);
+        doc.setName(id);
+        doc.setParentId(parentId);
+        return doc;
+    }
+}
@@ -0,0 +1,82 @@
+package com.university.shipmanager.service;
+
+import com.university.shipmanager.entity.mongo.ComponentDoc;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ComponentSpecQueryServiceTest {
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final ComponentSpecQueryService queryService = new ComponentSpecQueryService(mongoTemplate);
+
+    @Test
+    void buildsTypedPredicatesScopedByShipAndSubtree() {
+        ComponentDoc engine = new ComponentDoc();
+        engine.setId("e1");
+        when(mongoTemplate.find(any(Query.class), eq(ComponentDoc.class))).thenReturn(List.of(engine));
+
+        ComponentSpecQueryService.SpecQuery request = new ComponentSpecQueryService.SpecQuery();
+        request.setShipId(1L);
+        request.setSubtreeId("system");
+        request.setType("Engine");
+        request.setSpecs(List.of(
+                predicate("power", "gt", 5000),
+                predicate("power", "lte", 12000.5),
+                predicate("material", null, "Stainless"),
+                predicate("cylinders", "in", List.of(8, 12))));
+        request.setLimit(1);
+        ComponentSpecQueryService.SpecQueryResult result = queryService.query(request);
+
+        ArgumentCaptor<Query> captor = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).find(captor.capture(), eq(ComponentDoc.class));
+        @SuppressWarnings("unchecked")
+        List<Document> and = (List<Document>) captor.getValue().getQueryObject().get("$and");
+        assertEquals(new Document("shipId", 1L), and.get(0));
+        assertEquals(new Document("$or", List.of(new Document("_id", "system"), new Document("ancestors", "system"))), and.get(1));
+        assertEquals(new Document("type", "Engine"), and.get(2));
+        // 整数统一成 Long，和库里的 Integer / Long / Double 都能比
+        assertEquals(new Document("specs.power", new Document("$gt", 5000L)), and.get(3));
+        assertEquals(new Document("specs.power", new Document("$lte", 12000.5)), and.get(4));
+        assertEquals(new Document("specs.material", "Stainless"), and.get(5));
+        assertEquals(new Document("specs.cylinders", new Document("$in", List.of(8L, 12L))), and.get(6));
+        assertEquals(Map.of("_id", 1), captor.getValue().getSortObject());
+        assertEquals("e1", result.getNextAfter()); // 取满一页，还可能有下一页
+    }
+
+    @Test
+    void rejectsUnsafeKeysAndUntypedRanges() {
+        assertThrows(IllegalArgumentException.class, () -> ComponentSpecQueryService.toCriteria(predicate("$where", "eq", 1)));
+        assertThrows(IllegalArgumentException.class, () -> ComponentSpecQueryService.toCriteria(predicate("a.b", "eq", 1)));
+        assertThrows(IllegalArgumentException.class, () -> ComponentSpecQueryService.toCriteria(predicate("power", "gt", true)));
+        assertThrows(IllegalArgumentException.class, () -> ComponentSpecQueryService.toCriteria(predicate("power", "like", "x")));
+        assertThrows(IllegalArgumentException.class, () -> ComponentSpecQueryService.toCriteria(predicate("power", "eq", Map.of("$gt", 1))));
+
+        ComponentSpecQueryService.SpecQuery request = new ComponentSpecQueryService.SpecQuery();
+        request.setShipId(1L);
+        when(mongoTemplate.find(any(Query.class), eq(ComponentDoc.class))).thenReturn(List.of());
+        assertNull(queryService.query(request).getNextAfter());
+    }
+
+    private static ComponentSpecQueryService.SpecPredicate predicate(String key, String op, Object value) {
+        ComponentSpecQueryService.SpecPredicate predicate = new ComponentSpecQueryService.SpecPredicate();
+        predicate.setKey(key);
+        predicate.setOp(op);
+        predicate.setValue(value);
+        return predicate;
+    }
+}
@@ -0,0 +1,72 @@
+package com.university.shipmanager.service;
+
+import cn.hutool.crypto.digest.DigestUtil;
+import com.university.shipmanager.common.LocalObjectStore;
+import com.university.shipmanager.common.ObjectStore;
+import com.university.shipmanager.entity.mongo.StoredObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ContentStoreServiceTest {
+
+    @TempDir
+    Path root;
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+
+    @Test
+    void knownHashWithOtherBytesIsRejectedWithoutTakingAReference() throws Exception {
+        LocalObjectStore store = new LocalObjectStore(root.toString());
+        ContentStoreService service = new ContentStoreService(store, mongoTemplate);
+        // 别的船的图纸已经存过，攻击者只知道它的哈希
+        String victimHash = DigestUtil.sha256Hex("别的船的图纸");
+
+        assertThrows(RuntimeException.class, () -> service.store(
+                new ByteArrayInputStream("随便什么内容".getBytes(StandardCharsets.UTF_8)), "a.pdf", "application/pdf", victimHash));
+
+        verify(mongoTemplate, never()).findAndModify(any(Query.class), any(UpdateDefinition.class),
+                any(FindAndModifyOptions.class), eq(StoredObject.class));
+        try (var files = Files.walk(root)) {
+            assertFalse(files.anyMatch(Files::isRegularFile)); // 刚传的也删掉了
+        }
+    }
+
+    @Test
+    void sameContentIsDedupedOnServerComputedHash() {
+        LocalObjectStore store = new LocalObjectStore(root.toString());
+        ContentStoreService service = new ContentStoreService(store, mongoTemplate);
+        byte[] data = "主机说明书".getBytes(StandardCharsets.UTF_8);
+        StoredObject existing = new StoredObject();
+        existing.setId(DigestUtil.sha256Hex(data));
+        existing.setStoragePath("objects/existing");
+        existing.setSize((long) data.length);
+        existing.setRefCount(2);
+        when(mongoTemplate.findAndModify(any(Query.class), any(UpdateDefinition.class),
+                any(FindAndModifyOptions.class), eq(StoredObject.class))).thenReturn(existing);
+
+        ObjectStore.UploadResult result = service.store(new ByteArrayInputStream(data), "a.pdf", "application/pdf", existing.getId());
+
+        // 内容真的读过一遍，哈希对得上才复用已有的那份
+        assertEquals("objects/existing", result.getStoragePath());
+        assertEquals(existing.getId(), result.getSha256());
+    }
+}
@@ -0,0 +1,71 @@
+package com.university.shipmanager.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DocumentDetailCacheTest {
+
+    @Test
+    void readThroughCountsHitsAndMisses() {
+        DocumentDetailCache cache = new DocumentDetailCache(1024 * 1024, 600);
+        AtomicInteger loads = new AtomicInteger();
+
+        DocumentService.DocumentDetailVO first = cache.get(1L, () -> { loads.incrementAndGet(); return detail("主机手册"); });
+        DocumentService.DocumentDetailVO second = cache.get(1L, () -> { loads.incrementAndGet(); return detail("主机手册"); });
+
+        assertSame(first, second);
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.stats().getHits());
+        assertEquals(1, cache.stats().getMisses());
+
+        cache.invalidate(1L);
+        cache.get(1L, () -> { loads.incrementAndGet(); return detail("主机手册 (修订)"); });
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedWhenOverBudget() {
+        DocumentDetailCache cache = new DocumentDetailCache(1500, 600); // 每条约 450 字节，只放得下 3 条
+        for (long id = 1; id <= 3; id++) {
+            cache.get(id, () -> detail("图纸"));
+        }
+        cache.get(1L, () -> detail("图纸")); // 访问一下 1，让 2 变成最久没用的
+        cache.get(4L, () -> detail("图纸"));
+
+        assertTrue(cache.stats().getEvictions() >= 1);
+        assertTrue(cache.stats().getBytes() <= 1500);
+        assertEquals(1, cache.stats().getHits()); // 只有访问 1 那一次是命中
+        AtomicInteger loads = new AtomicInteger();
+        cache.get(2L, () -> { loads.incrementAndGet(); return detail("图纸"); });
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void resultLoadedAcrossAnInvalidationIsNotCached() {
+        DocumentDetailCache cache = new DocumentDetailCache(1024 * 1024, 600);
+        // 加载的同时有人改了标题并失效缓存：读到的旧数据不能进缓存
+        cache.get(1L, () -> {
+            cache.invalidate(1L);
+            return detail("旧标题");
+        });
+
+        DocumentService.DocumentDetailVO reloaded = cache.get(1L, () -> detail("新标题"));
+        assertEquals("新标题", reloaded.getTitle());
+    }
+
+    private static DocumentService.DocumentDetailVO detail(String title) {
+        DocumentService.DocumentDetailVO vo = new DocumentService.DocumentDetailVO();
+        vo.setTitle(title);
+        DocumentService.DocumentDetailVO.VersionVO v = new DocumentService.DocumentDetailVO.VersionVO();
+        v.setVersionNo("V1.0");
+        v.setDownloadUrl("/api/docs/1/download?version=V1.0");
+        vo.setVersions(List.of(v));
+        return vo;
+    }
+}
@@ -0,0 +1,135 @@
+package com.university.shipmanager.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.university.shipmanager.entity.mongo.ShipDocument;
+import com.university.shipmanager.entity.mysql.DocIndex;
+import com.university.shipmanager.mapper.DocIndexMapper;
+import com.university.shipmanager.repository.ShipDocumentRepository;
+import org.apache.ibatis.cursor.Cursor;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DocumentExportServiceTest {
+
+    private final DocIndexMapper docIndexMapper = mock(DocIndexMapper.class);
+    private final ShipDocumentRepository mongoRepository = mock(ShipDocumentRepository.class);
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    private final DocumentExportService exportService = new DocumentExportService(docIndexMapper, mongoRepository, objectMapper);
+
+    @Test
+    void ndjsonExportEnrichesInBatches() throws Exception {
+        // 1201 行 = 500 + 500 + 201，Mongo 只查 3 次
+        List<DocIndex> rows = LongStream.rangeClosed(1, 1201).mapToObj(DocumentExportServiceTest::index).toList();
+        when(docIndexMapper.streamByShipId(1L)).thenReturn(new ListCursor(rows));
+        when(mongoRepository.findAllById(anyIterable())).thenReturn(List.of(mongoDoc("m1")));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long total = exportService.export(1L, DocumentExportService.Format.NDJSON, out);
+
+        assertEquals(1201, total);
+        verify(mongoRepository, times(3)).findAllById(anyIterable());
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(1201, lines.length);
+        Map<?, ?> first = objectMapper.readValue(lines[0], Map.class);
+        assertEquals("V1.1", first.get("latestVersionNo"));
+        assertEquals(2, first.get("versionCount"));
+        List<?> versions = (List<?>) first.get("versions"); // 完整版本历史嵌在行里
+        assertEquals(List.of("V1.0", "V1.1"), versions.stream().map(v -> ((Map<?, ?>) v).get("versionNo")).toList());
+        assertEquals(100, ((Map<?, ?>) versions.get(0)).get("fileSize"));
+        Map<?, ?> second = objectMapper.readValue(lines[1], Map.class);
+        assertEquals(2, second.get("id"));
+        assertEquals(null, second.get("versionCount")); // 详情缺失的行照样导出
+    }
+
+    @Test
+    void csvExportQuotesSpecialCharacters() throws Exception {
+        DocIndex row = index(1L);
+        row.setTitle("主机, \"滑油\"泵");
+        when(docIndexMapper.streamByShipId(1L)).thenReturn(new ListCursor(List.of(row)));
+        when(mongoRepository.findAllById(anyIterable())).thenReturn(List.of(mongoDoc("m1")));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exportService.export(1L, DocumentExportService.Format.CSV, out);
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\r\n");
+        assertTrue(lines[0].startsWith("\uFEFFid,ship_id"));
+        assertTrue(lines[1].startsWith("1,1,,\"主机, \"\"滑油\"\"泵\",图纸,"), lines[1]);
+        assertTrue(lines[1].endsWith(",\"{\"\"page\"\":12}\""), lines[1]);
+        assertTrue(lines[0].endsWith(",versions,metadata"), lines[0]);
+        // 版本列表整体一个 JSON 列，解出来和 NDJSON 里的一样
+        String versionsCell = lines[1].substring(lines[1].indexOf(",\"[") + 2, lines[1].lastIndexOf("]\",") + 1).replace("\"\"", "\"");
+        List<?> versions = objectMapper.readValue(versionsCell, List.class);
+        assertEquals(List.of("V1.0", "V1.1"), versions.stream().map(v -> ((Map<?, ?>) v).get("versionNo")).toList());
+    }
+
+    private static DocIndex index(long id) {
+        DocIndex index = new DocIndex();
+        index.setId(id);
+        index.setShipId(1L);
+        index.setTitle("文档 " + id);
+        index.setCategory("图纸");
+        index.setMongoDocId("m" + id);
+        return index;
+    }
+
+    private static ShipDocument mongoDoc(String id) {
+        ShipDocument doc = new ShipDocument();
+        doc.setId(id);
+        doc.setMetadata(Map.of("page", 12));
+        List<ShipDocument.DocVersion> versions = new ArrayList<>();
+        for (String no : List.of("V1.0", "V1.1")) {
+            ShipDocument.DocVersion v = new ShipDocument.DocVersion();
+            v.setVersionNo(no);
+            v.setFileSize(100L);
+            versions.add(v);
+        }
+        doc.setVersions(versions);
+        return doc;
+    }
+
+    /**
+     * 用 List 模拟 MyBatis 游标
+     */
+    private record ListCursor(List<DocIndex> rows) implements Cursor<DocIndex> {
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public boolean isConsumed() {
+            return false;
+        }
+
+        @Override
+        public int getCurrentIndex() {
+            return 0;
+        }
+
+        @Override
+        public Iterator<DocIndex> iterator() {
+            return rows.iterator();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.university.shipmanager.service;
+
+import com.university.shipmanager.common.SearchTokenizer;
+import com.university.shipmanager.mapper.DocIndexMapper;
+import com.university.shipmanager.repository.ShipDocumentRepository;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DocumentSearchServiceTest {
+
+    @Test
+    void tokenizesMixedChineseAndEnglish() {
+        Set<String> indexed = SearchTokenizer.tokenizeForIndex("MAN B&W 主机滑油泵 说明书 V2.0");
+        assertTrue(indexed.containsAll(List.of("man", "b", "w", "v2", "0")));
+        assertTrue(indexed.containsAll(List.of("主机", "机滑", "滑油", "油泵", "泵", "说明", "明书")));
+
+        // 查询只取二元，单独一个字才用单字；全角转半角
+        assertEquals(Set.of("滑油", "油泵", "pdf"), SearchTokenizer.tokenizeQuery("滑油泵 ＰＤＦ"));
+        assertEquals(Set.of("泵"), SearchTokenizer.tokenizeQuery("泵"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void searchBuildsRankedPipeline() {
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+        when(mongoTemplate.aggregate(any(Aggregation.class), any(Class.class), eq(DocumentSearchService.SearchHit.class)))
+                .thenReturn(new AggregationResults<>(List.of(), new Document()));
+        DocumentSearchService service = new DocumentSearchService(mongoTemplate, mock(DocIndexMapper.class), mock(ShipDocumentRepository.class));
+
+        service.search(1L, null, "主机 manual", 0, 20);
+
+        ArgumentCaptor<Aggregation> captor = ArgumentCaptor.forClass(Aggregation.class);
+        verify(mongoTemplate).aggregate(captor.capture(), any(Class.class), eq(DocumentSearchService.SearchHit.class));
+        // 渲染一遍：score 字段引用不对的话这里就会报错
+        List<Document> pipeline = captor.getValue().toPipeline(Aggregation.DEFAULT_CONTEXT);
+        Document match = pipeline.get(0).get("$match", Document.class);
+        assertEquals(1L, match.get("shipId"));
+        assertEquals(List.of("主机", "manual"), match.get("tokens", Document.class).get("$in"));
+        assertEquals(new Document("score", -1).append("_id", -1), pipeline.get(2).get("$sort"));
+
+        // 没有可用的查询词 (全是标点) 就不查库
+        assertTrue(service.search(1L, null, " ,.!", 0, 20).isEmpty());
+        verify(mongoTemplate, times(1)).aggregate(any(Aggregation.class), any(Class.class), eq(DocumentSearchService.SearchHit.class));
+    }
+}
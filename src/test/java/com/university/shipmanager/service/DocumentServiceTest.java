@@ -0,0 +1,221 @@
+package com.university.shipmanager.service;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.metadata.TableInfoHelper;
+import com.university.shipmanager.common.ObjectStore;
+import com.university.shipmanager.entity.mongo.ShipDocument;
+import com.university.shipmanager.entity.mysql.DocIndex;
+import com.university.shipmanager.mapper.DocIndexMapper;
+import com.university.shipmanager.repository.ShipDeleteJobRepository;
+import com.university.shipmanager.repository.ShipDocumentRepository;
+import org.apache.ibatis.builder.MapperBuilderAssistant;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DocumentServiceTest {
+
+    private final DocIndexMapper docIndexMapper = mock(DocIndexMapper.class);
+    private final ShipDocumentRepository mongoRepository = mock(ShipDocumentRepository.class);
+    private final ObjectStore objectStore = mock(ObjectStore.class);
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final ShipDeleteJobRepository jobRepository = mock(ShipDeleteJobRepository.class);
+    private final ShipTombstones shipTombstones = new ShipTombstones(jobRepository);
+
+    private final DocumentService documentService = newService();
+
+    @Test
+    void batchDetailUsesTwoQueriesAndKeepsInputOrder() {
+        // 1、2、3 在 MySQL 里，3 的 Mongo 详情丢了，99 根本不存在
+        when(docIndexMapper.selectBatchIds(anyCollection())).thenReturn(List.of(index(2L, "m2"), index(1L, "m1"), index(3L, "m3")));
+        when(mongoRepository.findAllById(anyIterable())).thenReturn(List.of(mongoDoc("m1"), mongoDoc("m2")));
+
+        DocumentService.BatchDetailVO result = documentService.getDocumentDetails(List.of(2L, 99L, 1L, 3L, 2L));
+
+        assertEquals(List.of(2L, 1L), result.getItems().stream().map(DocumentService.DocumentDetailVO::getId).toList());
+        assertEquals(List.of(99L, 3L), result.getMissingIds());
+        verify(docIndexMapper, times(1)).selectBatchIds(anyCollection());
+        verify(mongoRepository, times(1)).findAllById(anyIterable());
+        verify(docIndexMapper, never()).selectById(any());
+
+        // 再查一次全部命中缓存，一次库都不用查
+        documentService.getDocumentDetails(List.of(1L, 2L));
+        verify(docIndexMapper, times(1)).selectBatchIds(anyCollection());
+    }
+
+    @Test
+    void cursorPagingReturnsContinuationToken() {
+        // Lambda 条件要靠表信息把 DocIndex::getCreatedAt 翻译成列名，单测里手动初始化一下
+        TableInfoHelper.initTableInfo(new MapperBuilderAssistant(new MybatisConfiguration(), ""), DocIndex.class);
+        LocalDateTime t = LocalDateTime.of(2025, 3, 1, 8, 30);
+        when(docIndexMapper.selectList(any())).thenReturn(
+                new ArrayList<>(List.of(index(9L, "m9", t), index(8L, "m8", t), index(7L, "m7", t.minusDays(1)))));
+
+        DocumentService.CursorPage first = documentService.listDocsByCursor(1L, null, null, null, 2, false);
+        assertTrue(first.isHasMore());
+        assertEquals(List.of(9L, 8L), first.getRecords().stream().map(DocIndex::getId).toList());
+        assertNull(first.getTotal());
+        verify(docIndexMapper, never()).selectCount(any());
+
+        // 最后一页：查出来不满 size + 1 条，没有下一页
+        when(docIndexMapper.selectList(any())).thenReturn(new ArrayList<>(List.of(index(7L, "m7", t.minusDays(1)))));
+        DocumentService.CursorPage second = documentService.listDocsByCursor(1L, null, null, first.getNextCursor(), 2, false);
+        assertFalse(second.isHasMore());
+        assertNull(second.getNextCursor());
+
+        assertThrows(IllegalArgumentException.class,
+                () -> documentService.listDocsByCursor(1L, null, null, "not-a-cursor", 2, false));
+    }
+
+    @Test
+    void asyncRecordsAreIdempotentByMongoDocId() {
+        ShipDocument.DocVersion v1 = new ShipDocument.DocVersion();
+        v1.setVersionNo("V1.0");
+        v1.setStoredSize(100L);
+        DocumentService.UploadRequest request = new DocumentService.UploadRequest();
+        request.setShipId(1L);
+        request.setTitle("主机说明书");
+
+        // 第一次：upsert 事先定好主键的 Mongo 详情 + 插 MySQL
+        DocIndex created = documentService.saveDocumentRecordsIdempotent(request, v1, "m1");
+        assertEquals("m1", created.getMongoDocId());
+        verify(mongoRepository, times(1)).save(any());
+        verify(docIndexMapper, times(1)).insert(any(DocIndex.class));
+
+        // 重试：上次其实建好了，直接返回已有的，两个库都不再写
+        when(docIndexMapper.selectByMongoDocId("m1")).thenReturn(index(5L, "m1"));
+        assertEquals(5L, documentService.saveDocumentRecordsIdempotent(request, v1, "m1").getId());
+        verify(mongoRepository, times(1)).save(any());
+        verify(docIndexMapper, times(1)).insert(any(DocIndex.class));
+    }
+
+    @Test
+    void concurrentAsyncRecordLosesToUniqueKeyAndReturnsTheWinner() {
+        DocumentService.UploadRequest request = new DocumentService.UploadRequest();
+        request.setShipId(1L);
+        ShipDocument.DocVersion v1 = new ShipDocument.DocVersion();
+        v1.setStoredSize(100L);
+        // 查的时候还没有，插的时候另一边已经插进去了
+        when(docIndexMapper.selectByMongoDocId("m1")).thenReturn(null, index(5L, "m1"));
+        when(docIndexMapper.insert(any(DocIndex.class))).thenThrow(new DuplicateKeyException("uk_mongo_doc_id"));
+
+        assertEquals(5L, documentService.saveDocumentRecordsIdempotent(request, v1, "m1").getId());
+    }
+
+    @Test
+    void discardUnrecordedKeepsFilesOfDocsThatWereRecorded() {
+        ShipDocument.DocVersion v1 = new ShipDocument.DocVersion();
+        v1.setChecksum("abc");
+        v1.setStoragePath("objects/abc");
+        when(docIndexMapper.selectByMongoDocId("m1")).thenReturn(index(5L, "m1"));
+
+        assertFalse(documentService.discardUnrecorded("m1", v1));
+        verify(mongoRepository, never()).deleteById(any());
+
+        assertTrue(documentService.discardUnrecorded("m2", v1));
+        verify(mongoRepository).deleteById("m2");
+    }
+
+    @Test
+    void cascadeDeleteChunksMongoCallsLikeMysql() {
+        List<DocIndex> docs = new ArrayList<>();
+        for (long i = 1; i <= 1500; i++) docs.add(index(i, "m" + i));
+        when(docIndexMapper.selectList(any())).thenReturn(docs);
+        when(mongoRepository.findAllById(anyIterable())).thenReturn(List.of());
+
+        documentService.deleteDocumentsByComponentIds(List.of("c1"));
+
+        // 1500 个文档 -> 1000 + 500 两批，Mongo 的 $in 和 MySQL 的 IN 一样分批
+        ArgumentCaptor<Iterable<String>> finds = ArgumentCaptor.captor();
+        verify(mongoRepository, times(2)).findAllById(finds.capture());
+        assertEquals(List.of(1000, 500), finds.getAllValues().stream().map(ids -> ((List<String>) ids).size()).toList());
+        verify(mongoRepository, times(2)).deleteAllById(anyIterable());
+        verify(docIndexMapper, times(2)).deleteBatchIds(anyCollection());
+    }
+
+    @Test
+    void documentsOfADeletedShipAreNotFoundById() {
+        DocIndex doc1 = index(1L, "m1");
+        doc1.setShipId(7L);
+        when(docIndexMapper.selectById(1L)).thenReturn(doc1);
+        when(docIndexMapper.selectBatchIds(anyCollection())).thenReturn(List.of(doc1));
+        when(mongoRepository.findById("m1")).thenReturn(Optional.of(mongoDoc("m1")));
+        when(mongoRepository.findAllById(anyIterable())).thenReturn(List.of(mongoDoc("m1")));
+        documentService.getDocumentDetail(1L); // 删船前已经进了详情缓存
+
+        when(jobRepository.existsById(7L)).thenReturn(true); // 7 号船开始后台删除，文档还没删到
+
+        assertThrows(RuntimeException.class, () -> documentService.getDocumentDetail(1L));
+        assertThrows(RuntimeException.class, () -> documentService.resolveDownload(1L, null));
+        assertThrows(RuntimeException.class, () -> documentService.updateDocumentInfo(1L, "新标题", "图纸"));
+        assertEquals(List.of(1L), documentService.getDocumentDetails(List.of(1L)).getMissingIds());
+        verify(docIndexMapper, never()).updateById(any(DocIndex.class));
+    }
+
+    @Test
+    void presignedDetailFallsBackToDownloadApiWhenStoreCannotPresign() {
+        when(docIndexMapper.selectById(1L)).thenReturn(index(1L, "m1"));
+        when(mongoRepository.findById("m1")).thenReturn(Optional.of(mongoDoc("m1")));
+        // 本地存储：没有可以直连的地址
+        when(objectStore.getPresignedUrl(any(), anyInt())).thenReturn(Optional.empty());
+
+        DocumentService.DocumentDetailVO detail = documentService.getDocumentDetail(1L, true);
+
+        assertEquals("/api/docs/1/download?version=V1.0", detail.getVersions().get(0).getDownloadUrl());
+    }
+
+    private DocumentService newService() {
+        ContentStoreService contentStoreService = new ContentStoreService(objectStore, mongoTemplate);
+        return new DocumentService(docIndexMapper, mongoRepository, contentStoreService, objectStore,
+                mock(AuditLogWriter.class), new VersionStorageService(contentStoreService, objectStore, false, false),
+                mongoTemplate, new DocumentDetailCache(1024 * 1024, 600),
+                new DocumentSearchService(mongoTemplate, docIndexMapper, mongoRepository), mock(ComponentRollupService.class),
+                shipTombstones);
+    }
+
+    private static DocIndex index(Long id, String mongoId) {
+        return index(id, mongoId, LocalDateTime.now());
+    }
+
+    private static DocIndex index(Long id, String mongoId, LocalDateTime createdAt) {
+        DocIndex index = new DocIndex();
+        index.setCreatedAt(createdAt);
+        index.setId(id);
+        index.setTitle("文档 " + id);
+        index.setMongoDocId(mongoId);
+        return index;
+    }
+
+    private static ShipDocument mongoDoc(String id) {
+        ShipDocument doc = new ShipDocument();
+        doc.setId(id);
+        doc.setMetadata(Map.of("original_name", id + ".pdf"));
+        ShipDocument.DocVersion v = new ShipDocument.DocVersion();
+        v.setVersionNo("V1.0");
+        v.setStoragePath("uuid_" + id + ".pdf");
+        doc.setVersions(new ArrayList<>(List.of(v)));
+        return doc;
+    }
+}
@@ -0,0 +1,174 @@
+package com.university.shipmanager.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.client.result.UpdateResult;
+import com.university.shipmanager.entity.mongo.ComponentDoc;
+import com.university.shipmanager.repository.ComponentRepository;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.mockito.stubbing.Answer;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 移动子树对比：逐个子孙 save (旧) vs 一条服务端 pipeline update (moveComponent)
+ * 合成一个 10000 个子孙的系统 (每个节点带 10 个 specs)，Mongo 用 mock，每次往返固定模拟 ROUND_TRIP_MICROS 的网络延迟，
+ * 同时粗估发给数据库的字节数 (旧实现每个子孙整篇文档重写，新实现只发一条更新语句)。手动执行：
+ * mvn test -Dtest=MoveComponentBenchmark
+ */
+class MoveComponentBenchmark {
+
+    private static final int DESCENDANTS = 10_000;
+    private static final int FAN_OUT = 20;
+    private static final long ROUND_TRIP_MICROS = 200;
+
+    private final AtomicLong roundTrips = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final Map<String, ComponentDoc> nodes = new LinkedHashMap<>();
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules(); // 按 JSON 长度粗估文档大小
+
+    private final ComponentRepository componentRepository = mock(ComponentRepository.class);
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+
+    @Test
+    void compareLegacyLoopAndPipelineUpdate() {
+        buildTree();
+        stubStores();
+        ComponentService componentService = new ComponentService(componentRepository, mock(DocumentService.class),
+                mock(AuditLogWriter.class), new BomTreeCache(1000, 1800, 600), mongoTemplate,
+                mock(ComponentRollupService.class), mock(ShipTombstones.class));
+
+        reset();
+        long start = System.nanoTime();
+        legacyMove("system", "deck");
+        long legacyMillis = (System.nanoTime() - start) / 1_000_000;
+        long legacyTrips = roundTrips.get();
+        long legacyBytes = bytesSent.get();
+
+        reset();
+        start = System.nanoTime();
+        componentService.moveComponent("system", "hull");
+        long pipelineMillis = (System.nanoTime() - start) / 1_000_000;
+
+        System.out.printf("子孙数: %d, 单次往返: %dµs%n", DESCENDANTS, ROUND_TRIP_MICROS);
+        System.out.printf("逐个 save      : %6d ms, %6d 次往返, %9d 字节%n", legacyMillis, legacyTrips, legacyBytes);
+        System.out.printf("pipeline 更新  : %6d ms, %6d 次往返, %9d 字节%n", pipelineMillis, roundTrips.get(), bytesSent.get());
+    }
+
+    /**
+     * 旧实现：查出全部子孙 -> Java 里改 ancestors -> 每个子孙 save 一次 (整篇文档重写)
+     */
+    private void legacyMove(String id, String newParentId) {
+        ComponentDoc node = componentRepository.findById(id).orElseThrow();
+        ComponentDoc newParent = componentRepository.findById(newParentId).orElseThrow();
+        List<String> newAncestors = new ArrayList<>(newParent.getAncestors());
+        newAncestors.add(newParent.getId());
+        node.setParentId(newParentId);
+        node.setAncestors(newAncestors);
+        componentRepository.save(node);
+        for (ComponentDoc child : componentRepository.findByAncestorsContaining(id)) {
+            List<String> childAncestors = child.getAncestors();
+            int myIndex = childAncestors.indexOf(id);
+            List<String> updated = new ArrayList<>(newAncestors);
+            updated.add(id);
+            updated.addAll(childAncestors.subList(myIndex + 1, childAncestors.size()));
+            child.setAncestors(updated);
+            componentRepository.save(child);
+        }
+    }
+
+    /**
+     * hull -> deck, hull -> system -> (每个节点 FAN_OUT 个孩子，一共 DESCENDANTS 个子孙)
+     */
+    private void buildTree() {
+        ComponentDoc hull = node("hull", null);
+        node("deck", hull);
+        List<ComponentDoc> level = List.of(node("system", hull));
+        int created = 0;
+        while (created < DESCENDANTS) {
+            List<ComponentDoc> next = new ArrayList<>();
+            for (ComponentDoc parent : level) {
+                for (int i = 0; i < FAN_OUT && created < DESCENDANTS; i++, created++) {
+                    next.add(node("part-" + created, parent));
+                }
+            }
+            level = next;
+        }
+    }
+
+    private ComponentDoc node(String id, ComponentDoc parent) {
+        ComponentDoc doc = new ComponentDoc();
+        doc.setId(id);
+        doc.setShipId(1L);
+        doc.setName("部件 " + id);
+        doc.setCode("C-" + id);
+        doc.setType("Part");
+        Map<String, Object> specs = new HashMap<>();
+        for (int i = 0; i < 10; i++) specs.put("spec_" + i, "value-" + i);
+        doc.setSpecs(specs);
+        List<String> ancestors = new ArrayList<>();
+        if (parent != null) {
+            ancestors.addAll(parent.getAncestors());
+            ancestors.add(parent.getId());
+            doc.setParentId(parent.getId());
+        }
+        doc.setAncestors(ancestors);
+        nodes.put(id, doc);
+        return doc;
+    }
+
+    private void stubStores() {
+        when(componentRepository.findById(anyString())).then(roundTrip(inv -> Optional.ofNullable(nodes.get(inv.<String>getArgument(0)))));
+        when(componentRepository.findByAncestorsContaining(anyString())).then(roundTrip(inv -> {
+            String id = inv.getArgument(0);
+            return nodes.values().stream().filter(n -> n.getAncestors().contains(id)).toList();
+        }));
+        when(componentRepository.save(any())).then(roundTrip(inv -> {
+            bytesSent.addAndGet(objectMapper.writeValueAsBytes(inv.getArgument(0)).length);
+            return inv.getArgument(0);
+        }));
+
+        when(mongoTemplate.count(any(Query.class), eq(ComponentDoc.class))).then(roundTrip(inv -> (long) DESCENDANTS));
+        when(mongoTemplate.updateFirst(any(Query.class), any(UpdateDefinition.class), eq(ComponentDoc.class))).then(roundTrip(inv -> {
+            bytesSent.addAndGet(objectMapper.writeValueAsBytes(inv.<UpdateDefinition>getArgument(1).getUpdateObject()).length);
+            return UpdateResult.acknowledged(1, 1L, null);
+        }));
+        when(mongoTemplate.updateMulti(any(Query.class), any(UpdateDefinition.class), eq(ComponentDoc.class))).then(roundTrip(inv -> {
+            for (Document stage : inv.<AggregationUpdate>getArgument(1).toPipeline(Aggregation.DEFAULT_CONTEXT)) {
+                bytesSent.addAndGet(objectMapper.writeValueAsBytes(stage).length);
+            }
+            return UpdateResult.acknowledged(DESCENDANTS, (long) DESCENDANTS, null);
+        }));
+    }
+
+    private void reset() {
+        roundTrips.set(0);
+        bytesSent.set(0);
+    }
+
+    private <T> Answer<T> roundTrip(Answer<T> answer) {
+        return inv -> {
+            roundTrips.incrementAndGet();
+            LockSupport.parkNanos(ROUND_TRIP_MICROS * 1000);
+            return answer.answer(inv);
+        };
+    }
+}
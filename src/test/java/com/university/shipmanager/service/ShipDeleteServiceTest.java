@@ -0,0 +1,139 @@
+package com.university.shipmanager.service;
+
+import com.mongodb.client.result.DeleteResult;
+import com.mongodb.client.result.UpdateResult;
+import com.university.shipmanager.entity.mongo.ComponentDoc;
+import com.university.shipmanager.entity.mongo.ShipDeleteJob;
+import com.university.shipmanager.entity.mongo.ShipDocument;
+import com.university.shipmanager.entity.mysql.DocIndex;
+import com.university.shipmanager.mapper.DocIndexMapper;
+import com.university.shipmanager.mapper.ShipMapper;
+import com.university.shipmanager.repository.ShipDeleteJobRepository;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class ShipDeleteServiceTest {
+
+    private final ShipMapper shipMapper = mock(ShipMapper.class);
+    private final DocIndexMapper docIndexMapper = mock(DocIndexMapper.class);
+    private final ShipDeleteJobRepository jobRepository = mock(ShipDeleteJobRepository.class);
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final ContentStoreService contentStoreService = mock(ContentStoreService.class);
+    private final ShipDeleteService deleteService = new ShipDeleteService(shipMapper, docIndexMapper, jobRepository,
+            mongoTemplate, contentStoreService, mock(DocumentSearchService.class),
+            new DocumentDetailCache(1024 * 1024, 600), new BomTreeCache(1000, 1800, 600), new ShipTombstones(jobRepository));
+
+    @Test
+    void rejectsShipThatDoesNotExist() {
+        when(jobRepository.findById(9L)).thenReturn(Optional.empty());
+
+        assertThrows(RuntimeException.class, () -> deleteService.startDelete(9L));
+
+        verify(jobRepository, never()).insert(any(ShipDeleteJob.class));
+    }
+
+    @Test
+    void shipWithADeleteJobIsHiddenFromReadsAndRejectsWrites() {
+        ShipTombstones tombstones = new ShipTombstones(jobRepository);
+        when(jobRepository.existsById(1L)).thenReturn(true);
+        ShipDeleteJob job = new ShipDeleteJob();
+        job.setShipId(1L);
+        when(jobRepository.findAllById(List.of(1L, 2L))).thenReturn(List.of(job));
+
+        assertThrows(RuntimeException.class, () -> tombstones.checkReadable(1L));
+        assertThrows(IllegalStateException.class, () -> tombstones.checkWritable(1L));
+        tombstones.checkWritable(2L);
+        assertEquals(Set.of(1L), tombstones.deletedAmong(List.of(1L, 2L)));
+    }
+
+    @Test
+    void resumesPendingBatchThenDeletesEverythingInBatches() {
+        // 上次宕在第一批中间：doc 1、2 的文件版本已经记在 pending 里
+        ShipDocument.DocVersion v1 = version("a");
+        ShipDeleteJob job = new ShipDeleteJob();
+        job.setShipId(1L);
+        job.setStatus(ShipDeleteService.RUNNING);
+        job.setPhase(ShipDeleteService.PHASE_DOCUMENTS);
+        job.setPendingDocIds(new ArrayList<>(List.of(1L, 2L)));
+        job.setPendingMongoIds(new ArrayList<>(List.of("m1", "m2")));
+        job.setPendingVersions(new ArrayList<>(List.of(v1)));
+        when(jobRepository.findById(1L)).thenReturn(Optional.of(job));
+        when(mongoTemplate.updateFirst(any(Query.class), any(UpdateDefinition.class), eq(ShipDeleteJob.class)))
+                .thenReturn(UpdateResult.acknowledged(1, 1L, null));
+
+        // 剩下一批文档 (doc 3)，两个零件
+        DocIndex doc3 = new DocIndex();
+        doc3.setId(3L);
+        doc3.setMongoDocId("m3");
+        when(docIndexMapper.selectList(any())).thenReturn(List.of(doc3)).thenReturn(List.of());
+        ShipDocument.DocVersion v3 = version("c");
+        ShipDocument m3 = new ShipDocument();
+        m3.setId("m3");
+        m3.setVersions(List.of(v3));
+        when(mongoTemplate.find(any(Query.class), eq(ShipDocument.class))).thenReturn(List.of(m3));
+        when(mongoTemplate.remove(any(Query.class), eq(ShipDocument.class))).thenReturn(DeleteResult.acknowledged(1));
+        ComponentDoc c1 = new ComponentDoc(), c2 = new ComponentDoc();
+        c1.setId("c1");
+        c2.setId("c2");
+        when(mongoTemplate.find(any(Query.class), eq(ComponentDoc.class))).thenReturn(List.of(c1, c2)).thenReturn(List.of());
+        when(mongoTemplate.remove(any(Query.class), eq(ComponentDoc.class))).thenReturn(DeleteResult.acknowledged(2));
+
+        deleteService.run(1L);
+
+        InOrder order = inOrder(docIndexMapper, contentStoreService, shipMapper);
+        order.verify(docIndexMapper).deleteBatchIds(List.of(1L, 2L));
+        order.verify(docIndexMapper).deleteBatchIds(List.of(3L));
+        order.verify(shipMapper).deleteById(1L); // 文档 / 零件都删完才删船
+        verify(contentStoreService).releaseAll(List.of(v1));
+        verify(contentStoreService).releaseAll(List.of(v3));
+
+        ArgumentCaptor<UpdateDefinition> updates = ArgumentCaptor.forClass(UpdateDefinition.class);
+        verify(mongoTemplate, atLeastOnce()).updateFirst(any(Query.class), updates.capture(), eq(ShipDeleteJob.class));
+        List<Document> sets = updates.getAllValues().stream().map(u -> (Document) u.getUpdateObject().get("$set")).toList();
+        // 第二批：删之前先记 pending
+        assertTrue(sets.stream().anyMatch(s -> s != null && List.of(3L).equals(s.get("pendingDocIds"))));
+        assertEquals(ShipDeleteService.COMPLETED, sets.get(sets.size() - 1).get("status"));
+    }
+
+    @Test
+    void skipsWhenAnotherWorkerHoldsTheLease() {
+        when(mongoTemplate.updateFirst(any(Query.class), any(UpdateDefinition.class), eq(ShipDeleteJob.class)))
+                .thenReturn(UpdateResult.acknowledged(0, 0L, null));
+
+        deleteService.run(1L);
+
+        verifyNoInteractions(docIndexMapper, contentStoreService);
+        verify(shipMapper, never()).deleteById(anyLong());
+    }
+
+    private static ShipDocument.DocVersion version(String hash) {
+        ShipDocument.DocVersion v = new ShipDocument.DocVersion();
+        v.setChecksum(hash);
+        v.setStoragePath("objects/" + hash);
+        return v;
+    }
+}
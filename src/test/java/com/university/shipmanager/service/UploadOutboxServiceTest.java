@@ -0,0 +1,141 @@
+package com.university.shipmanager.service;
+
+import com.mongodb.client.result.UpdateResult;
+import com.university.shipmanager.entity.mongo.ShipDocument;
+import com.university.shipmanager.entity.mongo.UploadOutbox;
+import com.university.shipmanager.entity.mysql.DocIndex;
+import com.university.shipmanager.repository.ShipDeleteJobRepository;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UploadOutboxServiceTest {
+
+    private final DocumentService documentService = mock(DocumentService.class);
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final ShipDeleteJobRepository jobRepository = mock(ShipDeleteJobRepository.class);
+    private final UploadOutboxService outboxService = new UploadOutboxService(documentService, mock(VersionStorageService.class),
+            mock(ContentStoreService.class), mongoTemplate, new ShipTombstones(jobRepository), 3, 10, 30);
+
+    @Test
+    void processBuildsRecordsOnceAndMarksDone() {
+        UploadOutbox entry = entry(0);
+        when(mongoTemplate.findById("u1", UploadOutbox.class)).thenReturn(entry);
+        // 第一次抢到租约，标 DONE；之后已经不是 PENDING，抢不到
+        when(mongoTemplate.updateFirst(any(Query.class), any(UpdateDefinition.class), eq(UploadOutbox.class)))
+                .thenReturn(ack(1), ack(1), ack(0));
+        DocIndex index = new DocIndex();
+        index.setId(7L);
+        when(documentService.saveDocumentRecordsIdempotent(any(), eq(entry.getVersion()), eq("m1"))).thenReturn(index);
+
+        outboxService.process("u1");
+        outboxService.process("u1");
+
+        verify(documentService, times(1)).saveDocumentRecordsIdempotent(any(), any(), any());
+        List<Document> sets = sets(3);
+        assertEquals(UploadOutboxService.DONE, sets.get(1).get("status"));
+        assertEquals(7L, sets.get(1).get("docId"));
+    }
+
+    @Test
+    void failuresBackOffThenGiveUp() {
+        when(mongoTemplate.updateFirst(any(Query.class), any(UpdateDefinition.class), eq(UploadOutbox.class))).thenReturn(ack(1));
+        when(documentService.saveDocumentRecordsIdempotent(any(), any(), any())).thenThrow(new RuntimeException("MySQL 连不上"));
+
+        // 第 1 次失败：还是 PENDING，排下一次
+        when(mongoTemplate.findById("u1", UploadOutbox.class)).thenReturn(entry(0));
+        outboxService.process("u1");
+        // 第 3 次 (max-attempts = 3) 失败：FAILED
+        when(mongoTemplate.findById("u1", UploadOutbox.class)).thenReturn(entry(2));
+        outboxService.process("u1");
+
+        List<Document> sets = sets(4);
+        Document retry = sets.get(1), giveUp = sets.get(3);
+        assertFalse(retry.containsKey("status"));
+        assertTrue(retry.containsKey("nextAttemptAt"));
+        assertEquals("MySQL 连不上", retry.get("error"));
+        assertEquals(UploadOutboxService.FAILED, giveUp.get("status"));
+        assertEquals(3, giveUp.get("attempts"));
+
+        assertEquals(1, UploadOutboxService.backoffSeconds(1));
+        assertEquals(8, UploadOutboxService.backoffSeconds(4));
+        assertEquals(300, UploadOutboxService.backoffSeconds(30));
+    }
+
+    @Test
+    void entryForADeletedShipFailsWithoutRecordsAndReleasesItsFile() {
+        UploadOutbox entry = entry(0);
+        when(mongoTemplate.findById("u1", UploadOutbox.class)).thenReturn(entry);
+        when(mongoTemplate.updateFirst(any(Query.class), any(UpdateDefinition.class), eq(UploadOutbox.class))).thenReturn(ack(1));
+        when(jobRepository.existsById(1L)).thenReturn(true); // 回执之后 1 号船被删了
+
+        outboxService.process("u1");
+
+        verify(documentService, never()).saveDocumentRecordsIdempotent(any(), any(), any());
+        verify(documentService).discardUnrecorded("m1", entry.getVersion());
+        ArgumentCaptor<UpdateDefinition> updates = ArgumentCaptor.forClass(UpdateDefinition.class);
+        verify(mongoTemplate, times(2)).updateFirst(any(Query.class), updates.capture(), eq(UploadOutbox.class));
+        Document rejected = updates.getAllValues().get(1).getUpdateObject();
+        assertEquals(UploadOutboxService.FAILED, rejected.get("$set", Document.class).get("status"));
+        assertTrue(rejected.get("$unset", Document.class).containsKey("version")); // 过期清理时不会再释放一次
+    }
+
+    @Test
+    void expiredFailuresAreRemovedThenTheirFilesReleased() {
+        UploadOutbox failed = entry(3);
+        failed.setStatus(UploadOutboxService.FAILED);
+        UploadOutbox retried = entry(3);
+        retried.setId("u2");
+        when(mongoTemplate.find(any(Query.class), eq(UploadOutbox.class))).thenReturn(List.of(failed, retried));
+        // u1 删掉了；u2 刚被手动重试，已经不是 FAILED，删不到
+        when(mongoTemplate.findAndRemove(any(Query.class), eq(UploadOutbox.class))).thenReturn(failed, (UploadOutbox) null);
+
+        outboxService.expireFailed(LocalDateTime.now().minusDays(30));
+
+        verify(mongoTemplate, times(2)).findAndRemove(any(Query.class), eq(UploadOutbox.class));
+        verify(documentService, times(1)).discardUnrecorded(any(), any());
+        verify(documentService).discardUnrecorded("m1", failed.getVersion());
+    }
+
+    private List<Document> sets(int count) {
+        ArgumentCaptor<UpdateDefinition> updates = ArgumentCaptor.forClass(UpdateDefinition.class);
+        verify(mongoTemplate, times(count)).updateFirst(any(Query.class), updates.capture(), eq(UploadOutbox.class));
+        return updates.getAllValues().stream().map(u -> (Document) u.getUpdateObject().get("$set")).toList();
+    }
+
+    private static UploadOutbox entry(int attempts) {
+        ShipDocument.DocVersion version = new ShipDocument.DocVersion();
+        version.setVersionNo("V1.0");
+        version.setStoragePath("objects/abc");
+        UploadOutbox entry = new UploadOutbox();
+        entry.setId("u1");
+        entry.setShipId(1L);
+        entry.setTitle("主机说明书");
+        entry.setVersion(version);
+        entry.setMongoDocId("m1");
+        entry.setStatus(UploadOutboxService.PENDING);
+        entry.setAttempts(attempts);
+        return entry;
+    }
+
+    private static UpdateResult ack(long modified) {
+        return UpdateResult.acknowledged(modified, modified, null);
+    }
+}
@@ -0,0 +1,127 @@
+package com.university.shipmanager.service;
+
+import cn.hutool.crypto.digest.DigestUtil;
+import com.university.shipmanager.common.LocalObjectStore;
+import com.university.shipmanager.entity.mongo.ShipDocument;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+class VersionStorageServiceTest {
+
+    @TempDir
+    Path root;
+
+    @Test
+    void compressedAndDeltaVersionsReadBackAsOriginal() throws Exception {
+        LocalObjectStore store = new LocalObjectStore(root.toString());
+        // 去重登记用的 Mongo 不需要真的连：findAndModify 返回 null 等于“第一次见到这份内容”
+        ContentStoreService contentStore = new ContentStoreService(store, mock(MongoTemplate.class));
+        VersionStorageService service = new VersionStorageService(contentStore, store, true, true);
+
+        byte[] v1 = manual(0);
+        byte[] v2 = manual(1);
+        byte[] v3 = manual(2);
+        List<ShipDocument.DocVersion> versions = new ArrayList<>();
+
+        VersionStorageService.StoredVersion s1 = service.storeInitial(new ByteArrayInputStream(v1), "manual.txt", "text/plain", null);
+        assertEquals(VersionStorageService.DEFLATE, s1.getEncoding());
+        assertEquals(v1.length, s1.getFileSize());
+        assertTrue(s1.getUploaded().getSize() < v1.length);
+        versions.add(toVersion("V1.0", s1));
+
+        VersionStorageService.StoredVersion s2 = service.storeNewVersion(new ByteArrayInputStream(v2), "manual.txt", "text/plain", versions);
+        assertEquals(VersionStorageService.DELTA, s2.getEncoding());
+        assertEquals("V1.0", s2.getBaseVersionNo());
+        versions.add(toVersion("V2.0", s2));
+
+        VersionStorageService.StoredVersion s3 = service.storeNewVersion(new ByteArrayInputStream(v3), "manual.txt", "text/plain", versions);
+        assertEquals(VersionStorageService.DELTA, s3.getEncoding());
+        assertEquals(2, s3.getDeltaDepth());
+        assertTrue(s3.getUploaded().getSize() < s1.getUploaded().getSize() / 10);
+        versions.add(toVersion("V3.0", s3));
+
+        assertArrayEquals(v1, read(service, versions.get(0), versions));
+        assertArrayEquals(v2, read(service, versions.get(1), versions));
+        assertArrayEquals(v3, read(service, versions.get(2), versions)); // 两层差分链
+    }
+
+    @Test
+    void compressedUploadIsStillCheckedAgainstTheDeclaredSha256() throws Exception {
+        LocalObjectStore store = new LocalObjectStore(root.toString());
+        VersionStorageService service = new VersionStorageService(
+                new ContentStoreService(store, mock(MongoTemplate.class)), store, true, false);
+        byte[] v1 = manual(0);
+
+        // 声明的是原文哈希，压缩存储也照样校验通过
+        VersionStorageService.StoredVersion ok = service.storeInitial(new ByteArrayInputStream(v1), "manual.txt", "text/plain",
+                DigestUtil.sha256Hex(v1));
+        assertEquals(VersionStorageService.DEFLATE, ok.getEncoding());
+
+        // 对不上就拒绝，刚存的文件也放掉
+        assertThrows(RuntimeException.class, () -> service.storeInitial(new ByteArrayInputStream(manual(1)), "manual.txt",
+                "text/plain", DigestUtil.sha256Hex(v1)));
+        try (var files = Files.list(root)) {
+            assertEquals(1, files.filter(Files::isRegularFile).count());
+        }
+    }
+
+    @Test
+    void legacyVersionWithoutEncodingIsReadAsIs() throws Exception {
+        LocalObjectStore store = new LocalObjectStore(root.toString());
+        VersionStorageService service = new VersionStorageService(
+                new ContentStoreService(store, mock(MongoTemplate.class)), store, true, true);
+        byte[] data = manual(0);
+
+        ShipDocument.DocVersion legacy = new ShipDocument.DocVersion();
+        legacy.setVersionNo("V1.0");
+        legacy.setStoragePath(store.uploadStream(new ByteArrayInputStream(data), "old.txt", "text/plain").getStoragePath());
+
+        assertTrue(VersionStorageService.isRaw(legacy));
+        assertArrayEquals(data, read(service, legacy, List.of(legacy)));
+    }
+
+    /**
+     * 模拟一本 2 万行的手册，每个修订版只改一行
+     */
+    private static byte[] manual(int revision) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 20_000; i++) {
+            sb.append("第 ").append(i).append(" 条: 主机滑油压力检查，记录读数并签字确认");
+            if (i == 5_000 * (revision + 1)) sb.append(" (第 ").append(revision).append(" 次修订补充)");
+            sb.append('\n');
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static ShipDocument.DocVersion toVersion(String versionNo, VersionStorageService.StoredVersion stored) {
+        ShipDocument.DocVersion v = new ShipDocument.DocVersion();
+        v.setVersionNo(versionNo);
+        v.setStoragePath(stored.getUploaded().getStoragePath());
+        v.setEncoding(stored.getEncoding());
+        v.setFileSize(stored.getFileSize());
+        v.setBaseVersionNo(stored.getBaseVersionNo());
+        v.setDeltaDepth(stored.getDeltaDepth());
+        return v;
+    }
+
+    private static byte[] read(VersionStorageService service, ShipDocument.DocVersion v, List<ShipDocument.DocVersion> versions) throws Exception {
+        try (InputStream in = service.open(v, versions)) {
+            return in.readAllBytes();
+        }
+    }
+}